@@ -18,11 +18,13 @@
 
 package dev.dreta.ticketbot;
 
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class allows another class to request the
@@ -30,12 +32,13 @@ import java.util.List;
  * able to send messages in that channel anymore.
  */
 public class ChannelLock extends ListenerAdapter {
-    public static final List<Long> lockedChannels = new ArrayList<>();
+    // Shards deliver their events on their own threads
+    public static final Set<Long> lockedChannels = ConcurrentHashMap.newKeySet();
 
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
         if (lockedChannels.contains(e.getChannel().getIdLong()) && !e.getAuthor().isBot()) {
-            e.getMessage().delete().queue();
+            RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getMessage().delete());
         }
     }
 }
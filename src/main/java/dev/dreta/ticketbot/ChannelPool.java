@@ -0,0 +1,239 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import dev.dreta.ticketbot.utils.DataConfiguration;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ChannelPool keeps a few hidden ticket channels ready,
+ * so that !ticket doesn't have to wait for a channel to be
+ * created and set up.
+ * <p>
+ * Pooled channels are created by {@link ChannelProvisioner}
+ * in the ticket category with the pool name, hidden from
+ * everyone except for the roles that can see all tickets.
+ * Claiming one renames it and lets the ticket author in with
+ * a single update. The pool is refilled one channel at a time
+ * in the background, with a delay between the channels so
+ * that we stay well within the rate limits of Discord.
+ * <p>
+ * Channels with the pool name that are already in the ticket
+ * category when the guild becomes ready are reused.
+ */
+public class ChannelPool extends ListenerAdapter {
+    // How long (in milliseconds) to wait at least and at most
+    // before trying to create a pooled channel again after a failure.
+    private static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(10);
+
+    private final DataConfiguration config;
+    private final Deque<Long> available = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    // The number of times in a row that creating a pooled channel failed
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong claimedNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong createdNanos = new AtomicLong();
+
+    /**
+     * Create the pool of a guild.
+     *
+     * @param config The configuration of the guild
+     */
+    public ChannelPool(DataConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * Reuse the pooled channels that already exist and start
+     * filling the pool. This only does something the first time
+     * it is called.
+     */
+    public void start() {
+        if (config.channelsPoolSize() <= 0 || config.getGuild() == null || !started.compareAndSet(false, true)) {
+            return;
+        }
+        String name = config.channelsPoolName();
+        for (TextChannel channel : config.channelsTicketCategory().getTextChannels()) {
+            if (channel.getName().equals(name)) {
+                available.add(channel.getIdLong());
+            }
+        }
+        refill();
+    }
+
+    /**
+     * Get the number of channels that are ready to be claimed.
+     *
+     * @return -
+     */
+    public int size() {
+        return available.size();
+    }
+
+    /**
+     * Claim a pooled channel for a ticket.
+     *
+     * @param member The author of the ticket
+     * @param name   The name of the ticket channel
+     * @param topic  The topic of the ticket channel
+     * @return A future that completes with the channel once the guild member
+     * can see it, or null if the pool is empty. If the channel couldn't be
+     * claimed, it goes back to the pool and the future completes exceptionally.
+     */
+    public CompletableFuture<TextChannel> claim(Member member, String name, String topic) {
+        TextChannel channel = null;
+        while (channel == null) {
+            Long id = available.poll();
+            if (id == null) {
+                return null;
+            }
+            // The channel might have been deleted by someone else
+            channel = config.getGuild().getTextChannelById(id);
+        }
+        refill();
+
+        TextChannel claimedChannel = channel;
+        CompletableFuture<TextChannel> result = new CompletableFuture<>();
+        channel.getManager()
+                .setName(name)
+                .setTopic(topic)
+                .putPermissionOverride(member, config.channelsPermissionsRaw(), 0)
+                .queue(__ -> {
+                    ChannelProvisioner.recordRequest();
+                    ChannelProvisioner.recordChannel();
+                    result.complete(claimedChannel);
+                }, ex -> {
+                    // Still hidden under the pool name, so it can be claimed again
+                    available.addFirst(claimedChannel.getIdLong());
+                    result.completeExceptionally(ex);
+                });
+        return result;
+    }
+
+    /**
+     * Record how long it took to get a ticket channel ready when
+     * it was claimed from the pool.
+     *
+     * @param start The value of {@link System#nanoTime()} when the channel was requested
+     */
+    public void recordClaimed(long start) {
+        record(claimed, claimedNanos, start);
+    }
+
+    /**
+     * Record how long it took to get a ticket channel ready when
+     * it had to be created instead of claimed from the pool. Only
+     * call this once the channel is completely set up, so that it
+     * can be compared with {@link #recordClaimed(long)}.
+     *
+     * @param start The value of {@link System#nanoTime()} when the channel was requested
+     */
+    public void recordCreated(long start) {
+        record(created, createdNanos, start);
+    }
+
+    private static void record(AtomicLong count, AtomicLong nanos, long start) {
+        count.incrementAndGet();
+        nanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Create pooled channels until the pool is full, unless this
+     * is already being done.
+     * <p>
+     * If creating a channel fails, it is tried again after a
+     * delay that doubles with every failure in a row, so that a
+     * missing permission or an outage of Discord doesn't leave
+     * the pool empty for good, but doesn't flood Discord either.
+     */
+    private void refill() {
+        if (available.size() >= config.channelsPoolSize() || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        int failed = failures.get();
+        long delay = config.channelsPoolRefillDelay();
+        if (failed > 0) {
+            delay = Math.min(MAX_RETRY_DELAY, Math.max(delay, MIN_RETRY_DELAY) << Math.min(failed - 1, 16));
+        }
+        ChannelProvisioner.hiddenChannel(config, config.channelsPoolName())
+                .queueAfter(delay, TimeUnit.MILLISECONDS, channel -> {
+                    ChannelProvisioner.recordRequest();
+                    failures.set(0);
+                    available.add(channel.getIdLong());
+                    refilling.set(false);
+                    refill();
+                }, ex -> {
+                    System.err.println("Couldn't create a pooled channel in guild " + config.getGuild().getId() +
+                            ", trying again later.");
+                    ex.printStackTrace();
+                    failures.incrementAndGet();
+                    refilling.set(false);
+                    refill();
+                });
+    }
+
+    /**
+     * Get a human readable summary of the pool and how long
+     * it took to get ticket channels ready.
+     *
+     * @return -
+     */
+    public String getStats() {
+        return "Available: " + available.size() +
+                ", claimed: " + claimed.get() + " (avg " + average(claimed, claimedNanos) + " ms)" +
+                ", created: " + created.get() + " (avg " + average(created, createdNanos) + " ms)";
+    }
+
+    private static long average(AtomicLong count, AtomicLong nanos) {
+        long c = count.get();
+        return c == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.get() / c);
+    }
+
+    @Override
+    public void onGuildReady(GuildReadyEvent e) {
+        // The guild might be on a shard that was still connecting when TicketBot started
+        if (e.getGuild().getIdLong() == config.getConfig().get("guildId").getAsLong()) {
+            start();
+        }
+    }
+
+    @Override
+    public void onTextChannelDelete(TextChannelDeleteEvent e) {
+        if (available.remove(e.getChannel().getIdLong())) {
+            refill();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import dev.dreta.ticketbot.utils.DataConfiguration;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.requests.restaction.ChannelAction;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ChannelProvisioner creates ticket channels with
+ * everything they need in a single request: the name, the
+ * topic and all of the permission overrides.
+ * <p>
+ * This way the channel is ready as soon as it exists, and
+ * nothing is still being changed while the first question
+ * is asked.
+ */
+public class ChannelProvisioner {
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong channels = new AtomicLong();
+
+    /**
+     * Get the name of the next ticket channel of a guild member.
+     *
+     * @param context The context of the guild
+     * @param member  The author of the ticket
+     * @return -
+     */
+    public static String name(GuildContext context, Member member) {
+        return context.getConfig().channelsChannelFormat()
+                .replace("{NAMEDISCRIM}", member.getUser().getName() + member.getUser().getDiscriminator())
+                .replace("{TICKETDISCRIM}", String.valueOf(context.countTickets(member.getIdLong()) + 1));
+    }
+
+    /**
+     * Get the topic of a ticket channel of a guild member.
+     *
+     * @param config The configuration of the guild
+     * @param member The author of the ticket
+     * @return -
+     */
+    public static String topic(DataConfiguration config, Member member) {
+        return config.channelsChannelTopic()
+                .replace("{NAME}", member.getUser().getName())
+                .replace("{NICKNAME}", member.getEffectiveName())
+                .replace("{DISCRIM}", member.getUser().getDiscriminator());
+    }
+
+    /**
+     * Prepare the creation of a channel in the ticket category that
+     * is hidden from everyone except for the allowed roles.
+     * This doesn't send any request yet.
+     *
+     * @param config The configuration of the guild
+     * @param name   The name of the channel
+     * @return -
+     */
+    public static ChannelAction<TextChannel> hiddenChannel(DataConfiguration config, String name) {
+        Category category = config.channelsTicketCategory();
+        long allow = config.channelsPermissionsRaw();
+        ChannelAction<TextChannel> action = category.createTextChannel(name)
+                .addPermissionOverride(category.getGuild().getPublicRole(), 0, Permission.getRaw(Permission.VIEW_CHANNEL));
+        for (Role role : config.channelsAllowedRoles()) {
+            action = action.addPermissionOverride(role, allow, 0);
+        }
+        return action;
+    }
+
+    /**
+     * Create a ticket channel for a guild member.
+     *
+     * @param context The context of the guild
+     * @param member  The author of the ticket
+     * @return A future that completes with the channel once it is completely set up
+     */
+    public static CompletableFuture<TextChannel> provision(GuildContext context, Member member) {
+        DataConfiguration config = context.getConfig();
+        return hiddenChannel(config, name(context, member))
+                .setTopic(topic(config, member))
+                .addPermissionOverride(member, config.channelsPermissionsRaw(), 0)
+                .submit()
+                .thenApply(channel -> {
+                    recordRequest();
+                    channels.incrementAndGet();
+                    return channel;
+                });
+    }
+
+    /**
+     * Count a request that was sent to Discord to get a ticket
+     * channel ready, once it has succeeded.
+     */
+    public static void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * Count a ticket channel that was handed out without
+     * going through {@link #provision(GuildContext, Member)}.
+     */
+    public static void recordChannel() {
+        channels.incrementAndGet();
+    }
+
+    /**
+     * Get a human readable summary of how many successful
+     * requests the ticket channels cost.
+     *
+     * @return -
+     */
+    public static String getStats() {
+        long c = channels.get();
+        return "Ticket channels: " + c +
+                ", requests: " + requests.get() +
+                ", requests per channel: " + (c == 0 ? 0 : String.format("%.2f", requests.get() / (double) c));
+    }
+}
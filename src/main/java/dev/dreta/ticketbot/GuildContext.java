@@ -0,0 +1,512 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.data.TicketType;
+import dev.dreta.ticketbot.search.TicketIndex;
+import dev.dreta.ticketbot.utils.Configuration;
+import dev.dreta.ticketbot.utils.DataConfiguration;
+import dev.dreta.ticketbot.utils.MemberCache;
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A GuildContext holds everything that belongs to one guild:
+ * its configuration, its tickets and ticket types, its search
+ * index, its member cache and its channel pool.
+ * <p>
+ * The main guild (guildId in config.json) keeps using config.json,
+ * data.json and search.json, and its context shares its state with
+ * the static fields that have always held it ({@link Ticket#tickets},
+ * {@link TicketType#types}, {@link TicketBot#searchIndex} and so on),
+ * so that extensions written for a single guild keep working.
+ * <p>
+ * Any other guild is served if it has a directory in guilds/
+ * named after its ID with a config.json in it. That file only has
+ * to contain what is different from the main config.json (usually
+ * the ticket category, the allowed roles and the manager roles).
+ * Its tickets are stored next to it. The context of a guild is
+ * only loaded once the bot joins the guild or the guild is first
+ * used, except on a standby, which keeps every guild loaded (see
+ * {@link #tail()}).
+ * <p>
+ * Every context has its own lock, which guards its tickets, and
+ * its own executor for work that shouldn't hold up the other
+ * guilds, such as saving its files.
+ */
+@Getter
+public class GuildContext {
+    private static final Map<Long, GuildContext> contexts = new ConcurrentHashMap<>();
+    private static final Map<Long, CompletableFuture<GuildContext>> loading = new ConcurrentHashMap<>();
+
+    private final long guildId;
+    private final DataConfiguration config;
+    private final Configuration data;
+    private final File searchIndexFile;
+    private final Map<Long, Ticket> tickets;
+    private final Multimap<Long, Ticket> ticketsByUser;
+    private final Map<String, TicketType> types;
+    private final TicketIndex searchIndex;
+    private final MemberCache members;
+    private final ChannelPool channelPool;
+    private final Object lock = new Object();
+    private final ExecutorService executor;
+    // Whether the channel pool is listening to Discord
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean connected = new AtomicBoolean();
+    // The modification time of the data file when the tickets were last loaded from it,
+    // or -1 if they weren't loaded yet
+    @Getter(AccessLevel.NONE)
+    private volatile long storeLoaded = -1;
+
+    /**
+     * Create the context of the main guild from the static
+     * fields of {@link TicketBot}.
+     */
+    private GuildContext() {
+        this.guildId = TicketBot.config.getConfig().get("guildId").getAsLong();
+        this.config = TicketBot.config;
+        this.data = TicketBot.data;
+        this.searchIndexFile = TicketBot.getSearchIndexFile();
+        this.tickets = Ticket.tickets;
+        this.ticketsByUser = Ticket.ticketsByUser;
+        this.types = TicketType.types;
+        this.searchIndex = TicketBot.searchIndex;
+        this.members = TicketBot.members;
+        this.channelPool = TicketBot.channelPool;
+        this.executor = newExecutor(guildId);
+        // TicketBot registers the channel pool of the main guild itself
+        this.connected.set(true);
+    }
+
+    /**
+     * Create the context of another guild from its directory.
+     *
+     * @param guildId   The ID of the guild
+     * @param directory The directory of the guild
+     */
+    private GuildContext(long guildId, File directory) {
+        this.guildId = guildId;
+        this.config = DataConfiguration.forGuild(TicketBot.config, new File(directory, "config.json"), guildId);
+        this.data = new Configuration();
+        this.data.load("data.json", TicketBot.class, directory);
+        this.searchIndexFile = new File(directory, "search.json");
+        this.tickets = new HashMap<>();
+        this.ticketsByUser = HashMultimap.create();
+        this.types = new HashMap<>();
+        this.searchIndex = new TicketIndex();
+        this.members = new MemberCache(guildId, config.memberCacheMaximumSize(), config.memberCacheExpireAfter());
+        this.channelPool = new ChannelPool(config);
+        this.executor = newExecutor(guildId);
+    }
+
+    /**
+     * Get the directory that holds the directories of the guilds
+     * other than the main guild. It is next to data.json.
+     *
+     * @return -
+     */
+    private static File guildsDir() {
+        return new File(TicketBot.data.getFile().getAbsoluteFile().getParentFile(), "guilds");
+    }
+
+    private static ExecutorService newExecutor(long guildId) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "TicketBot guild " + guildId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create the context of the main guild. This is called once
+     * when TicketBot starts, after the static fields are set up.
+     *
+     * @return -
+     */
+    static GuildContext createMain() {
+        GuildContext context = new GuildContext();
+        contexts.put(context.guildId, context);
+        return context;
+    }
+
+    /**
+     * Get the context of the main guild.
+     *
+     * @return -
+     */
+    public static GuildContext main() {
+        return contexts.get(TicketBot.config.getConfig().get("guildId").getAsLong());
+    }
+
+    /**
+     * Get the context of a guild, loading it if this is the
+     * first time it is used.
+     *
+     * @param guild The guild
+     * @return The context, or null if TicketBot isn't set up for the guild
+     */
+    public static GuildContext of(Guild guild) {
+        return guild == null ? null : of(guild.getIdLong());
+    }
+
+    /**
+     * Get the context of a guild, loading it if this is the
+     * first time it is used.
+     *
+     * @param guildId The ID of the guild
+     * @return The context, or null if TicketBot isn't set up for the guild
+     */
+    public static GuildContext of(long guildId) {
+        GuildContext context = contexts.get(guildId);
+        if (context != null) {
+            return context;
+        }
+        File directory = new File(guildsDir(), String.valueOf(guildId));
+        if (!new File(directory, "config.json").isFile()) {
+            return null;
+        }
+        // Loaded outside of the map, so that reading the files and
+        // registering the listener doesn't block other guilds. Whoever
+        // puts the future first loads the context, everyone else waits.
+        CompletableFuture<GuildContext> created = new CompletableFuture<>();
+        CompletableFuture<GuildContext> existing = loading.putIfAbsent(guildId, created);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            context = contexts.get(guildId);
+            if (context == null) {
+                context = new GuildContext(guildId, directory);
+                context.load();
+                contexts.put(guildId, context);
+                context.connect();
+            }
+            created.complete(context);
+            return context;
+        } catch (RuntimeException ex) {
+            created.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(guildId, created);
+        }
+    }
+
+    /**
+     * Load the tickets of every guild that TicketBot is set up for
+     * again if the leader has saved them since we last loaded them,
+     * loading the guilds that aren't loaded yet. This is only done
+     * while waiting as a standby, so that every guild is ready when
+     * we take over, not just the ones that were already loaded.
+     * <p>
+     * Nothing is connected to Discord yet, see {@link #connectAll()}.
+     */
+    static void tail() {
+        List<Long> guildIds = new ArrayList<>();
+        guildIds.add(main().guildId);
+        File[] directories = guildsDir().listFiles(File::isDirectory);
+        if (directories != null) {
+            for (File directory : directories) {
+                try {
+                    if (new File(directory, "config.json").isFile()) {
+                        guildIds.add(Long.parseLong(directory.getName()));
+                    }
+                } catch (NumberFormatException ex) {
+                    // Not the directory of a guild
+                }
+            }
+        }
+        for (long guildId : guildIds) {
+            try {
+                GuildContext context = contexts.get(guildId);
+                if (context == null) {
+                    context = new GuildContext(guildId, new File(guildsDir(), String.valueOf(guildId)));
+                    contexts.put(guildId, context);
+                }
+                context.reloadIfChanged();
+            } catch (RuntimeException ex) {
+                // For example, if a ticket uses a step type from an extension,
+                // which isn't loaded yet. The tickets are loaded again after
+                // the extensions in that case.
+            }
+        }
+    }
+
+    /**
+     * Start the channel pools of the guilds that were loaded while
+     * waiting as a standby. This is called once we are connected.
+     */
+    static void connectAll() {
+        for (GuildContext context : contexts.values()) {
+            context.connect();
+        }
+    }
+
+    private void connect() {
+        if (connected.compareAndSet(false, true)) {
+            TicketBot.addEventListener(channelPool);
+            channelPool.start();
+        }
+    }
+
+    /**
+     * Get the contexts of every guild that has been loaded.
+     *
+     * @return -
+     */
+    public static Collection<GuildContext> loaded() {
+        return Collections.unmodifiableCollection(contexts.values());
+    }
+
+    /**
+     * Get the contexts of the loaded guilds that are served
+     * by a shard.
+     *
+     * @param shardId The ID of the shard
+     * @return -
+     */
+    public static List<GuildContext> loaded(int shardId) {
+        List<GuildContext> loaded = new ArrayList<>();
+        for (GuildContext context : contexts.values()) {
+            if (context.getShardId() == shardId) {
+                loaded.add(context);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Get the ID of the shard that serves the guild of this context.
+     *
+     * @return -
+     */
+    public int getShardId() {
+        int total = TicketBot.shardManager == null ? 1 : TicketBot.shardManager.getShardsTotal();
+        return (int) ((guildId >> 22) % total);
+    }
+
+    /**
+     * Get the guild of this context.
+     *
+     * @return The guild, or null if it isn't available
+     */
+    public Guild getGuild() {
+        return TicketBot.getGuildById(guildId);
+    }
+
+    /**
+     * Load (reload) the tickets and the ticket types of this guild.
+     */
+    public void load() {
+        synchronized (lock) {
+            tickets.clear();
+            ticketsByUser.clear();
+            types.clear();
+
+            if (data.getConfig().has("tickets")) {
+                JsonArray tickets = data.getConfig().getAsJsonArray("tickets");
+                for (JsonElement tkt : tickets) {
+                    JsonObject ticket = tkt.getAsJsonObject();
+                    Ticket object = Ticket.deserialize(ticket);
+                    this.tickets.put(object.getChannel(), object);
+                    this.ticketsByUser.put(object.getAuthor(), object);
+                }
+            }
+
+            if (data.getConfig().has("ticketTypes")) {
+                JsonArray ticketTypes = data.getConfig().getAsJsonArray("ticketTypes");
+                for (JsonElement typ : ticketTypes) {
+                    JsonObject type = typ.getAsJsonObject();
+                    TicketType object = TicketType.deserialize(type);
+                    types.put(object.getEmoji(), object);
+                }
+            }
+
+            // Load the search index and index whatever is missing from it
+            searchIndex.load(searchIndexFile);
+            searchIndex.synchronize(tickets);
+            storeLoaded = data.getLoadedModified();
+        }
+    }
+
+    /**
+     * Read the data file and load the tickets and the ticket types
+     * of this guild again, unless the file hasn't changed since
+     * this was last done. A standby uses this to keep up with the
+     * files the leader saves.
+     */
+    public void reloadIfChanged() {
+        long modified = data.getFile().lastModified();
+        if (modified == storeLoaded) {
+            return;
+        }
+        // Loaded again next time if this fails halfway through
+        storeLoaded = -1;
+        // The data file is read when TicketBot starts or the context is
+        // created, and only has to be read again if it changed since then
+        if (modified != data.getLoadedModified()) {
+            data.reload();
+        }
+        load();
+    }
+
+    /**
+     * Save the tickets and the ticket types of this guild.
+     */
+    public void save() {
+        // Serialize every ticket in its mailbox, so that we don't
+        // save a ticket while it is halfway through a change. Only
+        // the list of tickets is read under the lock, waiting for
+        // the mailboxes would hold up everyone using this guild.
+        List<CompletableFuture<JsonObject>> serialized = new ArrayList<>();
+        JsonArray ticketTypes = new JsonArray();
+        synchronized (lock) {
+            for (Ticket ticket : this.tickets.values()) {
+                serialized.add(ticket.submit(Ticket::serialize));
+            }
+            for (TicketType type : types.values()) {
+                ticketTypes.add(type.serialize());
+            }
+        }
+        JsonArray tickets = new JsonArray();
+        for (CompletableFuture<JsonObject> ticket : serialized) {
+            tickets.add(ticket.join());
+        }
+        // Two saves of the same guild still write the file one at a time
+        synchronized (data) {
+            data.getConfig().remove("tickets");
+            data.getConfig().remove("ticketTypes");
+            data.getConfig().add("tickets", tickets);
+            data.getConfig().add("ticketTypes", ticketTypes);
+            data.save();
+            searchIndex.save(searchIndexFile);
+        }
+    }
+
+    /**
+     * Save the tickets and the ticket types of this guild on
+     * the executor of this guild, so that a guild with many
+     * tickets doesn't hold up saving the other guilds.
+     *
+     * @return A future that completes once everything is saved
+     */
+    public CompletableFuture<Void> saveAsync() {
+        try {
+            return CompletableFuture.runAsync(this::save, executor);
+        } catch (RejectedExecutionException ex) {
+            // Unloaded, which saves it one last time
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Add a ticket that has just been created.
+     *
+     * @param ticket The ticket
+     */
+    public void addTicket(Ticket ticket) {
+        synchronized (lock) {
+            tickets.put(ticket.getChannel(), ticket);
+            ticketsByUser.put(ticket.getAuthor(), ticket);
+        }
+        searchIndex.index(ticket);
+    }
+
+    /**
+     * Get the ticket of a channel.
+     *
+     * @param channel The ID of the channel
+     * @return The ticket, or null if the channel doesn't belong to a ticket
+     */
+    public Ticket getTicket(long channel) {
+        synchronized (lock) {
+            return tickets.get(channel);
+        }
+    }
+
+    /**
+     * Get the number of tickets a guild member has created.
+     *
+     * @param member The ID of the member
+     * @return -
+     */
+    public int countTickets(long member) {
+        synchronized (lock) {
+            return ticketsByUser.get(member).size();
+        }
+    }
+
+    /**
+     * Stop using this context, saving everything first.
+     * The main guild is never unloaded.
+     */
+    private void unload() {
+        if (this == main()) {
+            return;
+        }
+        contexts.remove(guildId, this);
+        if (connected.get()) {
+            TicketBot.removeEventListener(channelPool);
+        }
+        executor.execute(this::save);
+        executor.shutdown();
+    }
+
+    /**
+     * This listener loads the context of a guild as soon as the
+     * bot joins the guild, and unloads it when the bot leaves
+     * the guild. The contexts of the guilds the bot is already
+     * in are loaded when they are first used.
+     */
+    public static class Listener extends ListenerAdapter {
+        @Override
+        public void onGuildJoin(GuildJoinEvent e) {
+            long guildId = e.getGuild().getIdLong();
+            // Load it in the background, so that other guilds don't have to wait
+            CompletableFuture.runAsync(() -> of(guildId));
+        }
+
+        @Override
+        public void onGuildLeave(GuildLeaveEvent e) {
+            GuildContext context = contexts.get(e.getGuild().getIdLong());
+            if (context != null) {
+                context.unload();
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import dev.dreta.ticketbot.extensions.Extension;
+import dev.dreta.ticketbot.extensions.ExtensionBulkhead;
+import dev.dreta.ticketbot.utils.Metrics;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.hooks.InterfacedEventManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ShardEventManager hands the events of one shard to
+ * the listeners, and measures how many
+ * events the shard receives and how long the listeners take
+ * to handle them.
+ * <p>
+ * Listeners registered by extensions are not called on the
+ * thread of the shard, but handed to the {@link ExtensionBulkhead}
+ * of their extension, so they can't hold up TicketBot.
+ * <p>
+ * While TicketBot is starting, events are kept until the tickets
+ * are loaded, see {@link #startDispatching()}.
+ * <p>
+ * The statistics are shown with !ticket stats, one entry for
+ * each shard.
+ */
+public class ShardEventManager extends InterfacedEventManager {
+    // The events are counted per second for the last minute
+    private static final int WINDOW = 60;
+    // At most this many events are kept while TicketBot is starting
+    private static final int MAX_BUFFERED = 10000;
+    private static final Object bufferLock = new Object();
+    // The events received before the tickets were loaded, in the order
+    // they arrived, and null once they are loaded
+    private static volatile List<Runnable> buffered = new ArrayList<>();
+    private static int droppedWhileStarting;
+
+    private final int shardId;
+    private final long[] seconds = new long[WINDOW];
+    private final long[] counts = new long[WINDOW];
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong handlingNanos = new AtomicLong();
+    private final AtomicLong maxHandlingNanos = new AtomicLong();
+    private volatile JDA jda;
+
+    /**
+     * Create the event manager of a shard.
+     *
+     * @param shardId The ID of the shard
+     */
+    public ShardEventManager(int shardId) {
+        this.shardId = shardId;
+        Metrics.register("Shard " + shardId, this::getStats);
+    }
+
+    /**
+     * Start handing events to the listeners. TicketBot connects
+     * while it is still loading the tickets, and the events it
+     * receives until then are kept and handed to the listeners
+     * here, in the order they arrived. The shards don't wait for
+     * this, so they keep up with Discord while TicketBot starts.
+     */
+    public static void startDispatching() {
+        synchronized (bufferLock) {
+            if (buffered == null) {
+                return;
+            }
+            // Events arriving in the meantime wait for the lock,
+            // so that they are handled after the kept ones
+            for (Runnable event : buffered) {
+                event.run();
+            }
+            buffered = null;
+            if (droppedWhileStarting > 0) {
+                System.err.println("Dropped " + droppedWhileStarting + " events received while starting, " +
+                        "more than " + MAX_BUFFERED + " arrived before the tickets were loaded.");
+            }
+        }
+    }
+
+    @Override
+    public void handle(GenericEvent e) {
+        if (buffered != null) {
+            synchronized (bufferLock) {
+                if (buffered != null) {
+                    if (buffered.size() < MAX_BUFFERED) {
+                        buffered.add(() -> dispatch(e));
+                    } else {
+                        droppedWhileStarting++;
+                    }
+                    return;
+                }
+            }
+        }
+        dispatch(e);
+    }
+
+    private void dispatch(GenericEvent e) {
+        if (jda == null) {
+            jda = e.getJDA();
+        }
+        count(System.currentTimeMillis() / 1000);
+        long start = System.nanoTime();
+        try {
+            for (Object listener : getRegisteredListeners()) {
+                Extension extension = TicketBot.extLoader == null ? null : TicketBot.extLoader.getExtensionFromClass(listener.getClass());
+                if (extension != null) {
+                    ExtensionBulkhead bulkhead = ExtensionBulkhead.of(extension);
+                    if (bulkhead != null) {
+                        bulkhead.dispatch((EventListener) listener, e);
+                    }
+                    continue;
+                }
+                try {
+                    ((EventListener) listener).onEvent(e);
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        } finally {
+            long took = System.nanoTime() - start;
+            events.incrementAndGet();
+            handlingNanos.addAndGet(took);
+            maxHandlingNanos.accumulateAndGet(took, Math::max);
+        }
+    }
+
+    private synchronized void count(long second) {
+        int bucket = (int) (second % WINDOW);
+        if (seconds[bucket] != second) {
+            seconds[bucket] = second;
+            counts[bucket] = 0;
+        }
+        counts[bucket]++;
+    }
+
+    /**
+     * Get the number of events this shard received in the last minute.
+     *
+     * @return -
+     */
+    public synchronized long getEventsPerMinute() {
+        long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            if (now - seconds[i] < WINDOW) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get a human readable summary of the events of this
+     * shard and its latency.
+     *
+     * @return -
+     */
+    public String getStats() {
+        long handled = events.get();
+        return "Events: " + handled +
+                ", last minute: " + getEventsPerMinute() +
+                ", avg handling " + (handled == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(handlingNanos.get() / handled)) + " us" +
+                ", max handling " + TimeUnit.NANOSECONDS.toMillis(maxHandlingNanos.get()) + " ms" +
+                ", gateway ping " + (jda == null ? "-" : jda.getGatewayPing() + " ms") +
+                ", guilds loaded: " + GuildContext.loaded(shardId).size();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup runs the phases of starting TicketBot as a graph:
+ * every phase starts as soon as the phases it depends on are
+ * done, so that phases which don't depend on each other, like
+ * logging in to Discord and loading the extensions, overlap.
+ * <p>
+ * How long every phase took is printed once TicketBot has
+ * started, and shown with !ticket stats.
+ */
+public class Startup {
+    private final ForkJoinPool pool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+    private final Map<String, CompletableFuture<Void>> phases = new LinkedHashMap<>();
+    private final Map<String, Long> started = new ConcurrentHashMap<>();
+    private final Map<String, Long> finished = new ConcurrentHashMap<>();
+    // Completed with the first exception of any phase
+    private final CompletableFuture<Void> failure = new CompletableFuture<>();
+    private final long start = System.nanoTime();
+    private volatile long end = -1;
+
+    /**
+     * A phase of starting TicketBot.
+     */
+    @FunctionalInterface
+    public interface Phase {
+        void run() throws Exception;
+    }
+
+    /**
+     * Add a phase. The phases it depends on must have been
+     * added before it. The phase starts right away if it doesn't
+     * depend on anything.
+     *
+     * @param name      The name of the phase, for the timing report
+     * @param phase     What to do
+     * @param dependsOn The names of the phases to wait for
+     */
+    public void phase(String name, Phase phase, String... dependsOn) {
+        CompletableFuture<?>[] dependencies = new CompletableFuture<?>[dependsOn.length];
+        for (int i = 0; i < dependsOn.length; i++) {
+            dependencies[i] = phases.get(dependsOn[i]);
+            if (dependencies[i] == null) {
+                throw new IllegalArgumentException("Phase " + name + " depends on unknown phase " + dependsOn[i]);
+            }
+        }
+        phases.put(name, CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+            started.put(name, System.nanoTime());
+            try {
+                phase.run();
+            } catch (Exception ex) {
+                failure.completeExceptionally(ex);
+                throw ex instanceof RuntimeException ? (RuntimeException) ex : new CompletionException(ex);
+            } finally {
+                finished.put(name, System.nanoTime());
+            }
+        }, pool));
+    }
+
+    /**
+     * Wait until every phase is done, or until the first one fails.
+     *
+     * @throws Exception The exception of the phase that failed
+     */
+    public void await() throws Exception {
+        try {
+            CompletableFuture.anyOf(CompletableFuture.allOf(phases.values().toArray(new CompletableFuture<?>[0])), failure).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex;
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        } finally {
+            end = System.nanoTime();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Get how long every phase took, one phase per line.
+     *
+     * @return -
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder("Started in ").append(millis(elapsed())).append(" ms:");
+        for (String name : phases.keySet()) {
+            Long phaseStart = started.get(name);
+            Long phaseEnd = finished.get(name);
+            if (phaseStart == null) {
+                report.append(String.format("\n  %-18s did not run", name));
+            } else if (phaseEnd == null) {
+                report.append(String.format("\n  %-18s did not finish", name));
+            } else {
+                report.append(String.format("\n  %-18s %6d ms, from %6d ms", name,
+                        millis(phaseEnd - phaseStart), millis(phaseStart - start)));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Get a human readable summary of how long starting took.
+     *
+     * @return -
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder("Total: ").append(millis(elapsed())).append(" ms");
+        for (String name : phases.keySet()) {
+            Long phaseStart = started.get(name);
+            Long phaseEnd = finished.get(name);
+            if (phaseStart != null && phaseEnd != null) {
+                stats.append(", ").append(name).append(" ").append(millis(phaseEnd - phaseStart)).append(" ms");
+            }
+        }
+        return stats.toString();
+    }
+
+    private long elapsed() {
+        long stop = end;
+        return (stop == -1 ? System.nanoTime() : stop) - start;
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
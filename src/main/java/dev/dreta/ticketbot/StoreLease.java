@@ -0,0 +1,131 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The StoreLease makes sure that only one TicketBot at a time
+ * is connected to Discord and writes the ticket store, when
+ * several of them are started in the same directory.
+ * <p>
+ * The lease is a lock on the file data.lock next to data.json.
+ * The operating system releases the lock as soon as the process
+ * holding it dies, however it dies, so a TicketBot waiting for
+ * the lease takes over as soon as it next checks the lock.
+ * <p>
+ * While it is waiting, the standby keeps its copy of the ticket
+ * store up to date whenever the leader saves it, so that it is
+ * ready to go when it takes over.
+ */
+public class StoreLease {
+    private final File file;
+    private FileChannel channel;
+    private FileLock lock;
+
+    /**
+     * Create the lease of the ticket store in a directory.
+     *
+     * @param directory The directory of data.json
+     */
+    public StoreLease(File directory) {
+        this.file = new File(directory, "data.lock");
+    }
+
+    /**
+     * Try to take the lease without waiting.
+     *
+     * @return Whether this process holds the lease now
+     * @throws IOException If the lock file can't be opened
+     */
+    public synchronized boolean tryAcquire() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            // Already locked by this process
+            return false;
+        }
+        if (lock == null) {
+            return false;
+        }
+        // Note down who holds the lease, only for the humans
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(ManagementFactory.getRuntimeMXBean().getName()
+                .getBytes(StandardCharsets.UTF_8)), 0);
+        channel.force(false);
+        return true;
+    }
+
+    /**
+     * Wait until this process holds the lease.
+     *
+     * @param pollInterval How often to check the lock, in milliseconds
+     * @param whileWaiting Called every time the lock was checked and is still held by someone else
+     * @throws IOException          If the lock file can't be opened
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public void await(long pollInterval, Runnable whileWaiting) throws IOException, InterruptedException {
+        while (!tryAcquire()) {
+            whileWaiting.run();
+            Thread.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Check whether this process holds the lease.
+     *
+     * @return -
+     */
+    public synchronized boolean isHeld() {
+        return lock != null && lock.isValid();
+    }
+
+    /**
+     * Give the lease up, so that a standby can take over
+     * right away instead of waiting for this process to exit.
+     */
+    public synchronized void release() {
+        try {
+            if (lock != null) {
+                lock.release();
+                lock = null;
+            }
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
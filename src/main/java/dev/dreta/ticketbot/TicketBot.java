@@ -19,31 +19,47 @@
 package dev.dreta.ticketbot;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.commands.TicketCommand;
+import dev.dreta.ticketbot.commands.TicketSearchCommand;
+import dev.dreta.ticketbot.commands.manage.ManagerPermissions;
 import dev.dreta.ticketbot.commands.manage.TicketManageCommand;
+import dev.dreta.ticketbot.commands.manage.TicketReloadCommand;
+import dev.dreta.ticketbot.commands.manage.TicketStatsCommand;
 import dev.dreta.ticketbot.commands.manage.ticket.ManageTicketsAssign;
 import dev.dreta.ticketbot.commands.manage.ticket.ManageTicketsBasic;
-import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.data.AnswerCodec;
+import dev.dreta.ticketbot.data.AnswerCodecs;
+import dev.dreta.ticketbot.data.StepTypeRegistry;
 import dev.dreta.ticketbot.data.TicketStepType;
-import dev.dreta.ticketbot.data.TicketType;
 import dev.dreta.ticketbot.data.types.*;
+import dev.dreta.ticketbot.extensions.ExtensionClassLoader;
 import dev.dreta.ticketbot.extensions.ExtensionLoader;
+import dev.dreta.ticketbot.search.TicketIndex;
 import dev.dreta.ticketbot.utils.Configuration;
 import dev.dreta.ticketbot.utils.DataConfiguration;
+import dev.dreta.ticketbot.utils.Mailbox;
+import dev.dreta.ticketbot.utils.MemberCache;
+import dev.dreta.ticketbot.utils.Metrics;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.sharding.ShardManager;
 
-import javax.security.auth.login.LoginException;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -61,112 +77,271 @@ import java.util.concurrent.TimeUnit;
 public class TicketBot {
     public static DataConfiguration config;
     public static Configuration data;
+    /**
+     * The connection to Discord. When TicketBot is sharded, this
+     * is only the first shard, so use {@link #getGuildById(long)}
+     * and the other methods below to find guilds and channels.
+     */
     public static JDA jda;
+    /**
+     * The shards, or null if TicketBot isn't sharded.
+     */
+    public static ShardManager shardManager;
     public static Gson gson;
     public static ExtensionLoader extLoader;
+    public static TicketIndex searchIndex = new TicketIndex();
+    public static MemberCache members;
+    public static ChannelPool channelPool;
+    public static StoreLease lease;
 
     public static List<Class<? extends TicketStepType<?>>> stepTypes = new ArrayList<>();
 
-    public static void main(String[] args) throws LoginException,
-            InterruptedException, InvocationTargetException,
-            InstantiationException, IllegalAccessException,
-            IOException {
-        gson = new Gson();
-
-        System.out.println("Loading configuration...");
-        config = new DataConfiguration();
-        config.load("config.json");
-        data = new Configuration();
-        data.load("data.json");
-
-        System.out.println("Connecting...");
-        jda = JDABuilder.createDefault(config.getToken())
-                .addEventListeners(new ManageTicketsAssign(), new ManageTicketsBasic(),
-                        new TicketCommand(), new TicketManageCommand(), new ExitListener(),
-                        new ChannelLock())
-                .build();
-        jda.awaitReady();
-
-        System.out.println("Registering built-in step types...");
-        // Register built-in step-types
-        registerStepType(BooleanStepType.class);
-        registerStepType(DoubleStepType.class);
-        registerStepType(IntegerStepType.class);
-        registerStepType(ListStepType.class);
-        registerStepType(StringStepType.class);
-        registerStepType(SingleSelectStepType.class);
-        registerStepType(MultiSelectStepType.class);
-
-        System.out.println("Loading extensions...");
-
-        File extensionsDir = new File("extensions").getAbsoluteFile();
-        if (!extensionsDir.exists() && !extensionsDir.mkdirs()) {
-            TicketBot.jda.shutdown();
-            throw new RuntimeException(new IOException("Failed to create extensions directory."));
-        }
+    public static void main(String[] args) throws Exception {
+        // Every phase starts as soon as the phases it needs are done,
+        // so logging in overlaps with loading the extensions and the tickets.
+        Startup startup = new Startup();
+        startup.phase("config", () -> {
+            gson = new Gson();
+            config = new DataConfiguration();
+            config.load("config.json");
+            members = new MemberCache(config.memberCacheMaximumSize(), config.memberCacheExpireAfter());
+            channelPool = new ChannelPool(config);
+            Metrics.register("Members", members::getStats);
+            Metrics.register("Search", () -> "Tickets indexed: " + searchIndex.size());
+            Metrics.register("Reactions", ReactionContext::getStats);
+            Metrics.register("Ticket channels", channelPool::getStats);
+            Metrics.register("Ticket channel requests", ChannelProvisioner::getStats);
+            Metrics.register("Requests", RestScheduler::getStats);
+            Metrics.register("Mailboxes", Mailbox::getStats);
+            Metrics.register("Guilds", () -> "Loaded: " + GuildContext.loaded().size());
+            Metrics.register("Startup", startup::getStats);
+        });
+        startup.phase("data", () -> {
+            data = new Configuration();
+            data.load("data.json");
+        });
+        // Register built-in step-types. This is done before connecting,
+        // so that a standby can read the tickets while it is waiting.
+        startup.phase("step types", () -> {
+            registerStepType(BooleanStepType.class, AnswerCodecs.BOOLEAN);
+            registerStepType(DoubleStepType.class, AnswerCodecs.DOUBLE);
+            registerStepType(IntegerStepType.class, AnswerCodecs.INTEGER);
+            registerStepType(ListStepType.class, AnswerCodecs.STRING_LIST);
+            registerStepType(StringStepType.class, AnswerCodecs.STRING);
+            registerStepType(SingleSelectStepType.class, AnswerCodecs.STRING);
+            registerStepType(MultiSelectStepType.class, AnswerCodecs.STRING_LIST);
+        });
+        startup.phase("lease", () -> {
+            GuildContext.createMain();
+            lease = new StoreLease(data.getFile().getAbsoluteFile().getParentFile());
+            if (!lease.tryAcquire()) {
+                System.out.println("Another TicketBot is running here, waiting as a standby...");
+                lease.await(config.clusterPollInterval(), GuildContext::tail);
+                System.out.println("Took over from the other TicketBot.");
+            }
+        }, "config", "data", "step types");
+        // Opening the extensions doesn't need Discord, only enabling them does
+        startup.phase("extension classes", () -> {
+            File extensionsDir = new File("extensions").getAbsoluteFile();
+            if (!extensionsDir.exists() && !extensionsDir.mkdirs()) {
+                throw new IOException("Failed to create extensions directory.");
+            }
+            extLoader = new ExtensionLoader(extensionsDir);
+            Metrics.register("Extensions", extLoader::getStats);
+            for (File ext : extLoader.getAvailableExtensions()) {
+                extLoader.getOrCreateLoader(ext);
+            }
+        }, "config");
+        startup.phase("login", () -> {
+            System.out.println("Connecting...");
+            Object[] listeners = {new ManageTicketsAssign(), new ManageTicketsBasic(),
+                    new TicketCommand(), new TicketManageCommand(), new TicketSearchCommand(),
+                    new TicketStatsCommand(), new TicketReloadCommand(), new ExitListener(), new ChannelLock(), new ManagerPermissions(), channelPool,
+                    new GuildContext.Listener()};
+            // The events are kept until the tickets are loaded, see ShardEventManager
+            if (config.shardingEnabled()) {
+                shardManager = DefaultShardManagerBuilder.createDefault(config.getToken())
+                        .setShardsTotal(config.shardingTotal())
+                        .setEventManagerProvider(ShardEventManager::new)
+                        .addEventListeners(listeners)
+                        .build();
+                jda = shardManager.getShardById(0);
+            } else {
+                jda = JDABuilder.createDefault(config.getToken())
+                        .setEventManager(new ShardEventManager(0))
+                        .addEventListeners(listeners)
+                        .build();
+            }
+        }, "lease");
+        startup.phase("extensions", () -> {
+            for (ExtensionClassLoader loader : extLoader.getLoaders()) {
+                extLoader.enableExtension(loader);
+            }
+        }, "extension classes", "step types", "login");
+        startup.phase("tickets", () -> {
+            // A standby has already loaded the tickets, unless they changed since then
+            for (GuildContext context : GuildContext.loaded()) {
+                context.reloadIfChanged();
+            }
+            GuildContext.connectAll();
+            ShardEventManager.startDispatching();
+        }, "lease", "extensions");
+        startup.phase("ready", () -> {
+            // Every shard gets to work on its guilds as soon as it is
+            // ready, so we only wait when there is a single connection.
+            if (shardManager == null) {
+                jda.awaitReady();
+            }
+        }, "login", "tickets");
 
-        extLoader = new ExtensionLoader(extensionsDir);
-        for (File ext : extLoader.getAvailableExtensions()) {
-            extLoader.enableExtension(extLoader.getOrCreateLoader(ext));
+        try {
+            startup.await();
+        } catch (Exception ex) {
+            ShardEventManager.startDispatching();
+            if (shardManager != null) {
+                shardManager.shutdown();
+            } else if (jda != null) {
+                jda.shutdown();
+            }
+            throw ex;
         }
 
-        System.out.println("Loading data...");
-        loadAll();
+        // Save regularly, so that a standby doesn't lose much if we die
+        long saveInterval = config.clusterSaveInterval();
+        if (saveInterval > 0) {
+            ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "TicketBot saver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            saver.scheduleWithFixedDelay(() -> {
+                // An exception would stop the saver for good
+                try {
+                    saveAll();
+                } catch (RuntimeException ex) {
+                    System.err.println("Failed to save the tickets, trying again in " + saveInterval + " seconds.");
+                    ex.printStackTrace();
+                }
+            }, saveInterval, saveInterval, TimeUnit.SECONDS);
+        }
 
         // Add shutdown hook for saving
-        Thread shutdownSaveThread = new Thread(TicketBot::saveAll);
+        Thread shutdownSaveThread = new Thread(() -> {
+            saveAll();
+            lease.release();
+        });
         Runtime.getRuntime().addShutdownHook(shutdownSaveThread);
 
+        System.out.println(startup.getReport());
         System.out.println("Successfully loaded TicketBot.");
-
-        // Role "Ticket Bot Manager" is required for managing the tickets
     }
 
     /**
      * Load (reload) everything and everything.
+     * This reloads every guild that has been loaded.
      */
     public static void loadAll() {
-        Ticket.tickets.clear();
-        Ticket.ticketsByUser.clear();
-        TicketType.types.clear();
-
-        if (data.getConfig().has("tickets")) {
-            JsonArray tickets = data.getConfig().getAsJsonArray("tickets");
-            for (JsonElement tkt : tickets) {
-                JsonObject ticket = tkt.getAsJsonObject();
-                Ticket object = Ticket.deserialize(ticket);
-                Ticket.tickets.put(object.getChannel(), object);
-                Ticket.ticketsByUser.put(object.getAuthor(), object);
-            }
+        for (GuildContext context : GuildContext.loaded()) {
+            context.load();
         }
+    }
 
-        if (data.getConfig().has("ticketTypes")) {
-            JsonArray ticketTypes = data.getConfig().getAsJsonArray("ticketTypes");
-            for (JsonElement typ : ticketTypes) {
-                JsonObject type = typ.getAsJsonObject();
-                TicketType object = TicketType.deserialize(type);
-                TicketType.types.put(object.getEmoji(), object);
-            }
-        }
+    /**
+     * Get the file to save the search index to.
+     * This is always next to the data file.
+     *
+     * @return -
+     */
+    public static File getSearchIndexFile() {
+        return new File(data.getFile().getAbsoluteFile().getParentFile(), "search.json");
     }
 
     /**
      * Save everything and everything.
+     * Nothing is saved while another TicketBot holds the lease.
      */
     public static void saveAll() {
-        JsonArray tickets = new JsonArray();
-        for (Ticket ticket : Ticket.tickets.values()) {
-            tickets.add(ticket.serialize());
+        if (lease != null && !lease.isHeld()) {
+            return;
+        }
+        // Every guild is saved on its own executor
+        List<CompletableFuture<Void>> saving = new ArrayList<>();
+        for (GuildContext context : GuildContext.loaded()) {
+            saving.add(context.saveAsync());
+        }
+        CompletableFuture.allOf(saving.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Get a guild from whichever shard it is on.
+     *
+     * @param id The ID of the guild
+     * @return The guild, or null if it isn't available
+     */
+    public static Guild getGuildById(long id) {
+        return shardManager == null ? jda.getGuildById(id) : shardManager.getGuildById(id);
+    }
+
+    /**
+     * Get a text channel from whichever shard it is on.
+     *
+     * @param id The ID of the channel
+     * @return The channel, or null if it isn't available
+     */
+    public static TextChannel getTextChannelById(long id) {
+        return shardManager == null ? jda.getTextChannelById(id) : shardManager.getTextChannelById(id);
+    }
+
+    /**
+     * Get a category from whichever shard it is on.
+     *
+     * @param id The ID of the category
+     * @return The category, or null if it isn't available
+     */
+    public static Category getCategoryById(long id) {
+        return shardManager == null ? jda.getCategoryById(id) : shardManager.getCategoryById(id);
+    }
+
+    /**
+     * Register event listeners on every shard.
+     *
+     * @param listeners The listeners
+     */
+    public static void addEventListener(Object... listeners) {
+        if (shardManager == null) {
+            jda.addEventListener(listeners);
+        } else {
+            shardManager.addEventListener(listeners);
+        }
+    }
+
+    /**
+     * Remove event listeners from every shard.
+     *
+     * @param listeners The listeners
+     */
+    public static void removeEventListener(Object... listeners) {
+        if (shardManager == null) {
+            jda.removeEventListener(listeners);
+        } else {
+            shardManager.removeEventListener(listeners);
+        }
+    }
+
+    /**
+     * Get the event listeners registered on any shard.
+     *
+     * @return -
+     */
+    public static List<Object> getRegisteredListeners() {
+        if (shardManager == null) {
+            return jda.getRegisteredListeners();
         }
-        JsonArray ticketTypes = new JsonArray();
-        for (TicketType type : TicketType.types.values()) {
-            ticketTypes.add(type.serialize());
+        List<Object> listeners = new ArrayList<>();
+        for (JDA shard : shardManager.getShards()) {
+            listeners.addAll(shard.getRegisteredListeners());
         }
-        data.getConfig().remove("tickets");
-        data.getConfig().remove("ticketTypes");
-        data.getConfig().add("tickets", tickets);
-        data.getConfig().add("ticketTypes", ticketTypes);
-        data.save();
+        return listeners;
     }
 
     /**
@@ -176,15 +351,16 @@ public class TicketBot {
      * @param error   The error
      */
     public static void sendErrorMessage(MessageChannel channel, String error) {
-        channel.sendMessage(
+        RestScheduler.queue(Priority.PROMPT, channel, channel.sendMessage(
                 new EmbedBuilder()
                         .setTitle(TicketBot.config.stepTypesErrorTitle())
                         .setDescription(error)
                         .setColor(TicketBot.config.getErrorColor())
                         .build()
-        ).queue(m -> {
+        )).thenAccept(m -> {
             if (config.stepTypesDeleteErrorMsg()) {
-                m.delete().queueAfter(config.stepTypesDeleteErrorMsgDelay(), TimeUnit.SECONDS);
+                CompletableFuture.delayedExecutor(config.stepTypesDeleteErrorMsgDelay(), TimeUnit.SECONDS)
+                        .execute(() -> RestScheduler.queue(Priority.CLEANUP, channel, m.delete()));
             }
         });
     }
@@ -194,8 +370,29 @@ public class TicketBot {
      * be able to use it when configuring steps.
      *
      * @param clazz The class of the step type
+     * @throws IllegalArgumentException If the step type is not annotated properly, can't be
+     *                                  constructed, or its emoji is already taken by another step type
      */
     public static void registerStepType(Class<? extends TicketStepType<?>> clazz) {
+        StepTypeRegistry.register(clazz);
+        stepTypes.add(clazz);
+    }
+
+    /**
+     * Register a step type so that the guild owner will
+     * be able to use it when configuring steps, together
+     * with the codec to store its answers with.
+     *
+     * @param clazz The class of the step type
+     * @param codec The codec for the answers of the step type
+     * @param <T>   The type of the answers
+     * @throws IllegalArgumentException If the step type is not annotated properly, can't be
+     *                                  constructed, or its emoji is already taken by another step type
+     * @see AnswerCodecs
+     */
+    public static <T> void registerStepType(Class<? extends TicketStepType<T>> clazz, AnswerCodec<T> codec) {
+        StepTypeRegistry.register(clazz);
         stepTypes.add(clazz);
+        AnswerCodecs.register(clazz, codec);
     }
 }
@@ -18,18 +18,24 @@
 
 package dev.dreta.ticketbot.commands;
 
+import dev.dreta.ticketbot.ChannelProvisioner;
+import dev.dreta.ticketbot.GuildContext;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.Ticket;
-import net.dv8tion.jda.api.Permission;
+import dev.dreta.ticketbot.utils.DataConfiguration;
 import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The command !ticket creates a new channel for the
  * guild member to create a new ticket in an interactive
  * way.
+ * <p>
+ * If {@link dev.dreta.ticketbot.ChannelPool} has a channel
+ * ready, that channel is used instead of creating one.
  */
 public class TicketCommand extends ListenerAdapter {
     private static final String COMMAND = TicketBot.config.getCommandPrefix() + "ticket";
@@ -37,29 +43,48 @@ public class TicketCommand extends ListenerAdapter {
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
         if (e.getMessage().getContentRaw().equalsIgnoreCase(COMMAND) && !e.getAuthor().isBot()) {
-            if (TicketBot.config.botCommandsChannel() != 0 && e.getChannel().getIdLong() != TicketBot.config.botCommandsChannel()) {
+            GuildContext context = GuildContext.of(e.getGuild());
+            if (context == null) {
+                // TicketBot isn't set up for this guild
+                return;
+            }
+            DataConfiguration config = context.getConfig();
+            if (config.botCommandsChannel() != 0 && e.getChannel().getIdLong() != config.botCommandsChannel()) {
                 return;
             }
             Member member = e.getMember();
+            long start = System.nanoTime();
 
-            TicketBot.config.channelsTicketCategory().createTextChannel(TicketBot.config.channelsChannelFormat()
-                    .replace("{NAMEDISCRIM}", member.getUser().getName() + member.getUser().getDiscriminator())
-                    .replace("{TICKETDISCRIM}", String.valueOf(Ticket.ticketsByUser.get(member.getIdLong()).size() + 1)))
-                    .queue(channel -> {
-                        channel.getManager().setTopic(TicketBot.config.channelsChannelTopic()
-                                .replace("{NAME}", member.getUser().getName())
-                                .replace("{NICKNAME}", member.getEffectiveName())
-                                .replace("{DISCRIM}", member.getUser().getDiscriminator())).queue();
-                        long permissions = Permission.getRaw(TicketBot.config.channelsPermissions());
-                        channel.getManager().putPermissionOverride(channel.getGuild().getPublicRole(),
-                                0, Permission.getRaw(Permission.VIEW_CHANNEL)).queue(__ ->
-                                channel.getManager().putPermissionOverride(member, permissions, 0).queue());
-                        for (Role role : TicketBot.config.channelsAllowedRoles()) {
-                            channel.getManager().putPermissionOverride(role, permissions, 0).queue();
-                        }
-
-                        TicketNewCommand.ticketNewStep1(member, channel);
-                    });
+            CompletableFuture<TextChannel> pooled = context.getChannelPool().claim(member,
+                    ChannelProvisioner.name(context, member), ChannelProvisioner.topic(config, member));
+            if (pooled == null) {
+                create(context, member, e.getChannel(), start);
+                return;
+            }
+            pooled.whenComplete((channel, ex) -> {
+                if (ex != null) {
+                    System.err.println("Couldn't claim a pooled channel for " + member.getUser().getAsTag() + ", creating one instead.");
+                    ex.printStackTrace();
+                    create(context, member, e.getChannel(), start);
+                    return;
+                }
+                context.getChannelPool().recordClaimed(start);
+                TicketNewCommand.ticketNewStep1(context, member, channel);
+            });
         }
     }
+
+    private static void create(GuildContext context, Member member, TextChannel commandChannel, long start) {
+        // Only start asking once the channel is completely set up
+        ChannelProvisioner.provision(context, member).whenComplete((channel, ex) -> {
+            if (ex != null) {
+                System.err.println("Couldn't create a ticket channel for " + member.getUser().getAsTag() + ".");
+                ex.printStackTrace();
+                TicketBot.sendErrorMessage(commandChannel, context.getConfig().channelsFailedMsg());
+                return;
+            }
+            context.getChannelPool().recordCreated(start);
+            TicketNewCommand.ticketNewStep1(context, member, channel);
+        });
+    }
 }
@@ -20,15 +20,24 @@ package dev.dreta.ticketbot.commands;
 
 import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.ChannelLock;
+import dev.dreta.ticketbot.GuildContext;
 import dev.dreta.ticketbot.TicketBot;
 import dev.dreta.ticketbot.data.*;
 import dev.dreta.ticketbot.data.types.SingleSelectStepType;
 import dev.dreta.ticketbot.data.types.StringStepType;
+import dev.dreta.ticketbot.events.TicketCreatedEvent;
+import dev.dreta.ticketbot.events.TicketEventBus;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.TextChannel;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class separately handles all of the ticket new
@@ -44,13 +53,15 @@ public class TicketNewCommand {
      * for the user to choose a ticket type.
      * This step will be skipped when there is only 1 ticket type.
      *
+     * @param context The context of the guild
      * @param member  The member who requested the ticket creation
      * @param channel The channel to ask questions in
      */
-    public static void ticketNewStep1(Member member, TextChannel channel) {
+    public static void ticketNewStep1(GuildContext context, Member member, TextChannel channel) {
+        Map<String, TicketType> types = context.getTypes();
         // Check if only 1 ticket type exists.
-        if (TicketType.types.size() == 1) {
-            ticketNewStep2(member, channel, TicketType.types.values().toArray(TicketType[]::new)[0]);
+        if (types.size() == 1) {
+            ticketNewStep2(context, member, channel, types.values().toArray(TicketType[]::new)[0]);
             return;
         }
 
@@ -62,7 +73,7 @@ public class TicketNewCommand {
 
         JsonObject options = new JsonObject();
         JsonObject opOptions = new JsonObject();
-        for (TicketType type : TicketType.types.values()) {
+        for (TicketType type : types.values()) {
             opOptions.addProperty(type.getEmoji(), TicketBot.config.ticketTypeFormat()
                     .replace("{NAME}", type.getName())
                     .replace("{DESCRIPTION}", type.getDescription()));
@@ -70,7 +81,7 @@ public class TicketNewCommand {
         options.add("options", opOptions);
         options.addProperty("emoji", true);
         su.init(channel, TicketBot.config.ticketTypeTitle(), "", emoji -> {
-            ticketNewStep2(member, channel, TicketType.types.get(emoji));
+            ticketNewStep2(context, member, channel, types.get(emoji));
             ChannelLock.lockedChannels.remove(channel.getIdLong());
         }, options);
 
@@ -85,11 +96,12 @@ public class TicketNewCommand {
      * This step also creates a new {@link dev.dreta.ticketbot.data.Ticket}
      * object.
      *
+     * @param context The context of the guild
      * @param member  The member who requested the ticket creation
      * @param channel The channel to ask questions in
      * @param type    The {@link TicketType} provided by the previous step
      */
-    public static void ticketNewStep2(Member member, TextChannel channel, TicketType type) {
+    public static void ticketNewStep2(GuildContext context, Member member, TextChannel channel, TicketType type) {
         // Setup the StepType
         StringStepType su = new StringStepType();
 
@@ -108,11 +120,7 @@ public class TicketNewCommand {
             // For the steps field, we used an ArrayList, because we will
             // immediately write to it in the next step.
             Ticket ticket = new Ticket(title, member.getIdLong(), channel.getIdLong(), true, new ArrayList<>(), new ArrayList<>());
-            try {
-                ticketNewStep3(channel, ticket, type);
-            } catch (ReflectiveOperationException e) {
-                throw new RuntimeException(e);
-            }
+            ticketNewStep3(context, channel, ticket, type);
         }, options);
         // Ask the user the question
         su.ask();
@@ -121,62 +129,42 @@ public class TicketNewCommand {
     /**
      * Step 3 of ticket creation.
      * This step utilizes each individual {@link dev.dreta.ticketbot.data.TicketStep} of
-     * the selected {@link TicketType} to setup the ticket.
+     * the selected {@link TicketType} to setup the ticket, through
+     * a {@link TicketWizard}.
      *
+     * @param context The context of the guild
      * @param channel The channel to ask questions in
      * @param ticket  The ticket created in the previous step
      * @param type    The type selected in the previous-previous step
      */
-    public static void ticketNewStep3(TextChannel channel, Ticket ticket, TicketType type) throws ReflectiveOperationException {
-        // Start with the first step
-        ticketNewStep3Callback(channel, ticket, type, 0, type.getSteps().get(0));
-    }
-
-    /**
-     * This method is the callback passed to the
-     * {@link TicketStepType#init} function.
-     * <p>
-     * As we are dealing with multiple callbacks
-     * linked together, we can't use a simple for
-     * loop and we have to deal with callbacks in
-     * this recursive approach.
-     *
-     * @param channel The channel to ask questions in
-     * @param ticket  The ticket to add data to
-     * @param type    The TicketType to get TicketStep's from
-     * @param index   The index of "next"
-     * @param next    The TicketStep to ask questions for
-     */
-    private static void ticketNewStep3Callback(TextChannel channel, Ticket ticket, TicketType type, int index, TicketStep<?> next) throws ReflectiveOperationException {
-        // Create the step type
-        TicketStepType<Object> stepType = (TicketStepType<Object>) next.getType().getConstructor().newInstance();
-
-        stepType.init(channel, next.getTitle(), next.getDescription(), dataNew -> {
-            try {
-                ticket.getSteps().add(new TicketStepData<>(next.getTitle(), (Class<TicketStepType<Object>>) stepType.getClass(), dataNew));
-                if (index + 1 == type.getSteps().size()) {
-                    // We finished all the questions
-                    Ticket.tickets.put(ticket.getChannel(), ticket);
-                    Ticket.ticketsByUser.put(ticket.getAuthor(), ticket);
-                    ChannelLock.lockedChannels.remove(channel.getIdLong());
-                    channel.sendMessage(
-                            new EmbedBuilder()
-                                    .setTitle(TicketBot.config.ticketEndTitleMsg())
-                                    .setDescription(TicketBot.config.ticketEndDescriptionMsg())
-                                    .setColor(TicketBot.config.getAccentColor())
-                                    .build()).queue(msg -> {
-                        // Send another message in the channel so that
-                        // the details of this ticket can be known.
-                        ticket.sendBaseInfo(channel).queue();
-                    });
-                } else {
-                    // Ask the next question
-                    ticketNewStep3Callback(channel, ticket, type, index + 1, type.getSteps().get(index + 1));
+    public static void ticketNewStep3(GuildContext context, TextChannel channel, Ticket ticket, TicketType type) {
+        new TicketWizard(channel, ticket, type, TicketBot.config.ticketStepTimeout()).start().whenComplete((t, ex) -> {
+            if (ex != null) {
+                ChannelLock.lockedChannels.remove(channel.getIdLong());
+                if (ex instanceof TimeoutException) {
+                    TicketBot.sendErrorMessage(channel, TicketBot.config.ticketStepTimeoutMsg());
+                } else if (ex instanceof RejectedExecutionException) {
+                    TicketBot.sendErrorMessage(channel, TicketBot.config.ticketReloadingMsg());
+                } else if (!(ex instanceof CancellationException)) {
+                    ex.printStackTrace();
                 }
-            } catch (ReflectiveOperationException ex) {
-                throw new RuntimeException(ex);
+                return;
             }
-        }, next.getOptions());
-        stepType.ask();
+            // We finished all the questions
+            context.addTicket(ticket);
+            ticket.submit(Ticket::copy).thenAccept(created ->
+                    TicketEventBus.publish(new TicketCreatedEvent(context.getGuildId(), created, created.getAuthor())));
+            ChannelLock.lockedChannels.remove(channel.getIdLong());
+            RestScheduler.queue(Priority.PROMPT, channel, channel.sendMessage(
+                    new EmbedBuilder()
+                            .setTitle(TicketBot.config.ticketEndTitleMsg())
+                            .setDescription(TicketBot.config.ticketEndDescriptionMsg())
+                            .setColor(TicketBot.config.getAccentColor())
+                            .build())).thenAccept(msg -> {
+                // Send another message in the channel so that
+                // the details of this ticket can be known.
+                ticket.sendBaseInfo(channel);
+            });
+        });
     }
 }
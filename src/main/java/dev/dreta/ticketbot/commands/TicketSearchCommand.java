@@ -0,0 +1,173 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.commands;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.dreta.ticketbot.GuildContext;
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.commands.manage.TicketManageCommand;
+import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.AllArgsConstructor;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The command !ticket search &lt;query&gt; searches the titles
+ * and the answers of all tickets of the guild, and shows the results
+ * ranked by relevance.
+ * <p>
+ * The results are split into pages, and the guild member
+ * can react to the result message to go to the previous
+ * or the next page.
+ */
+public class TicketSearchCommand extends ListenerAdapter {
+    private static final String COMMAND = TicketBot.config.getCommandPrefix() + "ticket search";
+
+    // All of the result messages that can still be paged through.
+    // Maps from the message ID to the search results. Nobody is going
+    // to page through results from yesterday, so these expire.
+    private static final Cache<Long, SearchSession> sessions = CacheBuilder.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .maximumSize(1000)
+            .build();
+
+    @AllArgsConstructor
+    private static class SearchSession {
+        private final GuildContext context;
+        private final long requester;
+        private final String query;
+        private final List<Long> results;
+        private int page;
+
+        private int pages() {
+            return Math.max(1, (results.size() + TicketBot.config.searchPageSize() - 1) / TicketBot.config.searchPageSize());
+        }
+    }
+
+    /**
+     * Build the embed for a page of the search results.
+     *
+     * @param session The search to build the page for
+     * @return -
+     */
+    private static MessageEmbed buildPage(SearchSession session) {
+        StringBuilder results = new StringBuilder();
+        int pageSize = TicketBot.config.searchPageSize();
+        int from = session.page * pageSize;
+        int to = Math.min(from + pageSize, session.results.size());
+        for (int i = from; i < to; i++) {
+            Ticket ticket = session.context.getTicket(session.results.get(i));
+            if (ticket == null) {
+                continue;
+            }
+            results.append(TicketBot.config.searchResultFormat()
+                    .replace("{INDEX}", String.valueOf(i + 1))
+                    .replace("{TITLE}", ticket.getTitle())
+                    .replace("{CHANNEL}", String.valueOf(ticket.getChannel()))
+                    .replace("{OPEN}", ticket.isOpen() ? TicketBot.config.ticketDataOpenYes() : TicketBot.config.ticketDataOpenNo()))
+                    .append("\n");
+        }
+        return new EmbedBuilder()
+                .setTitle(TicketBot.config.searchTitle().replace("{QUERY}", session.query))
+                .setDescription(session.results.isEmpty() ? TicketBot.config.searchEmptyMsg() : results.toString())
+                .setFooter(TicketBot.config.searchFooter()
+                        .replace("{PAGE}", String.valueOf(session.page + 1))
+                        .replace("{PAGES}", String.valueOf(session.pages()))
+                        .replace("{RESULTS}", String.valueOf(session.results.size())))
+                .setColor(TicketBot.config.getAccentColor())
+                .build();
+    }
+
+    @Override
+    public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
+        String content = e.getMessage().getContentRaw();
+        // Match "!ticket search" on its own as well, so a missing
+        // query gets an error instead of being ignored, but not
+        // "!ticket searching".
+        if (content.regionMatches(true, 0, COMMAND, 0, COMMAND.length())
+                && (content.length() == COMMAND.length() || Character.isWhitespace(content.charAt(COMMAND.length())))
+                && !e.getAuthor().isBot()) {
+            GuildContext context = GuildContext.of(e.getGuild());
+            if (context == null) {
+                return;
+            }
+            if (context.getConfig().botCommandsChannel() != 0 && e.getChannel().getIdLong() != context.getConfig().botCommandsChannel()) {
+                return;
+            }
+            if (!TicketManageCommand.hasPermission(e.getMember())) {
+                TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.managePermissionError());
+                return;
+            }
+            String query = content.substring(COMMAND.length()).trim();
+            if (query.isEmpty()) {
+                TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.searchQueryError().replace("{COMMAND}", COMMAND));
+                return;
+            }
+
+            SearchSession session = new SearchSession(context, e.getAuthor().getIdLong(), query,
+                    context.getSearchIndex().search(query), 0);
+            RestScheduler.queue(Priority.PROMPT, e.getChannel(), e.getChannel().sendMessage(buildPage(session))).thenAccept(msg -> {
+                if (session.pages() > 1) {
+                    sessions.put(msg.getIdLong(), session);
+                    RestScheduler.queueInOrder(Priority.REACTION, msg.getChannel(), Arrays.asList(
+                            msg.addReaction(TicketBot.config.searchPreviousEmoji()),
+                            msg.addReaction(TicketBot.config.searchNextEmoji())));
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
+        SearchSession session = sessions.getIfPresent(e.getMessageIdLong());
+        if (session == null) {
+            return;
+        }
+        ReactionContext.ifHuman(e, user -> {
+            RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
+            // Only the one who searched can turn the pages
+            if (user.getIdLong() != session.requester) {
+                return;
+            }
+
+            int page = session.page;
+            if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.searchPreviousEmoji())) {
+                page = Math.max(0, page - 1);
+            } else if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.searchNextEmoji())) {
+                page = Math.min(session.pages() - 1, page + 1);
+            }
+            if (page != session.page) {
+                session.page = page;
+                RestScheduler.queue(Priority.PROMPT, e.getChannel(), "edit:" + e.getMessageIdLong(),
+                        e.getChannel().editMessageById(e.getMessageIdLong(), buildPage(session)));
+            }
+        });
+    }
+}
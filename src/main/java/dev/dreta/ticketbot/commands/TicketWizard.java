@@ -0,0 +1,327 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.commands;
+
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.data.*;
+import dev.dreta.ticketbot.utils.Mailbox;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TicketWizard asks the guild member every {@link TicketStep}
+ * of a {@link TicketType}, one after another, and fills in the
+ * {@link TicketStepData} of a {@link Ticket} with the answers.
+ * <p>
+ * Every step is asked through {@link AsyncTicketStepType#ask(TextChannel, TicketStep)},
+ * and the step after it is created and prepared while the guild
+ * member is still answering. If the {@link TicketType} is a form,
+ * each {@link StepForm} is asked in a single message instead.
+ */
+public class TicketWizard {
+    /**
+     * All of the wizards that are currently running,
+     * mapped by the IDs of their channels.
+     */
+    public static final Map<Long, TicketWizard> wizards = new ConcurrentHashMap<>();
+
+    private final TextChannel channel;
+    private final Ticket ticket;
+    private final TicketType type;
+    private final List<TicketStep<?>> steps;
+    private final int timeout;
+    private final CompletableFuture<Ticket> result = new CompletableFuture<>();
+    // Cancels whatever is currently being asked, and the
+    // step type that was prepared for the step after it
+    private volatile Runnable current;
+    // Answers and timeouts arrive on different threads, this
+    // makes sure they are handled one at a time
+    private final Mailbox mailbox = new Mailbox();
+
+    /**
+     * Create a wizard.
+     *
+     * @param channel The channel to ask the questions in
+     * @param ticket  The ticket to add the answers to
+     * @param type    The type of the ticket
+     * @param timeout The number of seconds the guild member has to answer each step, or 0 for no limit
+     */
+    public TicketWizard(TextChannel channel, Ticket ticket, TicketType type, int timeout) {
+        this.channel = channel;
+        this.ticket = ticket;
+        this.type = type;
+        this.steps = type.getSteps();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start asking the questions.
+     *
+     * @return A future that completes with the ticket once every step
+     * is answered. It completes exceptionally with a {@link java.util.concurrent.TimeoutException}
+     * if the guild member took too long to answer a step, and with a
+     * {@link RejectedExecutionException} if an extension with one of
+     * the step types is being reloaded.
+     * Cancelling it will cancel the step that is currently being asked.
+     */
+    public CompletableFuture<Ticket> start() {
+        wizards.put(channel.getIdLong(), this);
+        // Checked after being added, so that an extension being reloaded
+        // either sees this wizard or this wizard sees it being reloaded
+        if (TicketBot.extLoader != null) {
+            for (TicketStep<?> step : steps) {
+                if (TicketBot.extLoader.isReloading(step.getType())) {
+                    wizards.remove(channel.getIdLong(), this);
+                    result.completeExceptionally(new RejectedExecutionException("Step type " + step.getType().getName() + " is being reloaded"));
+                    return result;
+                }
+            }
+        }
+        result.whenComplete((t, ex) -> {
+            wizards.remove(channel.getIdLong(), this);
+            Runnable cancel = current;
+            if (ex != null && cancel != null) {
+                cancel.run();
+            }
+        });
+        next(0, null);
+        return result;
+    }
+
+    /**
+     * Stop asking questions.
+     */
+    public void cancel() {
+        result.cancel(false);
+    }
+
+    /**
+     * Stop asking questions because something went wrong.
+     *
+     * @param reason What went wrong
+     */
+    public void abort(Throwable reason) {
+        fail(reason);
+    }
+
+    /**
+     * Check whether any step of this wizard has a step type
+     * that was loaded by a specific class loader.
+     *
+     * @param loader The class loader, usually of an extension
+     * @return -
+     */
+    public boolean uses(ClassLoader loader) {
+        for (TicketStep<?> step : steps) {
+            if (step.getType().getClassLoader() == loader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the running wizards that have a step type loaded
+     * by a specific class loader.
+     *
+     * @param loader The class loader, usually of an extension
+     * @return -
+     */
+    public static List<TicketWizard> using(ClassLoader loader) {
+        List<TicketWizard> using = new ArrayList<>();
+        for (TicketWizard wizard : wizards.values()) {
+            if (wizard.uses(loader)) {
+                using.add(wizard);
+            }
+        }
+        return using;
+    }
+
+    private AsyncTicketStepType<Object> create(int index) {
+        return StepTypeRegistry.entry(((TicketStep<Object>) steps.get(index)).getType()).newAsyncInstance();
+    }
+
+    /**
+     * Ask the step at an index, or finish if there are no
+     * steps left.
+     *
+     * @param index    The index of the step
+     * @param prepared The step type that was already prepared for this step, if any
+     */
+    private void next(int index, AsyncTicketStepType<Object> prepared) {
+        if (result.isDone()) {
+            return;
+        }
+        if (index == steps.size()) {
+            current = null;
+            result.complete(ticket);
+            return;
+        }
+        StepForm form = type.getForm(index);
+        if (form != null) {
+            askForm(form);
+        } else {
+            ask(index, prepared != null ? prepared : create(index));
+        }
+    }
+
+    private void ask(int index, AsyncTicketStepType<Object> stepType) {
+        TicketStep<Object> step = (TicketStep<Object>) steps.get(index);
+        current = stepType::cancel;
+        // Work on a copy, so that a timeout doesn't complete the
+        // stage that belongs to the step type.
+        CompletableFuture<Object> answer = stepType.ask(channel, step).toCompletableFuture().copy();
+
+        // Prepare the next step while the guild member is busy
+        AsyncTicketStepType<Object> next = null;
+        if (index + 1 < steps.size() && type.getForm(index + 1) == null) {
+            next = create(index + 1);
+            next.prepare(channel, (TicketStep<Object>) steps.get(index + 1));
+        }
+
+        AsyncTicketStepType<Object> prepared = next;
+        if (prepared != null) {
+            current = () -> {
+                stepType.cancel();
+                prepared.cancel();
+            };
+            if (result.isDone()) {
+                // The wizard ended before it could be cancelled
+                prepared.cancel();
+            }
+        }
+        withTimeout(answer).whenCompleteAsync((value, ex) -> {
+            if (ex != null) {
+                fail(ex);
+                return;
+            }
+            ticket.getSteps().add(new TicketStepData<>(step.getTitle(), step.getType(), value));
+            next(index + 1, prepared);
+        }, mailbox);
+    }
+
+    private void askForm(StepForm form) {
+        FormSession session = new FormSession(channel, form);
+        current = session::cancel;
+        withTimeout(session.ask().copy()).whenCompleteAsync((answers, ex) -> {
+            if (ex != null) {
+                fail(ex);
+                return;
+            }
+            for (int i = 0; i < form.size(); i++) {
+                TicketStep<Object> step = (TicketStep<Object>) form.getSteps().get(i);
+                ticket.getSteps().add(new TicketStepData<>(step.getTitle(), step.getType(), answers.get(i)));
+            }
+            next(form.getStart() + form.size(), null);
+        }, mailbox);
+    }
+
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future) {
+        return timeout > 0 ? future.orTimeout(timeout, TimeUnit.SECONDS) : future;
+    }
+
+    private void fail(Throwable ex) {
+        result.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+    }
+
+    /**
+     * A FormSession asks all of the steps of a {@link StepForm}
+     * in a single message, and waits for a reply that answers
+     * all of them correctly.
+     */
+    private static class FormSession extends ListenerAdapter {
+        private static final long CLEANED_UP = -1;
+        private final TextChannel channel;
+        private final StepForm form;
+        // Created once, every reply is parsed with the same ones
+        private final List<TextStepType<Object>> types;
+        private final CompletableFuture<List<Object>> answers = new CompletableFuture<>();
+        // 0 until the prompt was sent, and CLEANED_UP once it
+        // doesn't have to be deleted anymore
+        private final AtomicLong messageId = new AtomicLong();
+
+        private FormSession(TextChannel channel, StepForm form) {
+            this.channel = channel;
+            this.form = form;
+            this.types = form.createStepTypes();
+        }
+
+        private CompletableFuture<List<Object>> ask() {
+            channel.getJDA().addEventListener(this);
+            RestScheduler.queue(Priority.PROMPT, channel, channel.sendMessage(form.getPrompt().getEmbed())).thenAccept(m -> {
+                if (!messageId.compareAndSet(0, m.getIdLong())) {
+                    // The session ended before the prompt was sent
+                    delete(m.getIdLong());
+                }
+            });
+            return answers;
+        }
+
+        private void cancel() {
+            if (answers.cancel(false)) {
+                cleanup();
+            }
+        }
+
+        private void cleanup() {
+            channel.getJDA().removeEventListener(this);
+            long id = messageId.getAndSet(CLEANED_UP);
+            if (id > 0) {
+                delete(id);
+            }
+        }
+
+        private void delete(long id) {
+            if (TicketBot.config.autoDeleteMessages()) {
+                RestScheduler.queue(Priority.CLEANUP, channel, channel.deleteMessageById(id));
+            }
+        }
+
+        @Override
+        public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
+            if (e.getChannel().getIdLong() == channel.getIdLong() && !e.getAuthor().isBot()) {
+                if (TicketBot.config.autoDeleteMessages()) {
+                    RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getMessage().delete());
+                }
+                StepForm.Result result = form.parse(e.getMessage().getContentRaw(), types);
+                if (!result.isValid()) {
+                    // Report every mistake at once
+                    TicketBot.sendErrorMessage(e.getChannel(), String.join("\n", result.getErrors()));
+                    return;
+                }
+                if (answers.complete(result.getAnswers())) {
+                    cleanup();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.commands.manage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.dreta.ticketbot.GuildContext;
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.utils.DataConfiguration;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ManagerPermissions decides who is allowed to manage the tickets.
+ * <p>
+ * The manager roles are configured by their IDs. If none are
+ * configured, the roles with the configured name are looked up
+ * once instead. Decisions are remembered per member until the
+ * roles of that member change. They also expire after a while,
+ * since role updates are only sent to us when the bot is allowed
+ * to see the members of the guild.
+ * <p>
+ * Every guild has its own manager roles and decisions.
+ */
+public class ManagerPermissions extends ListenerAdapter {
+    private static final Map<Long, GuildPermissions> guilds = new ConcurrentHashMap<>();
+
+    private static class GuildPermissions {
+        private final Cache<Long, Boolean> decisions = CacheBuilder.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .build();
+        private volatile Set<Long> roles;
+        // The configuration generation the roles were read from
+        private volatile long rolesGeneration = -1;
+    }
+
+    /**
+     * Check whether a guild member is allowed to manage the tickets.
+     * One of the manager roles is required, unless the member is
+     * the owner of the guild.
+     *
+     * @param member The member to check
+     * @return -
+     */
+    public static boolean isManager(Member member) {
+        if (member == null) {
+            return false;
+        }
+        GuildContext context = GuildContext.of(member.getGuild());
+        if (context == null) {
+            return false;
+        }
+        GuildPermissions permissions = guilds.computeIfAbsent(context.getGuildId(), id -> new GuildPermissions());
+        Set<Long> managerRoles = getRoles(permissions, context.getConfig(), member.getGuild());
+        Boolean decision = permissions.decisions.getIfPresent(member.getIdLong());
+        if (decision != null) {
+            return decision;
+        }
+        decision = member.isOwner();
+        if (!decision) {
+            for (Role role : member.getRoles()) {
+                if (managerRoles.contains(role.getIdLong())) {
+                    decision = true;
+                    break;
+                }
+            }
+        }
+        permissions.decisions.put(member.getIdLong(), decision);
+        return decision;
+    }
+
+    /**
+     * Check whether a guild member is allowed to use the commands
+     * that affect all of TicketBot and not just one guild, such as
+     * reloading an extension or seeing the statistics of every guild.
+     * That is the owner in config.json, and the managers of the main
+     * guild, but not the managers of the other guilds.
+     *
+     * @param member The member to check
+     * @return -
+     * @see dev.dreta.ticketbot.utils.DataConfiguration#getOwnerId()
+     */
+    public static boolean isBotManager(Member member) {
+        if (member == null) {
+            return false;
+        }
+        long owner = TicketBot.config.getOwnerId();
+        if (owner != 0 && member.getIdLong() == owner) {
+            return true;
+        }
+        return member.getGuild().getIdLong() == GuildContext.main().getGuildId() && isManager(member);
+    }
+
+    /**
+     * Get the IDs of the manager roles of a guild, reading them
+     * again if the configuration was reloaded.
+     *
+     * @param permissions The permissions of the guild
+     * @param config      The configuration of the guild
+     * @param guild       The guild
+     * @return -
+     */
+    private static Set<Long> getRoles(GuildPermissions permissions, DataConfiguration config, Guild guild) {
+        long generation = config.getGeneration();
+        Set<Long> current = permissions.roles;
+        if (current != null && permissions.rolesGeneration == generation) {
+            return current;
+        }
+        current = new HashSet<>(config.manageRoles());
+        if (current.isEmpty()) {
+            for (Role role : guild.getRolesByName(config.manageRoleName(), false)) {
+                current.add(role.getIdLong());
+            }
+        }
+        permissions.decisions.invalidateAll();
+        permissions.roles = current;
+        permissions.rolesGeneration = generation;
+        return current;
+    }
+
+    /**
+     * Forget every decision and look the manager roles up again.
+     */
+    public static void invalidateAll() {
+        guilds.clear();
+    }
+
+    /**
+     * Forget every decision in a guild and look its manager
+     * roles up again.
+     *
+     * @param guild The guild
+     */
+    public static void invalidateAll(Guild guild) {
+        guilds.remove(guild.getIdLong());
+    }
+
+    private static void invalidate(Guild guild, long member) {
+        GuildPermissions permissions = guilds.get(guild.getIdLong());
+        if (permissions != null) {
+            permissions.decisions.invalidate(member);
+        }
+    }
+
+    @Override
+    public void onGuildMemberRoleAdd(GuildMemberRoleAddEvent e) {
+        invalidate(e.getGuild(), e.getMember().getIdLong());
+    }
+
+    @Override
+    public void onGuildMemberRoleRemove(GuildMemberRoleRemoveEvent e) {
+        invalidate(e.getGuild(), e.getMember().getIdLong());
+    }
+
+    @Override
+    public void onGuildMemberRemove(GuildMemberRemoveEvent e) {
+        invalidate(e.getGuild(), e.getUser().getIdLong());
+    }
+
+    @Override
+    public void onRoleCreate(RoleCreateEvent e) {
+        // A role with the manager role name might have been created
+        invalidateAll(e.getGuild());
+    }
+
+    @Override
+    public void onRoleDelete(RoleDeleteEvent e) {
+        invalidateAll(e.getGuild());
+    }
+}
@@ -18,14 +18,13 @@
 
 package dev.dreta.ticketbot.commands.manage;
 
+import dev.dreta.ticketbot.GuildContext;
 import dev.dreta.ticketbot.TicketBot;
 import dev.dreta.ticketbot.commands.manage.ticket.ManageTicketsBasic;
-import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
-import java.util.stream.Collectors;
-
 /**
  * This class separately handles all of the ticket management
  * steps, details:
@@ -39,21 +38,35 @@ import java.util.stream.Collectors;
 public class TicketManageCommand extends ListenerAdapter {
     private static final String COMMAND = TicketBot.config.getCommandPrefix() + "ticket manage";
 
+    /**
+     * Check whether a guild member is allowed to manage the tickets.
+     *
+     * @param member The member to check
+     * @return -
+     * @see ManagerPermissions#isManager(Member)
+     */
+    public static boolean hasPermission(Member member) {
+        return ManagerPermissions.isManager(member);
+    }
+
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
         if (e.getMessage().getContentRaw().equalsIgnoreCase(COMMAND) && !e.getAuthor().isBot()) {
-            if (TicketBot.config.botCommandsChannel() != 0 && e.getChannel().getIdLong() != TicketBot.config.botCommandsChannel()) {
+            GuildContext context = GuildContext.of(e.getGuild());
+            if (context == null) {
+                return;
+            }
+            if (context.getConfig().botCommandsChannel() != 0 && e.getChannel().getIdLong() != context.getConfig().botCommandsChannel()) {
+                return;
+            }
+            // Check before creating the channel, so that nobody can create channels without permission
+            if (!hasPermission(e.getMember())) {
+                TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.managePermissionError());
                 return;
             }
-            TicketBot.config.channelsTicketCategory().createTextChannel(TicketBot.config.channelsManageFormat()
+            context.getConfig().channelsTicketCategory().createTextChannel(context.getConfig().channelsManageFormat()
                     .replace("{NAMEDISCRIM}", e.getAuthor().getName() + e.getAuthor().getDiscriminator()))
-                    .queue(channel -> {
-                        if (!e.getMember().getRoles().stream().map(Role::getName).collect(Collectors.toList()).contains("Ticket Bot Manager") && !e.getMember().isOwner()) {
-                            TicketBot.sendErrorMessage(channel, TicketBot.config.managePermissionError());
-                            return;
-                        }
-                        ManageTicketsBasic.selectTicket(channel);
-                    });
+                    .queue(ManageTicketsBasic::selectTicket);
         }
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.commands.manage;
+
+import dev.dreta.ticketbot.GuildContext;
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * The command !ticket reload &lt;extension&gt; reloads an extension
+ * from its jar while TicketBot keeps running, see
+ * {@link dev.dreta.ticketbot.extensions.ExtensionLoader#reloadExtension(String)}.
+ * Extensions serve every guild, so only the managers of the main
+ * guild and the owner can reload them, see {@link ManagerPermissions#isBotManager}.
+ */
+public class TicketReloadCommand extends ListenerAdapter {
+    private static final String COMMAND = TicketBot.config.getCommandPrefix() + "ticket reload";
+
+    @Override
+    public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
+        String content = e.getMessage().getContentRaw().trim();
+        if (e.getAuthor().isBot() || !content.toLowerCase().startsWith(COMMAND.toLowerCase())) {
+            return;
+        }
+        String id = content.substring(COMMAND.length()).trim();
+        if (!id.isEmpty() && !Character.isWhitespace(content.charAt(COMMAND.length()))) {
+            // Some other command that happens to start the same way
+            return;
+        }
+        GuildContext context = GuildContext.of(e.getGuild());
+        if (context == null) {
+            return;
+        }
+        if (context.getConfig().botCommandsChannel() != 0 && e.getChannel().getIdLong() != context.getConfig().botCommandsChannel()) {
+            return;
+        }
+        if (!ManagerPermissions.isBotManager(e.getMember())) {
+            TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.managePermissionError());
+            return;
+        }
+        if (id.isEmpty()) {
+            TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.manageReloadUsage().replace("{COMMAND}", COMMAND));
+            return;
+        }
+        if (TicketBot.extLoader.getExtension(id) == null) {
+            TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.manageReloadUnknown().replace("{ID}", id));
+            return;
+        }
+
+        TextChannel channel = e.getChannel();
+        send(channel, TicketBot.config.manageReloadStarted().replace("{ID}", id));
+        TicketBot.extLoader.reloadExtension(id).whenComplete((result, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                cause.printStackTrace();
+                TicketBot.sendErrorMessage(channel, TicketBot.config.manageReloadFailed()
+                        .replace("{ID}", id)
+                        .replace("{ERROR}", String.valueOf(cause.getMessage())));
+                return;
+            }
+            String message = TicketBot.config.manageReloadDone()
+                    .replace("{ID}", id)
+                    .replace("{TIME}", String.valueOf(result.getMillis()))
+                    .replace("{DRAINED}", String.valueOf(result.getDrained()))
+                    .replace("{ABORTED}", String.valueOf(result.getAborted()));
+            if (!result.isUnloaded()) {
+                message += "\n" + TicketBot.config.manageReloadLeak().replace("{ID}", id);
+            }
+            send(channel, message);
+        });
+    }
+
+    private static void send(TextChannel channel, String title) {
+        RestScheduler.queue(Priority.PROMPT, channel, channel.sendMessage(new EmbedBuilder()
+                .setTitle(title)
+                .setColor(TicketBot.config.getAccentColor())
+                .build()));
+    }
+}
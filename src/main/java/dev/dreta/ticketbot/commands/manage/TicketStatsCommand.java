@@ -0,0 +1,64 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.commands.manage;
+
+import dev.dreta.ticketbot.GuildContext;
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.utils.Metrics;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+
+import java.util.Map;
+
+/**
+ * The command !ticket stats shows the statistics collected
+ * in {@link Metrics}. They cover every guild, so only the
+ * managers of the main guild and the owner can see them, see
+ * {@link ManagerPermissions#isBotManager}.
+ */
+public class TicketStatsCommand extends ListenerAdapter {
+    private static final String COMMAND = TicketBot.config.getCommandPrefix() + "ticket stats";
+
+    @Override
+    public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
+        if (e.getMessage().getContentRaw().equalsIgnoreCase(COMMAND) && !e.getAuthor().isBot()) {
+            GuildContext context = GuildContext.of(e.getGuild());
+            if (context == null) {
+                return;
+            }
+            if (context.getConfig().botCommandsChannel() != 0 && e.getChannel().getIdLong() != context.getConfig().botCommandsChannel()) {
+                return;
+            }
+            if (!ManagerPermissions.isBotManager(e.getMember())) {
+                TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.managePermissionError());
+                return;
+            }
+            EmbedBuilder embed = new EmbedBuilder()
+                    .setTitle(TicketBot.config.manageStatsTitle())
+                    .setColor(TicketBot.config.getAccentColor());
+            for (Map.Entry<String, String> stat : Metrics.snapshot().entrySet()) {
+                embed.addField(stat.getKey(), stat.getValue(), false);
+            }
+            RestScheduler.queue(Priority.PROMPT, e.getChannel(), e.getChannel().sendMessage(embed.build()));
+        }
+    }
+}
@@ -18,9 +18,17 @@
 
 package dev.dreta.ticketbot.commands.manage.ticket;
 
+import dev.dreta.ticketbot.GuildContext;
 import dev.dreta.ticketbot.TicketBot;
 import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.events.TicketAssignedEvent;
+import dev.dreta.ticketbot.events.TicketEventBus;
+import dev.dreta.ticketbot.events.TicketUnassignedEvent;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.entities.User;
@@ -28,10 +36,11 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class manages the assignees part of all tickets, including:
@@ -43,68 +52,94 @@ public class ManageTicketsAssign extends ListenerAdapter {
     // All of the channels that already have the ticket assignees shown.
     // These channels will be able to react to emojis and do stuff with the assignees.
     // Maps from the channel ID to the message ID.
-    private static final Map<Long, Long> channelDataShown = new HashMap<>();
+    private static final Map<Long, Long> channelDataShown = new ConcurrentHashMap<>();
     // All of the channels that already have the ticket assignees shown.
     // Maps from the channel ID to the CHANNEL ID OF THE TICKET.
-    private static final Map<Long, Long> channelDataShownTickets = new HashMap<>();
+    private static final Map<Long, Long> channelDataShownTickets = new ConcurrentHashMap<>();
     // This set represents the channels that are currently assigning
     // and is being prompted for who to assign.
-    private static final Set<Long> addingChannels = new HashSet<>();
+    private static final Set<Long> addingChannels = ConcurrentHashMap.newKeySet();
     // This set represents the channels that are currently unassigning
     // and is being prompted for who to unassign.
-    private static final Set<Long> removingChannels = new HashSet<>();
+    private static final Set<Long> removingChannels = ConcurrentHashMap.newKeySet();
 
     public static void showAssigneeData(MessageChannel channel, Ticket ticket) {
-        ticket.sendAssigneesInfo(channel).queue(msg -> {
+        ticket.sendAssigneesInfo(channel).thenAccept(msg -> {
             channelDataShown.put(channel.getIdLong(), msg.getIdLong());
             channelDataShownTickets.put(channel.getIdLong(), ticket.getChannel());
-            // Make sure you message me on Discord if you know how to eliminate this
-            // callback hell here.
-            msg.addReaction(TicketBot.config.manageTicketAssigneesAddEmoji()).queue(__ ->
-                    msg.addReaction(TicketBot.config.manageTicketAssigneesRemoveEmoji()).queue(___ ->
-                            msg.addReaction(TicketBot.config.manageTicketAssigneesExitEmoji()).queue()));
+            RestScheduler.queueInOrder(Priority.REACTION, channel, Arrays.asList(
+                    msg.addReaction(TicketBot.config.manageTicketAssigneesAddEmoji()),
+                    msg.addReaction(TicketBot.config.manageTicketAssigneesRemoveEmoji()),
+                    msg.addReaction(TicketBot.config.manageTicketAssigneesExitEmoji())));
         });
     }
 
-    public static void assign(Ticket ticket, long assignee) {
-        if (ticket.getAssignees().contains(assignee)) {
-            return;
-        }
-        ticket.getAssignees().add(assignee);
+    /**
+     * Get the ticket whose assignees are shown in a channel.
+     *
+     * @param guild   The guild of the channel
+     * @param channel The ID of the channel
+     * @return The ticket, or null if there is none or TicketBot isn't set up for the guild
+     */
+    private static Ticket shownTicket(Guild guild, long channel) {
+        GuildContext context = GuildContext.of(guild);
+        Long ticket = channelDataShownTickets.get(channel);
+        return context == null || ticket == null ? null : context.getTicket(ticket);
     }
 
-    public static void unassign(Ticket ticket, long assignee) {
-        ticket.getAssignees().remove(assignee);
+    /**
+     * Assign a guild member to a ticket, unless they already are.
+     * This is done in the mailbox of the ticket.
+     *
+     * @param ticket   The ticket
+     * @param assignee The ID of the guild member
+     * @return A future that completes with a copy of the ticket once the guild member
+     * is assigned, or with null if they already were
+     */
+    public static CompletableFuture<Ticket> assign(Ticket ticket, long assignee) {
+        return ticket.submit(t -> !t.getAssignees().contains(assignee) && t.getAssignees().add(assignee) ? t.copy() : null);
+    }
+
+    /**
+     * Unassign a guild member from a ticket.
+     * This is done in the mailbox of the ticket.
+     *
+     * @param ticket   The ticket
+     * @param assignee The ID of the guild member
+     * @return A future that completes with a copy of the ticket once the guild member
+     * is unassigned, or with null if they weren't assigned
+     */
+    public static CompletableFuture<Ticket> unassign(Ticket ticket, long assignee) {
+        return ticket.submit(t -> t.getAssignees().remove(assignee) ? t.copy() : null);
     }
 
     @Override
     public void onMessageReactionAdd(MessageReactionAddEvent e) {
         if (channelDataShown.containsKey(e.getChannel().getIdLong()) &&
                 e.getMessageIdLong() == channelDataShown.get(e.getChannel().getIdLong())) {
-            e.retrieveUser().queue(user -> {
-                if (user.isBot()) {
-                    return;
-                }
-
+            ReactionContext.ifHuman(e, user -> {
                 if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketAssigneesAddEmoji())) {
                     // If we reacted with the add emoji
                     addingChannels.add(e.getChannel().getIdLong());
-                    e.getChannel().sendMessage(new EmbedBuilder()
+                    RestScheduler.queue(Priority.PROMPT, e.getChannel(), e.getChannel().sendMessage(new EmbedBuilder()
                             .setTitle(TicketBot.config.manageTicketAssigneesAssignUser())
                             .setColor(TicketBot.config.getAccentColor())
-                            .build()).queue();
+                            .build()));
                 } else if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketAssigneesRemoveEmoji())) {
                     // If we reacted with the remove emoji
                     removingChannels.add(e.getChannel().getIdLong());
-                    e.getChannel().sendMessage(new EmbedBuilder()
+                    RestScheduler.queue(Priority.PROMPT, e.getChannel(), e.getChannel().sendMessage(new EmbedBuilder()
                             .setTitle(TicketBot.config.manageTicketAssigneesUnassignUser())
                             .setColor(TicketBot.config.getAccentColor())
-                            .build()).queue();
+                            .build()));
                 } else if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketAssigneesExitEmoji())) {
                     channelDataShown.remove(e.getChannel().getIdLong());
-                    // Return to the ticket data stage
-                    ManageTicketsBasic.showTicketData(e.getChannel(),
-                            Ticket.tickets.get(channelDataShownTickets.remove(e.getChannel().getIdLong())));
+                    Ticket ticket = shownTicket(e.getGuild(), e.getChannel().getIdLong());
+                    channelDataShownTickets.remove(e.getChannel().getIdLong());
+                    if (ticket != null) {
+                        // Return to the ticket data stage
+                        ManageTicketsBasic.showTicketData(e.getChannel(), ticket);
+                    }
                 }
             });
         }
@@ -116,8 +151,13 @@ public class ManageTicketsAssign extends ListenerAdapter {
             return;
         }
         if (addingChannels.contains(e.getChannel().getIdLong())) {
-            Ticket ticket = Ticket.tickets.get(channelDataShownTickets.get(e.getChannel().getIdLong()));
-            TextChannel channel = TicketBot.config.getGuild().getTextChannelById(ticket.getChannel());
+            Ticket ticket = shownTicket(e.getGuild(), e.getChannel().getIdLong());
+            if (ticket == null) {
+                // The ticket or its guild is gone
+                addingChannels.remove(e.getChannel().getIdLong());
+                return;
+            }
+            TextChannel channel = e.getGuild().getTextChannelById(ticket.getChannel());
 
             if (e.getMessage().getMentionedUsers().isEmpty()) {
                 // If no one is mentioned
@@ -125,43 +165,61 @@ public class ManageTicketsAssign extends ListenerAdapter {
                 return;
             }
             for (User user : e.getMessage().getMentionedUsers()) {
-                assign(ticket, user.getIdLong());  // Assign everybody that's mentioned
+                // Assign everybody that's mentioned
+                assign(ticket, user.getIdLong()).thenAccept(assigned -> {
+                    if (assigned != null) {
+                        TicketEventBus.publish(new TicketAssignedEvent(e.getGuild().getIdLong(), assigned,
+                                e.getAuthor().getIdLong(), user.getIdLong()));
+                    }
+                });
 
                 // Send an info message
-                channel.sendMessage(
+                RestScheduler.queue(Priority.NOTICE, channel, channel.sendMessage(
                         new EmbedBuilder()
                                 .setTitle(TicketBot.config.manageTicketTitleAssign()
                                         .replace("{USER}", e.getAuthor().getName() + "#" + e.getAuthor().getDiscriminator())
                                         .replace("{ASSIGNEE}", user.getName() + "#" + user.getDiscriminator()))
                                 .setColor(TicketBot.config.getAccentColor())
-                                .build()).queue();
+                                .build()));
             }
+            // These read the ticket in its mailbox too, so they see every change above
             showAssigneeData(e.getChannel(), ticket);
             addingChannels.remove(e.getChannel().getIdLong());
-            ticket.sendBaseInfo(channel).queue();
+            ticket.sendBaseInfo(channel);
         } else if (removingChannels.contains(e.getChannel().getIdLong())) {
-            Ticket ticket = Ticket.tickets.get(channelDataShownTickets.get(e.getChannel().getIdLong()));
-            TextChannel channel = TicketBot.config.getGuild().getTextChannelById(ticket.getChannel());
+            Ticket ticket = shownTicket(e.getGuild(), e.getChannel().getIdLong());
+            if (ticket == null) {
+                // The ticket or its guild is gone
+                removingChannels.remove(e.getChannel().getIdLong());
+                return;
+            }
+            TextChannel channel = e.getGuild().getTextChannelById(ticket.getChannel());
             if (e.getMessage().getMentionedUsers().isEmpty()) {
                 // If no one is mentioned
                 TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.manageTicketAssigneesMentionInvalid());
                 return;
             }
             for (User user : e.getMessage().getMentionedUsers()) {
-                unassign(ticket, user.getIdLong());  // Unassign everybody that's mentioned
+                // Unassign everybody that's mentioned
+                unassign(ticket, user.getIdLong()).thenAccept(unassigned -> {
+                    if (unassigned != null) {
+                        TicketEventBus.publish(new TicketUnassignedEvent(e.getGuild().getIdLong(), unassigned,
+                                e.getAuthor().getIdLong(), user.getIdLong()));
+                    }
+                });
 
                 // Send an info message
-                channel.sendMessage(
+                RestScheduler.queue(Priority.NOTICE, channel, channel.sendMessage(
                         new EmbedBuilder()
                                 .setTitle(TicketBot.config.manageTicketTitleUnassign()
                                         .replace("{USER}", e.getAuthor().getName() + "#" + e.getAuthor().getDiscriminator())
                                         .replace("{ASSIGNEE}", user.getName() + "#" + user.getDiscriminator()))
                                 .setColor(TicketBot.config.getAccentColor())
-                                .build()).queue();
+                                .build()));
             }
             showAssigneeData(e.getChannel(), ticket);
             removingChannels.remove(e.getChannel().getIdLong());
-            ticket.sendBaseInfo(channel).queue();
+            ticket.sendBaseInfo(channel);
         }
     }
 }
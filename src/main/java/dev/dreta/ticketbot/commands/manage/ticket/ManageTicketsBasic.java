@@ -18,8 +18,15 @@
 
 package dev.dreta.ticketbot.commands.manage.ticket;
 
+import dev.dreta.ticketbot.GuildContext;
 import dev.dreta.ticketbot.TicketBot;
 import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.events.TicketClosedEvent;
+import dev.dreta.ticketbot.events.TicketEventBus;
+import dev.dreta.ticketbot.events.TicketReopenedEvent;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
@@ -28,10 +35,10 @@ import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class manages the basic part of all the tickets, including:
@@ -41,16 +48,16 @@ import java.util.Set;
  */
 public class ManageTicketsBasic extends ListenerAdapter {
     // All of the channels that are at the ticket selecting stage
-    private static final Set<Long> channelSelecting = new HashSet<>();
+    private static final Set<Long> channelSelecting = ConcurrentHashMap.newKeySet();
     // All of the channels that already have the ticket data shown.
     // These channels will be able to react to emojis and do stuff with the ticket.
     // Maps from the channel ID to the message ID.
-    private static final Map<Long, Long> channelDataShown = new HashMap<>();
+    private static final Map<Long, Long> channelDataShown = new ConcurrentHashMap<>();
     // All of the channels that already have the ticket data shown.
     // Maps from the channel ID to the CHANNEL ID OF THE TICKET.
     // We need this because we are not necessarily in the same channel
     // as the ticket.
-    private static final Map<Long, Long> channelDataShownTickets = new HashMap<>();
+    private static final Map<Long, Long> channelDataShownTickets = new ConcurrentHashMap<>();
 
     /**
      * Select a ticket to manage.
@@ -58,21 +65,22 @@ public class ManageTicketsBasic extends ListenerAdapter {
      * @param channel The channel to send messages in
      */
     public static void selectTicket(MessageChannel channel) {
-        channel.sendMessage(new EmbedBuilder()
+        RestScheduler.queue(Priority.PROMPT, channel, channel.sendMessage(new EmbedBuilder()
                 .setTitle(TicketBot.config.manageTicketSelectTitle())
                 .setDescription(TicketBot.config.manageTicketSelectDescription())
                 .setColor(TicketBot.config.getAccentColor())
-                .build()).queue();
+                .build()));
         channelSelecting.add(channel.getIdLong());
     }
 
     public static void showTicketData(MessageChannel channel, Ticket ticket) {
-        ticket.sendBaseInfo(channel).queue(msg -> {
+        ticket.sendBaseInfo(channel).thenAccept(msg -> {
             channelDataShown.put(channel.getIdLong(), msg.getIdLong());
             channelDataShownTickets.put(channel.getIdLong(), ticket.getChannel());
-            msg.addReaction(ticket.isOpen() ? TicketBot.config.manageTicketCloseEmoji() : TicketBot.config.manageTicketOpenEmoji()).queue();
-            msg.addReaction(TicketBot.config.manageTicketAssigneesEmoji()).queue();
-            msg.addReaction(TicketBot.config.manageTicketExitEmoji()).queue();
+            RestScheduler.queueInOrder(Priority.REACTION, msg.getChannel(), Arrays.asList(
+                    msg.addReaction(ticket.isOpen() ? TicketBot.config.manageTicketCloseEmoji() : TicketBot.config.manageTicketOpenEmoji()),
+                    msg.addReaction(TicketBot.config.manageTicketAssigneesEmoji()),
+                    msg.addReaction(TicketBot.config.manageTicketExitEmoji())));
         });
     }
 
@@ -87,7 +95,8 @@ public class ManageTicketsBasic extends ListenerAdapter {
                 }
                 TextChannel channel = message.getMentionedChannels().get(0);
                 // Find the ticket according to the channel
-                Ticket ticket = Ticket.tickets.get(channel.getIdLong());
+                GuildContext context = GuildContext.of(e.getGuild());
+                Ticket ticket = context == null ? null : context.getTicket(channel.getIdLong());
                 if (ticket == null) {
                     TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.manageTicketSelectError());
                     return;
@@ -104,36 +113,37 @@ public class ManageTicketsBasic extends ListenerAdapter {
     public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
         if (channelDataShown.containsKey(e.getChannel().getIdLong()) &&
                 e.getMessageIdLong() == channelDataShown.get(e.getChannel().getIdLong())) {
-            e.retrieveUser().queue(user -> {
-                if (user.isBot()) {
+            ReactionContext.ifHuman(e, user -> {
+                GuildContext context = GuildContext.of(e.getGuild());
+                Long shown = channelDataShownTickets.get(e.getChannel().getIdLong());
+                Ticket ticket = context == null || shown == null ? null : context.getTicket(shown);
+                if (ticket == null) {
+                    // The ticket or its guild is gone
                     return;
                 }
-
-                Ticket ticket = Ticket.tickets.get(channelDataShownTickets.get(e.getChannel().getIdLong()));
                 if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketCloseEmoji()) ||
                         e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketOpenEmoji())) {
                     // Toggle open state
-                    ticket.setOpen(!ticket.isOpen());
-                    // Update data
-                    showTicketData(e.getChannel(), ticket);
+                    ticket.submit(t -> {
+                        t.setOpen(!t.isOpen());
+                        return t.copy();
+                    }).thenAccept(toggled -> {
+                        boolean open = toggled.isOpen();
+                        long guildId = e.getGuild().getIdLong();
+                        TicketEventBus.publish(open ? new TicketReopenedEvent(guildId, toggled, user.getIdLong())
+                                : new TicketClosedEvent(guildId, toggled, user.getIdLong()));
+                        // Update data
+                        showTicketData(e.getChannel(), ticket);
 
-                    TextChannel channel = TicketBot.config.getGuild().getTextChannelById(ticket.getChannel());
-                    if (ticket.isOpen()) {
-                        channel.sendMessage(
-                                new EmbedBuilder()
-                                        .setTitle(TicketBot.config.manageTicketTitleOpen()
-                                                .replace("{USER}", user.getName() + "#" + user.getDiscriminator()))
-                                        .setColor(TicketBot.config.getAccentColor())
-                                        .build()).queue();
-                    } else {
-                        channel.sendMessage(
+                        TextChannel channel = e.getGuild().getTextChannelById(ticket.getChannel());
+                        RestScheduler.queue(Priority.NOTICE, channel, channel.sendMessage(
                                 new EmbedBuilder()
-                                        .setTitle(TicketBot.config.manageTicketTitleClose()
+                                        .setTitle((open ? TicketBot.config.manageTicketTitleOpen() : TicketBot.config.manageTicketTitleClose())
                                                 .replace("{USER}", user.getName() + "#" + user.getDiscriminator()))
                                         .setColor(TicketBot.config.getAccentColor())
-                                        .build()).queue();
-                    }
-                    ticket.sendBaseInfo(channel).queue();
+                                        .build()));
+                        ticket.sendBaseInfo(channel);
+                    });
                 } else if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketAssigneesEmoji())) {
                     // Manage assignees
                     ManageTicketsAssign.showAssigneeData(e.getChannel(), ticket);
@@ -142,7 +152,7 @@ public class ManageTicketsBasic extends ListenerAdapter {
                 } else if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.manageTicketExitEmoji())) {
                     // Stop managing
                     channelDataShown.remove(e.getChannel().getIdLong());
-                    e.getChannel().delete().queue();
+                    RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getChannel().delete());
                 }
             });
         }
@@ -0,0 +1,84 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An AnswerCodec knows how to store the answers of a
+ * {@link TicketStepType}, both in the JSON data file and
+ * in a binary form.
+ * <p>
+ * Each step type can register its own codec through
+ * {@link AnswerCodecs#register}, which lets it use any
+ * type of answer it wants, not just the primitives and
+ * lists of strings that TicketBot knows about.
+ *
+ * @param <T> The type of the answers
+ * @see AnswerCodecs
+ */
+public interface AnswerCodec<T> {
+    /**
+     * Convert an answer to JSON.
+     *
+     * @param answer The answer
+     * @return -
+     */
+    JsonElement encode(T answer);
+
+    /**
+     * Convert JSON produced by {@link #encode} back
+     * to an answer.
+     *
+     * @param json The JSON
+     * @return -
+     */
+    T decode(JsonElement json);
+
+    /**
+     * Write an answer in binary form.
+     * <p>
+     * By default, this writes the JSON from {@link #encode}
+     * as a string. The built-in codecs write the answers
+     * directly instead.
+     *
+     * @param out    The output to write to
+     * @param answer The answer
+     * @throws IOException If the output can't be written to
+     */
+    default void write(DataOutput out, T answer) throws IOException {
+        AnswerCodecs.writeString(out, encode(answer).toString());
+    }
+
+    /**
+     * Read an answer written by {@link #write}.
+     *
+     * @param in The input to read from
+     * @return -
+     * @throws IOException If the input can't be read from
+     */
+    default T read(DataInput in) throws IOException {
+        return decode(JsonParser.parseString(AnswerCodecs.readString(in)));
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import dev.dreta.ticketbot.TicketBot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the {@link AnswerCodec} of every
+ * {@link TicketStepType}, and contains the codecs for
+ * the answer types of the built-in step types.
+ * <p>
+ * Step types without a codec of their own are stored
+ * the way all the answers used to be stored, see
+ * {@link #encodeLegacy} and {@link #decodeLegacy}.
+ */
+public class AnswerCodecs {
+    private static final Map<Class<?>, AnswerCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    public static final AnswerCodec<String> STRING = new AnswerCodec<>() {
+        @Override
+        public JsonElement encode(String answer) {
+            return new JsonPrimitive(answer);
+        }
+
+        @Override
+        public String decode(JsonElement json) {
+            return json.getAsString();
+        }
+
+        @Override
+        public void write(DataOutput out, String answer) throws IOException {
+            writeString(out, answer);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return readString(in);
+        }
+    };
+
+    public static final AnswerCodec<Integer> INTEGER = new AnswerCodec<>() {
+        @Override
+        public JsonElement encode(Integer answer) {
+            return new JsonPrimitive(answer);
+        }
+
+        @Override
+        public Integer decode(JsonElement json) {
+            return json.getAsInt();
+        }
+
+        @Override
+        public void write(DataOutput out, Integer answer) throws IOException {
+            out.writeInt(answer);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    public static final AnswerCodec<Double> DOUBLE = new AnswerCodec<>() {
+        @Override
+        public JsonElement encode(Double answer) {
+            return new JsonPrimitive(answer);
+        }
+
+        @Override
+        public Double decode(JsonElement json) {
+            return json.getAsDouble();
+        }
+
+        @Override
+        public void write(DataOutput out, Double answer) throws IOException {
+            out.writeDouble(answer);
+        }
+
+        @Override
+        public Double read(DataInput in) throws IOException {
+            return in.readDouble();
+        }
+    };
+
+    public static final AnswerCodec<Boolean> BOOLEAN = new AnswerCodec<>() {
+        @Override
+        public JsonElement encode(Boolean answer) {
+            return new JsonPrimitive(answer);
+        }
+
+        @Override
+        public Boolean decode(JsonElement json) {
+            return json.getAsBoolean();
+        }
+
+        @Override
+        public void write(DataOutput out, Boolean answer) throws IOException {
+            out.writeBoolean(answer);
+        }
+
+        @Override
+        public Boolean read(DataInput in) throws IOException {
+            return in.readBoolean();
+        }
+    };
+
+    public static final AnswerCodec<List<String>> STRING_LIST = new AnswerCodec<>() {
+        @Override
+        public JsonElement encode(List<String> answer) {
+            JsonArray array = new JsonArray(answer.size());
+            for (String item : answer) {
+                array.add(item);
+            }
+            return array;
+        }
+
+        @Override
+        public List<String> decode(JsonElement json) {
+            JsonArray array = json.getAsJsonArray();
+            List<String> answer = new ArrayList<>(array.size());
+            for (JsonElement item : array) {
+                answer.add(item.getAsString());
+            }
+            return answer;
+        }
+
+        @Override
+        public void write(DataOutput out, List<String> answer) throws IOException {
+            out.writeInt(answer.size());
+            for (String item : answer) {
+                writeString(out, item);
+            }
+        }
+
+        @Override
+        public List<String> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<String> answer = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                answer.add(readString(in));
+            }
+            return answer;
+        }
+    };
+
+    /**
+     * Register the codec for the answers of a step type.
+     *
+     * @param type  The class of the step type
+     * @param codec The codec
+     * @param <T>   The type of the answers
+     */
+    public static <T> void register(Class<? extends TicketStepType<T>> type, AnswerCodec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    /**
+     * Get the codec for the answers of a step type.
+     *
+     * @param type The class of the step type
+     * @param <T>  The type of the answers
+     * @return The registered codec, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> AnswerCodec<T> get(Class<? extends TicketStepType<T>> type) {
+        return (AnswerCodec<T>) codecs.get(type);
+    }
+
+    /**
+     * Write a string in binary form. Unlike {@link DataOutput#writeUTF},
+     * this works for strings of any length.
+     *
+     * @param out    The output to write to
+     * @param string The string
+     * @throws IOException If the output can't be written to
+     */
+    public static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString}.
+     *
+     * @param in The input to read from
+     * @return -
+     * @throws IOException If the input can't be read from
+     */
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Forget the codecs of all the step types that were
+     * loaded by a specific class loader.
+     *
+     * @param loader The class loader of the extension
+     */
+    static void invalidate(ClassLoader loader) {
+        codecs.keySet().removeIf(type -> type.getClassLoader() == loader);
+    }
+
+    /**
+     * Encode an answer of a step type without a codec of its
+     * own. Only primitives, strings and lists of strings are
+     * supported, and {@link #legacyAnswerType} has to be stored
+     * next to it to decode it again.
+     *
+     * @param answer The answer
+     * @return -
+     */
+    static JsonElement encodeLegacy(Object answer) {
+        // If the answer is a primitive (which in most cases it should),
+        // then add it directly.
+        if (answer instanceof String) {
+            return new JsonPrimitive((String) answer);
+        } else if (answer instanceof Number) {
+            return new JsonPrimitive((Number) answer);
+        } else if (answer instanceof Character) {
+            return new JsonPrimitive((Character) answer);
+        } else if (answer instanceof Boolean) {
+            return new JsonPrimitive((Boolean) answer);
+        } /* If we are a list, then convert to JSON array */ else if (answer instanceof List) {
+            return TicketBot.gson.toJsonTree(answer).getAsJsonArray();
+        }
+        throw new IllegalArgumentException("Illegal argument type");
+    }
+
+    /**
+     * Get the "answerType" to store next to an answer
+     * encoded with {@link #encodeLegacy}.
+     *
+     * @param answer The answer
+     * @return -
+     */
+    static String legacyAnswerType(Object answer) {
+        return answer instanceof List ? List.class.getName() : answer.getClass().getName();
+    }
+
+    /**
+     * Decode an answer stored without a codec of its own.
+     *
+     * @param json       The stored answer
+     * @param answerType The stored "answerType"
+     * @return -
+     */
+    static Object decodeLegacy(JsonElement json, String answerType) {
+        if (json.isJsonArray()) {
+            return STRING_LIST.decode(json);
+        }
+        switch (answerType) {
+            case "java.lang.String":
+                return json.getAsString();
+            case "java.lang.Integer":
+                return json.getAsInt();
+            case "java.lang.Long":
+                return json.getAsLong();
+            case "java.lang.Double":
+                return json.getAsDouble();
+            case "java.lang.Float":
+                return json.getAsFloat();
+            case "java.lang.Short":
+                return json.getAsShort();
+            case "java.lang.Byte":
+                return json.getAsByte();
+            case "java.lang.Character":
+                return json.getAsString().charAt(0);
+            case "java.lang.Boolean":
+                return json.getAsBoolean();
+            default:
+                try {
+                    // Some other kind of Number we don't know about
+                    return TicketBot.gson.fromJson(json, Class.forName(answerType));
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Unknown answer type " + answerType + ".", e);
+                }
+        }
+    }
+}
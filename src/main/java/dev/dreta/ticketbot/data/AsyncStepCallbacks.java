@@ -0,0 +1,73 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.common.collect.MapMaker;
+import lombok.AllArgsConstructor;
+import net.dv8tion.jda.api.entities.TextChannel;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps what the callback based methods of
+ * {@link TicketStepType} were given for an {@link AsyncTicketStepType},
+ * between {@link TicketStepType#init} and {@link TicketStepType#ask()}.
+ * An interface can't keep it in fields of its own.
+ * <p>
+ * The step types are weakly referenced (and compared by identity),
+ * so a step type that was initialized but never asked or cleaned
+ * up is forgotten once nothing else uses it.
+ */
+class AsyncStepCallbacks {
+    private static final Map<AsyncTicketStepType<?>, Pending<?>> pending = new MapMaker().weakKeys().makeMap();
+
+    @AllArgsConstructor
+    private static class Pending<T> {
+        private final TextChannel channel;
+        private final TicketStep<T> step;
+        private final Consumer<T> callback;
+    }
+
+    static <T> void init(AsyncTicketStepType<T> stepType, TextChannel channel, TicketStep<T> step, Consumer<T> callback) {
+        pending.put(stepType, new Pending<>(channel, step, callback));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> void ask(AsyncTicketStepType<T> stepType) {
+        // Safe, only init(stepType, ...) puts the step type in
+        Pending<T> p = (Pending<T>) pending.remove(stepType);
+        if (p == null) {
+            throw new IllegalStateException(stepType.getClass().getName() + " was asked before it was initialized.");
+        }
+        stepType.ask(p.channel, p.step).whenComplete((answer, ex) -> {
+            // A step type that was cancelled through cleanup() never calls back
+            if (ex == null) {
+                p.callback.accept(answer);
+            } else if (!(ex instanceof CancellationException)) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    static void forget(AsyncTicketStepType<?> stepType) {
+        pending.remove(stepType);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonObject;
+import net.dv8tion.jda.api.entities.TextChannel;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+/**
+ * An AsyncTicketStepType is a {@link TicketStepType} that
+ * returns its answer as a {@link CompletionStage} instead of
+ * calling a callback.
+ * <p>
+ * This allows a step type to validate the answer asynchronously
+ * (for example, by looking it up somewhere) without blocking
+ * the threads of JDA: it simply completes the stage once it is
+ * done. Step types that only implement {@link TicketStepType}
+ * are wrapped in a {@link StepTypeAdapter} when tickets are
+ * created, so both kinds can be mixed freely.
+ * <p>
+ * The callback based methods of {@link TicketStepType} still
+ * work, they ask through {@link #ask(TextChannel, TicketStep)}
+ * and call the callback with the answer. Step types that send
+ * a prompt and listen for the answer can extend
+ * {@link dev.dreta.ticketbot.data.types.PromptStepType}, like
+ * the built-in ones do.
+ *
+ * @param <T> The type that this TicketStepType parses into
+ */
+public interface AsyncTicketStepType<T> extends TicketStepType<T> {
+    /**
+     * Get ready to ask a question later. This is called while
+     * the guild member is still answering the previous step, so
+     * that anything expensive can be done ahead of time.
+     * <p>
+     * This must not listen to the guild member yet. The step
+     * type may be cancelled without ever being asked, for
+     * example if the guild member never answers the previous step.
+     * By default, this does nothing.
+     *
+     * @param channel The channel that the question will be asked in
+     * @param step    The step that the question will be asked for
+     */
+    default void prepare(TextChannel channel, TicketStep<T> step) {
+    }
+
+    /**
+     * Ask the guild member the question of a step.
+     * <p>
+     * The returned stage should complete with the answer once
+     * the guild member has given a valid one, and the step type
+     * should have cleaned up after itself by then.
+     *
+     * @param channel The channel to ask in
+     * @param step    The step to ask the question of
+     * @return The answer of the guild member
+     */
+    CompletionStage<T> ask(TextChannel channel, TicketStep<T> step);
+
+    /**
+     * Stop waiting for an answer, for example because the
+     * guild member took too long. This should clean up just
+     * like answering would. The stage returned by {@link #ask}
+     * does not have to be completed by this method.
+     */
+    void cancel();
+
+    @Override
+    default void init(TextChannel channel, String question, String description, Consumer<T> callback, JsonObject options) {
+        init(channel, new TicketStep<>(question, description, (Class<TicketStepType<T>>) (Class<?>) getClass(), options), callback);
+    }
+
+    @Override
+    default void init(TextChannel channel, TicketStep<T> step, Consumer<T> callback) {
+        AsyncStepCallbacks.init(this, channel, step, callback);
+    }
+
+    @Override
+    default void ask() {
+        AsyncStepCallbacks.ask(this);
+    }
+
+    @Override
+    default void cleanup() {
+        AsyncStepCallbacks.forget(this);
+        cancel();
+    }
+}
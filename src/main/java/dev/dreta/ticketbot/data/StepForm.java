@@ -0,0 +1,200 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import dev.dreta.ticketbot.TicketBot;
+import lombok.Getter;
+import lombok.Value;
+import net.dv8tion.jda.api.EmbedBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A StepForm is a run of consecutive {@link TicketStep}s of
+ * a {@link TicketType} whose step types are all {@link TextStepType}s.
+ * <p>
+ * When the {@link TicketType} is a form, all of these steps are
+ * asked in a single message, and the guild member answers all of
+ * them in a single reply, with one answer on each line.
+ */
+public class StepForm {
+    /**
+     * The index of the first step of this form in its {@link TicketType}.
+     */
+    @Getter
+    private final int start;
+    @Getter
+    private final List<TicketStep<?>> steps;
+    private volatile StepPrompt prompt;
+    private volatile long promptGeneration;
+
+    /**
+     * The result of parsing a reply to a form.
+     */
+    @Value
+    public static class Result {
+        /**
+         * The answers to each step, in order. This is only
+         * complete if there are no errors.
+         */
+        List<Object> answers;
+        /**
+         * The error messages to show to the guild member,
+         * one for each step that was answered incorrectly.
+         */
+        List<String> errors;
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+    }
+
+    public StepForm(int start, List<TicketStep<?>> steps) {
+        this.start = start;
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    /**
+     * Find the forms in a list of steps. Only runs of at least
+     * two {@link TextStepType}s become forms, as asking a single
+     * step as a form would gain nothing.
+     *
+     * @param steps The steps of a {@link TicketType}
+     * @return The forms, in order
+     */
+    public static List<StepForm> of(List<TicketStep<?>> steps) {
+        List<StepForm> forms = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= steps.size(); i++) {
+            if (i < steps.size() && StepTypeRegistry.entryOf(steps.get(i).getType()).isText()) {
+                continue;
+            }
+            if (i - start >= 2) {
+                forms.add(new StepForm(start, steps.subList(start, i)));
+            }
+            start = i + 1;
+        }
+        return forms;
+    }
+
+    /**
+     * Get the number of steps in this form.
+     *
+     * @return -
+     */
+    public int size() {
+        return steps.size();
+    }
+
+    /**
+     * Get the prompt that asks all of the questions of
+     * this form. Like {@link TicketStep#getPrompt()}, it is
+     * only built again when the configuration changes.
+     *
+     * @return -
+     */
+    public StepPrompt getPrompt() {
+        StepPrompt prompt = this.prompt;
+        long generation = TicketBot.config.getGeneration();
+        if (prompt == null || promptGeneration != generation) {
+            StringBuilder fields = new StringBuilder();
+            for (int i = 0; i < steps.size(); i++) {
+                TicketStep<?> step = steps.get(i);
+                fields.append(TicketBot.config.ticketFormField()
+                        .replace("{INDEX}", String.valueOf(i + 1))
+                        .replace("{TITLE}", step.getTitle())
+                        .replace("{DESCRIPTION}", step.getDescription()))
+                        .append("\n");
+            }
+            prompt = new StepPrompt(new EmbedBuilder()
+                    .setTitle(TicketBot.config.ticketFormTitle())
+                    .setDescription(fields + "\n" + TicketBot.config.ticketFormInfo())
+                    .setColor(TicketBot.config.getAccentColor())
+                    .build(), Collections.emptyList());
+            this.prompt = prompt;
+            this.promptGeneration = generation;
+        }
+        return prompt;
+    }
+
+    /**
+     * Create the step types that parse the answers to this
+     * form, one for each step. They can be reused for every
+     * reply to the form.
+     *
+     * @return -
+     */
+    public List<TextStepType<Object>> createStepTypes() {
+        List<TextStepType<Object>> types = new ArrayList<>(steps.size());
+        for (TicketStep<?> step : steps) {
+            types.add((TextStepType<Object>) StepTypeRegistry.entry(((TicketStep<Object>) step).getType()).newInstance());
+        }
+        return types;
+    }
+
+    /**
+     * Parse a reply of the guild member, validating every
+     * answer, so that all of the mistakes can be reported at
+     * once.
+     *
+     * @param reply The reply of the guild member
+     * @return -
+     */
+    public Result parse(String reply) {
+        return parse(reply, createStepTypes());
+    }
+
+    /**
+     * Parse a reply of the guild member with step types
+     * that were already created by {@link #createStepTypes()}.
+     *
+     * @param reply The reply of the guild member
+     * @param types The step types, one for each step
+     * @return -
+     */
+    public Result parse(String reply, List<TextStepType<Object>> types) {
+        List<String> lines = new ArrayList<>();
+        for (String line : reply.split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(line.strip());
+            }
+        }
+        if (lines.size() != steps.size()) {
+            return new Result(Collections.emptyList(), Collections.singletonList(
+                    TicketBot.config.ticketFormCountMsg().replace("{COUNT}", String.valueOf(steps.size()))));
+        }
+
+        List<Object> answers = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            TicketStep<Object> step = (TicketStep<Object>) steps.get(i);
+            try {
+                answers.add(types.get(i).parse(lines.get(i), step));
+            } catch (IllegalArgumentException e) {
+                errors.add(TicketBot.config.ticketFormFieldError()
+                        .replace("{INDEX}", String.valueOf(i + 1))
+                        .replace("{TITLE}", step.getTitle())
+                        .replace("{ERROR}", e.getMessage()));
+            }
+        }
+        return new Result(answers, errors);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import dev.dreta.ticketbot.TicketBot;
+import lombok.Value;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A StepPrompt is the message that a {@link TicketStepType}
+ * sends to ask its question: the embed and the reactions to
+ * add to it, in order.
+ * <p>
+ * Both only depend on the {@link TicketStep} and the configuration,
+ * so they are built once by {@link TicketStepType#buildPrompt}
+ * and kept by the {@link TicketStep} (see {@link TicketStep#getPrompt()}).
+ */
+@Value
+public class StepPrompt {
+    MessageEmbed embed;
+    List<String> reactions;
+
+    /**
+     * Create a prompt that only shows the question and its
+     * description, without any reactions.
+     *
+     * @param question    The question to ask
+     * @param description The description of the question
+     * @return -
+     */
+    public static StepPrompt of(String question, String description) {
+        return new StepPrompt(new EmbedBuilder()
+                .setTitle(question)
+                .setDescription(description)
+                .setColor(TicketBot.config.getAccentColor())
+                .build(), Collections.emptyList());
+    }
+}
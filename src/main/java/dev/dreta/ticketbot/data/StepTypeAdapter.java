@@ -0,0 +1,108 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonObject;
+import net.dv8tion.jda.api.entities.TextChannel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A StepTypeAdapter allows a callback based {@link TicketStepType}
+ * to be used as an {@link AsyncTicketStepType}. The stage returned
+ * by {@link #ask(TextChannel, TicketStep)} is completed by the
+ * callback of the step type. The callback based methods are
+ * passed straight on to the step type.
+ *
+ * @param <T> The type that the step type parses into
+ */
+public class StepTypeAdapter<T> implements AsyncTicketStepType<T> {
+    private final TicketStepType<T> delegate;
+    private final CompletableFuture<T> answer = new CompletableFuture<>();
+    // Whether the step type has either called the callback or been cancelled.
+    private final AtomicBoolean finished = new AtomicBoolean();
+    // Whether the step type was initialized, it can't be cleaned up otherwise
+    private volatile boolean asked;
+
+    public StepTypeAdapter(TicketStepType<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return delegate.getDescription();
+    }
+
+    @Override
+    public String getEmoji() {
+        return delegate.getEmoji();
+    }
+
+    @Override
+    public void init(TextChannel channel, String question, String description, Consumer<T> callback, JsonObject options) {
+        delegate.init(channel, question, description, callback, options);
+    }
+
+    @Override
+    public void init(TextChannel channel, TicketStep<T> step, Consumer<T> callback) {
+        delegate.init(channel, step, callback);
+    }
+
+    @Override
+    public void ask() {
+        delegate.ask();
+    }
+
+    @Override
+    public void cleanup() {
+        delegate.cleanup();
+    }
+
+    @Override
+    public CompletionStage<T> ask(TextChannel channel, TicketStep<T> step) {
+        asked = true;
+        delegate.init(channel, step, value -> {
+            if (finished.compareAndSet(false, true)) {
+                answer.complete(value);
+            }
+        });
+        delegate.ask();
+        return answer;
+    }
+
+    @Override
+    public void cancel() {
+        // The step type already cleaned up after itself if
+        // it has called the callback.
+        if (finished.compareAndSet(false, true)) {
+            if (asked) {
+                delegate.cleanup();
+            }
+            answer.cancel(false);
+        }
+    }
+}
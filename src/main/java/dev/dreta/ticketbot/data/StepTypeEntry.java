@@ -0,0 +1,130 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import dev.dreta.ticketbot.data.types.StepType;
+import dev.dreta.ticketbot.utils.GeneratedIndex;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A StepTypeEntry is everything the {@link StepTypeRegistry}
+ * knows about a {@link TicketStepType}: the metadata from its
+ * {@link StepType} annotation and a factory for new instances.
+ * The metadata is read from the {@link GeneratedIndex} when the
+ * step type was compiled with the IndexProcessor, and from the
+ * annotation otherwise.
+ * <p>
+ * Both are looked up once when the entry is created, so that
+ * creating a step type or displaying its name while tickets are
+ * being created never has to go through reflection.
+ */
+@Getter
+public class StepTypeEntry<T> {
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(TicketStepType.class);
+
+    private final Class<? extends TicketStepType<T>> type;
+    private final String name;
+    private final String description;
+    private final String emoji;
+    /**
+     * Whether the step type is a {@link TextStepType}, which
+     * allows it to be asked as part of a form.
+     */
+    private final boolean text;
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle factory;
+
+    /**
+     * Create the entry for a step type.
+     *
+     * @param type The class of the step type
+     * @throws IllegalArgumentException If the step type is not annotated with {@link StepType}
+     *                                  or does not have a public constructor without arguments
+     */
+    StepTypeEntry(Class<? extends TicketStepType<T>> type) {
+        this.type = type;
+        GeneratedIndex.IndexedStepType indexed = GeneratedIndex.of(type.getClassLoader()).getStepType(type.getName());
+        if (indexed != null) {
+            this.name = indexed.getName();
+            this.description = indexed.getDescription();
+            this.emoji = indexed.getEmoji();
+            this.text = indexed.isText();
+        } else {
+            // Compiled without the IndexProcessor
+            StepType meta = type.getAnnotation(StepType.class);
+            if (meta == null) {
+                throw new IllegalArgumentException("Subclass of TicketStepType (" +
+                        type.getName() + ") not annotated with @StepType.");
+            }
+            this.name = meta.name();
+            this.description = meta.description();
+            this.emoji = meta.emoji();
+            this.text = TextStepType.class.isAssignableFrom(type);
+        }
+        try {
+            // The constructor handle is adapted to always return a
+            // TicketStepType, so that invokeExact can be used for
+            // every step type no matter which class it belongs to.
+            this.factory = MethodHandles.publicLookup()
+                    .findConstructor(type, MethodType.methodType(void.class))
+                    .asType(FACTORY_TYPE);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Step type " + type.getName() +
+                    " must have a public constructor without arguments.", e);
+        }
+    }
+
+    /**
+     * Create a new instance of the step type.
+     *
+     * @return -
+     * @throws IllegalStateException If the constructor of the step type throws an exception
+     */
+    public TicketStepType<T> newInstance() {
+        try {
+            return type.cast((TicketStepType<?>) factory.invokeExact());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Couldn't create step type " + type.getName() + ".", t);
+        }
+    }
+
+    /**
+     * Create a new instance of the step type that can be
+     * asked asynchronously. Step types that are not an
+     * {@link AsyncTicketStepType} are wrapped in a
+     * {@link StepTypeAdapter}.
+     *
+     * @return -
+     * @throws IllegalStateException If the constructor of the step type throws an exception
+     */
+    public AsyncTicketStepType<T> newAsyncInstance() {
+        TicketStepType<T> instance = newInstance();
+        if (instance instanceof AsyncTicketStepType) {
+            return (AsyncTicketStepType<T>) instance;
+        }
+        return new StepTypeAdapter<>(instance);
+    }
+}
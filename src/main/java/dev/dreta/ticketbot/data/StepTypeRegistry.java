@@ -0,0 +1,171 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import dev.dreta.ticketbot.TicketBot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The StepTypeRegistry keeps a {@link StepTypeEntry} for every
+ * registered {@link TicketStepType}, and resolves the class
+ * names of the step types stored in the data file.
+ * <p>
+ * Every {@link TicketStep} and every {@link TicketStepData}
+ * stores the class name of its step type, so loading the
+ * tickets would otherwise look up the same few classes
+ * thousands of times. Instead, each class name is only
+ * looked up once, in the class index of the extensions
+ * first and then in TicketBot itself.
+ */
+public class StepTypeRegistry {
+    private static final Map<String, Class<TicketStepType<Object>>> classes = new ConcurrentHashMap<>();
+    // Every entry is stored under its own type, see entry(Class)
+    private static final Map<Class<?>, StepTypeEntry<?>> entries = new ConcurrentHashMap<>();
+    private static final Map<String, StepTypeEntry<?>> entriesByEmoji = new ConcurrentHashMap<>();
+
+    /**
+     * Create the entry of a step type.
+     * <p>
+     * You should use {@link dev.dreta.ticketbot.TicketBot#registerStepType}
+     * instead, which calls this method.
+     *
+     * @param type The class of the step type
+     * @return The entry of the step type
+     * @throws IllegalArgumentException If the step type is not annotated properly, can't be
+     *                                  constructed, or its emoji is already taken by another step type
+     */
+    public static StepTypeEntry<?> register(Class<? extends TicketStepType<?>> type) {
+        StepTypeEntry<?> entry = create(type);
+        StepTypeEntry<?> existing = entriesByEmoji.putIfAbsent(entry.getEmoji(), entry);
+        if (existing != null && existing.getType() != type) {
+            throw new IllegalArgumentException("Step type " + type.getName() + " uses the emoji " +
+                    entry.getEmoji() + ", which is already used by " + existing.getType().getName() + ".");
+        }
+        if (existing != null) {
+            // Registered again, replace the entry of the earlier registration
+            entriesByEmoji.replace(entry.getEmoji(), existing, entry);
+        }
+        entries.put(type, entry);
+        return entry;
+    }
+
+    /**
+     * Get the entry of a step type.
+     * <p>
+     * Step types that were never registered (for example, those
+     * of an extension that forgot to register them) get their
+     * entry created here the first time they are needed.
+     *
+     * @param type The class of the step type
+     * @param <T>  The type that the step type parses into
+     * @return -
+     * @throws IllegalArgumentException If the step type is not annotated properly or can't be constructed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> StepTypeEntry<T> entry(Class<? extends TicketStepType<T>> type) {
+        // Safe, every entry is stored under the class it was created for
+        return (StepTypeEntry<T>) entryOf(type);
+    }
+
+    /**
+     * Get the entry of a step type whose answer type isn't
+     * known, for example to display its name.
+     *
+     * @param type The class of the step type
+     * @return -
+     * @throws IllegalArgumentException If the step type is not annotated properly or can't be constructed
+     * @see #entry(Class)
+     */
+    public static StepTypeEntry<?> entryOf(Class<?> type) {
+        StepTypeEntry<?> entry = entries.get(type);
+        if (entry != null) {
+            return entry;
+        }
+        return entries.computeIfAbsent(type, StepTypeRegistry::create);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StepTypeEntry<?> create(Class<?> type) {
+        if (!TicketStepType.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(type.getName() + " is not a TicketStepType.");
+        }
+        return new StepTypeEntry<>((Class<? extends TicketStepType<Object>>) type);
+    }
+
+    /**
+     * Get the entry of the registered step type with an emoji.
+     *
+     * @param emoji The emoji of the step type
+     * @return The entry, or null if no registered step type uses this emoji
+     */
+    public static StepTypeEntry<?> byEmoji(String emoji) {
+        return entriesByEmoji.get(emoji);
+    }
+
+    /**
+     * Find a step type by its class name, either in TicketBot
+     * itself or in any of the extensions.
+     *
+     * @param name The fully qualified name of the class
+     * @return The class of the step type
+     * @throws IllegalArgumentException If no such step type can be found
+     */
+    public static Class<TicketStepType<Object>> resolve(String name) {
+        Class<TicketStepType<Object>> clazz = classes.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+        clazz = find(name);
+        classes.put(name, clazz);
+        return clazz;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<TicketStepType<Object>> find(String name) {
+        if (TicketBot.extLoader != null) {
+            // The extensions know which classes they have, so this doesn't need to guess
+            Class<?> clazz = TicketBot.extLoader.lookupClass(name);
+            if (clazz != null) {
+                return (Class<TicketStepType<Object>>) clazz;
+            }
+        }
+        try {
+            return (Class<TicketStepType<Object>>) Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Couldn't find step type of " + name + ".", e);
+        }
+    }
+
+    /**
+     * Forget all the step types that were loaded by a
+     * specific class loader. This must be called when an
+     * extension is disabled, so that we don't keep its
+     * classes around.
+     *
+     * @param loader The class loader of the extension
+     */
+    public static void invalidate(ClassLoader loader) {
+        classes.values().removeIf(clazz -> clazz.getClassLoader() == loader);
+        entries.keySet().removeIf(clazz -> clazz.getClassLoader() == loader);
+        entriesByEmoji.values().removeIf(entry -> entry.getType().getClassLoader() == loader);
+        AnswerCodecs.invalidate(loader);
+    }
+}
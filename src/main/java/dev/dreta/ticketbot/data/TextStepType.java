@@ -0,0 +1,43 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+/**
+ * A TextStepType is a {@link TicketStepType} whose answer is a
+ * single line of text typed by the guild member.
+ * <p>
+ * Step types like this can be asked together with others in a
+ * single message when their {@link TicketType} is a form (see
+ * {@link TicketType#isForm()}), so they have to be able to parse
+ * an answer without asking for it themselves.
+ *
+ * @param <T> The type that this TicketStepType parses into
+ */
+public interface TextStepType<T> extends TicketStepType<T> {
+    /**
+     * Parse and validate the answer of the guild member.
+     *
+     * @param text The text that the guild member typed in
+     * @param step The step that the text answers
+     * @return The answer
+     * @throws IllegalArgumentException If the text is not a valid answer. The message
+     *                                  of the exception will be shown to the guild member.
+     */
+    T parse(String text, TicketStep<T> step);
+}
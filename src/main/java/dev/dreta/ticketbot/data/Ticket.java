@@ -24,21 +24,26 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import dev.dreta.ticketbot.GuildContext;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.types.StepType;
+import dev.dreta.ticketbot.utils.Mailbox;
+import dev.dreta.ticketbot.utils.MemberCache.CachedMember;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.TextChannel;
-import net.dv8tion.jda.api.requests.RestAction;
 
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * A Ticket is the basis of TicketBot. It contains information
@@ -52,11 +57,14 @@ import java.util.Map;
 public class Ticket {
     /**
      * This map map channels to the Ticket they represent.
+     * This only contains the tickets of the main guild, the
+     * tickets of the other guilds are in their {@link GuildContext}.
      */
     public static final Map<Long, Ticket> tickets = new HashMap<>();
 
     /**
-     * This map maps users to the Ticket's they have created.
+     * This map maps users to the Ticket's they have created
+     * in the main guild.
      */
     public static final Multimap<Long, Ticket> ticketsByUser = HashMultimap.create();
 
@@ -79,9 +87,17 @@ public class Ticket {
     //private TicketType type;
     private List<Long> assignees;
     private List<TicketStepData<?>> steps;
+    // Every change to this ticket goes through its mailbox, so that
+    // changes coming from several places at once never overlap.
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Mailbox mailbox = new Mailbox();
 
-    private Member cachedAuthor;
-
+    // NOTE: We don't resolve the author (or the assignees) here.
+    //       They are resolved through the member cache only when
+    //       the ticket is actually displayed, so that loading the
+    //       tickets doesn't cost a request per ticket.
     public Ticket(String title, long author, long channel, boolean open, List<Long> assignees, List<TicketStepData<?>> steps) {
         this.title = title;
         this.author = author;
@@ -89,9 +105,6 @@ public class Ticket {
         this.open = open;
         this.assignees = assignees;
         this.steps = steps;
-
-        // Cache the author
-        TicketBot.config.getGuild().retrieveMemberById(author).queue(m -> cachedAuthor = m);
     }
 
     public static Ticket deserialize(JsonObject j) {
@@ -110,74 +123,137 @@ public class Ticket {
 
     /**
      * Send information about this ticket in a channel.
+     * <p>
+     * The author and the assignees are resolved through
+     * the member cache of the guild first, which is why this
+     * doesn't return a RestAction.
      *
      * @param channel The channel to send in
-     * @return The action to operate on
+     * @return A future completing with the sent message
      */
-    public RestAction<Message> sendBaseInfo(MessageChannel channel) {
-        TextChannel c = TicketBot.config.getGuild().getTextChannelById(this.channel);
-        StringBuilder steps = new StringBuilder();
-        for (int i = 0; i < this.steps.size(); i++) {
-            TicketStepData<?> step = this.steps.get(i);
-            steps.append(TicketBot.config.ticketDataStep()
-                    .replace("{INDEX}", String.valueOf(i + 1))
-                    .replace("{STEPTITLE}", step.getTitle())
-                    .replace("{STEPTYPE}", step.getType().getAnnotation(StepType.class).name())
-                    .replace("{STEPANSWER}", String.valueOf(step.getAnswer()))).append("\n");
-        }
-        StringBuilder assignees = new StringBuilder();
-        for (int i = 0; i < this.assignees.size(); i++) {
-            Member assignee = TicketBot.config.getGuild().getMemberById(this.assignees.get(i));
-            assignees.append(TicketBot.config.ticketDataAssignee()
-                    .replace("{INDEX}", String.valueOf(i + 1))
-                    .replace("{NAME}", assignee.getUser().getName())
-                    .replace("{DISCRIM}", assignee.getUser().getDiscriminator())
-                    .replace("{NICKNAME}", assignee.getEffectiveName()))
-                    .append("\n");
-        }
-        return channel.sendMessage(new EmbedBuilder()
-                .setTitle(TicketBot.config.ticketDataTitle()
-                        .replace("{TITLE}", title)
-                        .replace("{AUTHORNAME}", cachedAuthor.getUser().getName())
-                        .replace("{AUTHORDISCRIM}", cachedAuthor.getUser().getDiscriminator())
-                        .replace("{AUTHORNICKNAME}", cachedAuthor.getEffectiveName())
-                        .replace("{CHANNEL}", c.getName())
-                        .replace("{OPEN}", open ? TicketBot.config.ticketDataOpenYes() : TicketBot.config.ticketDataOpenNo()))
-                .setDescription(TicketBot.config.ticketDataDescription()
-                        .replace("{TITLE}", title)
-                        .replace("{AUTHORNAME}", cachedAuthor.getUser().getName())
-                        .replace("{AUTHORDISCRIM}", cachedAuthor.getUser().getDiscriminator())
-                        .replace("{AUTHORNICKNAME}", cachedAuthor.getEffectiveName())
-                        .replace("{CHANNEL}", c.getName())
-                        .replace("{OPEN}", open ? TicketBot.config.ticketDataOpenYes() : TicketBot.config.ticketDataOpenNo())
-                        .replace("{STEPS}", steps.toString())
-                        .replace("{ASSIGNEES}", this.assignees.size() == 0 ? TicketBot.config.listEmptyFormat() : assignees))
-                .setColor(TicketBot.config.getAccentColor())
-                .build());
+    public CompletableFuture<Message> sendBaseInfo(MessageChannel channel) {
+        // Everything is read from a copy taken in the mailbox, so
+        // that a change made at the same time is either fully shown
+        // or not at all
+        return submit(Ticket::copy).thenCompose(ticket -> {
+            List<Long> assignees = ticket.assignees;
+            List<Long> members = new ArrayList<>(assignees);
+            members.add(ticket.author);
+            return context().getMembers().resolve(members).thenCompose(resolved -> {
+                TextChannel c = TicketBot.getTextChannelById(ticket.channel);
+                CachedMember cachedAuthor = resolved.get(ticket.author);
+                StringBuilder steps = new StringBuilder();
+                for (int i = 0; i < ticket.steps.size(); i++) {
+                    TicketStepData<?> step = ticket.steps.get(i);
+                    steps.append(TicketBot.config.ticketDataStep()
+                            .replace("{INDEX}", String.valueOf(i + 1))
+                            .replace("{STEPTITLE}", step.getTitle())
+                            .replace("{STEPTYPE}", StepTypeRegistry.entryOf(step.getType()).getName())
+                            .replace("{STEPANSWER}", String.valueOf(step.getAnswer()))).append("\n");
+                }
+                return RestScheduler.queue(Priority.NOTICE, channel, channel.sendMessage(new EmbedBuilder()
+                        .setTitle(TicketBot.config.ticketDataTitle()
+                                .replace("{TITLE}", ticket.title)
+                                .replace("{AUTHORNAME}", cachedAuthor.getName())
+                                .replace("{AUTHORDISCRIM}", cachedAuthor.getDiscriminator())
+                                .replace("{AUTHORNICKNAME}", cachedAuthor.getEffectiveName())
+                                .replace("{CHANNEL}", c.getName())
+                                .replace("{OPEN}", ticket.open ? TicketBot.config.ticketDataOpenYes() : TicketBot.config.ticketDataOpenNo()))
+                        .setDescription(TicketBot.config.ticketDataDescription()
+                                .replace("{TITLE}", ticket.title)
+                                .replace("{AUTHORNAME}", cachedAuthor.getName())
+                                .replace("{AUTHORDISCRIM}", cachedAuthor.getDiscriminator())
+                                .replace("{AUTHORNICKNAME}", cachedAuthor.getEffectiveName())
+                                .replace("{CHANNEL}", c.getName())
+                                .replace("{OPEN}", ticket.open ? TicketBot.config.ticketDataOpenYes() : TicketBot.config.ticketDataOpenNo())
+                                .replace("{STEPS}", steps.toString())
+                                .replace("{ASSIGNEES}", assignees.isEmpty() ? TicketBot.config.listEmptyFormat() : formatAssignees(assignees, resolved)))
+                        .setColor(TicketBot.config.getAccentColor())
+                        .build()));
+            });
+        }).whenComplete((msg, ex) -> {
+            if (ex != null) {
+                System.err.println("Couldn't send the information of ticket " + this.channel + ".");
+                ex.printStackTrace();
+            }
+        });
     }
 
     /**
      * Send information about this ticket's assignees in a channel.
      *
      * @param channel The channel to send in
-     * @return The action to operate on
+     * @return A future completing with the sent message
+     */
+    public CompletableFuture<Message> sendAssigneesInfo(MessageChannel channel) {
+        return submit(t -> new ArrayList<>(t.assignees)).thenCompose(assignees -> context().getMembers().resolve(assignees)
+                .thenCompose(resolved -> RestScheduler.queue(Priority.PROMPT, channel, channel.sendMessage(new EmbedBuilder()
+                        .setTitle(TicketBot.config.ticketDataAssigneesTitle())
+                        .setDescription(assignees.isEmpty() ? TicketBot.config.listEmptyFormat() : formatAssignees(assignees, resolved))
+                        .setColor(TicketBot.config.getAccentColor())
+                        .build())))
+        ).whenComplete((msg, ex) -> {
+            if (ex != null) {
+                System.err.println("Couldn't send the assignees of ticket " + this.channel + ".");
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Run an operation on this ticket after every operation
+     * that was submitted before it. Anything that changes a
+     * ticket that is already in use should go through here.
+     *
+     * @param operation The operation
+     * @param <T>       The result of the operation
+     * @return A future that completes with the result of the operation
+     */
+    public <T> CompletableFuture<T> submit(Function<Ticket, T> operation) {
+        return mailbox.submit(() -> operation.apply(this));
+    }
+
+    /**
+     * Copy this ticket, so that it can be read outside of its
+     * mailbox. Only call this in the mailbox, for example with
+     * {@code ticket.submit(Ticket::copy)}.
+     *
+     * @return -
+     */
+    public Ticket copy() {
+        return new Ticket(title, author, channel, open, new ArrayList<>(assignees), new ArrayList<>(steps));
+    }
+
+    /**
+     * Get the context of the guild this ticket belongs to.
+     *
+     * @return -
+     */
+    private GuildContext context() {
+        TextChannel c = TicketBot.getTextChannelById(this.channel);
+        GuildContext context = c == null ? null : GuildContext.of(c.getGuild());
+        return context == null ? GuildContext.main() : context;
+    }
+
+    /**
+     * Format the assignees, one on each line.
+     *
+     * @param ids      The IDs of the assignees
+     * @param resolved The resolved members, which must include all the assignees
+     * @return -
      */
-    public RestAction<Message> sendAssigneesInfo(MessageChannel channel) {
+    private static String formatAssignees(List<Long> ids, Map<Long, CachedMember> resolved) {
         StringBuilder assignees = new StringBuilder();
-        for (int i = 0; i < this.assignees.size(); i++) {
-            Member assignee = TicketBot.config.getGuild().getMemberById(this.assignees.get(i));
+        for (int i = 0; i < ids.size(); i++) {
+            CachedMember assignee = resolved.get(ids.get(i));
             assignees.append(TicketBot.config.ticketDataAssignee()
                     .replace("{INDEX}", String.valueOf(i + 1))
-                    .replace("{NAME}", assignee.getUser().getName())
-                    .replace("{DISCRIM}", assignee.getUser().getDiscriminator())
+                    .replace("{NAME}", assignee.getName())
+                    .replace("{DISCRIM}", assignee.getDiscriminator())
                     .replace("{NICKNAME}", assignee.getEffectiveName()))
                     .append("\n");
         }
-        return channel.sendMessage(new EmbedBuilder()
-                .setTitle(TicketBot.config.ticketDataAssigneesTitle())
-                .setDescription(this.assignees.isEmpty() ? TicketBot.config.listEmptyFormat() : assignees.toString())
-                .setColor(TicketBot.config.getAccentColor())
-                .build());
+        return assignees.toString();
     }
 
     public JsonObject serialize() {
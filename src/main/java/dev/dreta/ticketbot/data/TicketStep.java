@@ -20,9 +20,7 @@ package dev.dreta.ticketbot.data;
 
 import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.extensions.ExtensionClassLoader;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.*;
 
 /**
  * A ticket step represents a configurable step for a
@@ -47,7 +45,6 @@ import lombok.Data;
  * while a {@link TicketStep} is specific to a {@link TicketType}.
  */
 @Data
-@AllArgsConstructor
 public class TicketStep<T> {
     private String title;
     private String description;
@@ -58,6 +55,94 @@ public class TicketStep<T> {
      * its documentation.
      */
     private JsonObject options;
+    /**
+     * The {@link #options} compiled by {@link TicketStepType#compileOptions}.
+     * This is updated whenever the options or the type are changed.
+     */
+    @Setter(AccessLevel.NONE)
+    private Object compiledOptions;
+    // The prompt built from this step, and the generation of the
+    // configuration it was built with.
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile StepPrompt prompt;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile long promptGeneration;
+
+    public TicketStep(String title, String description, Class<TicketStepType<T>> type, JsonObject options) {
+        this.title = title;
+        this.description = description;
+        this.type = type;
+        this.options = options;
+        compile();
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+        prompt = null;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+        prompt = null;
+    }
+
+    public void setType(Class<TicketStepType<T>> type) {
+        this.type = type;
+        compile();
+    }
+
+    public void setOptions(JsonObject options) {
+        this.options = options;
+        compile();
+    }
+
+    /**
+     * Compile the options of this step.
+     *
+     * @throws IllegalArgumentException If the options are invalid for the type of this step
+     */
+    private void compile() {
+        TicketStepType<T> prototype = StepTypeRegistry.entry(type).newInstance();
+        try {
+            compiledOptions = prototype.compileOptions(options);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid options for step \"" + title + "\" (" + type.getName() + "): " + e.getMessage(), e);
+        }
+        buildPrompt(prototype);
+    }
+
+    /**
+     * Get the prompt that asks the question of this step.
+     * <p>
+     * The prompt is built when the step is loaded, and is only
+     * built again if this step or the configuration has changed
+     * since then.
+     *
+     * @return -
+     */
+    public StepPrompt getPrompt() {
+        StepPrompt prompt = this.prompt;
+        if (prompt == null || promptGeneration != TicketBot.config.getGeneration()) {
+            prompt = buildPrompt(StepTypeRegistry.entry(type).newInstance());
+        }
+        return prompt;
+    }
+
+    private StepPrompt buildPrompt(TicketStepType<T> prototype) {
+        // Read the generation first, so that a reload while we are
+        // building causes the prompt to be built again next time.
+        long generation = TicketBot.config.getGeneration();
+        StepPrompt prompt = prototype.buildPrompt(this);
+        this.prompt = prompt;
+        this.promptGeneration = generation;
+        return prompt;
+    }
 
     /**
      * This method attempts to deserialize a TicketStep from a
@@ -71,22 +156,9 @@ public class TicketStep<T> {
      * @return -
      */
     public static TicketStep<?> deserialize(JsonObject j) {
-        try {
-            return new TicketStep<>(j.get("title").getAsString(), j.get("description").getAsString(),
-                    (Class<TicketStepType<Object>>) Class.forName(j.get("type").getAsString()),
-                    j.getAsJsonObject("options"));
-        } catch (ClassNotFoundException e) {
-            // Try to find inside extensions instead
-            for (ExtensionClassLoader loader : TicketBot.extLoader.getLoaders()) {
-                try {
-                    return new TicketStep<>(j.get("title").getAsString(), j.get("description").getAsString(),
-                            (Class<TicketStepType<Object>>) loader.findClass(j.get("type").getAsString()),
-                            j.getAsJsonObject("options"));
-                } catch (ClassNotFoundException ignored) {
-                }
-            }
-            throw new IllegalArgumentException("Couldn't find step type of " + j.get("type").getAsString() + ".");
-        }
+        return new TicketStep<>(j.get("title").getAsString(), j.get("description").getAsString(),
+                StepTypeRegistry.resolve(j.get("type").getAsString()),
+                j.getAsJsonObject("options"));
     }
 
     public JsonObject serialize() {
@@ -20,13 +20,12 @@ package dev.dreta.ticketbot.data;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
-import dev.dreta.ticketbot.TicketBot;
-import lombok.AllArgsConstructor;
+import com.google.gson.JsonParser;
 import lombok.Data;
 
-import java.lang.reflect.Type;
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * A {@link TicketStepData} represents a step in
@@ -53,7 +52,9 @@ import java.util.List;
  * <p>
  * In {@link TicketStepData}, we will store the TITLE as a string,
  * the type as a class reference to {@link TicketStepType},
- * and the answer the user provided as generic T.
+ * and the answer the user provided as generic T. The title and
+ * the type are the same for every ticket of the same {@link TicketType},
+ * so they are kept in a shared {@link TicketStepDescriptor}.
  * <p>
  * But this raises the problem that we will not be able to
  * update a {@link TicketStepData} in case the guild owner changed
@@ -65,18 +66,50 @@ import java.util.List;
  * ANSWER.
  */
 @Data
-@AllArgsConstructor
 public class TicketStepData<T> {
+    private TicketStepDescriptor descriptor;
+    private T answer;
+
+    public TicketStepData(String title, Class<TicketStepType<T>> type, T answer) {
+        this.descriptor = TicketStepDescriptor.of(title, type);
+        this.answer = answer;
+    }
+
+    public String getTitle() {
+        return descriptor.getTitle();
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<TicketStepType<T>> getType() {
+        // The descriptor was always created with a type of this answer type
+        return (Class<TicketStepType<T>>) descriptor.getType();
+    }
+
+    /**
+     * Change the title of this step only.
+     *
+     * @param title The new title
+     * @deprecated The title is shared with the other tickets of the
+     * same {@link TicketType}, use {@link #setDescriptor(TicketStepDescriptor)}
+     * with {@link TicketStepDescriptor#of(String, Class)} instead.
+     */
+    @Deprecated
+    public void setTitle(String title) {
+        this.descriptor = TicketStepDescriptor.of(title, descriptor.getType());
+    }
+
     /**
-     * This static field represents the type of a
-     * list of strings, used in deserializing the
-     * TicketStepData.
+     * Change the type of this step only.
+     *
+     * @param type The new type
+     * @deprecated The type is shared with the other tickets of the
+     * same {@link TicketType}, use {@link #setDescriptor(TicketStepDescriptor)}
+     * with {@link TicketStepDescriptor#of(String, Class)} instead.
      */
-    public static Type STRING_LIST_TYPE = new TypeToken<List<String>>() {
-    }.getType();
-    private String title;
-    private Class<TicketStepType<T>> type;
-    private T answer;
+    @Deprecated
+    public void setType(Class<TicketStepType<T>> type) {
+        this.descriptor = TicketStepDescriptor.of(descriptor.getTitle(), type);
+    }
 
     /**
      * This method attempts to deserialize a TicketStepData from a
@@ -90,53 +123,80 @@ public class TicketStepData<T> {
      * @return -
      */
     public static TicketStepData<?> deserialize(JsonObject j) {
-        Class<TicketStepType<Object>> type;
-        try {
-            type = (Class<TicketStepType<Object>>) Class.forName(j.get("type").getAsString());
-        } catch (ClassNotFoundException ex) {
-            throw new IllegalArgumentException("Couldn't find step type of " + j.get("type").getAsString() + ".");
-        }
+        Class<TicketStepType<Object>> type = StepTypeRegistry.resolve(j.get("type").getAsString());
+        AnswerCodec<Object> codec = AnswerCodecs.get(type);
         JsonElement ans = j.get("answer");
-        Object answer = null;
-        if (ans.isJsonArray()) {
-            answer = TicketBot.gson.fromJson(ans, STRING_LIST_TYPE);
-        } else if (ans.isJsonPrimitive()) {
-            try {
-                // We know for sure the Class.forName is going to succeed,
-                // because it is always a primitive, String or a List type
-                // which always exists.
-                answer = TicketBot.gson.fromJson(ans, Class.forName(j.get("answerType").getAsString()));
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+        Object answer;
+        if (codec == null) {
+            // Without a codec of its own, we have to rely on the
+            // stored answer type.
+            answer = AnswerCodecs.decodeLegacy(ans, j.get("answerType").getAsString());
+        } else {
+            answer = codec.decode(ans);
         }
         return new TicketStepData<>(j.get("title").getAsString(), type, answer);
     }
 
     public JsonObject serialize() {
         JsonObject j = new JsonObject();
-        j.addProperty("title", title);
-        j.addProperty("type", type.getName());
-        // If the answer is a primitive (which in most cases it should),
-        // then add it directly to the JsonObject.
-        if (answer instanceof String) {
-            j.addProperty("answer", (String) answer);
-            j.addProperty("answerType", answer.getClass().getName());
-        } else if (answer instanceof Number) {
-            j.addProperty("answer", (Number) answer);
-            j.addProperty("answerType", answer.getClass().getName());
-        } else if (answer instanceof Character) {
-            j.addProperty("answer", (Character) answer);
-            j.addProperty("answerType", answer.getClass().getName());
-        } else if (answer instanceof Boolean) {
-            j.addProperty("answer", (Boolean) answer);
-            j.addProperty("answerType", answer.getClass().getName());
-        } /* If we are a list, then convert to JSON array */ else if (answer instanceof List) {
-            j.add("answer", TicketBot.gson.toJsonTree(answer).getAsJsonArray());
-            j.addProperty("answerType", List.class.getName());
+        j.addProperty("title", getTitle());
+        j.addProperty("type", getType().getName());
+        AnswerCodec<T> codec = AnswerCodecs.get(getType());
+        if (codec == null) {
+            j.add("answer", AnswerCodecs.encodeLegacy(answer));
+            j.addProperty("answerType", AnswerCodecs.legacyAnswerType(answer));
         } else {
-            throw new IllegalArgumentException("Illegal argument type");
+            j.add("answer", codec.encode(answer));
         }
         return j;
     }
+
+    /**
+     * Read a TicketStepData written by {@link #write}.
+     * <p>
+     * NOTE: Just like {@link #deserialize(JsonObject)}, this
+     * effectively ignores typing.
+     *
+     * @param in The input to read from
+     * @return -
+     * @throws IOException If the input can't be read from
+     */
+    public static TicketStepData<?> read(DataInput in) throws IOException {
+        String title = AnswerCodecs.readString(in);
+        Class<TicketStepType<Object>> type = StepTypeRegistry.resolve(AnswerCodecs.readString(in));
+        AnswerCodec<Object> codec = AnswerCodecs.get(type);
+        Object answer;
+        if (in.readBoolean()) {
+            if (codec == null) {
+                throw new IOException("Step type " + type.getName() + " no longer has a codec.");
+            }
+            answer = codec.read(in);
+        } else {
+            String answerType = AnswerCodecs.readString(in);
+            answer = AnswerCodecs.decodeLegacy(JsonParser.parseString(AnswerCodecs.readString(in)), answerType);
+        }
+        return new TicketStepData<>(title, type, answer);
+    }
+
+    /**
+     * Write this TicketStepData in binary form, with the codec
+     * of its step type. This is smaller and faster to read than
+     * {@link #serialize()}, but unlike the data file, it can't be
+     * read once the step type has a different codec.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output can't be written to
+     */
+    public void write(DataOutput out) throws IOException {
+        AnswerCodecs.writeString(out, getTitle());
+        AnswerCodecs.writeString(out, getType().getName());
+        AnswerCodec<T> codec = AnswerCodecs.get(getType());
+        out.writeBoolean(codec != null);
+        if (codec == null) {
+            AnswerCodecs.writeString(out, AnswerCodecs.legacyAnswerType(answer));
+            AnswerCodecs.writeString(out, AnswerCodecs.encodeLegacy(answer).toString());
+        } else {
+            codec.write(out, answer);
+        }
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * A TicketStepDescriptor is the part of a {@link TicketStepData}
+ * that is the same for every ticket of a {@link TicketType}:
+ * the title of the step and its {@link TicketStepType}.
+ * <p>
+ * All tickets share the same instance for the same title and
+ * step type, so a thousand tickets of the same {@link TicketType}
+ * don't keep a thousand copies of the same titles around.
+ * Always use {@link #of} to get an instance.
+ * <p>
+ * The descriptors are only weakly held, so the descriptors
+ * of steps that were removed or renamed, and of step types of
+ * extensions that were disabled, are forgotten as soon as no
+ * ticket uses them anymore.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class TicketStepDescriptor {
+    private static final Interner<TicketStepDescriptor> descriptors = Interners.newWeakInterner();
+
+    String title;
+    Class<? extends TicketStepType<?>> type;
+
+    /**
+     * Get the shared descriptor for a title and a step type.
+     *
+     * @param title The title of the step
+     * @param type  The type of the step
+     * @return -
+     */
+    public static TicketStepDescriptor of(String title, Class<? extends TicketStepType<?>> type) {
+        return descriptors.intern(new TicketStepDescriptor(title, type));
+    }
+}
@@ -19,7 +19,6 @@
 package dev.dreta.ticketbot.data;
 
 import com.google.gson.JsonObject;
-import dev.dreta.ticketbot.data.types.StepType;
 import net.dv8tion.jda.api.entities.TextChannel;
 
 import java.util.function.Consumer;
@@ -41,11 +40,7 @@ public interface TicketStepType<T> {
      * @return The name
      */
     default String getName() {
-        if (!this.getClass().isAnnotationPresent(StepType.class)) {
-            throw new IllegalStateException("Subclass of TicketStepType (" +
-                    this.getClass().getName() + ") not annotated with @StepType.");
-        }
-        return this.getClass().getAnnotation(StepType.class).name();
+        return StepTypeRegistry.entryOf(getClass()).getName();
     }
 
     /**
@@ -56,11 +51,7 @@ public interface TicketStepType<T> {
      * @return The description
      */
     default String getDescription() {
-        if (!this.getClass().isAnnotationPresent(StepType.class)) {
-            throw new IllegalStateException("Subclass of TicketStepType (" +
-                    this.getClass().getName() + ") not annotated with @StepType.");
-        }
-        return this.getClass().getAnnotation(StepType.class).description();
+        return StepTypeRegistry.entryOf(getClass()).getDescription();
     }
 
     /**
@@ -72,11 +63,7 @@ public interface TicketStepType<T> {
      * @return The emoji
      */
     default String getEmoji() {
-        if (!this.getClass().isAnnotationPresent(StepType.class)) {
-            throw new IllegalStateException("Subclass of TicketStepType (" +
-                    this.getClass().getName() + ") not annotated with @StepType.");
-        }
-        return this.getClass().getAnnotation(StepType.class).emoji();
+        return StepTypeRegistry.entryOf(getClass()).getEmoji();
     }
 
     /**
@@ -85,7 +72,8 @@ public interface TicketStepType<T> {
      * is constructed.
      * <p>
      * For example, you can register the event handler if
-     * you have the needs for it in {@link dev.dreta.ticketbot.TicketBot#jda}.
+     * you have the needs for it with {@link TextChannel#getJDA()},
+     * which is the shard of the guild when TicketBot is sharded.
      * <p>
      * You should also set the variables of channel, question
      * and callback for access in {@link #ask}.
@@ -98,6 +86,61 @@ public interface TicketStepType<T> {
      */
     void init(TextChannel channel, String question, String description, Consumer<T> callback, JsonObject options);
 
+    /**
+     * This method should initialize this TicketStepType for
+     * a configured {@link TicketStep}. It is used instead of
+     * {@link #init(TextChannel, String, String, Consumer, JsonObject)}
+     * when creating tickets, so that the step type can use the
+     * options compiled by {@link #compileOptions} through
+     * {@link TicketStep#getCompiledOptions()} instead of reading
+     * the JsonObject again and again.
+     * <p>
+     * By default, this simply calls the other init method.
+     *
+     * @param channel  The channel to ask in
+     * @param step     The step to ask the question of
+     * @param callback The callback for the results
+     */
+    default void init(TextChannel channel, TicketStep<T> step, Consumer<T> callback) {
+        init(channel, step.getTitle(), step.getDescription(), callback, step.getOptions());
+    }
+
+    /**
+     * Compile the options the administrator specified for
+     * this type into whatever is fastest for this type to
+     * read. This is called once for each {@link TicketStep}
+     * when the {@link TicketType}s are loaded.
+     * <p>
+     * This method should throw an {@link IllegalArgumentException}
+     * if the options are invalid, so that the mistake is found
+     * when loading instead of when someone is creating a ticket.
+     * <p>
+     * By default, the options are used as they are.
+     *
+     * @param options The options the administrator specified for this type
+     * @return The compiled options
+     */
+    default Object compileOptions(JsonObject options) {
+        return options;
+    }
+
+    /**
+     * Build the prompt that asks the question of a step.
+     * This is called once for each {@link TicketStep} when
+     * the {@link TicketType}s are loaded, and again whenever
+     * the step or the configuration changes. The result is
+     * available through {@link TicketStep#getPrompt()}.
+     * <p>
+     * By default, the prompt only shows the title and the
+     * description of the step.
+     *
+     * @param step The step to build the prompt for
+     * @return -
+     */
+    default StepPrompt buildPrompt(TicketStep<T> step) {
+        return StepPrompt.of(step.getTitle(), step.getDescription());
+    }
+
     /**
      * This method should cleanup the TicketStepType.
      * It should be manually called once this step is finished.
@@ -21,8 +21,7 @@ package dev.dreta.ticketbot.data;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -50,10 +49,12 @@ import java.util.Map;
  * @see TicketStep
  */
 @Data
-@AllArgsConstructor
 public class TicketType {
     /**
      * This map map emojis to the TicketType they represent.
+     * This only contains the ticket types of the main guild,
+     * the ticket types of the other guilds are in their
+     * {@link dev.dreta.ticketbot.GuildContext}.
      */
     public static final Map<String, TicketType> types = new HashMap<>();
 
@@ -61,6 +62,57 @@ public class TicketType {
     private String description;
     private String emoji;  // Must be unique across all TicketTypes.
     private List<TicketStep<?>> steps;
+    /**
+     * Whether consecutive steps that are {@link TextStepType}s
+     * should be asked together in a single message. See {@link StepForm}.
+     */
+    private boolean form;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile List<StepForm> forms;
+
+    public TicketType(String name, String description, String emoji, List<TicketStep<?>> steps) {
+        this(name, description, emoji, steps, false);
+    }
+
+    public TicketType(String name, String description, String emoji, List<TicketStep<?>> steps, boolean form) {
+        this.name = name;
+        this.description = description;
+        this.emoji = emoji;
+        this.steps = steps;
+        this.form = form;
+    }
+
+    public void setSteps(List<TicketStep<?>> steps) {
+        this.steps = steps;
+        forms = null;
+    }
+
+    /**
+     * Get the form that starts at a step.
+     *
+     * @param index The index of the step
+     * @return The form, or null if this TicketType is not a form
+     * or no form starts at this step
+     */
+    public StepForm getForm(int index) {
+        if (!form) {
+            return null;
+        }
+        List<StepForm> forms = this.forms;
+        if (forms == null) {
+            forms = StepForm.of(steps);
+            this.forms = forms;
+        }
+        for (StepForm f : forms) {
+            if (f.getStart() == index) {
+                return f;
+            }
+        }
+        return null;
+    }
 
     /**
      * This method attempts to deserialize a TicketType from a
@@ -83,7 +135,9 @@ public class TicketType {
             JsonObject stp = step.getAsJsonObject();
             steps.add(TicketStep.deserialize(stp));
         }
-        return new TicketType(j.get("name").getAsString(), j.get("description").getAsString(), j.get("emoji").getAsString(), steps);
+        // Older data files don't know about forms
+        boolean form = j.has("form") && j.get("form").getAsBoolean();
+        return new TicketType(j.get("name").getAsString(), j.get("description").getAsString(), j.get("emoji").getAsString(), steps, form);
     }
 
     public JsonObject serialize() {
@@ -91,6 +145,7 @@ public class TicketType {
         j.addProperty("name", name);
         j.addProperty("description", description);
         j.addProperty("emoji", emoji);
+        j.addProperty("form", form);
         JsonArray stps = new JsonArray();
         for (TicketStep<?> step : steps) {
             stps.add(step.serialize());
@@ -19,15 +19,17 @@
 package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
-import dev.dreta.ticketbot.ChannelLock;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
+import dev.dreta.ticketbot.data.StepPrompt;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
-import java.util.function.Consumer;
+import java.util.List;
 
 /**
  * The BooleanStepType TicketStepType asks the guild member a
@@ -43,79 +45,76 @@ import java.util.function.Consumer;
         description = "Represents a Yes/No answer from the user.",
         emoji = ""
 )
-public class BooleanStepType extends ListenerAdapter implements TicketStepType<Boolean> {
-    private TextChannel channel;
-    private String question;
-    private String description;
-    private Consumer<Boolean> callback;
-    private JsonObject options;
-    private long messageId;  // We need this so we can know if the guild member is reacting to the correct message
+public class BooleanStepType extends PromptStepType<Boolean, BooleanStepType.Options> {
+    @Value
+    public static class Options {
+        boolean mustBeTrue;
+        boolean mustBeFalse;
 
-    @Override
-    public void init(TextChannel channel, String question, String description, Consumer<Boolean> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-
-        TicketBot.jda.addEventListener(this);
+        public Options(JsonObject options) {
+            // Both default to false
+            mustBeTrue = StepOptions.getBoolean(options, "mustBeTrue", false);
+            mustBeFalse = StepOptions.getBoolean(options, "mustBeFalse", false);
+            if (mustBeTrue && mustBeFalse) {
+                throw new IllegalArgumentException("Options \"mustBeTrue\" and \"mustBeFalse\" can't both be true.");
+            }
+        }
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
-        }
-        ChannelLock.lockedChannels.remove(channel.getIdLong());
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
     }
 
     @Override
-    public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
-        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == messageId && !e.getUser().isBot()) {
-            e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-            if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.booleanYesEmoji())) {
-                // Yes
+    public StepPrompt buildPrompt(TicketStep<Boolean> step) {
+        return buildPrompt(step.getTitle(), step.getDescription(), (Options) step.getCompiledOptions());
+    }
 
-                // Must be false defaults to false
-                if (options.has("mustBeFalse") && options.get("mustBeFalse").getAsBoolean()) {
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.booleanMustBeFalseMsg());
-                    return;
-                }
-                callback.accept(true);
-                cleanup();
-            } else if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.booleanNoEmoji())) {
-                // No
+    private static StepPrompt buildPrompt(String question, String description, Options options) {
+        return new StepPrompt(new EmbedBuilder()
+                .setTitle(question)
+                .setDescription(description + "\n\n" +
+                        TicketBot.config.booleanInfoMsg()
+                                .replace("{YES_EMOJI}", TicketBot.config.booleanYesEmoji())
+                                .replace("{NO_EMOJI}", TicketBot.config.booleanNoEmoji()))
+                .setColor(TicketBot.config.getAccentColor())
+                .build(), List.of(TicketBot.config.booleanYesEmoji(), TicketBot.config.booleanNoEmoji()));
+    }
 
-                // Must be true defaults to false
-                if (options.has("mustBeTrue") && options.get("mustBeTrue").getAsBoolean()) {
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.booleanMustBeTrueMsg());
-                    return;
-                }
-                callback.accept(false);
-                cleanup();
-            }
+    @Override
+    protected boolean locksChannel() {
+        return true;
+    }
+
+    /**
+     * Answer the question, unless the answer is not allowed.
+     *
+     * @param value Whether the guild member selected yes
+     */
+    private void select(boolean value) {
+        if (value && options.isMustBeFalse()) {
+            TicketBot.sendErrorMessage(channel, TicketBot.config.booleanMustBeFalseMsg());
+            return;
         }
+        if (!value && options.isMustBeTrue()) {
+            TicketBot.sendErrorMessage(channel, TicketBot.config.booleanMustBeTrueMsg());
+            return;
+        }
+        answer(value);
     }
 
     @Override
-    public void ask() {
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description + "\n\n" +
-                                TicketBot.config.booleanInfoMsg()
-                                        .replace("{YES_EMOJI}", TicketBot.config.booleanYesEmoji())
-                                        .replace("{NO_EMOJI}", TicketBot.config.booleanNoEmoji()))
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> {
-            messageId = m.getIdLong();
-            // Add the reactions so the user can react
-            m.addReaction(TicketBot.config.booleanYesEmoji()).queue();
-            m.addReaction(TicketBot.config.booleanNoEmoji()).queue();
-            ChannelLock.lockedChannels.add(channel.getIdLong());
-        });
+    public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
+        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == getMessageId()) {
+            ReactionContext.ifHuman(e, user -> {
+                RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
+                if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.booleanYesEmoji())) {
+                    select(true);
+                } else if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.booleanNoEmoji())) {
+                    select(false);
+                }
+            });
+        }
     }
 }
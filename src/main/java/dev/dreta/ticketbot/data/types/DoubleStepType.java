@@ -20,13 +20,12 @@ package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
-import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
+import dev.dreta.ticketbot.data.TextStepType;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
-
-import java.util.function.Consumer;
 
 /**
  * The DoubleStepType TicketStepType allows the guild member
@@ -41,70 +40,63 @@ import java.util.function.Consumer;
         description = "Represents a floating-point number that the user can type in.",
         emoji = ""
 )
-public class DoubleStepType extends ListenerAdapter implements TicketStepType<Double> {
-    private TextChannel channel;
-    private String question;
-    private String description;
-    private Consumer<Double> callback;
-    private JsonObject options;
-    private long messageId;
+public class DoubleStepType extends PromptStepType<Double, DoubleStepType.Options> implements TextStepType<Double> {
+    @Value
+    public static class Options {
+        double min;
+        double max;
+
+        public Options(JsonObject options) {
+            min = StepOptions.getDouble(options, "min", -Double.MAX_VALUE);
+            max = StepOptions.getDouble(options, "max", Double.MAX_VALUE);
+            if (min > max) {
+                throw new IllegalArgumentException("Option \"min\" must not be greater than \"max\".");
+            }
+        }
+    }
 
     @Override
-    public void init(TextChannel channel, String question, String description, Consumer<Double> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-        TicketBot.jda.addEventListener(this);
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
+    public Double parse(String text, TicketStep<Double> step) {
+        return parse(text, (Options) step.getCompiledOptions());
+    }
+
+    private static Double parse(String text, Options options) {
+        double d;
+        try {
+            d = Double.parseDouble(text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(TicketBot.config.doubleFormatErrorMsg(), ex);
         }
+        if (d < options.getMin()) {  // If the value does not match minimum requirements
+            throw new IllegalArgumentException(TicketBot.config.doubleMinErrorMsg()
+                    .replace("{MIN}", String.valueOf(options.getMin())));
+        }
+        if (d > options.getMax()) {  // If the value does not match maximum requirements
+            throw new IllegalArgumentException(TicketBot.config.doubleMaxErrorMsg()
+                    .replace("{MAX}", String.valueOf(options.getMax())));
+        }
+        return d;
     }
 
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
         if (e.getChannel().getIdLong() == channel.getIdLong() && !e.getAuthor().isBot()) {
+            if (TicketBot.config.autoDeleteMessages()) {
+                RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getMessage().delete());
+            }
+            Double value;
             try {
-                double d = Double.parseDouble(e.getMessage().getContentStripped());
-                double min = options.has("min") ? options.get("min").getAsDouble() : Double.MIN_VALUE;
-                double max = options.has("max") ? options.get("max").getAsDouble() : Double.MAX_VALUE;
-
-                if (TicketBot.config.autoDeleteMessages()) {
-                    e.getMessage().delete().queue();
-                }
-                if (d < min) {  // If the value does not match minimum requirements
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.doubleMinErrorMsg()
-                            .replace("{MIN}", String.valueOf(min)));
-                    return;
-                }
-                if (d > max) {  // If the value does not match maximum requirements
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.doubleMaxErrorMsg()
-                            .replace("{MAX}", String.valueOf(max)));
-                    return;
-                }
-                callback.accept(d);
-                cleanup();
-            } catch (NumberFormatException ex) {
-                e.getMessage().delete().queue();
-                TicketBot.sendErrorMessage(channel, TicketBot.config.doubleFormatErrorMsg());
+                value = parse(e.getMessage().getContentStripped(), options);
+            } catch (IllegalArgumentException ex) {
+                TicketBot.sendErrorMessage(e.getChannel(), ex.getMessage());
+                return;
             }
+            answer(value);
         }
     }
-
-    @Override
-    public void ask() {
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description)
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> messageId = m.getIdLong());
-    }
 }
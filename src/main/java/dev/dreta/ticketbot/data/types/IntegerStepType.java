@@ -20,13 +20,12 @@ package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
-import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
+import dev.dreta.ticketbot.data.TextStepType;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
-
-import java.util.function.Consumer;
 
 /**
  * The IntegerStepType TicketStepType allows the guild member
@@ -41,70 +40,63 @@ import java.util.function.Consumer;
         description = "Represents an integer that the user can type in.",
         emoji = ""
 )
-public class IntegerStepType extends ListenerAdapter implements TicketStepType<Integer> {
-    private TextChannel channel;
-    private String question;
-    private String description;
-    private Consumer<Integer> callback;
-    private JsonObject options;
-    private long messageId;
+public class IntegerStepType extends PromptStepType<Integer, IntegerStepType.Options> implements TextStepType<Integer> {
+    @Value
+    public static class Options {
+        int min;
+        int max;
+
+        public Options(JsonObject options) {
+            min = StepOptions.getInt(options, "min", Integer.MIN_VALUE);
+            max = StepOptions.getInt(options, "max", Integer.MAX_VALUE);
+            if (min > max) {
+                throw new IllegalArgumentException("Option \"min\" must not be greater than \"max\".");
+            }
+        }
+    }
 
     @Override
-    public void init(TextChannel channel, String question, String description, Consumer<Integer> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-        TicketBot.jda.addEventListener(this);
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
+    public Integer parse(String text, TicketStep<Integer> step) {
+        return parse(text, (Options) step.getCompiledOptions());
+    }
+
+    private static Integer parse(String text, Options options) {
+        int i;
+        try {
+            i = Integer.parseInt(text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(TicketBot.config.integerFormatErrorMsg(), ex);
         }
+        if (i < options.getMin()) {  // If the value does not match minimum requirements
+            throw new IllegalArgumentException(TicketBot.config.integerMinErrorMsg()
+                    .replace("{MIN}", String.valueOf(options.getMin())));
+        }
+        if (i > options.getMax()) {  // If the value does not match maximum requirements
+            throw new IllegalArgumentException(TicketBot.config.integerMaxErrorMsg()
+                    .replace("{MAX}", String.valueOf(options.getMax())));
+        }
+        return i;
     }
 
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
         if (e.getChannel().getIdLong() == channel.getIdLong() && !e.getAuthor().isBot()) {
+            if (TicketBot.config.autoDeleteMessages()) {
+                RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getMessage().delete());
+            }
+            Integer value;
             try {
-                int i = Integer.parseInt(e.getMessage().getContentStripped());
-                int min = options.has("min") ? options.get("min").getAsInt() : Integer.MIN_VALUE;
-                int max = options.has("max") ? options.get("max").getAsInt() : Integer.MAX_VALUE;
-
-                if (TicketBot.config.autoDeleteMessages()) {
-                    e.getMessage().delete().queue();
-                }
-                if (i < min) {  // If the value does not match minimum requirements
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.integerMinErrorMsg()
-                            .replace("{MIN}", String.valueOf(min)));
-                    return;
-                }
-                if (i > max) {  // If the value does not met maximum requirements
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.integerMaxErrorMsg()
-                            .replace("{MAX}", String.valueOf(max)));
-                    return;
-                }
-                callback.accept(i);
-                cleanup();
-            } catch (NumberFormatException ex) {
-                e.getMessage().delete().queue();
-                TicketBot.sendErrorMessage(channel, TicketBot.config.integerFormatErrorMsg());
+                value = parse(e.getMessage().getContentStripped(), options);
+            } catch (IllegalArgumentException ex) {
+                TicketBot.sendErrorMessage(e.getChannel(), ex.getMessage());
+                return;
             }
+            answer(value);
         }
     }
-
-    @Override
-    public void ask() {
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description)
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> messageId = m.getIdLong());
-    }
 }
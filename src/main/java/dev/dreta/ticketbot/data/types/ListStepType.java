@@ -20,17 +20,19 @@ package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
+import dev.dreta.ticketbot.data.StepPrompt;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
 
 /**
  * The DoubleStepType TicketStepType allows the guild member
@@ -46,72 +48,93 @@ import java.util.function.Consumer;
         description = "Represents a list of text that the user can type in.",
         emoji = ""
 )
-public class ListStepType extends ListenerAdapter implements TicketStepType<List<String>> {
-    private TextChannel channel;
-    private String question;
-    private String description;
+public class ListStepType extends PromptStepType<List<String>, ListStepType.Options> {
     // What the user typed in so far
-    private List<String> currentResponse;
-    private Consumer<List<String>> callback;
-    private JsonObject options;
-    private long messageId;
+    private final List<String> currentResponse = new ArrayList<>();
+
+    @Value
+    public static class Options {
+        int maximumLength;
+        boolean allowEmptyList;
+
+        public Options(JsonObject options) {
+            // maximumLength defaults to no limit
+            maximumLength = StepOptions.getInt(options, "maximumLength", Integer.MAX_VALUE);
+            // allowEmptyList defaults to true
+            allowEmptyList = StepOptions.getBoolean(options, "allowEmptyList", true);
+        }
+    }
+
+    @Override
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
+    }
 
     @Override
-    public void init(TextChannel channel, String question, String description, Consumer<List<String>> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-        this.currentResponse = new ArrayList<>();
-        TicketBot.jda.addEventListener(this);
+    public StepPrompt buildPrompt(TicketStep<List<String>> step) {
+        return buildPrompt(step.getTitle(), step.getDescription(), (Options) step.getCompiledOptions());
+    }
+
+    private static StepPrompt buildPrompt(String question, String description, Options options) {
+        return new StepPrompt(new EmbedBuilder()
+                .setTitle(question)
+                .setDescription(description + "\n\n" +
+                        TicketBot.config.listItemsFormat()
+                                .replace("{ITEMS}", TicketBot.config.listEmptyFormat()) + "\n\n" +
+                        TicketBot.config.listInfoMsg()
+                                .replace("{DELETE_LAST_EMOJI}", TicketBot.config.listDeleteLastEmoji())
+                                .replace("{END_EMOJI}", TicketBot.config.listEndEmoji()))
+                .setColor(TicketBot.config.getAccentColor())
+                .build(), List.of(TicketBot.config.listDeleteLastEmoji(), TicketBot.config.listEndEmoji()));
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
+    protected void sent(Message m) {
+        if (!currentResponse.isEmpty()) {
+            // Items were added while the prompt was being sent
+            updateListMessage();
         }
+        // One after another, so the end emoji will be shown last
+        super.sent(m);
     }
 
     @Override
     public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
-        // allowEmptyList defaults to true
-        boolean allowEmptyList = !options.has("allowEmptyList") || options.get("allowEmptyList").getAsBoolean();
-        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == messageId && !e.getUser().isBot()) {
-            // Automagically remove the reaction from the user
-            e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-            if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.listEndEmoji())) {
-                // End
-                if (currentResponse.isEmpty() && !allowEmptyList) {  // If empty and allowEmptyList is false, send error
-                    TicketBot.sendErrorMessage(channel, TicketBot.config.listEmptyListError());
-                    return;
-                }
-                callback.accept(currentResponse);
-                cleanup();
-            } else if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.listDeleteLastEmoji())) {
-                if (currentResponse.isEmpty()) {  // If empty, send error message
-                    TicketBot.sendErrorMessage(channel, TicketBot.config.listDeleteLastEmptyListErrorMsg());
-                    return;
+        boolean allowEmptyList = options.isAllowEmptyList();
+        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == getMessageId()) {
+            ReactionContext.ifHuman(e, user -> {
+                // Automagically remove the reaction from the user
+                RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
+                if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.listEndEmoji())) {
+                    // End
+                    if (currentResponse.isEmpty() && !allowEmptyList) {  // If empty and allowEmptyList is false, send error
+                        TicketBot.sendErrorMessage(channel, TicketBot.config.listEmptyListError());
+                        return;
+                    }
+                    answer(currentResponse);
+                } else if (e.getReactionEmote().getAsReactionCode().equalsIgnoreCase(TicketBot.config.listDeleteLastEmoji())) {
+                    if (currentResponse.isEmpty()) {  // If empty, send error message
+                        TicketBot.sendErrorMessage(channel, TicketBot.config.listDeleteLastEmptyListErrorMsg());
+                        return;
+                    }
+                    currentResponse.remove(currentResponse.size() - 1);  // Remove the last item
+                    updateListMessage();  // Edit message to reflect update in list content
+                } else {
+                    // Otherwise we will remove the emoji that the guild member wrongly reacted to
+                    RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
                 }
-                currentResponse.remove(currentResponse.size() - 1);  // Remove the last item
-                updateListMessage();  // Edit message to reflect update in list content
-            } else {
-                // Otherwise we will remove the emoji that the guild member wrongly reacted to
-                e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-            }
+            });
         }
     }
 
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
-        int maximumLength = options.has("maximumLength") ? options.get("maximumLength").getAsInt() : Integer.MAX_VALUE;
+        int maximumLength = options.getMaximumLength();
 
         if (e.getChannel().getIdLong() == channel.getIdLong() && !e.getAuthor().isBot()) {
             String msg = e.getMessage().getContentRaw();
             if (TicketBot.config.autoDeleteMessages()) {
-                e.getMessage().delete().queue();
+                RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getMessage().delete());
             }
             if (currentResponse.size() + 1 > maximumLength) {  // If the list is going to exceed the maximum length
                 TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.listLengthErrorMsg().replace("{LENGTH}", String.valueOf(maximumLength)));
@@ -126,51 +149,29 @@ public class ListStepType extends ListenerAdapter implements TicketStepType<List
      * Edit the message to accurately reflect items in the list.
      */
     private void updateListMessage() {
-        channel.retrieveMessageById(messageId)
-                .queue(message -> {
-                    // Build a list of formatted items of this list.
-                    StringBuilder items = new StringBuilder();
-                    for (int i = 0; i < currentResponse.size(); i++) {
-                        items.append(TicketBot.config.listItemFormat()
-                                .replace("{INDEX}", String.valueOf(i + 1))
-                                .replace("{ITEM}", currentResponse.get(i)))
-                                .append("\n");
-                    }
-                    message.editMessage(new EmbedBuilder()
-                            .setTitle(question)
-                            .setDescription(description + "\n\n" +
-                                    TicketBot.config.listItemsFormat()
-                                            .replace("{ITEMS}", currentResponse.isEmpty() ? TicketBot.config.listEmptyFormat() + "\n" : items.toString()) + "\n" +
-                                    TicketBot.config.listInfoMsg()
-                                            .replace("{DELETE_LAST_EMOJI}", TicketBot.config.listDeleteLastEmoji())
-                                            .replace("{END_EMOJI}", TicketBot.config.listEndEmoji()))
-                            .setColor(TicketBot.config.getAccentColor())
-                            .build()).queue();
-                });
-    }
-
-    @Override
-    public void ask() {
-        // Send a message with the items set to "Empty"
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description + "\n\n" +
-                                TicketBot.config.listItemsFormat()
-                                        .replace("{ITEMS}", TicketBot.config.listEmptyFormat()) + "\n\n" +
-                                TicketBot.config.listInfoMsg()
-                                        .replace("{DELETE_LAST_EMOJI}", TicketBot.config.listDeleteLastEmoji())
-                                        .replace("{END_EMOJI}", TicketBot.config.listEndEmoji()))
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> {
-            messageId = m.getIdLong();
-            // Add the reactions so the user can react.
-            m.addReaction(TicketBot.config.listDeleteLastEmoji()).queue();
-            // We want there to be a high probability that the
-            // end emoji will be shown last, however this does
-            // not really matter so we are not enforcing that.
-            m.addReaction(TicketBot.config.listEndEmoji()).queueAfter(50, TimeUnit.MILLISECONDS);
-        });
+        long id = getMessageId();
+        if (id <= 0) {
+            // Not sent yet (the prompt is updated once it is), or already cleaned up
+            return;
+        }
+        // Build a list of formatted items of this list.
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < currentResponse.size(); i++) {
+            items.append(TicketBot.config.listItemFormat()
+                    .replace("{INDEX}", String.valueOf(i + 1))
+                    .replace("{ITEM}", currentResponse.get(i)))
+                    .append("\n");
+        }
+        // Only the latest version is sent if the list changes again before this is sent
+        RestScheduler.queue(Priority.PROMPT, channel, "edit:" + id, channel.editMessageById(id, new EmbedBuilder()
+                .setTitle(step.getTitle())
+                .setDescription(step.getDescription() + "\n\n" +
+                        TicketBot.config.listItemsFormat()
+                                .replace("{ITEMS}", currentResponse.isEmpty() ? TicketBot.config.listEmptyFormat() + "\n" : items.toString()) + "\n" +
+                        TicketBot.config.listInfoMsg()
+                                .replace("{DELETE_LAST_EMOJI}", TicketBot.config.listDeleteLastEmoji())
+                                .replace("{END_EMOJI}", TicketBot.config.listEndEmoji()))
+                .setColor(TicketBot.config.getAccentColor())
+                .build()));
     }
 }
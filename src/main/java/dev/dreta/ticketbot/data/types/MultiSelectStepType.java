@@ -19,19 +19,21 @@
 package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
-import dev.dreta.ticketbot.ChannelLock;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
+import dev.dreta.ticketbot.data.StepPrompt;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
 import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionRemoveEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.Map;
 
 /**
  * The MultiSelectStepType TicketStepType allows the guild member
@@ -53,128 +55,114 @@ import java.util.function.Consumer;
                 "Please enter a list of strings formatted like EMOJI<Space>MESSAGE.",
         emoji = ""
 )
-public class MultiSelectStepType extends ListenerAdapter implements TicketStepType<List<String>> {
+public class MultiSelectStepType extends PromptStepType<List<String>, MultiSelectStepType.Options> {
     private final List<String> currentResponse = new ArrayList<>();
 
-    private TextChannel channel;
-    private String question;
-    private String description;
-    private Consumer<List<String>> callback;
-    private JsonObject options;
-    private long messageId;
+    @Value
+    public static class Options {
+        Map<String, String> selections;
+        int maximumLength;
+        boolean allowEmptyList;
+        boolean emoji;
+
+        public Options(JsonObject options) {
+            selections = StepOptions.getSelections(options);
+            // maximumLength defaults to no limit
+            maximumLength = StepOptions.getInt(options, "maximumLength", Integer.MAX_VALUE);
+            // allowEmptyList defaults to true
+            allowEmptyList = StepOptions.getBoolean(options, "allowEmptyList", true);
+            // emoji defaults to false
+            emoji = StepOptions.getBoolean(options, "emoji", false);
+        }
+    }
 
     @Override
-    public void init(TextChannel channel, String question, String description, Consumer<List<String>> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-        TicketBot.jda.addEventListener(this);
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
-        }
-        ChannelLock.lockedChannels.remove(channel.getIdLong());
+    public StepPrompt buildPrompt(TicketStep<List<String>> step) {
+        return buildPrompt(step.getTitle(), step.getDescription(), (Options) step.getCompiledOptions());
+    }
+
+    private static StepPrompt buildPrompt(String question, String description, Options options) {
+        // Format the available options to ready it for sending
+        StringBuilder availableOptions = new StringBuilder();
+
+        // Everything about this is just so similar to SingleSelectStepType.
+        options.getSelections().forEach((emote, message) -> {
+            availableOptions.append(TicketBot.config.selectOptionFormat()
+                    .replace("{EMOTE}", emote)
+                    .replace("{MESSAGE}", message))
+                    .append("\n");
+        });
+
+        // The end emoji always comes last
+        List<String> reactions = new ArrayList<>(options.getSelections().keySet());
+        reactions.add(TicketBot.config.selectMultiEndEmoji());
+        return new StepPrompt(new EmbedBuilder()
+                .setTitle(question)
+                .setDescription(description + "\n\n" +
+                        TicketBot.config.selectOptionsMsg() + "\n" +
+                        availableOptions.toString() + "\n\n" +
+                        TicketBot.config.selectMultiInfoMsg()
+                                .replace("{EMOTE}", TicketBot.config.selectMultiEndEmoji()))
+                .setColor(TicketBot.config.getAccentColor())
+                .build(), Collections.unmodifiableList(reactions));
+    }
+
+    @Override
+    protected boolean locksChannel() {
+        return true;
     }
 
     @Override
     public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
-        int maximumLength = options.has("maximumLength") ? options.get("maximumLength").getAsInt() : Integer.MAX_VALUE;
-        // allowEmptyList defaults to true
-        boolean allowEmptyList = !options.has("allowEmptyList") || options.get("allowEmptyList").getAsBoolean();
-        // emoji defaults to false
-        boolean emoji = options.has("emoji") && options.get("emoji").getAsBoolean();
+        int maximumLength = options.getMaximumLength();
 
-        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == messageId && !e.getUser().isBot()) {
-            if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.selectMultiEndEmoji())) {
-                if (!allowEmptyList && currentResponse.isEmpty()) {  // If we have an empty list and it's not allowed
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.selectMultiEmptyError());
-                    // Remove the END emoji so the user can correct their input and end again.
-                    e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-                    return;
-                }
-                callback.accept(currentResponse);
-                cleanup();
-            } else if (options.getAsJsonObject("options").has(e.getReactionEmote().getAsReactionCode())) {
-                if (currentResponse.size() + 1 > maximumLength) {  // If we exceeded the maximum length
-                    e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-                    TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.selectMultiLengthError().replace("{LENGTH}", String.valueOf(maximumLength)));
-                    return;
-                }
-                if (emoji) {
-                    currentResponse.add(e.getReactionEmote().getAsReactionCode());
+        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == getMessageId()) {
+            ReactionContext.ifHuman(e, user -> {
+                if (e.getReactionEmote().getAsReactionCode().equals(TicketBot.config.selectMultiEndEmoji())) {
+                    if (!options.isAllowEmptyList() && currentResponse.isEmpty()) {  // If we have an empty list and it's not allowed
+                        TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.selectMultiEmptyError());
+                        // Remove the END emoji so the user can correct their input and end again.
+                        RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
+                        return;
+                    }
+                    answer(currentResponse);
+                } else if (options.getSelections().containsKey(e.getReactionEmote().getAsReactionCode())) {
+                    if (currentResponse.size() + 1 > maximumLength) {  // If we exceeded the maximum length
+                        RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
+                        TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.selectMultiLengthError().replace("{LENGTH}", String.valueOf(maximumLength)));
+                        return;
+                    }
+                    if (options.isEmoji()) {
+                        currentResponse.add(e.getReactionEmote().getAsReactionCode());
+                    } else {
+                        currentResponse.add(options.getSelections().get(e.getReactionEmote().getAsReactionCode()));
+                    }
                 } else {
-                    currentResponse.add(options.getAsJsonObject("options").get(e.getReactionEmote().getAsReactionCode()).getAsString());
+                    // Clear the reaction if you can't actually react to this
+                    RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
                 }
-            } else {
-                // Clear the reaction if you can't actually react to this
-                e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-            }
+            });
         }
     }
 
     @Override
     public void onGuildMessageReactionRemove(GuildMessageReactionRemoveEvent e) {
-        // emoji defaults to false
-        boolean emoji = options.has("emoji") && options.get("emoji").getAsBoolean();
-        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == messageId) {
-            e.retrieveUser().queue(user -> {
-                if (user.isBot()) {
-                    return;
-                }
-
-                if (options.getAsJsonObject("options").has(e.getReactionEmote().getAsReactionCode())) {
-                    if (emoji) {
+        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == getMessageId()) {
+            ReactionContext.ifHuman(e, user -> {
+                String selection = options.getSelections().get(e.getReactionEmote().getAsReactionCode());
+                if (selection != null) {
+                    if (options.isEmoji()) {
                         currentResponse.remove(e.getReactionEmote().getAsReactionCode());
                     } else {
-                        currentResponse.remove(options.getAsJsonObject("options").get(e.getReactionEmote().getAsReactionCode()).getAsString());
+                        currentResponse.remove(selection);
                     }
                 }
             });
         }
     }
-
-    @Override
-    public void ask() {
-        // Format the available options to ready it for sending
-        StringBuilder availableOptions = new StringBuilder();
-
-        // Everything about this is just so similar to SingleSelectStepType.
-        options.getAsJsonObject("options").entrySet().forEach(entry -> {
-            String emote = entry.getKey();
-            String message = entry.getValue().getAsString();
-            availableOptions.append(TicketBot.config.selectOptionFormat()
-                    .replace("{EMOTE}", emote)
-                    .replace("{MESSAGE}", message))
-                    .append("\n");
-        });
-
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description + "\n\n" +
-                                TicketBot.config.selectOptionsMsg() + "\n" +
-                                availableOptions.toString() + "\n\n" +
-                                TicketBot.config.selectMultiInfoMsg()
-                                        .replace("{EMOTE}", TicketBot.config.selectMultiEndEmoji()))
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> {
-            messageId = m.getIdLong();
-            // Add each of the reactions so the user can react
-            for (String emote : options.getAsJsonObject("options").keySet()) {
-                m.addReaction(emote).queue();
-            }
-            // We want there to be a high probability that the
-            // end emoji will be shown last, however this does
-            // not really matter so we are not enforcing that.
-            m.addReaction(TicketBot.config.selectMultiEndEmoji()).queueAfter(50, TimeUnit.MILLISECONDS);
-            ChannelLock.lockedChannels.add(channel.getIdLong());
-        });
-    }
 }
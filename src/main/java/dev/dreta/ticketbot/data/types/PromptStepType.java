@@ -0,0 +1,211 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data.types;
+
+import dev.dreta.ticketbot.ChannelLock;
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.data.AsyncTicketStepType;
+import dev.dreta.ticketbot.data.StepPrompt;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A PromptStepType is an {@link AsyncTicketStepType} that asks its
+ * question by sending the {@link StepPrompt} of the step, and listens
+ * to the guild member until the subclass calls {@link #answer}.
+ * <p>
+ * The compiled options and the message with the prompt are
+ * prepared ahead of time by {@link #prepare}, so asking only has
+ * to send it. The callback based methods of {@link dev.dreta.ticketbot.data.TicketStepType}
+ * are kept in the fields of the step type.
+ *
+ * @param <T> The type that this TicketStepType parses into
+ * @param <O> The type of the compiled options
+ */
+public abstract class PromptStepType<T, O> extends ListenerAdapter implements AsyncTicketStepType<T> {
+    private static final long CLEANED_UP = -1;
+
+    protected TextChannel channel;
+    protected TicketStep<T> step;
+    protected O options;
+    protected StepPrompt prompt;
+    // The prompt, ready to be sent
+    private MessageAction send;
+    private Consumer<T> callback;
+    private final CompletableFuture<T> answer = new CompletableFuture<>();
+    // 0 until the prompt was sent, and CLEANED_UP once it
+    // doesn't have to be deleted anymore. We also need this so we can
+    // know if the guild member is reacting to the correct message.
+    private final AtomicLong messageId = new AtomicLong();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void prepare(TextChannel channel, TicketStep<T> step) {
+        this.channel = channel;
+        this.step = step;
+        // Safe, the options of a step are compiled by its own type
+        this.options = (O) step.getCompiledOptions();
+        this.prompt = step.getPrompt();
+        this.send = channel.sendMessage(prompt.getEmbed());
+    }
+
+    @Override
+    public CompletionStage<T> ask(TextChannel channel, TicketStep<T> step) {
+        if (send == null || this.channel != channel || this.step != step) {
+            prepare(channel, step);
+        }
+        channel.getJDA().addEventListener(this);
+        RestScheduler.queue(Priority.PROMPT, channel, send).thenAccept(m -> {
+            if (!messageId.compareAndSet(0, m.getIdLong())) {
+                // The step was cleaned up before the prompt was sent
+                delete(m.getIdLong());
+                return;
+            }
+            sent(m);
+            if (locksChannel()) {
+                ChannelLock.lockedChannels.add(channel.getIdLong());
+                if (messageId.get() == CLEANED_UP) {
+                    // Cleaned up while the channel was being locked
+                    ChannelLock.lockedChannels.remove(channel.getIdLong());
+                }
+            }
+        });
+        return answer;
+    }
+
+    /**
+     * Called once the prompt was sent, unless the step was
+     * already cleaned up. By default, this adds the reactions
+     * of the prompt, one after another.
+     *
+     * @param m The message with the prompt
+     */
+    protected void sent(Message m) {
+        List<RestAction<Void>> reactions = new ArrayList<>();
+        for (String reaction : prompt.getReactions()) {
+            reactions.add(m.addReaction(reaction));
+        }
+        RestScheduler.queueInOrder(Priority.REACTION, m.getChannel(), reactions);
+    }
+
+    /**
+     * Check whether nobody may send messages in the channel
+     * while this step is asked, for example because it is
+     * answered with reactions. By default, this is false.
+     *
+     * @return -
+     */
+    protected boolean locksChannel() {
+        return false;
+    }
+
+    /**
+     * Answer the question and clean up, unless it was
+     * already answered or cancelled.
+     *
+     * @param value The answer of the guild member
+     */
+    protected void answer(T value) {
+        if (answer.complete(value)) {
+            finish();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (answer.cancel(false)) {
+            finish();
+        }
+    }
+
+    /**
+     * Stop listening and delete the prompt. This is called once,
+     * after the question was answered or cancelled.
+     */
+    protected void finish() {
+        if (channel == null) {
+            // Cancelled before it was even prepared
+            return;
+        }
+        channel.getJDA().removeEventListener(this);
+        long id = messageId.getAndSet(CLEANED_UP);
+        if (id > 0) {
+            delete(id);
+        }
+        if (locksChannel()) {
+            ChannelLock.lockedChannels.remove(channel.getIdLong());
+        }
+    }
+
+    /**
+     * Get the ID of the message with the prompt.
+     *
+     * @return The ID, or a value that no message has if it
+     * wasn't sent yet or was already deleted
+     */
+    protected long getMessageId() {
+        return messageId.get();
+    }
+
+    private void delete(long id) {
+        if (TicketBot.config.autoDeleteMessages()) {
+            RestScheduler.queue(Priority.CLEANUP, channel, channel.deleteMessageById(id));
+        }
+    }
+
+    @Override
+    public void init(TextChannel channel, TicketStep<T> step, Consumer<T> callback) {
+        this.callback = callback;
+        prepare(channel, step);
+    }
+
+    @Override
+    public void ask() {
+        if (callback == null) {
+            throw new IllegalStateException(getClass().getName() + " was asked before it was initialized.");
+        }
+        ask(channel, step).whenComplete((value, ex) -> {
+            // A step type that was cancelled through cleanup() never calls back
+            if (ex == null) {
+                callback.accept(value);
+            } else if (!(ex instanceof CancellationException)) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    public void cleanup() {
+        cancel();
+    }
+}
@@ -19,15 +19,18 @@
 package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
-import dev.dreta.ticketbot.ChannelLock;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
+import dev.dreta.ticketbot.data.StepPrompt;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.ReactionContext;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The SingleSelectStepType TicketStepType allows the guild member
@@ -48,82 +51,70 @@ import java.util.function.Consumer;
                 "Please enter a list of strings formatted like EMOJI<Space>MESSAGE.",
         emoji = ""
 )
-public class SingleSelectStepType extends ListenerAdapter implements TicketStepType<String> {
-    private TextChannel channel;
-    private String question;
-    private String description;
-    private Consumer<String> callback;
-    private JsonObject options;
-    private long messageId;
+public class SingleSelectStepType extends PromptStepType<String, SingleSelectStepType.Options> {
+    @Value
+    public static class Options {
+        Map<String, String> selections;
+        boolean emoji;
 
-    @Override
-    public void init(TextChannel channel, String question, String description, Consumer<String> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-        TicketBot.jda.addEventListener(this);
+        public Options(JsonObject options) {
+            selections = StepOptions.getSelections(options);
+            // emoji defaults to false
+            emoji = StepOptions.getBoolean(options, "emoji", false);
+        }
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
-        }
-        ChannelLock.lockedChannels.remove(channel.getIdLong());
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
     }
 
     @Override
-    public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
-        // emoji defaults to false
-        boolean emoji = options.has("emoji") && options.get("emoji").getAsBoolean();
-
-        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == messageId && !e.getUser().isBot()) {
-            e.getChannel().removeReactionById(messageId, e.getReactionEmote().getAsReactionCode(), e.getUser()).queue();
-            if (options.getAsJsonObject("options").has(e.getReactionEmote().getAsReactionCode())) {
-                if (emoji) {
-                    callback.accept(e.getReactionEmote().getAsReactionCode());
-                } else {
-                    callback.accept(options.getAsJsonObject("options").get(e.getReactionEmote().getAsReactionCode()).getAsString());
-                }
-                cleanup();
-            }
-        }
+    public StepPrompt buildPrompt(TicketStep<String> step) {
+        return buildPrompt(step.getTitle(), step.getDescription(), (Options) step.getCompiledOptions());
     }
 
-    @Override
-    public void ask() {
+    private static StepPrompt buildPrompt(String question, String description, Options options) {
         // Format the available options to ready it for sending
         StringBuilder availableOptions = new StringBuilder();
 
         // For each provided option
-        options.getAsJsonObject("options").entrySet().forEach(entry -> {
-            String emote = entry.getKey();
-            String message = entry.getValue().getAsString();
+        options.getSelections().forEach((emote, message) -> {
             availableOptions.append(TicketBot.config.selectOptionFormat()
                     .replace("{EMOTE}", emote)  // Construct their respective message.
                     .replace("{MESSAGE}", message))
                     .append("\n");
         });
 
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description + "\n\n" +
-                                TicketBot.config.selectOptionsMsg() + "\n" +
-                                availableOptions.toString() + "\n\n" +
-                                TicketBot.config.selectOneInfoMsg())
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> {
-            messageId = m.getIdLong();
-            // Add each of the reactions so the user can react
-            for (String emote : options.getAsJsonObject("options").keySet()) {
-                m.addReaction(emote).queue();
-            }
-            ChannelLock.lockedChannels.add(channel.getIdLong());
-        });
+        return new StepPrompt(new EmbedBuilder()
+                .setTitle(question)
+                .setDescription(description + "\n\n" +
+                        TicketBot.config.selectOptionsMsg() + "\n" +
+                        availableOptions.toString() + "\n\n" +
+                        TicketBot.config.selectOneInfoMsg())
+                .setColor(TicketBot.config.getAccentColor())
+                .build(), List.copyOf(options.getSelections().keySet()));
+    }
+
+    @Override
+    protected boolean locksChannel() {
+        return true;
+    }
+
+    @Override
+    public void onGuildMessageReactionAdd(GuildMessageReactionAddEvent e) {
+        if (e.getChannel().getIdLong() == channel.getIdLong() && e.getMessageIdLong() == getMessageId()) {
+            ReactionContext.ifHuman(e, user -> {
+                RestScheduler.queue(Priority.REACTION, e.getChannel(), e.getChannel().removeReactionById(e.getMessageIdLong(), e.getReactionEmote().getAsReactionCode(), user));
+                String selection = options.getSelections().get(e.getReactionEmote().getAsReactionCode());
+                if (selection != null) {
+                    if (options.isEmoji()) {
+                        answer(e.getReactionEmote().getAsReactionCode());
+                    } else {
+                        answer(selection);
+                    }
+                }
+            });
+        }
     }
 }
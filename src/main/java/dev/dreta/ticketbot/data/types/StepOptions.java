@@ -0,0 +1,95 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data.types;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Utility methods for reading the options of the built-in
+ * step types when they are compiled with
+ * {@link dev.dreta.ticketbot.data.TicketStepType#compileOptions}.
+ * <p>
+ * All of these methods throw an {@link IllegalArgumentException}
+ * explaining what is wrong if an option has the wrong type,
+ * so that mistakes in the data file are found when it is
+ * loaded rather than when someone is creating a ticket.
+ */
+public class StepOptions {
+    public static int getInt(JsonObject options, String key, int def) {
+        if (!options.has(key)) {
+            return def;
+        }
+        try {
+            return options.get(key).getAsInt();
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Option \"" + key + "\" must be an integer.", ex);
+        }
+    }
+
+    public static double getDouble(JsonObject options, String key, double def) {
+        if (!options.has(key)) {
+            return def;
+        }
+        try {
+            return options.get(key).getAsDouble();
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Option \"" + key + "\" must be a number.", ex);
+        }
+    }
+
+    public static boolean getBoolean(JsonObject options, String key, boolean def) {
+        if (!options.has(key)) {
+            return def;
+        }
+        JsonElement value = options.get(key);
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isBoolean()) {
+            throw new IllegalArgumentException("Option \"" + key + "\" must be true or false.");
+        }
+        return value.getAsBoolean();
+    }
+
+    /**
+     * Read the selections of a selection step type, which
+     * map each emoji to their respective selections.
+     *
+     * @param options The options of the step
+     * @return The selections, in the order they were specified
+     */
+    public static Map<String, String> getSelections(JsonObject options) {
+        if (!options.has("options") || !options.get("options").isJsonObject()) {
+            throw new IllegalArgumentException("Option \"options\" must be an object mapping emojis to selections.");
+        }
+        Map<String, String> selections = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : options.getAsJsonObject("options").entrySet()) {
+            if (!entry.getValue().isJsonPrimitive()) {
+                throw new IllegalArgumentException("The selection for " + entry.getKey() + " must be a string.");
+            }
+            selections.put(entry.getKey(), entry.getValue().getAsString());
+        }
+        if (selections.isEmpty()) {
+            throw new IllegalArgumentException("Option \"options\" must contain at least one selection.");
+        }
+        return Collections.unmodifiableMap(selections);
+    }
+}
@@ -20,13 +20,12 @@ package dev.dreta.ticketbot.data.types;
 
 import com.google.gson.JsonObject;
 import dev.dreta.ticketbot.TicketBot;
-import dev.dreta.ticketbot.data.TicketStepType;
-import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.TextChannel;
+import dev.dreta.ticketbot.data.TextStepType;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.utils.RestScheduler;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import lombok.Value;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
-
-import java.util.function.Consumer;
 
 /**
  * The StringStepType TicketStepType allows the guild member
@@ -40,58 +39,49 @@ import java.util.function.Consumer;
         description = "Represents any text that the user can type in.",
         emoji = ""
 )
-public class StringStepType extends ListenerAdapter implements TicketStepType<String> {
-    private TextChannel channel;
-    private String question;
-    private String description;
-    private Consumer<String> callback;
-    private JsonObject options;
-    private long messageId;
+public class StringStepType extends PromptStepType<String, StringStepType.Options> implements TextStepType<String> {
+    @Value
+    public static class Options {
+        int maximumLength;
+
+        public Options(JsonObject options) {
+            // maximumLength defaults to no limit
+            maximumLength = StepOptions.getInt(options, "maximumLength", Integer.MAX_VALUE);
+        }
+    }
 
     @Override
-    public void init(TextChannel channel, String question, String description, Consumer<String> callback, JsonObject options) {
-        this.channel = channel;
-        this.question = question;
-        this.description = description;
-        this.callback = callback;
-        this.options = options;
-        TicketBot.jda.addEventListener(this);
+    public Options compileOptions(JsonObject options) {
+        return new Options(options);
     }
 
     @Override
-    public void cleanup() {
-        TicketBot.jda.removeEventListener(this);
-        if (TicketBot.config.autoDeleteMessages()) {
-            channel.deleteMessageById(messageId).queue();
+    public String parse(String text, TicketStep<String> step) {
+        return parse(text, (Options) step.getCompiledOptions());
+    }
+
+    private static String parse(String text, Options options) {
+        int maximumLength = options.getMaximumLength();
+        if (text.length() + 1 > maximumLength) {  // If the message exceeds the maximum length
+            throw new IllegalArgumentException(TicketBot.config.stringLengthErrorMsg().replace("{LENGTH}", String.valueOf(maximumLength)));
         }
+        return text;
     }
 
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent e) {
-        int maximumLength = options.has("maximumLength") ? options.get("maximumLength").getAsInt() : Integer.MAX_VALUE;
-
         if (e.getChannel().getIdLong() == channel.getIdLong() && !e.getAuthor().isBot()) {
-            String msg = e.getMessage().getContentRaw();
             if (TicketBot.config.autoDeleteMessages()) {
-                e.getMessage().delete().queue();
+                RestScheduler.queue(Priority.CLEANUP, e.getChannel(), e.getMessage().delete());
             }
-            if (e.getMessage().getContentRaw().length() + 1 > maximumLength) {  // If the message exceeds the maximum length
-                TicketBot.sendErrorMessage(e.getChannel(), TicketBot.config.stringLengthErrorMsg().replace("{LENGTH}", String.valueOf(maximumLength)));
+            String value;
+            try {
+                value = parse(e.getMessage().getContentRaw(), options);
+            } catch (IllegalArgumentException ex) {
+                TicketBot.sendErrorMessage(e.getChannel(), ex.getMessage());
                 return;
             }
-            callback.accept(msg);
-            cleanup();
+            answer(value);
         }
     }
-
-    @Override
-    public void ask() {
-        channel.sendMessage(
-                new EmbedBuilder()
-                        .setTitle(question)
-                        .setDescription(description)
-                        .setColor(TicketBot.config.getAccentColor())
-                        .build()
-        ).queue(m -> messageId = m.getIdLong());
-    }
 }
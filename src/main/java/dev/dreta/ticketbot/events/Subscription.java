@@ -0,0 +1,193 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.dreta.ticketbot.events;
+
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.utils.Mailbox;
+import dev.dreta.ticketbot.utils.Metrics;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A Subscription is a subscriber of the {@link TicketEventBus},
+ * together with the events waiting for it.
+ *
+ * @param <E> The type of the events
+ */
+public class Subscription<E extends TicketEvent> {
+    @Getter
+    private final String name;
+    @Getter
+    private final Class<E> type;
+    private final int maxBatch;
+    private final Consumer<List<E>> handler;
+    // The class loader of the handler, to find the subscriptions of an extension
+    @Getter(AccessLevel.PACKAGE)
+    private final ClassLoader owner;
+    private final BlockingQueue<E> queue;
+    // Delivers the events one batch at a time
+    private final Mailbox mailbox = new Mailbox();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    // How long publishing waits for room, 0 to drop right away
+    private volatile long maxWait;
+
+    Subscription(String name, Class<E> type, int maxBatch, Consumer<List<E>> handler, ClassLoader owner) {
+        this.name = name;
+        this.type = type;
+        this.maxBatch = maxBatch;
+        this.handler = handler;
+        this.owner = owner;
+        this.queue = new ArrayBlockingQueue<>(TicketBot.config.eventsQueueSize());
+    }
+
+    /**
+     * Stop receiving events.
+     *
+     * @see TicketEventBus#unsubscribe(Subscription)
+     */
+    public void unsubscribe() {
+        TicketEventBus.unsubscribe(this);
+    }
+
+    /**
+     * Make publishing wait for room in the queue of this subscriber
+     * when it is full, instead of dropping the event right away. The
+     * event is only dropped if there is still no room after that.
+     * <p>
+     * Only do this for a subscriber that must not miss events.
+     * Events are published on the threads of the shards and in the
+     * mailboxes of the tickets, and those are held up while they wait.
+     *
+     * @param maxWait How long to wait at most, in milliseconds, or 0 to never wait
+     * @return This subscription
+     */
+    public Subscription<E> waitForRoom(long maxWait) {
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("The time to wait for room can't be negative.");
+        }
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    void offer(TicketEvent event) {
+        if (!type.isInstance(event)) {
+            return;
+        }
+        if (!enqueue(type.cast(event))) {
+            dropped.incrementAndGet();
+            return;
+        }
+        schedule();
+    }
+
+    private boolean enqueue(E event) {
+        long wait = maxWait;
+        if (wait == 0) {
+            return queue.offer(event);
+        }
+        try {
+            return queue.offer(event, wait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            mailbox.execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        List<E> batch = new ArrayList<>(Math.min(maxBatch, 16));
+        while (queue.drainTo(batch, maxBatch) > 0) {
+            maxLagNanos.accumulateAndGet(System.nanoTime() - batch.get(0).getPublished(), Math::max);
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+            delivered.addAndGet(batch.size());
+            batches.incrementAndGet();
+            batch = new ArrayList<>(Math.min(maxBatch, 16));
+        }
+        scheduled.set(false);
+        // An event might have been added after we found the queue empty
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Get the number of events that were dropped for this
+     * subscriber because its queue was full.
+     *
+     * @return -
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Get how long the oldest event waiting for this
+     * subscriber has been waiting.
+     *
+     * @return The lag in milliseconds, or 0 if nothing is waiting
+     */
+    public long getLag() {
+        E oldest = queue.peek();
+        return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.getPublished());
+    }
+
+    void registerMetrics() {
+        Metrics.register("Events: " + name, this::getStats);
+    }
+
+    void unregisterMetrics() {
+        Metrics.unregister("Events: " + name);
+    }
+
+    /**
+     * Get a human readable summary of how this subscriber
+     * is keeping up.
+     *
+     * @return -
+     */
+    public String getStats() {
+        return "Waiting: " + queue.size() +
+                ", lag " + getLag() + " ms" +
+                ", max lag " + TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get()) + " ms" +
+                ", delivered: " + delivered.get() + " in " + batches.get() + " batches" +
+                ", dropped: " + dropped.get();
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.dreta.ticketbot.events;
+
+import dev.dreta.ticketbot.data.Ticket;
+
+/**
+ * A guild member finished creating a ticket.
+ * The user is the author of the ticket.
+ */
+public class TicketCreatedEvent extends TicketEvent {
+    public TicketCreatedEvent(long guildId, Ticket ticket, long userId) {
+        super(guildId, ticket, userId);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.dreta.ticketbot.events;
+
+import dev.dreta.ticketbot.data.Ticket;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Something that happened to a ticket, published through
+ * the {@link TicketEventBus}.
+ * <p>
+ * Listen to the subclasses to find out about a specific
+ * kind of event, or to this class to find out about all
+ * of them.
+ */
+@Getter
+public abstract class TicketEvent {
+    /**
+     * The ID of the guild of the ticket.
+     */
+    private final long guildId;
+    /**
+     * A copy of the ticket, taken right after it happened.
+     * Later changes to the ticket aren't in it.
+     */
+    private final Ticket ticket;
+    /**
+     * The ID of the guild member who did it.
+     */
+    private final long userId;
+    /**
+     * When it happened, in milliseconds since the epoch.
+     */
+    private final long timestamp = System.currentTimeMillis();
+    // When it was published, to measure how long subscribers take to receive it
+    @Getter(AccessLevel.PACKAGE)
+    private final long published = System.nanoTime();
+
+    protected TicketEvent(long guildId, Ticket ticket, long userId) {
+        this.guildId = guildId;
+        this.ticket = ticket;
+        this.userId = userId;
+    }
+}
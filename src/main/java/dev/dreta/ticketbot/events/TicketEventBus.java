@@ -0,0 +1,123 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.dreta.ticketbot.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The TicketEventBus tells extensions what happens to the
+ * tickets, such as a ticket being created or closed, or a
+ * guild member being assigned to one.
+ * <p>
+ * Every subscriber has its own queue and receives the events
+ * one at a time, in the order they were published, on a thread
+ * of its own. A slow subscriber only falls behind itself: by default
+ * publishing never waits for a subscriber, and once the queue of a
+ * subscriber is full, new events are dropped for that subscriber and
+ * counted. A subscriber that must not miss events can make publishing
+ * wait for room for a while with {@link Subscription#waitForRoom(long)}.
+ * <p>
+ * The ticket of an event is a copy taken when it happened, so
+ * subscribers can read it on their own thread.
+ * <p>
+ * Subscribers that would rather handle many events at once can
+ * subscribe with {@link #subscribeBatched(String, Class, int, Consumer)}.
+ * <p>
+ * How far behind every subscriber is is shown with !ticket stats.
+ */
+public class TicketEventBus {
+    private static final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Receive every event of a type.
+     *
+     * @param name    The name of the subscriber, for !ticket stats
+     * @param type    The type of the events, or {@link TicketEvent} for all of them
+     * @param handler Called with every event
+     * @param <E>     The type of the events
+     * @return The subscription, to unsubscribe with
+     */
+    public static <E extends TicketEvent> Subscription<E> subscribe(String name, Class<E> type, Consumer<? super E> handler) {
+        return add(new Subscription<>(name, type, 1, events -> handler.accept(events.get(0)), handler.getClass().getClassLoader()));
+    }
+
+    /**
+     * Receive every event of a type, many at a time. Whatever
+     * is waiting when the subscriber is ready for more is
+     * delivered at once, so events are never held back to
+     * fill a batch.
+     *
+     * @param name     The name of the subscriber, for !ticket stats
+     * @param type     The type of the events, or {@link TicketEvent} for all of them
+     * @param maxBatch The most events to deliver at once
+     * @param handler  Called with every batch of events, in the order they were published
+     * @param <E>      The type of the events
+     * @return The subscription, to unsubscribe with
+     */
+    public static <E extends TicketEvent> Subscription<E> subscribeBatched(String name, Class<E> type, int maxBatch, Consumer<List<E>> handler) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("The batches must hold at least 1 event.");
+        }
+        return add(new Subscription<>(name, type, maxBatch, handler, handler.getClass().getClassLoader()));
+    }
+
+    private static <E extends TicketEvent> Subscription<E> add(Subscription<E> subscription) {
+        subscriptions.add(subscription);
+        subscription.registerMetrics();
+        return subscription;
+    }
+
+    /**
+     * Stop receiving events. The events that are already
+     * waiting for the subscriber are still delivered.
+     *
+     * @param subscription The subscription
+     */
+    public static void unsubscribe(Subscription<?> subscription) {
+        if (subscriptions.remove(subscription)) {
+            subscription.unregisterMetrics();
+        }
+    }
+
+    /**
+     * Publish an event to every subscriber of its type.
+     *
+     * @param event The event
+     */
+    public static void publish(TicketEvent event) {
+        for (Subscription<?> subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Remove every subscription of an extension. This is
+     * done when the extension is disabled.
+     *
+     * @param loader The class loader of the extension
+     */
+    public static void invalidate(ClassLoader loader) {
+        for (Subscription<?> subscription : subscriptions) {
+            if (subscription.getOwner() == loader) {
+                unsubscribe(subscription);
+            }
+        }
+    }
+}
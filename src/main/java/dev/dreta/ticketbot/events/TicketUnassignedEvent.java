@@ -0,0 +1,37 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.dreta.ticketbot.events;
+
+import dev.dreta.ticketbot.data.Ticket;
+import lombok.Getter;
+
+/**
+ * A manager unassigned a guild member from a ticket.
+ */
+@Getter
+public class TicketUnassignedEvent extends TicketEvent {
+    /**
+     * The ID of the guild member who was unassigned.
+     */
+    private final long assignee;
+
+    public TicketUnassignedEvent(long guildId, Ticket ticket, long userId, long assignee) {
+        super(guildId, ticket, userId);
+        this.assignee = assignee;
+    }
+}
@@ -36,7 +36,7 @@ public abstract class Extension {
     private final ExtensionMetaFile meta;
     @Getter
     @Setter(AccessLevel.PACKAGE)
-    private boolean enabled;
+    private volatile boolean enabled;
     @Getter
     @Setter(AccessLevel.PACKAGE)
     private File file;
@@ -0,0 +1,232 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.extensions;
+
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.utils.Metrics;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An ExtensionBulkhead runs the code of one extension on a thread
+ * of its own: the event listeners it registered and its
+ * {@link Extension#onEnable()}. A slow extension can then only
+ * hold up itself, and not the shards or the other extensions.
+ * <p>
+ * Events are handed to the extension in order. If the extension
+ * falls so far behind that {@link dev.dreta.ticketbot.utils.DataConfiguration#extensionsQueueSize()}
+ * events are waiting, new events are dropped for it.
+ * <p>
+ * A watchdog checks every bulkhead regularly. When a listener takes
+ * longer than the budget of the extension
+ * ({@link dev.dreta.ticketbot.utils.DataConfiguration#extensionsEventBudget(String)}),
+ * what it is doing is printed, and an extension that is too slow
+ * {@link dev.dreta.ticketbot.utils.DataConfiguration#extensionsMaxOffenses()}
+ * times is disabled, if that is configured.
+ */
+public class ExtensionBulkhead {
+    private static final Map<Extension, ExtensionBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private static final long WATCHDOG_INTERVAL = 100;
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TicketBot watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        watchdog.scheduleWithFixedDelay(ExtensionBulkhead::checkAll, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private final Extension extension;
+    private final String id;
+    private final ThreadPoolExecutor executor;
+
+    // What the thread of the extension is currently doing
+    private volatile Thread worker;
+    private volatile long taskId;
+    private volatile long taskStart;
+    private volatile long taskBudget;
+    private volatile String task;
+    private volatile long reportedTaskId = -1;
+
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong handlingNanos = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong offenses = new AtomicLong();
+
+    private ExtensionBulkhead(Extension extension) {
+        this.extension = extension;
+        this.id = extension.getMeta().getID();
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(TicketBot.config.extensionsQueueSize()), r -> {
+            Thread thread = new Thread(r, "TicketBot extension " + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.register("Extension " + id, this::getStats);
+    }
+
+    /**
+     * Get the bulkhead of an extension, creating it if needed.
+     * No bulkhead is created for an extension that isn't enabled,
+     * so that an event racing with {@link #close} doesn't bring back
+     * the bulkhead of an extension that was just disabled.
+     *
+     * @param extension The extension
+     * @return The bulkhead, or null if the extension isn't enabled
+     */
+    public static ExtensionBulkhead of(Extension extension) {
+        ExtensionBulkhead bulkhead = bulkheads.get(extension);
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+        // The extension is disabled before its bulkhead is closed, so
+        // either close() removes the bulkhead created here, or this
+        // sees that the extension is disabled.
+        return bulkheads.compute(extension, (e, existing) ->
+                existing != null || !e.isEnabled() ? existing : new ExtensionBulkhead(e));
+    }
+
+    /**
+     * Stop the bulkhead of an extension, after the extension
+     * was disabled.
+     *
+     * @param extension The extension
+     */
+    public static void close(Extension extension) {
+        ExtensionBulkhead bulkhead = bulkheads.remove(extension);
+        if (bulkhead != null) {
+            Metrics.unregister("Extension " + bulkhead.id);
+            bulkhead.executor.shutdown();
+        }
+    }
+
+    /**
+     * Hand an event to a listener of the extension.
+     * This never waits for the listener.
+     *
+     * @param listener The listener
+     * @param e        The event
+     */
+    public void dispatch(EventListener listener, GenericEvent e) {
+        if (!extension.isEnabled()) {
+            return;
+        }
+        try {
+            executor.execute(() -> run(listener.getClass().getName() + " handling " + e.getClass().getSimpleName(),
+                    TimeUnit.MILLISECONDS.toNanos(TicketBot.config.extensionsEventBudget(id)),
+                    () -> listener.onEvent(e)));
+        } catch (RejectedExecutionException ex) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Run {@link Extension#onEnable()} on the thread of the extension.
+     *
+     * @return A future that completes once the extension is enabled
+     */
+    public Future<?> enable() {
+        return executor.submit(() -> run("onEnable",
+                TimeUnit.MILLISECONDS.toNanos(TicketBot.config.extensionsEnableBudget()), extension::onEnable));
+    }
+
+    private void run(String what, long budget, Runnable action) {
+        worker = Thread.currentThread();
+        task = what;
+        taskBudget = budget;
+        taskStart = System.nanoTime();
+        taskId++;
+        try {
+            action.run();
+        } catch (RuntimeException ex) {
+            if (what.equals("onEnable")) {
+                throw ex;
+            }
+            ex.printStackTrace();
+        } finally {
+            long took = System.nanoTime() - taskStart;
+            taskStart = 0;
+            handled.incrementAndGet();
+            handlingNanos.addAndGet(took);
+        }
+    }
+
+    private static void checkAll() {
+        for (ExtensionBulkhead bulkhead : bulkheads.values()) {
+            try {
+                bulkhead.check();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Report the task that is running right now if it is over
+     * its budget. Every task is only reported once.
+     */
+    private void check() {
+        long start = taskStart;
+        long id = taskId;
+        if (start == 0 || id == reportedTaskId || System.nanoTime() - start <= taskBudget) {
+            return;
+        }
+        reportedTaskId = id;
+        String what = task;
+        // Taking long to enable is reported, but not held against the extension
+        long count = what.equals("onEnable") ? offenses.get() : offenses.incrementAndGet();
+
+        StringBuilder report = new StringBuilder("Extension ").append(id)
+                .append(" is taking more than ").append(TimeUnit.NANOSECONDS.toMillis(taskBudget))
+                .append(" ms in ").append(what).append(":");
+        Thread thread = worker;
+        if (thread != null) {
+            for (StackTraceElement element : thread.getStackTrace()) {
+                report.append("\n\tat ").append(element);
+            }
+        }
+        System.err.println(report);
+
+        int maxOffenses = TicketBot.config.extensionsMaxOffenses();
+        if (!what.equals("onEnable") && maxOffenses > 0 && count >= maxOffenses && extension.isEnabled()) {
+            System.err.println("Disabling extension " + id + " because it was too slow " + count + " times.");
+            // Don't let onDisable hold up the watchdog
+            CompletableFuture.runAsync(() -> TicketBot.extLoader.disableExtension(extension));
+        }
+    }
+
+    /**
+     * Get a human readable summary of the events of this extension.
+     *
+     * @return -
+     */
+    public String getStats() {
+        long h = handled.get();
+        return "Handled: " + h +
+                ", waiting: " + executor.getQueue().size() +
+                ", dropped: " + dropped.get() +
+                ", too slow: " + offenses.get() +
+                ", avg " + (h == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(handlingNanos.get() / h)) + " us";
+    }
+}
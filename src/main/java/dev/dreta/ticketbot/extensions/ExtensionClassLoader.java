@@ -2,6 +2,7 @@ package dev.dreta.ticketbot.extensions;
 
 import com.google.common.io.ByteStreams;
 import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.utils.GeneratedIndex;
 import lombok.Getter;
 
 import java.io.File;
@@ -12,7 +13,9 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.CodeSource;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -55,9 +58,12 @@ public class ExtensionClassLoader extends URLClassLoader {
         this.file = file;
         this.loader = loader;
 
-        String mainClassName = manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+        // The index knows the main class if the extension was compiled with the IndexProcessor
+        List<String> indexed = GeneratedIndex.of(this).getExtensions();
+        String mainClassName = indexed.size() == 1 ? indexed.get(0)
+                : manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
         if (mainClassName == null) {
-            throw new IllegalStateException("You must specify the main class of your extension in the manifest!");
+            throw new IllegalStateException("You must specify the main class of your extension in the manifest, or compile it with the TicketBot jar on the class path!");
         }
         try {
             Class<?> clazz = findClass(mainClassName);
@@ -75,9 +81,27 @@ public class ExtensionClassLoader extends URLClassLoader {
             throw new IllegalStateException("Main class \"" + mainClassName + "\" must contain a public constructor without arguments.");
         }
 
+        // Let the other extensions find our classes without asking every extension
+        loader.index(this);
         loader.getLoaders().add(this);
     }
 
+    /**
+     * Get the names of all the classes in the jar of this extension.
+     *
+     * @return -
+     */
+    Set<String> getClassNames() {
+        Set<String> names = new HashSet<>();
+        for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+            String path = entries.nextElement().getName();
+            if (path.endsWith(".class") && !path.startsWith("META-INF/") && !path.equals("module-info.class")) {
+                names.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+            }
+        }
+        return names;
+    }
+
     @Override
     public Class<?> findClass(String name) throws ClassNotFoundException {
         if (name.startsWith("dev.dreta.ticketbot.")) {
@@ -86,58 +110,60 @@ public class ExtensionClassLoader extends URLClassLoader {
         }
 
         Class<?> result = classes.get(name);
-        if (result == null) {
-            // This class isn't available in our own extension. Let's check other extensions:
-            for (ExtensionClassLoader loader : loader.getLoaders()) {
-                if (loader != this && loader.getExtension() != null && loader.getExtension().isEnabled() && loader.getClasses().containsKey(name)) {
-                    result = loader.getClasses().get(name);
-                }
+        if (result != null) {
+            return result;
+        }
+
+        String path = name.replace('.', '/') + ".class";
+        JarEntry entry = jar.getJarEntry(path);
+        if (entry == null) {
+            // This class isn't in our own extension, the index knows which extension has it
+            ExtensionClassLoader owner = loader.getIndexedLoader(name);
+            if (owner == null || owner == this) {
+                throw new ClassNotFoundException(name);
             }
+            result = owner.findClass(name);
+            classes.put(name, result);
+            return result;
+        }
 
-            if (result == null) {
-                // This class isn't loaded yet. We will load it in our component now.
-                String path = name.replace('.', '/') + ".class";
-                JarEntry entry = jar.getJarEntry(path);
+        synchronized (getClassLoadingLock(name)) {
+            result = classes.get(name);
+            if (result != null) {
+                return result;
+            }
 
-                if (entry != null) {
-                    // Define the class.
-                    byte[] classBytes;
+            // Define the class.
+            byte[] classBytes;
 
-                    try (InputStream is = jar.getInputStream(entry)) {
-                        classBytes = ByteStreams.toByteArray(is);
-                    } catch (IOException ex) {
-                        throw new ClassNotFoundException(name, ex);
-                    }
+            try (InputStream is = jar.getInputStream(entry)) {
+                classBytes = ByteStreams.toByteArray(is);
+            } catch (IOException ex) {
+                throw new ClassNotFoundException(name, ex);
+            }
 
-                    int dot = name.lastIndexOf('.');
-                    if (dot != -1) {
-                        String pkgName = name.substring(0, dot);
+            int dot = name.lastIndexOf('.');
+            if (dot != -1) {
+                String pkgName = name.substring(0, dot);
+                if (getDefinedPackage(pkgName) == null) {
+                    try {
+                        if (manifest != null) {
+                            definePackage(pkgName, manifest, url);
+                        } else {
+                            definePackage(pkgName, null, null, null, null, null, null, null);
+                        }
+                    } catch (IllegalArgumentException ex) {
                         if (getDefinedPackage(pkgName) == null) {
-                            try {
-                                if (manifest != null) {
-                                    definePackage(pkgName, manifest, url);
-                                } else {
-                                    definePackage(pkgName, null, null, null, null, null, null, null);
-                                }
-                            } catch (IllegalArgumentException ex) {
-                                if (getDefinedPackage(pkgName) == null) {
-                                    throw new IllegalStateException("Cannot find package " + pkgName);
-                                }
-                            }
+                            throw new IllegalStateException("Cannot find package " + pkgName);
                         }
                     }
-
-                    result = defineClass(name, classBytes, 0, classBytes.length, new CodeSource(url, entry.getCodeSigners()));
-                }
-
-                if (result == null) {
-                    result = super.findClass(name);
                 }
             }
 
+            result = defineClass(name, classBytes, 0, classBytes.length, new CodeSource(url, entry.getCodeSigners()));
             classes.put(name, result);
+            return result;
         }
-        return result;
     }
 
     @Override
@@ -18,16 +18,36 @@
 
 package dev.dreta.ticketbot.extensions;
 
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.commands.TicketWizard;
+import dev.dreta.ticketbot.data.StepTypeRegistry;
+import dev.dreta.ticketbot.events.TicketEventBus;
+import dev.dreta.ticketbot.utils.Metrics;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.Value;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -41,7 +61,21 @@ public class ExtensionLoader {
     @Getter
     private final File extensionsDir;
     @Getter
-    private final Set<ExtensionClassLoader> loaders = new HashSet<>();
+    // Extensions can be disabled by the watchdog of the bulkheads at any time
+    private final Set<ExtensionClassLoader> loaders = ConcurrentHashMap.newKeySet();
+    // Maps the name of every class in every extension to the extension that has it,
+    // so that classes can be found without asking every extension
+    private final Map<String, ExtensionClassLoader> classIndex = new ConcurrentHashMap<>();
+    // The extensions being reloaded, whose step types can't be used by new wizards
+    private final Set<ExtensionClassLoader> reloading = ConcurrentHashMap.newKeySet();
+    // The class loaders of reloaded extensions, until they are garbage collected
+    private final List<WeakReference<ExtensionClassLoader>> retired = new CopyOnWriteArrayList<>();
+    // Reloads one extension at a time
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "TicketBot extension reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public File[] getAvailableExtensions() {
         return extensionsDir.listFiles(file -> file.getName().endsWith(".jar") && !file.isHidden() && file.isFile());
@@ -67,6 +101,70 @@ public class ExtensionLoader {
         return null;
     }
 
+    /**
+     * Add the classes of an extension to the index. If two
+     * extensions have a class with the same name, the one
+     * opened first keeps it.
+     *
+     * @param loader The class loader of the extension
+     */
+    void index(ExtensionClassLoader loader) {
+        for (String name : loader.getClassNames()) {
+            ExtensionClassLoader existing = classIndex.putIfAbsent(name, loader);
+            if (existing != null && existing != loader) {
+                System.err.println("Class " + name + " of extension " + loader.getExtension().getMeta().getID() +
+                        " is also in extension " + existing.getExtension().getMeta().getID() + ", ignoring it.");
+            }
+        }
+    }
+
+    /**
+     * Remove the classes of an extension from the index.
+     * Classes that another extension also has are then
+     * found in that extension.
+     *
+     * @param loader The class loader of the extension
+     */
+    void unindex(ExtensionClassLoader loader) {
+        classIndex.values().removeIf(indexed -> indexed == loader);
+        for (ExtensionClassLoader ldr : loaders) {
+            if (ldr != loader) {
+                for (String name : ldr.getClassNames()) {
+                    classIndex.putIfAbsent(name, ldr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the class loader of the extension that has a class.
+     *
+     * @param name The fully qualified name of the class
+     * @return The class loader, or null if no extension has this class
+     */
+    public ExtensionClassLoader getIndexedLoader(String name) {
+        return classIndex.get(name);
+    }
+
+    /**
+     * Find a class in whichever extension has it.
+     *
+     * @param name The fully qualified name of the class
+     * @return The class, or null if no extension has it
+     */
+    public Class<?> lookupClass(String name) {
+        ExtensionClassLoader loader = classIndex.get(name);
+        if (loader == null) {
+            return null;
+        }
+        try {
+            return loader.findClass(name);
+        } catch (ClassNotFoundException ex) {
+            // The jar was changed after it was opened
+            return null;
+        }
+    }
+
     public ExtensionClassLoader getOrCreateLoader(File file) throws IOException, InvocationTargetException, InstantiationException, IllegalAccessException {
         ExtensionClassLoader loader = null;
         for (ExtensionClassLoader ldr : loaders) {
@@ -81,13 +179,30 @@ public class ExtensionLoader {
         return loader;
     }
 
+    /**
+     * Enable an extension. {@link Extension#onEnable()} is run
+     * in the bulkhead of the extension, and if it takes longer than
+     * {@link dev.dreta.ticketbot.utils.DataConfiguration#extensionsEnableBudget()},
+     * TicketBot carries on starting while the extension finishes
+     * enabling in the background.
+     *
+     * @param loader The class loader of the extension
+     */
     public void enableExtension(ExtensionClassLoader loader) {
+        Extension extension = loader.getExtension();
+        String id = extension.getMeta().getID();
+        System.out.println("Loading " + id);
+        extension.setEnabled(true);
+        Future<?> enabling = ExtensionBulkhead.of(extension).enable();
         try {
-            System.out.println("Loading " + loader.getExtension().getMeta().getID());
-            loader.getExtension().setEnabled(true);
-            loader.getExtension().onEnable();
-        } catch (Exception ex) {
-            throw new RuntimeException("Unable to enable extension " + loader.getExtension().getMeta().getID(), ex);
+            enabling.get(TicketBot.config.extensionsEnableBudget(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            System.err.println("Extension " + id + " is taking long to enable, continuing without waiting for it.");
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Unable to enable extension " + id, ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while enabling extension " + id, ex);
         }
     }
 
@@ -97,11 +212,30 @@ public class ExtensionLoader {
             extension.onDisable();
         } catch (Exception ex) {
             throw new RuntimeException("Unable to disable extension " + extension.getMeta().getID(), ex);
+        } finally {
+            ExtensionBulkhead.close(extension);
         }
 
         // Unload the classes
         ExtensionClassLoader loader = extension.getClassLoader();
         loaders.remove(loader);
+        unindex(loader);
+        StepTypeRegistry.invalidate(loader);
+        TicketBot.stepTypes.removeIf(type -> type.getClassLoader() == loader);
+        Metrics.invalidate(loader);
+        TicketEventBus.invalidate(loader);
+        // Remove the listeners that the extension forgot to remove itself
+        if (TicketBot.jda != null) {
+            List<Object> forgotten = new ArrayList<>();
+            for (Object listener : TicketBot.getRegisteredListeners()) {
+                if (listener.getClass().getClassLoader() == loader) {
+                    forgotten.add(listener);
+                }
+            }
+            if (!forgotten.isEmpty()) {
+                TicketBot.removeEventListener(forgotten.toArray());
+            }
+        }
         for (ExtensionClassLoader ldr : loaders) {
             // Cleanup the caches of the other extensions to
             // ensure no one can access classes of disabled
@@ -118,4 +252,219 @@ public class ExtensionLoader {
             }
         }
     }
+
+    /**
+     * Check whether a class belongs to an extension that is
+     * being reloaded right now.
+     *
+     * @param clazz The class
+     * @return -
+     */
+    public boolean isReloading(Class<?> clazz) {
+        return clazz.getClassLoader() instanceof ExtensionClassLoader && reloading.contains(clazz.getClassLoader());
+    }
+
+    /**
+     * Reload an extension from its jar, while TicketBot keeps running.
+     * <ol>
+     * <li>New tickets can't be created with the step types of the
+     * extension any more.</li>
+     * <li>The tickets that are being created with them get
+     * {@link dev.dreta.ticketbot.utils.DataConfiguration#extensionsDrainTimeout()}
+     * to finish, and are stopped after that.</li>
+     * <li>The extension is disabled, its jar is opened again and
+     * enabled, and the ticket types and the tickets that use its step
+     * types are pointed at the new classes, see {@link StepRebinding}.
+     * If that fails, the old version is enabled again instead.</li>
+     * <li>The old classes of the extension are checked to be removed
+     * from memory, so that reloading many times doesn't use up more
+     * and more memory.</li>
+     * </ol>
+     *
+     * @param id The ID of the extension
+     * @return A future that completes once the extension is reloaded
+     */
+    public CompletableFuture<ReloadResult> reloadExtension(String id) {
+        // Only the ID is kept here, as anything else would keep the old classes in memory
+        return CompletableFuture.supplyAsync(() -> reload(id), reloader);
+    }
+
+    private ReloadResult reload(String id) {
+        long start = System.nanoTime();
+        Extension extension = getExtension(id);
+        if (extension == null) {
+            throw new IllegalArgumentException("There is no extension called " + id + ".");
+        }
+        ExtensionClassLoader old = extension.getClassLoader();
+        File file = old.getFile();
+        System.out.println("Reloading " + id);
+
+        int drained;
+        int aborted;
+        ExtensionClassLoader loader = null;
+        boolean swapped = false;
+        reloading.add(old);
+        try {
+            drained = TicketWizard.using(old).size();
+            aborted = drain(old);
+            // The old step types are still needed to store their answers
+            StepRebinding rebinding = StepRebinding.collect(old);
+            try {
+                disableExtension(extension);
+                loader = getOrCreateLoader(file);
+                enableExtension(loader);
+                swapped = true;
+            } catch (IOException | ReflectiveOperationException ex) {
+                throw new CompletionException(ex);
+            } finally {
+                if (!swapped) {
+                    restore(old, loader);
+                }
+                // Whichever version is enabled now, the ticket types and
+                // the tickets must not refer to the other one
+                rebinding.apply();
+            }
+        } finally {
+            reloading.remove(old);
+        }
+        extension = null;
+        try {
+            old.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        // Anything that looked up the old step types in the meantime
+        StepTypeRegistry.invalidate(old);
+
+        WeakReference<ExtensionClassLoader> reference = new WeakReference<>(old);
+        old = null;
+        retired.add(reference);
+        boolean unloaded = awaitCollected(reference, TicketBot.config.extensionsUnloadTimeout());
+        if (!unloaded) {
+            System.err.println("The old version of extension " + id + " is still in memory after reloading it.");
+        }
+        return new ReloadResult(loader.getExtension(), drained, aborted, unloaded,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Enable the old version of an extension again, after
+     * reloading it failed.
+     *
+     * @param old    The class loader of the old version
+     * @param loader The class loader of the new version, or null if it couldn't be opened
+     */
+    private void restore(ExtensionClassLoader old, ExtensionClassLoader loader) {
+        System.err.println("Reloading extension " + old.getExtension().getMeta().getID() + " failed, enabling the old version again.");
+        if (loader != null && loaders.contains(loader)) {
+            try {
+                disableExtension(loader.getExtension());
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if (loader != null) {
+            try {
+                loader.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        try {
+            loaders.add(old);
+            index(old);
+            if (!old.getExtension().isEnabled()) {
+                enableExtension(old);
+            }
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Wait for the wizards using the step types of an extension
+     * to finish, and stop those that don't finish in time.
+     *
+     * @param loader The class loader of the extension
+     * @return The number of wizards that had to be stopped
+     */
+    private int drain(ExtensionClassLoader loader) {
+        long deadline = System.currentTimeMillis() + TicketBot.config.extensionsDrainTimeout();
+        List<TicketWizard> remaining = TicketWizard.using(loader);
+        while (!remaining.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            remaining = TicketWizard.using(loader);
+        }
+        for (TicketWizard wizard : remaining) {
+            wizard.abort(new RejectedExecutionException("Extension " + loader.getExtension().getMeta().getID() + " is being reloaded"));
+        }
+        return remaining.size();
+    }
+
+    /**
+     * Wait for something to be garbage collected.
+     *
+     * @param reference A weak reference to it
+     * @param timeout   How long to wait, in milliseconds
+     * @return Whether it was garbage collected
+     */
+    private static boolean awaitCollected(WeakReference<?> reference, long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (reference.get() != null) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return reference.get() == null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a human readable summary of the extensions.
+     *
+     * @return -
+     */
+    public String getStats() {
+        retired.removeIf(reference -> reference.get() == null);
+        return "Loaded: " + loaders.size() +
+                ", old versions still in memory: " + retired.size();
+    }
+
+    /**
+     * What happened when an extension was reloaded.
+     */
+    @Value
+    public static class ReloadResult {
+        /**
+         * The new instance of the extension.
+         */
+        Extension extension;
+        /**
+         * The number of tickets that were being created with the extension.
+         */
+        int drained;
+        /**
+         * The number of those that had to be stopped.
+         */
+        int aborted;
+        /**
+         * Whether the old version of the extension was removed from memory.
+         */
+        boolean unloaded;
+        /**
+         * How long reloading took, in milliseconds.
+         */
+        long millis;
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.extensions;
+
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.GuildContext;
+import dev.dreta.ticketbot.data.StepTypeRegistry;
+import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.data.TicketStepData;
+import dev.dreta.ticketbot.data.TicketStepType;
+import dev.dreta.ticketbot.data.TicketType;
+import lombok.AllArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A StepRebinding points the ticket types and the tickets that
+ * use the step types of an extension at the step types of another
+ * version of the extension, without loading the tickets again.
+ * <p>
+ * The answers are stored with the codecs of the old version in
+ * {@link #collect}, while it is still enabled, and read again with
+ * the codecs of whichever version is enabled in {@link #apply}.
+ * Everything is changed in place, so the tickets and ticket types
+ * that are in use elsewhere stay the same objects, and the tickets
+ * that don't use the extension aren't touched at all.
+ */
+class StepRebinding {
+    private final List<TicketStep<?>> steps = new ArrayList<>();
+    private final List<TicketType> types = new ArrayList<>();
+    private final List<Answer> answers = new ArrayList<>();
+
+    /**
+     * Find everything in the loaded guilds that uses the step
+     * types of an extension.
+     *
+     * @param loader The class loader of the extension
+     * @return -
+     */
+    static StepRebinding collect(ClassLoader loader) {
+        StepRebinding rebinding = new StepRebinding();
+        List<Ticket> tickets = new ArrayList<>();
+        for (GuildContext context : GuildContext.loaded()) {
+            synchronized (context.getLock()) {
+                tickets.addAll(context.getTickets().values());
+                for (TicketType type : context.getTypes().values()) {
+                    boolean uses = false;
+                    for (TicketStep<?> step : type.getSteps()) {
+                        if (step.getType().getClassLoader() == loader) {
+                            rebinding.steps.add(step);
+                            uses = true;
+                        }
+                    }
+                    if (uses) {
+                        rebinding.types.add(type);
+                    }
+                }
+            }
+        }
+        // The answers are read in the mailboxes of their tickets
+        List<CompletableFuture<List<Answer>>> collecting = new ArrayList<>();
+        for (Ticket ticket : tickets) {
+            collecting.add(ticket.submit(t -> {
+                List<Answer> answers = new ArrayList<>();
+                for (TicketStepData<?> data : t.getSteps()) {
+                    if (data.getType().getClassLoader() == loader) {
+                        answers.add(new Answer(t, data, data.serialize()));
+                    }
+                }
+                return answers;
+            }));
+        }
+        for (CompletableFuture<List<Answer>> answers : collecting) {
+            rebinding.answers.addAll(answers.join());
+        }
+        return rebinding;
+    }
+
+    /**
+     * Point everything that was collected at the step types
+     * that are registered now. Whatever can't be pointed at
+     * them is left as it is.
+     */
+    void apply() {
+        for (TicketStep<?> step : steps) {
+            try {
+                rebind(step);
+            } catch (RuntimeException ex) {
+                System.err.println("Couldn't find step type " + step.getType().getName() + " of step " + step.getTitle() + " again.");
+                ex.printStackTrace();
+            }
+        }
+        for (TicketType type : types) {
+            // The forms have to be built again with the new step types
+            type.setSteps(type.getSteps());
+        }
+        List<CompletableFuture<Void>> applying = new ArrayList<>();
+        for (Answer answer : answers) {
+            applying.add(answer.ticket.submit(t -> {
+                List<TicketStepData<?>> steps = t.getSteps();
+                for (int i = 0; i < steps.size(); i++) {
+                    if (steps.get(i) == answer.data) {
+                        steps.set(i, TicketStepData.deserialize(answer.stored));
+                        break;
+                    }
+                }
+                return (Void) null;
+            }).exceptionally(ex -> {
+                System.err.println("Couldn't read the answer to " + answer.data.getTitle() + " of ticket " + answer.ticket.getChannel() + " again.");
+                ex.printStackTrace();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(applying.toArray(new CompletableFuture[0])).join();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void rebind(TicketStep<T> step) {
+        // Always the same class name, which now belongs to the new version
+        step.setType((Class<TicketStepType<T>>) (Class<?>) StepTypeRegistry.resolve(step.getType().getName()));
+    }
+
+    /**
+     * The answer of a ticket to a step, stored with the codec
+     * of the old version.
+     */
+    @AllArgsConstructor
+    private static class Answer {
+        private final Ticket ticket;
+        private final TicketStepData<?> data;
+        private final JsonObject stored;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The IndexProcessor writes down every step type and every
+ * extension while they are compiled, in META-INF/ticketbot/index.json,
+ * so that TicketBot doesn't have to find them out through
+ * reflection when it starts.
+ * <p>
+ * It is in the TicketBot jar, so it also runs when an extension
+ * is compiled against TicketBot. The index then tells TicketBot
+ * the main class of the extension, which then doesn't need to be
+ * in the manifest.
+ * <p>
+ * The processor looks at every source, so that the extension class
+ * is found even in a jar without step types, including nested
+ * extension classes. It only claims {@link #STEP_TYPE}, and leaves
+ * every other annotation to the other processors.
+ * <p>
+ * This class may only use the JDK, as it runs inside the
+ * compiler. TicketBot's classes are referred to by name.
+ *
+ * @see dev.dreta.ticketbot.utils.GeneratedIndex
+ */
+@SupportedAnnotationTypes("*")
+public class IndexProcessor extends AbstractProcessor {
+    public static final String PATH = "META-INF/ticketbot/index.json";
+
+    static final String STEP_TYPE = "dev.dreta.ticketbot.data.types.StepType";
+    private static final String TEXT_STEP_TYPE = "dev.dreta.ticketbot.data.TextStepType";
+    private static final String EXTENSION = "dev.dreta.ticketbot.extensions.Extension";
+
+    // Sorted, so that the same sources always give the same index
+    private final Map<String, Map<String, String>> stepTypes = new TreeMap<>();
+    private final Map<String, Boolean> textStepTypes = new TreeMap<>();
+    private final Set<String> extensions = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        if (round.processingOver()) {
+            if (!stepTypes.isEmpty() || !extensions.isEmpty()) {
+                write();
+            }
+            return false;
+        }
+
+        TypeElement stepType = processingEnv.getElementUtils().getTypeElement(STEP_TYPE);
+        if (stepType != null) {
+            for (Element element : round.getElementsAnnotatedWith(stepType)) {
+                if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+                    indexStepType((TypeElement) element, stepType);
+                }
+            }
+        }
+
+        TypeElement extension = processingEnv.getElementUtils().getTypeElement(EXTENSION);
+        if (extension != null) {
+            TypeMirror extensionType = processingEnv.getTypeUtils().erasure(extension.asType());
+            for (Element element : round.getRootElements()) {
+                indexExtensions(element, extensionType);
+            }
+        }
+        // Nothing but this processor uses @StepType, but claiming a round
+        // also claims the other annotations in it, which no one processes
+        // if they come with Java
+        for (TypeElement annotation : annotations) {
+            String name = annotation.getQualifiedName().toString();
+            if (!name.equals(STEP_TYPE) && !name.startsWith("java.")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void indexExtensions(Element element, TypeMirror extensionType) {
+        if (element.getKind() != ElementKind.CLASS || !element.getModifiers().contains(Modifier.PUBLIC)) {
+            return;
+        }
+        // A nested class can only be created by TicketBot if it is static
+        boolean nested = element.getEnclosingElement().getKind() != ElementKind.PACKAGE;
+        if (!element.getModifiers().contains(Modifier.ABSTRACT) &&
+                (!nested || element.getModifiers().contains(Modifier.STATIC)) &&
+                processingEnv.getTypeUtils().isAssignable(element.asType(), extensionType)) {
+            extensions.add(binaryName((TypeElement) element));
+        }
+        for (Element enclosed : element.getEnclosedElements()) {
+            indexExtensions(enclosed, extensionType);
+        }
+    }
+
+    private void indexStepType(TypeElement element, TypeElement stepType) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (!annotation.getAnnotationType().asElement().equals(stepType)) {
+                continue;
+            }
+            Map<String, String> meta = new TreeMap<>();
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value :
+                    processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet()) {
+                meta.put(value.getKey().getSimpleName().toString(), String.valueOf(value.getValue().getValue()));
+            }
+            String name = binaryName(element);
+            stepTypes.put(name, meta);
+
+            TypeElement text = processingEnv.getElementUtils().getTypeElement(TEXT_STEP_TYPE);
+            textStepTypes.put(name, text != null && processingEnv.getTypeUtils().isAssignable(
+                    processingEnv.getTypeUtils().erasure(element.asType()),
+                    processingEnv.getTypeUtils().erasure(text.asType())));
+        }
+    }
+
+    private String binaryName(TypeElement element) {
+        return processingEnv.getElementUtils().getBinaryName(element).toString();
+    }
+
+    private void write() {
+        StringBuilder json = new StringBuilder("{\n  \"stepTypes\": [");
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> stepType : stepTypes.entrySet()) {
+            StringBuilder entry = new StringBuilder("\n    {\"class\": ").append(quote(stepType.getKey()));
+            for (Map.Entry<String, String> meta : stepType.getValue().entrySet()) {
+                entry.append(", ").append(quote(meta.getKey())).append(": ").append(quote(meta.getValue()));
+            }
+            entry.append(", \"text\": ").append(textStepTypes.get(stepType.getKey())).append("}");
+            entries.add(entry.toString());
+        }
+        json.append(String.join(",", entries)).append(entries.isEmpty() ? "]" : "\n  ]");
+
+        entries.clear();
+        for (String extension : extensions) {
+            entries.add("\n    " + quote(extension));
+        }
+        json.append(",\n  \"extensions\": [").append(String.join(",", entries))
+                .append(entries.isEmpty() ? "]" : "\n  ]").append("\n}\n");
+
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", PATH);
+            try (Writer writer = file.openWriter()) {
+                writer.write(json.toString());
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Couldn't write " + PATH + ": " + ex.getMessage());
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.search;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.data.TicketStepData;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A TicketIndex is an in-memory inverted index over the
+ * titles of the {@link Ticket}s and the text answers in
+ * their {@link TicketStepData}.
+ * <p>
+ * Each ticket is identified by its channel ID (just like
+ * in {@link Ticket#tickets}). For every token we remember
+ * which tickets contain it and how often, so a search only
+ * has to look at the tickets that share at least one token
+ * with the query instead of scanning every ticket.
+ * <p>
+ * The index is updated incrementally through {@link #index(Ticket)}
+ * whenever a ticket is created, and is saved to its own file
+ * next to the data file so that it does not have to be rebuilt
+ * on every startup.
+ */
+public class TicketIndex {
+    /**
+     * Tokens shorter than this will not be indexed, as they
+     * match almost every ticket and carry no meaning.
+     */
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    // Maps each token to the tickets containing it, and the
+    // number of times the token occurs in each of the tickets.
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    // Maps each ticket to the tokens it contains. We need this
+    // so we can remove a ticket from the postings again.
+    private final Map<Long, Map<String, Integer>> documents = new HashMap<>();
+
+    /**
+     * Split a text into lower-cased tokens of letters and digits.
+     *
+     * @param text The text to split
+     * @return The tokens, in order, including duplicates
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                if (current.length() >= MIN_TOKEN_LENGTH) {
+                    tokens.add(current.toString());
+                }
+                current.setLength(0);
+            }
+        }
+        if (current.length() >= MIN_TOKEN_LENGTH) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Add a ticket to the index, or update it if it is
+     * already indexed.
+     *
+     * @param ticket The ticket to index
+     */
+    public synchronized void index(Ticket ticket) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokenize(ticket.getTitle())) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        for (TicketStepData<?> step : ticket.getSteps()) {
+            Object answer = step.getAnswer();
+            if (answer instanceof String) {
+                for (String token : tokenize((String) answer)) {
+                    frequencies.merge(token, 1, Integer::sum);
+                }
+            } else if (answer instanceof List) {
+                for (Object item : (List<?>) answer) {
+                    if (item instanceof String) {
+                        for (String token : tokenize((String) item)) {
+                            frequencies.merge(token, 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+        }
+        put(ticket.getChannel(), frequencies);
+    }
+
+    /**
+     * Remove a ticket from the index.
+     *
+     * @param channel The channel ID of the ticket
+     */
+    public synchronized void remove(long channel) {
+        Map<String, Integer> old = documents.remove(channel);
+        if (old == null) {
+            return;
+        }
+        for (String token : old.keySet()) {
+            Map<Long, Integer> posting = postings.get(token);
+            if (posting != null) {
+                posting.remove(channel);
+                if (posting.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a ticket is in the index.
+     *
+     * @param channel The channel ID of the ticket
+     * @return -
+     */
+    public synchronized boolean contains(long channel) {
+        return documents.containsKey(channel);
+    }
+
+    /**
+     * Get the number of tickets in the index.
+     *
+     * @return -
+     */
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Search the index.
+     * <p>
+     * The tickets are ranked by the sum of the TF-IDF weights of
+     * each query token they contain, normalized by the length of
+     * the ticket, so that a rare word in a short ticket ranks above
+     * a common word in a long one. Ties are broken by the channel
+     * ID, newest first.
+     *
+     * @param query The query typed in by the user
+     * @return The channel IDs of the matching tickets, best match first
+     */
+    public synchronized List<Long> search(String query) {
+        Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+        Map<Long, Double> scores = new HashMap<>();
+        int total = documents.size();
+        for (String token : tokens) {
+            Map<Long, Integer> posting = postings.get(token);
+            if (posting == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (double) total / posting.size());
+            for (Map.Entry<Long, Integer> entry : posting.entrySet()) {
+                scores.merge(entry.getKey(), entry.getValue() * idf, Double::sum);
+            }
+        }
+
+        List<Long> results = new ArrayList<>(scores.keySet());
+        Map<Long, Double> normalized = new HashMap<>(scores.size());
+        for (Long channel : results) {
+            normalized.put(channel, scores.get(channel) / Math.sqrt(documents.get(channel).size()));
+        }
+        results.sort((a, b) -> {
+            int compare = Double.compare(normalized.get(b), normalized.get(a));
+            return compare != 0 ? compare : Long.compare(b, a);
+        });
+        return results;
+    }
+
+    /**
+     * Remove everything from the index.
+     */
+    public synchronized void clear() {
+        postings.clear();
+        documents.clear();
+    }
+
+    private void put(long channel, Map<String, Integer> frequencies) {
+        remove(channel);
+        documents.put(channel, frequencies);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(channel, entry.getValue());
+        }
+    }
+
+    /**
+     * Save the index to a file.
+     * <p>
+     * Only the per-ticket token frequencies are stored, the
+     * postings are rebuilt from them when loading.
+     *
+     * @param file The file to save to
+     */
+    public synchronized void save(File file) {
+        JsonObject docs = new JsonObject();
+        for (Map.Entry<Long, Map<String, Integer>> doc : documents.entrySet()) {
+            JsonObject frequencies = new JsonObject();
+            for (Map.Entry<String, Integer> entry : doc.getValue().entrySet()) {
+                frequencies.addProperty(entry.getKey(), entry.getValue());
+            }
+            docs.add(String.valueOf(doc.getKey()), frequencies);
+        }
+        JsonObject j = new JsonObject();
+        j.add("documents", docs);
+
+        // Write to a temporary file first, so we never leave
+        // a half-written index behind.
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(j.toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Load the index from a file, replacing everything
+     * currently in the index.
+     * Nothing happens if the file does not exist.
+     *
+     * @param file The file to load from
+     */
+    public synchronized void load(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        JsonObject j;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            j = JsonParser.parseReader(reader).getAsJsonObject();
+        } catch (Exception e) {
+            // A broken index is not fatal, we will rebuild it.
+            e.printStackTrace();
+            return;
+        }
+
+        clear();
+        for (Map.Entry<String, JsonElement> doc : j.getAsJsonObject("documents").entrySet()) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (Map.Entry<String, JsonElement> entry : doc.getValue().getAsJsonObject().entrySet()) {
+                frequencies.put(entry.getKey(), entry.getValue().getAsInt());
+            }
+            put(Long.parseLong(doc.getKey()), frequencies);
+        }
+    }
+
+    /**
+     * Make the index match the tickets that are currently loaded.
+     * Tickets that are missing from the index will be indexed,
+     * and tickets that no longer exist will be removed.
+     *
+     * @param tickets The tickets mapped by their channel IDs
+     */
+    public synchronized void synchronize(Map<Long, Ticket> tickets) {
+        for (Long channel : new ArrayList<>(documents.keySet())) {
+            if (!tickets.containsKey(channel)) {
+                remove(channel);
+            }
+        }
+        for (Ticket ticket : tickets.values()) {
+            if (!documents.containsKey(ticket.getChannel())) {
+                index(ticket);
+            }
+        }
+    }
+}
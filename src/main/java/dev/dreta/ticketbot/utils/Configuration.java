@@ -26,6 +26,8 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * This is a utility class that allows you to easily
@@ -38,26 +40,53 @@ public class Configuration {
     private File file;
     @Getter
     private JsonObject config;
+    /**
+     * The number of times this configuration has been loaded.
+     * Anything that is built from the configuration can remember
+     * this to find out whether it has to be built again.
+     */
+    @Getter
+    private volatile long generation;
+    /**
+     * The modification time of the file when it was last read,
+     * to find out whether it has changed since then.
+     */
+    @Getter
+    private volatile long loadedModified = -1;
 
     /**
      * Save the configuration.
+     * <p>
+     * The configuration is written to a temporary file first and
+     * then moved over the old one, so that anyone reading the file
+     * at the same time never sees it half-written.
      */
     public void save() {
+        File temp = new File(this.file.getAbsoluteFile().getParentFile(), this.file.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temp))) {
+            writer.write(config.toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
         try {
-            if (!this.file.exists()) {
-                if (!this.file.createNewFile()) {
-                    throw new IOException("Failed to create configuration file");
-                }
-                BufferedWriter writer = new BufferedWriter(new FileWriter(this.file));
-                writer.write(config.toString());
-                writer.flush();
-                writer.close();
-            }
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Replace the contents of the configuration, as if it
+     * had been loaded again.
+     *
+     * @param config The new contents
+     */
+    protected void setConfig(JsonObject config) {
+        this.config = config;
+        generation++;
+    }
+
     /**
      * Reload the configuration.
      */
@@ -66,6 +95,8 @@ public class Configuration {
             if (!this.file.exists()) {
                 throw new IOException("Could not find configuration file");
             }
+            // Taken before reading, so that a change while we read is read next time
+            long modified = this.file.lastModified();
             BufferedReader reader = new BufferedReader(new FileReader(this.file));
             StringBuilder result = new StringBuilder();
             String s;
@@ -73,6 +104,8 @@ public class Configuration {
                 result.append(s);
             }
             this.config = (JsonObject) JsonParser.parseString(result.toString());
+            generation++;
+            loadedModified = modified;
             reader.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -18,9 +18,11 @@
 
 package dev.dreta.ticketbot.utils;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
 import dev.dreta.ticketbot.TicketBot;
 import dev.dreta.ticketbot.data.Ticket;
-import dev.dreta.ticketbot.data.TicketStepData;
 import dev.dreta.ticketbot.data.TicketStepType;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Category;
@@ -28,7 +30,11 @@ import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Role;
 
 import java.awt.*;
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -37,7 +43,69 @@ import java.util.stream.Collectors;
  * from the default config.json file.
  */
 public class DataConfiguration extends Configuration {
+    /**
+     * This static field represents the type of a
+     * list of strings, used in reading the permissions.
+     */
+    private static final Type STRING_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
     private Guild guild;
+    // The configuration that this guild configuration overrides, or
+    // null if this is the main configuration.
+    private DataConfiguration base;
+    private long guildId;
+    private long permissions;
+    private long permissionsGeneration = -1;
+
+    /**
+     * Load the configuration of a guild. The file only has to
+     * contain the values that are different for the guild, and
+     * everything else is taken from the main configuration.
+     *
+     * @param base    The main configuration
+     * @param file    The file of the guild
+     * @param guildId The ID of the guild
+     * @return -
+     */
+    public static DataConfiguration forGuild(DataConfiguration base, File file, long guildId) {
+        DataConfiguration config = new DataConfiguration();
+        config.base = base;
+        config.guildId = guildId;
+        config.setFile(file);
+        config.reload();
+        return config;
+    }
+
+    @Override
+    public void reload() {
+        super.reload();
+        if (base != null && getConfig() != null) {
+            JsonObject merged = base.getConfig().deepCopy();
+            merge(merged, getConfig());
+            merged.addProperty("guildId", guildId);
+            setConfig(merged);
+        }
+        guild = null;
+    }
+
+    /**
+     * Copy everything from one JSON object into another,
+     * merging the objects that are in both of them.
+     *
+     * @param into The object to copy into
+     * @param from The object to copy from
+     */
+    private static void merge(JsonObject into, JsonObject from) {
+        for (Map.Entry<String, JsonElement> entry : from.entrySet()) {
+            JsonElement existing = into.get(entry.getKey());
+            if (existing != null && existing.isJsonObject() && entry.getValue().isJsonObject()) {
+                merge(existing.getAsJsonObject(), entry.getValue().getAsJsonObject());
+            } else {
+                into.add(entry.getKey(), entry.getValue().deepCopy());
+            }
+        }
+    }
 
     /**
      * Get the token of the bot to run on.
@@ -59,9 +127,8 @@ public class DataConfiguration extends Configuration {
     }
 
     /**
-     * Get the guild of this bot.
-     * Only one guild is allowed per instance of this bot.
-     * No details will be provided on the reason for this.
+     * Get the guild of this configuration. For the main
+     * configuration, this is the main guild of the bot.
      * This method caches the guild for fast access.
      *
      * @return The guild from the config
@@ -70,7 +137,7 @@ public class DataConfiguration extends Configuration {
         if (guild != null) {
             return guild;
         }
-        guild = TicketBot.jda.getGuildById(getConfig().get("guildId").getAsLong());
+        guild = TicketBot.getGuildById(getConfig().get("guildId").getAsLong());
         return guild;
     }
 
@@ -80,7 +147,7 @@ public class DataConfiguration extends Configuration {
      * @return The category from the config
      */
     public Category channelsTicketCategory() {
-        return TicketBot.jda.getCategoryById(getConfig().getAsJsonObject("channels").get("categoryId").getAsLong());
+        return TicketBot.getCategoryById(getConfig().getAsJsonObject("channels").get("categoryId").getAsLong());
     }
 
     /**
@@ -93,6 +160,17 @@ public class DataConfiguration extends Configuration {
         return getConfig().get("botCommandsChannel").getAsLong();
     }
 
+    /**
+     * Get the ID of the user who runs this TicketBot. Besides the
+     * managers of the main guild, only this user may use the
+     * commands that affect every guild, such as !ticket reload.
+     *
+     * @return The ID, or 0 if nobody else may use them
+     */
+    public long getOwnerId() {
+        return getConfig().has("ownerId") ? getConfig().get("ownerId").getAsLong() : 0;
+    }
+
     /**
      * Get the name format of the channels to create for tickets.
      * <p>
@@ -135,6 +213,49 @@ public class DataConfiguration extends Configuration {
         return getConfig().getAsJsonObject("channels").get("channelTopic").getAsString();
     }
 
+    /**
+     * Get the message to send when a ticket channel couldn't
+     * be created.
+     *
+     * @return -
+     */
+    public String channelsFailedMsg() {
+        JsonObject channels = getConfig().getAsJsonObject("channels");
+        return channels.has("failedMsg") ? channels.get("failedMsg").getAsString()
+                : "Your ticket channel couldn't be created. Please try again later.";
+    }
+
+    /**
+     * Get the number of ticket channels that {@link dev.dreta.ticketbot.ChannelPool}
+     * keeps ready. 0 disables the pool.
+     *
+     * @return -
+     */
+    public int channelsPoolSize() {
+        JsonObject channels = getConfig().getAsJsonObject("channels");
+        return channels.has("pool") ? channels.getAsJsonObject("pool").get("size").getAsInt() : 0;
+    }
+
+    /**
+     * Get the name of the ticket channels that are kept ready
+     * and haven't been claimed yet.
+     *
+     * @return -
+     */
+    public String channelsPoolName() {
+        return getConfig().getAsJsonObject("channels").getAsJsonObject("pool").get("name").getAsString();
+    }
+
+    /**
+     * Get how long (in milliseconds) to wait before creating each
+     * channel when refilling the pool.
+     *
+     * @return -
+     */
+    public long channelsPoolRefillDelay() {
+        return getConfig().getAsJsonObject("channels").getAsJsonObject("pool").get("refillDelay").getAsLong();
+    }
+
     /**
      * Get the question message when we are asking for the ticket title.
      *
@@ -164,6 +285,88 @@ public class DataConfiguration extends Configuration {
         return getConfig().getAsJsonObject("ticket").getAsJsonObject("end").get("description").getAsString();
     }
 
+    /**
+     * Get the number of seconds a guild member has to answer
+     * each step when creating a ticket, or 0 for no limit.
+     *
+     * @return -
+     */
+    public int ticketStepTimeout() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("timeout").get("seconds").getAsInt();
+    }
+
+    /**
+     * Get the error message to send when a guild member took
+     * too long to answer a step.
+     *
+     * @return -
+     */
+    public String ticketStepTimeoutMsg() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("timeout").get("msg").getAsString();
+    }
+
+    /**
+     * Get the message to send when a ticket can't be created
+     * because an extension it needs is being reloaded.
+     *
+     * @return -
+     */
+    public String ticketReloadingMsg() {
+        JsonObject ticket = getConfig().getAsJsonObject("ticket");
+        return ticket.has("reloadingMsg") ? ticket.get("reloadingMsg").getAsString()
+                : "This kind of ticket is being updated right now. Please try again in a moment.";
+    }
+
+    /**
+     * Get the title of the message that asks all of the
+     * questions of a form.
+     *
+     * @return -
+     */
+    public String ticketFormTitle() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("form").get("title").getAsString();
+    }
+
+    /**
+     * Get the format of each question in a form.
+     * Use {INDEX}, {TITLE} and {DESCRIPTION} for the question.
+     *
+     * @return -
+     */
+    public String ticketFormField() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("form").get("field").getAsString();
+    }
+
+    /**
+     * Get the explanation of how to answer a form.
+     *
+     * @return -
+     */
+    public String ticketFormInfo() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("form").get("info").getAsString();
+    }
+
+    /**
+     * Get the error message to send when a reply to a form
+     * does not answer every question.
+     * Use {COUNT} for the number of questions.
+     *
+     * @return -
+     */
+    public String ticketFormCountMsg() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("form").get("countMsg").getAsString();
+    }
+
+    /**
+     * Get the format of each error in a reply to a form.
+     * Use {INDEX}, {TITLE} and {ERROR} for the question and its error.
+     *
+     * @return -
+     */
+    public String ticketFormFieldError() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("form").get("fieldError").getAsString();
+    }
+
     /**
      * Get the maximum length of ticket titles.
      *
@@ -196,10 +399,24 @@ public class DataConfiguration extends Configuration {
     public List<Permission> channelsPermissions() {
         return ((List<String>) TicketBot.gson.fromJson(
                 getConfig().getAsJsonObject("channels").getAsJsonArray("permissions"),
-                TicketStepData.STRING_LIST_TYPE))
+                STRING_LIST_TYPE))
                 .stream().map(Permission::valueOf).collect(Collectors.toList());
     }
 
+    /**
+     * Get {@link #channelsPermissions()} as raw permissions.
+     * This is only computed again when the configuration is reloaded.
+     *
+     * @return -
+     */
+    public long channelsPermissionsRaw() {
+        if (permissionsGeneration != getGeneration()) {
+            permissions = Permission.getRaw(channelsPermissions());
+            permissionsGeneration = getGeneration();
+        }
+        return permissions;
+    }
+
     /**
      * Get the accent color that will be used
      * in the embeds.
@@ -566,6 +783,111 @@ public class DataConfiguration extends Configuration {
         return getConfig().getAsJsonObject("manage").get("permissionError").getAsString();
     }
 
+    /**
+     * Get the IDs of the roles that are allowed to manage the tickets.
+     * If this is empty, {@link #manageRoleName()} is used instead.
+     *
+     * @return -
+     */
+    public List<Long> manageRoles() {
+        JsonObject manage = getConfig().getAsJsonObject("manage");
+        if (!manage.has("roles")) {
+            return Collections.emptyList();
+        }
+        return TicketBot.gson.fromJson(manage.getAsJsonArray("roles"), Ticket.LONG_LIST_TYPE);
+    }
+
+    /**
+     * Get the name of the roles that are allowed to manage the tickets
+     * when no role IDs are configured.
+     *
+     * @return -
+     */
+    public String manageRoleName() {
+        JsonObject manage = getConfig().getAsJsonObject("manage");
+        return manage.has("roleName") ? manage.get("roleName").getAsString() : "Ticket Bot Manager";
+    }
+
+    /**
+     * Get the title of the embed showing the statistics of TicketBot.
+     *
+     * @return -
+     */
+    public String manageStatsTitle() {
+        return getConfig().getAsJsonObject("manage").get("statsTitle").getAsString();
+    }
+
+    /**
+     * Get how to use the command to reload an extension.
+     * Placeholders:
+     * {COMMAND} (The command)
+     *
+     * @return -
+     */
+    public String manageReloadUsage() {
+        return getConfig().getAsJsonObject("manage").getAsJsonObject("reload").get("usage").getAsString();
+    }
+
+    /**
+     * Get the error message to send when the extension to reload doesn't exist.
+     * Placeholders:
+     * {ID} (The ID of the extension)
+     *
+     * @return -
+     */
+    public String manageReloadUnknown() {
+        return getConfig().getAsJsonObject("manage").getAsJsonObject("reload").get("unknown").getAsString();
+    }
+
+    /**
+     * Get the message to send when an extension starts reloading.
+     * Placeholders:
+     * {ID} (The ID of the extension)
+     *
+     * @return -
+     */
+    public String manageReloadStarted() {
+        return getConfig().getAsJsonObject("manage").getAsJsonObject("reload").get("started").getAsString();
+    }
+
+    /**
+     * Get the message to send when an extension was reloaded.
+     * Placeholders:
+     * {ID} (The ID of the extension)
+     * {TIME} (How long reloading took, in milliseconds)
+     * {DRAINED} (The number of tickets that were being created with the extension)
+     * {ABORTED} (The number of those that didn't finish in time)
+     *
+     * @return -
+     */
+    public String manageReloadDone() {
+        return getConfig().getAsJsonObject("manage").getAsJsonObject("reload").get("done").getAsString();
+    }
+
+    /**
+     * Get the message to add when the old version of a reloaded
+     * extension couldn't be removed from memory.
+     * Placeholders:
+     * {ID} (The ID of the extension)
+     *
+     * @return -
+     */
+    public String manageReloadLeak() {
+        return getConfig().getAsJsonObject("manage").getAsJsonObject("reload").get("leak").getAsString();
+    }
+
+    /**
+     * Get the error message to send when an extension couldn't be reloaded.
+     * Placeholders:
+     * {ID} (The ID of the extension)
+     * {ERROR} (What went wrong)
+     *
+     * @return -
+     */
+    public String manageReloadFailed() {
+        return getConfig().getAsJsonObject("manage").getAsJsonObject("reload").get("failed").getAsString();
+    }
+
     /**
      * Get the title of the embed to send when choosing what ticket
      * to manage.
@@ -856,4 +1178,294 @@ public class DataConfiguration extends Configuration {
     public String ticketDataAssignee() {
         return getConfig().getAsJsonObject("ticket").getAsJsonObject("data").get("assignee").getAsString();
     }
+
+    /**
+     * Get what to display instead of the name of a member that
+     * couldn't be found, for example because they left the guild.
+     *
+     * @return -
+     */
+    public String ticketDataUnknownUser() {
+        return getConfig().getAsJsonObject("ticket").getAsJsonObject("data").get("unknownUser").getAsString();
+    }
+
+    /**
+     * Get how many members {@link MemberCache} will remember
+     * at most.
+     *
+     * @return -
+     */
+    public long memberCacheMaximumSize() {
+        return getConfig().getAsJsonObject("memberCache").get("maximumSize").getAsLong();
+    }
+
+    /**
+     * Get how long (in seconds) {@link MemberCache} will remember
+     * a member before asking Discord again.
+     *
+     * @return -
+     */
+    public long memberCacheExpireAfter() {
+        return getConfig().getAsJsonObject("memberCache").get("expireAfter").getAsLong();
+    }
+
+    /**
+     * Get how long (in milliseconds) {@link MemberCache} gathers
+     * members that aren't cached before requesting them together.
+     *
+     * @return -
+     */
+    public long memberCacheGatherWindow() {
+        JsonObject memberCache = getConfig().getAsJsonObject("memberCache");
+        return memberCache.has("gatherWindow") ? memberCache.get("gatherWindow").getAsLong() : 25;
+    }
+
+    /**
+     * Get the maximum number of requests {@link RestScheduler} hands
+     * to JDA at once.
+     *
+     * @return -
+     */
+    public int restMaxInFlight() {
+        JsonObject rest = getConfig().getAsJsonObject("rest");
+        return rest != null && rest.has("maxInFlight") ? rest.get("maxInFlight").getAsInt() : 10;
+    }
+
+    /**
+     * Get the maximum number of requests {@link RestScheduler} hands
+     * to JDA at once for the same channel.
+     *
+     * @return -
+     */
+    public int restRouteBudget() {
+        JsonObject rest = getConfig().getAsJsonObject("rest");
+        return rest != null && rest.has("routeBudget") ? rest.get("routeBudget").getAsInt() : 2;
+    }
+
+    /**
+     * Get how often a standby TicketBot checks whether it can take
+     * over, in milliseconds.
+     *
+     * @return -
+     */
+    public long clusterPollInterval() {
+        JsonObject cluster = getConfig().getAsJsonObject("cluster");
+        return cluster != null && cluster.has("pollInterval") ? cluster.get("pollInterval").getAsLong() : 1000;
+    }
+
+    /**
+     * Get how often the tickets are saved, in seconds, or 0 to
+     * only save them when TicketBot stops.
+     *
+     * @return -
+     */
+    public long clusterSaveInterval() {
+        JsonObject cluster = getConfig().getAsJsonObject("cluster");
+        return cluster != null && cluster.has("saveInterval") ? cluster.get("saveInterval").getAsLong() : 30;
+    }
+
+    /**
+     * Get whether TicketBot should connect with several shards
+     * through a ShardManager instead of a single connection.
+     *
+     * @return -
+     */
+    public boolean shardingEnabled() {
+        JsonObject sharding = getConfig().getAsJsonObject("sharding");
+        return sharding != null && sharding.has("enabled") && sharding.get("enabled").getAsBoolean();
+    }
+
+    /**
+     * Get the total number of shards to connect with, or -1
+     * to use the number Discord recommends.
+     *
+     * @return -
+     */
+    public int shardingTotal() {
+        JsonObject sharding = getConfig().getAsJsonObject("sharding");
+        return sharding != null && sharding.has("total") ? sharding.get("total").getAsInt() : -1;
+    }
+
+    /**
+     * Get how long an event listener of an extension may take
+     * before the watchdog reports it, in milliseconds.
+     *
+     * @return -
+     */
+    public long extensionsEventBudget() {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        return extensions != null && extensions.has("eventBudget") ? extensions.get("eventBudget").getAsLong() : 500;
+    }
+
+    /**
+     * Get how long an event listener of a specific extension may
+     * take before the watchdog reports it, in milliseconds. This is
+     * the budget in extensions.eventBudgets under the ID of the
+     * extension, or {@link #extensionsEventBudget()} if it has none.
+     *
+     * @param id The ID of the extension
+     * @return -
+     */
+    public long extensionsEventBudget(String id) {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        if (extensions != null && extensions.has("eventBudgets")) {
+            JsonObject budgets = extensions.getAsJsonObject("eventBudgets");
+            if (budgets.has(id)) {
+                return budgets.get(id).getAsLong();
+            }
+        }
+        return extensionsEventBudget();
+    }
+
+    /**
+     * Get how long TicketBot waits for an extension to enable
+     * before it carries on starting, in milliseconds.
+     *
+     * @return -
+     */
+    public long extensionsEnableBudget() {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        return extensions != null && extensions.has("enableBudget") ? extensions.get("enableBudget").getAsLong() : 10000;
+    }
+
+    /**
+     * Get how many events may wait for an extension before
+     * new events are dropped for it.
+     *
+     * @return -
+     */
+    public int extensionsQueueSize() {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        return extensions != null && extensions.has("queueSize") ? extensions.get("queueSize").getAsInt() : 1000;
+    }
+
+    /**
+     * Get how many times an extension may be too slow before
+     * it is disabled, or 0 to never disable it.
+     *
+     * @return -
+     */
+    public int extensionsMaxOffenses() {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        return extensions != null && extensions.has("maxOffenses") ? extensions.get("maxOffenses").getAsInt() : 0;
+    }
+
+    /**
+     * Get how long reloading an extension waits for the tickets
+     * being created with it to finish, in milliseconds.
+     *
+     * @return -
+     */
+    public long extensionsDrainTimeout() {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        return extensions != null && extensions.has("drainTimeout") ? extensions.get("drainTimeout").getAsLong() : 30000;
+    }
+
+    /**
+     * Get how long reloading an extension waits for the old
+     * version of it to be removed from memory, in milliseconds.
+     *
+     * @return -
+     */
+    public long extensionsUnloadTimeout() {
+        JsonObject extensions = getConfig().getAsJsonObject("extensions");
+        return extensions != null && extensions.has("unloadTimeout") ? extensions.get("unloadTimeout").getAsLong() : 5000;
+    }
+
+    /**
+     * Get how many ticket events may wait for a subscriber
+     * before new events are dropped for it.
+     *
+     * @return -
+     */
+    public int eventsQueueSize() {
+        JsonObject events = getConfig().getAsJsonObject("events");
+        return events != null && events.has("queueSize") ? events.get("queueSize").getAsInt() : 1000;
+    }
+
+    /**
+     * Get the title of the search results embed.
+     * Placeholders:
+     * {QUERY} (What the guild member searched for)
+     *
+     * @return -
+     */
+    public String searchTitle() {
+        return getConfig().getAsJsonObject("search").get("title").getAsString();
+    }
+
+    /**
+     * Get how to format each of the search results.
+     * All the results on a page will be listed in this format one on each line.
+     * Placeholders:
+     * {INDEX}
+     * {TITLE}
+     * {CHANNEL} (The ID of the channel, use &lt;#{CHANNEL}&gt; to mention it)
+     * {OPEN} (See {@link #ticketDataOpenYes()} and {@link #ticketDataOpenNo()})
+     *
+     * @return -
+     */
+    public String searchResultFormat() {
+        return getConfig().getAsJsonObject("search").get("result").getAsString();
+    }
+
+    /**
+     * Get the message to show when nothing matched the search.
+     *
+     * @return -
+     */
+    public String searchEmptyMsg() {
+        return getConfig().getAsJsonObject("search").get("empty").getAsString();
+    }
+
+    /**
+     * Get the footer of the search results embed.
+     * Placeholders:
+     * {PAGE}
+     * {PAGES}
+     * {RESULTS} (The total number of results)
+     *
+     * @return -
+     */
+    public String searchFooter() {
+        return getConfig().getAsJsonObject("search").get("footer").getAsString();
+    }
+
+    /**
+     * Get the error message to send when the search query is empty.
+     * Placeholders:
+     * {COMMAND} (The command)
+     *
+     * @return -
+     */
+    public String searchQueryError() {
+        return getConfig().getAsJsonObject("search").get("queryError").getAsString();
+    }
+
+    /**
+     * Get how many search results to show on each page.
+     *
+     * @return -
+     */
+    public int searchPageSize() {
+        return getConfig().getAsJsonObject("search").get("pageSize").getAsInt();
+    }
+
+    /**
+     * Get the emoji to go to the previous page of the search results.
+     *
+     * @return -
+     */
+    public String searchPreviousEmoji() {
+        return getConfig().getAsJsonObject("search").get("previousEmoji").getAsString();
+    }
+
+    /**
+     * Get the emoji to go to the next page of the search results.
+     *
+     * @return -
+     */
+    public String searchNextEmoji() {
+        return getConfig().getAsJsonObject("search").get("nextEmoji").getAsString();
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.dreta.ticketbot.processor.IndexProcessor;
+import lombok.Getter;
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The GeneratedIndex is what the {@link IndexProcessor} wrote
+ * down about the step types and extensions of TicketBot itself
+ * or of an extension when they were compiled.
+ * <p>
+ * Every class loader has its own index, which is read the first
+ * time it is needed. Extensions compiled without the processor
+ * have an empty index, and everything is then found out through
+ * reflection like before.
+ */
+public class GeneratedIndex {
+    private static final GeneratedIndex EMPTY = new GeneratedIndex(Collections.emptyMap(), Collections.emptyList());
+    // Weak, so that the index doesn't keep the classes of a reloaded extension around
+    private static final Map<ClassLoader, GeneratedIndex> indexes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<String, IndexedStepType> stepTypes;
+    /**
+     * The names of the main classes of the extensions.
+     */
+    @Getter
+    private final List<String> extensions;
+
+    private GeneratedIndex(Map<String, IndexedStepType> stepTypes, List<String> extensions) {
+        this.stepTypes = stepTypes;
+        this.extensions = extensions;
+    }
+
+    /**
+     * Get the index of a class loader. For the class loader of an
+     * extension, this is only the index in the jar of the extension.
+     *
+     * @param loader The class loader
+     * @return -
+     */
+    public static GeneratedIndex of(ClassLoader loader) {
+        if (loader == null) {
+            return EMPTY;
+        }
+        return indexes.computeIfAbsent(loader, GeneratedIndex::read);
+    }
+
+    private static GeneratedIndex read(ClassLoader loader) {
+        // Extensions would otherwise find the index of TicketBot first
+        URL url = loader instanceof URLClassLoader ? ((URLClassLoader) loader).findResource(IndexProcessor.PATH)
+                : loader.getResource(IndexProcessor.PATH);
+        if (url == null) {
+            return EMPTY;
+        }
+        try (Reader reader = new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)) {
+            JsonObject index = JsonParser.parseReader(reader).getAsJsonObject();
+            Map<String, IndexedStepType> stepTypes = new HashMap<>();
+            for (JsonElement element : index.getAsJsonArray("stepTypes")) {
+                JsonObject stepType = element.getAsJsonObject();
+                stepTypes.put(stepType.get("class").getAsString(), new IndexedStepType(
+                        stepType.get("name").getAsString(),
+                        stepType.get("description").getAsString(),
+                        stepType.get("emoji").getAsString(),
+                        stepType.get("text").getAsBoolean()));
+            }
+            List<String> extensions = new ArrayList<>();
+            for (JsonElement element : index.getAsJsonArray("extensions")) {
+                extensions.add(element.getAsString());
+            }
+            return new GeneratedIndex(stepTypes, Collections.unmodifiableList(extensions));
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Couldn't read " + url + ", ignoring it: " + ex.getMessage());
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Get what the index knows about a step type.
+     *
+     * @param className The name of the class of the step type
+     * @return The metadata, or null if the step type isn't in the index
+     */
+    public IndexedStepType getStepType(String className) {
+        return stepTypes.get(className);
+    }
+
+    /**
+     * The metadata of a step type from its
+     * {@link dev.dreta.ticketbot.data.types.StepType} annotation.
+     */
+    @Value
+    public static class IndexedStepType {
+        String name;
+        String description;
+        String emoji;
+        /**
+         * Whether the step type is a {@link dev.dreta.ticketbot.data.TextStepType}.
+         */
+        boolean text;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A Mailbox runs the tasks given to it one at a time, in the
+ * order they were given, on a shared pool of threads.
+ * <p>
+ * Every {@link dev.dreta.ticketbot.data.Ticket} and every
+ * {@link dev.dreta.ticketbot.commands.TicketWizard} has one,
+ * so that changes to the same ticket never run at the same
+ * time, while different tickets are changed in parallel and
+ * nothing has to wait for a lock.
+ * <p>
+ * A Mailbox only holds a thread while it has tasks to run,
+ * so having one for every ticket is cheap.
+ */
+public class Mailbox implements Executor {
+    private static final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "TicketBot mailbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicLong waiting = new AtomicLong();
+    private static final AtomicLong maxDepth = new AtomicLong();
+    private static final AtomicLong processed = new AtomicLong();
+    private static final AtomicLong processingNanos = new AtomicLong();
+    private static final AtomicLong maxProcessingNanos = new AtomicLong();
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Run a task after every task that was given before it.
+     *
+     * @param task The task
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+        waiting.incrementAndGet();
+        schedule();
+    }
+
+    /**
+     * Run a task after every task that was given before it.
+     *
+     * @param task The task
+     * @param <T>  The result of the task
+     * @return A future that completes with the result of the task
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, this);
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            workers.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            depth.decrementAndGet();
+            waiting.decrementAndGet();
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            } finally {
+                long took = System.nanoTime() - start;
+                processed.incrementAndGet();
+                processingNanos.addAndGet(took);
+                maxProcessingNanos.accumulateAndGet(took, Math::max);
+            }
+        }
+        scheduled.set(false);
+        // A task might have been added after we found the queue empty
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting in this mailbox.
+     *
+     * @return -
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Get a human readable summary of all mailboxes.
+     *
+     * @return -
+     */
+    public static String getStats() {
+        long p = processed.get();
+        return "Waiting: " + waiting.get() +
+                ", max depth: " + maxDepth.get() +
+                ", processed: " + p +
+                ", avg processing " + (p == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(processingNanos.get() / p)) + " us" +
+                ", max processing " + TimeUnit.NANOSECONDS.toMillis(maxProcessingNanos.get()) + " ms";
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import dev.dreta.ticketbot.TicketBot;
+import lombok.Value;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MemberCache resolves the guild members we display
+ * in the ticket embeds (authors and assignees).
+ * <p>
+ * Members are only resolved when they are about to be
+ * displayed. Whatever is not in our own cache or in the
+ * member cache of JDA is gathered for
+ * {@link DataConfiguration#memberCacheGatherWindow()} milliseconds,
+ * so that lookups arriving at about the same time share
+ * requests, and then requested from Discord in chunks of
+ * {@link #CHUNK_SIZE} members per request, instead of one
+ * request per member.
+ * <p>
+ * We only keep the few fields that we actually display,
+ * and they expire after a while so that name changes will
+ * show up eventually.
+ */
+public class MemberCache {
+    /**
+     * The maximum number of members Discord allows us to
+     * request at once.
+     */
+    public static final int CHUNK_SIZE = 100;
+    private static final ScheduledExecutorService gatherer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TicketBot member cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Cache<Long, CachedMember> cache;
+    // The guild to resolve the members in, or 0 for the main guild
+    private final long guildId;
+    // The lookups that are currently waiting for Discord, so that
+    // we never request the same member twice at the same time.
+    private final Map<Long, CompletableFuture<CachedMember>> pending = new ConcurrentHashMap<>();
+    // The members that will be requested once the gather window closes
+    private final Set<Long> gathered = new LinkedHashSet<>();
+    private boolean gathering;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requested = new AtomicLong();
+
+    /**
+     * The fields of a {@link Member} that are displayed in
+     * the ticket embeds.
+     */
+    @Value
+    public static class CachedMember {
+        long id;
+        String name;
+        String discriminator;
+        String effectiveName;
+
+        public static CachedMember of(Member member) {
+            return new CachedMember(member.getIdLong(), member.getUser().getName(),
+                    member.getUser().getDiscriminator(), member.getEffectiveName());
+        }
+
+        /**
+         * Create a placeholder for a member that could not be
+         * found, for example because they have left the guild.
+         *
+         * @param id The ID of the member
+         * @return -
+         */
+        public static CachedMember unknown(long id) {
+            return new CachedMember(id, TicketBot.config.ticketDataUnknownUser(), "0000", TicketBot.config.ticketDataUnknownUser());
+        }
+    }
+
+    public MemberCache(long maximumSize, long expireAfterSeconds) {
+        this(0, maximumSize, expireAfterSeconds);
+    }
+
+    /**
+     * Create a MemberCache for the members of a guild.
+     *
+     * @param guildId            The ID of the guild, or 0 for the main guild
+     * @param maximumSize        The maximum number of members to remember
+     * @param expireAfterSeconds How long to remember a member for
+     */
+    public MemberCache(long guildId, long maximumSize, long expireAfterSeconds) {
+        this.guildId = guildId;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Remember a member that we already have, for example
+     * from an event.
+     *
+     * @param member The member
+     */
+    public void put(Member member) {
+        cache.put(member.getIdLong(), CachedMember.of(member));
+    }
+
+    /**
+     * Resolve a single member.
+     *
+     * @param id The ID of the member
+     * @return A future that completes with a member, or a placeholder if it can't be found
+     */
+    public CompletableFuture<CachedMember> resolve(long id) {
+        return resolve(Collections.singletonList(id)).thenApply(m -> m.get(id));
+    }
+
+    /**
+     * Resolve several members at once.
+     *
+     * @param ids The IDs of the members
+     * @return A future that completes with every requested member,
+     * using a placeholder for those that can't be found. It only
+     * completes exceptionally if the request couldn't be sent at all.
+     */
+    public CompletableFuture<Map<Long, CachedMember>> resolve(Collection<Long> ids) {
+        Map<Long, CachedMember> result = new HashMap<>();
+        Map<Long, CompletableFuture<CachedMember>> waiting = new HashMap<>();
+        Guild guild = guildId == 0 ? TicketBot.config.getGuild() : TicketBot.getGuildById(guildId);
+
+        for (long id : new LinkedHashSet<>(ids)) {
+            CachedMember member = cache.getIfPresent(id);
+            if (member != null) {
+                result.put(id, member);
+                continue;
+            }
+            // JDA might know this member already, which doesn't cost a request
+            Member jdaMember = guild.getMemberById(id);
+            if (jdaMember != null) {
+                member = CachedMember.of(jdaMember);
+                cache.put(id, member);
+                result.put(id, member);
+                continue;
+            }
+            CompletableFuture<CachedMember> future = new CompletableFuture<>();
+            CompletableFuture<CachedMember> existing = pending.putIfAbsent(id, future);
+            if (existing == null) {
+                gather(guild, id);
+                waiting.put(id, future);
+            } else {
+                waiting.put(id, existing);
+            }
+        }
+
+        if (waiting.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return CompletableFuture.allOf(waiting.values().toArray(CompletableFuture[]::new)).thenApply(__ -> {
+            for (Map.Entry<Long, CompletableFuture<CachedMember>> entry : waiting.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().join());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Add a member to the next request, opening the gather
+     * window if it isn't open yet.
+     *
+     * @param guild The guild to request from
+     * @param id    The ID of the member
+     */
+    private synchronized void gather(Guild guild, long id) {
+        gathered.add(id);
+        if (!gathering) {
+            gathering = true;
+            gatherer.schedule(() -> flush(guild), TicketBot.config.memberCacheGatherWindow(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Request everything that was gathered.
+     *
+     * @param guild The guild to request from
+     */
+    private void flush(Guild guild) {
+        List<Long> missing;
+        synchronized (this) {
+            missing = new ArrayList<>(gathered);
+            gathered.clear();
+            gathering = false;
+        }
+        for (int from = 0; from < missing.size(); from += CHUNK_SIZE) {
+            request(guild, missing.subList(from, Math.min(from + CHUNK_SIZE, missing.size())));
+        }
+    }
+
+    /**
+     * Request a chunk of members from Discord.
+     *
+     * @param guild The guild to request from
+     * @param chunk The IDs, at most {@link #CHUNK_SIZE} of them
+     */
+    private void request(Guild guild, List<Long> chunk) {
+        requests.incrementAndGet();
+        requested.addAndGet(chunk.size());
+        long[] ids = chunk.stream().mapToLong(Long::longValue).toArray();
+        try {
+            retrieve(guild, ids);
+        } catch (RuntimeException ex) {
+            // Nothing else will complete these
+            for (long id : ids) {
+                CompletableFuture<CachedMember> future = pending.remove(id);
+                if (future != null) {
+                    future.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private void retrieve(Guild guild, long[] ids) {
+        guild.retrieveMembersByIds(ids).onSuccess(members -> {
+            for (Member member : members) {
+                CachedMember cached = CachedMember.of(member);
+                cache.put(member.getIdLong(), cached);
+                complete(member.getIdLong(), cached);
+            }
+            // Whoever is left has left the guild. Remember that too,
+            // so we don't ask Discord about them every time.
+            for (long id : ids) {
+                CachedMember unknown = CachedMember.unknown(id);
+                if (complete(id, unknown)) {
+                    cache.put(id, unknown);
+                }
+            }
+        }).onError(ex -> {
+            System.err.println("Couldn't retrieve " + ids.length + " members of guild " + guild.getId() + ", showing them as unknown.");
+            ex.printStackTrace();
+            for (long id : ids) {
+                complete(id, CachedMember.unknown(id));
+            }
+        });
+    }
+
+    private boolean complete(long id, CachedMember member) {
+        CompletableFuture<CachedMember> future = pending.remove(id);
+        return future != null && future.complete(member);
+    }
+
+    /**
+     * Get a human readable summary of how well this cache
+     * performs.
+     *
+     * @return -
+     */
+    public String getStats() {
+        CacheStats stats = cache.stats();
+        return "Members cached: " + cache.size() +
+                ", hits: " + stats.hitCount() +
+                ", misses: " + stats.missCount() +
+                String.format(" (hit rate %.1f%%)", stats.hitRate() * 100) +
+                ", requests: " + requests.get() +
+                " for " + requested.get() + " members";
+    }
+}
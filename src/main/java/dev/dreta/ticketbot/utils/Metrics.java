@@ -0,0 +1,78 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This class collects the statistics of the different
+ * parts of TicketBot, so that they can be shown together
+ * with the !ticket stats command.
+ * <p>
+ * Extensions can register their own statistics here too.
+ */
+public class Metrics {
+    private static final Map<String, Supplier<String>> sources = new LinkedHashMap<>();
+
+    /**
+     * Register a source of statistics.
+     * Registering a source with the same name again replaces it.
+     *
+     * @param name   The name to display the statistics under
+     * @param source Supplies the statistics each time they are displayed
+     */
+    public static synchronized void register(String name, Supplier<String> source) {
+        sources.put(name, source);
+    }
+
+    /**
+     * Remove a source of statistics.
+     *
+     * @param name The name of the source
+     */
+    public static synchronized void unregister(String name) {
+        sources.remove(name);
+    }
+
+    /**
+     * Remove all the sources of statistics that were loaded
+     * by a specific class loader. This is done when an
+     * extension is disabled.
+     *
+     * @param loader The class loader of the extension
+     */
+    public static synchronized void invalidate(ClassLoader loader) {
+        sources.values().removeIf(source -> source.getClass().getClassLoader() == loader);
+    }
+
+    /**
+     * Get all the statistics at this moment.
+     *
+     * @return The statistics mapped by the name of their source
+     */
+    public static synchronized Map<String, String> snapshot() {
+        Map<String, String> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, Supplier<String>> source : sources.entrySet()) {
+            snapshot.put(source.getKey(), source.getValue().get());
+        }
+        return snapshot;
+    }
+}
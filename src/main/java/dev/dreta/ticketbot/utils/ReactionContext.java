@@ -0,0 +1,126 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.guild.react.GenericGuildMessageReactionEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The ReactionContext finds out who reacted to a message
+ * without asking Discord whenever possible.
+ * <p>
+ * Reactions of the bot itself (for example, the reactions we
+ * add to our own messages so that they can be clicked) are
+ * ignored before anything else happens. Otherwise, the user
+ * is taken from the event if JDA has it cached, then from a
+ * small cache of our own, and only requested from Discord if
+ * neither of them knows the user.
+ */
+public class ReactionContext {
+    private static final Cache<Long, User> users = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+    private static final AtomicLong reactions = new AtomicLong();
+    private static final AtomicLong ignored = new AtomicLong();
+    private static final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Run an action with the user who reacted, unless the
+     * user is a bot.
+     *
+     * @param e      The reaction event
+     * @param action The action to run
+     */
+    public static void ifHuman(GenericGuildMessageReactionEvent e, Consumer<User> action) {
+        ifHuman(e.getJDA(), e.getUserIdLong(), e.getUser(), e.getMember(), e::retrieveUser, action);
+    }
+
+    /**
+     * Run an action with the user who reacted, unless the
+     * user is a bot.
+     *
+     * @param e      The reaction event
+     * @param action The action to run
+     */
+    public static void ifHuman(MessageReactionAddEvent e, Consumer<User> action) {
+        ifHuman(e.getJDA(), e.getUserIdLong(), e.getUser(), e.getMember(), e::retrieveUser, action);
+    }
+
+    private static void ifHuman(JDA jda, long userId, User user, Member member,
+                                Supplier<RestAction<User>> retrieve, Consumer<User> action) {
+        reactions.incrementAndGet();
+        // Our own reactions never need any work
+        if (userId == jda.getSelfUser().getIdLong()) {
+            ignored.incrementAndGet();
+            return;
+        }
+        if (user == null && member != null) {
+            user = member.getUser();
+        }
+        if (user == null) {
+            user = users.getIfPresent(userId);
+        }
+        if (user != null) {
+            users.put(userId, user);
+            accept(user, action);
+            return;
+        }
+        requests.incrementAndGet();
+        retrieve.get().queue(retrieved -> {
+            users.put(userId, retrieved);
+            accept(retrieved, action);
+        }, ex -> {
+            System.err.println("Couldn't retrieve user " + userId + " who reacted to a message, ignoring the reaction.");
+            ex.printStackTrace();
+        });
+    }
+
+    private static void accept(User user, Consumer<User> action) {
+        if (user.isBot()) {
+            ignored.incrementAndGet();
+            return;
+        }
+        action.accept(user);
+    }
+
+    /**
+     * Get a human readable summary of how many users had
+     * to be requested from Discord.
+     *
+     * @return -
+     */
+    public static String getStats() {
+        return "Reactions: " + reactions.get() +
+                ", ignored: " + ignored.get() +
+                ", users requested: " + requests.get() +
+                ", users cached: " + users.size();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import dev.dreta.ticketbot.TicketBot;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RestScheduler decides in which order our requests are
+ * sent to Discord when there are more of them than Discord
+ * lets us send at once.
+ * <p>
+ * Every request belongs to a {@link Priority} and a route,
+ * which is the ID of the channel it is sent to. Only a few
+ * requests are handed to JDA at a time, and at most
+ * {@link DataConfiguration#restRouteBudget()} per route, so
+ * when things are busy the questions that guild members are
+ * waiting for are sent before the reactions and deletes that
+ * nobody is waiting for.
+ * <p>
+ * Requests that are given the same key replace each other
+ * while they are waiting, so that only the latest version of
+ * a message that is edited several times in a row is sent.
+ * <p>
+ * Up to {@link DataConfiguration#restRouteBudget()} requests of
+ * the same channel can be in flight at once, so they may finish
+ * in any order. Requests that must arrive in order, like the
+ * reactions under a message, are sent with {@link #queueInOrder}.
+ * <p>
+ * Requests that fail are logged, like JDA does for requests
+ * that are queued without a failure callback.
+ */
+public class RestScheduler {
+    /**
+     * The priorities of the requests, from the most to the
+     * least important.
+     */
+    public enum Priority {
+        /**
+         * Questions and answers that a guild member is waiting for.
+         */
+        PROMPT,
+        /**
+         * Notices about something that has changed, for example
+         * that a ticket was closed.
+         */
+        NOTICE,
+        /**
+         * Adding and removing reactions.
+         */
+        REACTION,
+        /**
+         * Deleting messages and channels that aren't needed anymore.
+         */
+        CLEANUP
+    }
+
+    private static final Map<Priority, Deque<Request>> queues = new EnumMap<>(Priority.class);
+    private static final Map<Priority, Stats> stats = new EnumMap<>(Priority.class);
+    private static final Map<String, Request> keyed = new HashMap<>();
+    private static final Map<Long, Integer> routesInFlight = new HashMap<>();
+    private static int inFlight;
+    private static final AtomicLong coalesced = new AtomicLong();
+    // The number of times pump() was called that haven't been
+    // handled yet, see pump()
+    private static final AtomicInteger pumps = new AtomicInteger();
+
+    static {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            stats.put(priority, new Stats());
+        }
+    }
+
+    private static class Stats {
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+    }
+
+    private static class Request {
+        private final Priority priority;
+        private final long route;
+        private final String key;
+        private final long submitted = System.nanoTime();
+        // Replaced when a request with the same key is queued
+        private Pending<?> pending;
+
+        private Request(Priority priority, long route, String key, Pending<?> pending) {
+            this.priority = priority;
+            this.route = route;
+            this.key = key;
+            this.pending = pending;
+        }
+    }
+
+    private static class Pending<T> {
+        private final RestAction<T> action;
+        private final CompletableFuture<T> future;
+
+        private Pending(RestAction<T> action, CompletableFuture<T> future) {
+            this.action = action;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Send a request to a channel.
+     *
+     * @param priority The priority of the request
+     * @param channel  The channel the request is sent to
+     * @param action   The request
+     * @param <T>      The result of the request
+     * @return A future that completes with the result of the request
+     */
+    public static <T> CompletableFuture<T> queue(Priority priority, MessageChannel channel, RestAction<T> action) {
+        return queue(priority, channel.getIdLong(), null, action);
+    }
+
+    /**
+     * Send a request that replaces the waiting request with the
+     * same key, if there is one. The future of the request that
+     * was replaced is cancelled, as it will never be sent.
+     *
+     * @param priority The priority of the request
+     * @param channel  The channel the request is sent to
+     * @param key      The key of the request, for example "edit:" and the ID of the message
+     * @param action   The request
+     * @param <T>      The result of the request
+     * @return A future that completes with the result of the request
+     */
+    public static <T> CompletableFuture<T> queue(Priority priority, MessageChannel channel, String key, RestAction<T> action) {
+        return queue(priority, channel.getIdLong(), key, action);
+    }
+
+    /**
+     * Send a request.
+     *
+     * @param priority The priority of the request
+     * @param route    The ID of the channel the request is sent to
+     * @param key      The key of the request to replace a waiting request with, or null
+     * @param action   The request
+     * @param <T>      The result of the request
+     * @return A future that completes with the result of the request
+     */
+    public static <T> CompletableFuture<T> queue(Priority priority, long route, String key, RestAction<T> action) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.exceptionally(ex -> {
+            if (!(ex instanceof CancellationException)) {
+                System.err.println("A request to Discord failed:");
+                ex.printStackTrace();
+            }
+            return null;
+        });
+        Pending<T> pending = new Pending<>(action, future);
+        Pending<?> replaced = null;
+        synchronized (RestScheduler.class) {
+            Request request = key == null ? null : keyed.get(key);
+            if (request != null) {
+                // The request hasn't been sent yet, so only the latest one matters
+                replaced = request.pending;
+                request.pending = pending;
+                coalesced.incrementAndGet();
+            } else {
+                request = new Request(priority, route, key, pending);
+                queues.get(priority).add(request);
+                if (key != null) {
+                    keyed.put(key, request);
+                }
+            }
+        }
+        if (replaced != null) {
+            replaced.future.cancel(false);
+        }
+        pump();
+        return future;
+    }
+
+    /**
+     * Send requests to a channel one after another, each only
+     * once the one before it has succeeded, for example to add
+     * the reactions under a message in order.
+     *
+     * @param priority The priority of the requests
+     * @param channel  The channel the requests are sent to
+     * @param actions  The requests, in order
+     * @return A future that completes once every request has succeeded,
+     * or exceptionally with the first failure
+     */
+    public static CompletableFuture<Void> queueInOrder(Priority priority, MessageChannel channel, List<? extends RestAction<?>> actions) {
+        CompletableFuture<?> previous = CompletableFuture.completedFuture(null);
+        for (RestAction<?> action : actions) {
+            previous = previous.thenCompose(__ -> queue(priority, channel, action));
+        }
+        return previous.thenApply(__ -> null);
+    }
+
+    /**
+     * Send as many waiting requests as the budgets allow.
+     * <p>
+     * Requests that finish right away (or can't be queued at all)
+     * call this again while it is still sending. Only one call
+     * sends at a time, the others make it go around once more,
+     * so a long queue doesn't turn into a deep recursion.
+     */
+    private static void pump() {
+        if (pumps.getAndIncrement() > 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            dispatch();
+            missed = pumps.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private static void dispatch() {
+        List<Request> dispatch = new ArrayList<>();
+        synchronized (RestScheduler.class) {
+            int maxInFlight = TicketBot.config.restMaxInFlight();
+            int routeBudget = TicketBot.config.restRouteBudget();
+            while (inFlight < maxInFlight) {
+                Request next = poll(routeBudget);
+                if (next == null) {
+                    break;
+                }
+                inFlight++;
+                routesInFlight.merge(next.route, 1, Integer::sum);
+                if (next.key != null) {
+                    keyed.remove(next.key);
+                }
+                dispatch.add(next);
+            }
+        }
+        for (Request request : dispatch) {
+            long wait = System.nanoTime() - request.submitted;
+            Stats priorityStats = stats.get(request.priority);
+            priorityStats.dispatched.incrementAndGet();
+            priorityStats.waitNanos.addAndGet(wait);
+            priorityStats.maxWaitNanos.accumulateAndGet(wait, Math::max);
+            send(request, request.pending);
+        }
+    }
+
+    private static <T> void send(Request request, Pending<T> pending) {
+        try {
+            pending.action.queue(result -> {
+                done(request);
+                pending.future.complete(result);
+            }, ex -> {
+                done(request);
+                pending.future.completeExceptionally(ex);
+            });
+        } catch (RuntimeException ex) {
+            // For example, if we are missing a permission
+            done(request);
+            pending.future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Take the most important request whose route still has
+     * some budget left.
+     *
+     * @param routeBudget The number of requests each route can have in flight
+     * @return The request, or null if none can be sent right now
+     */
+    private static Request poll(int routeBudget) {
+        for (Deque<Request> queue : queues.values()) {
+            Iterator<Request> it = queue.iterator();
+            while (it.hasNext()) {
+                Request request = it.next();
+                if (routesInFlight.getOrDefault(request.route, 0) < routeBudget) {
+                    it.remove();
+                    return request;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void done(Request request) {
+        synchronized (RestScheduler.class) {
+            inFlight--;
+            routesInFlight.computeIfPresent(request.route, (route, count) -> count == 1 ? null : count - 1);
+        }
+        pump();
+    }
+
+    /**
+     * Get a human readable summary of how long the requests
+     * of each priority waited before they were sent.
+     *
+     * @return -
+     */
+    public static String getStats() {
+        StringBuilder summary = new StringBuilder();
+        synchronized (RestScheduler.class) {
+            summary.append("In flight: ").append(inFlight).append(", coalesced: ").append(coalesced.get());
+            for (Priority priority : Priority.values()) {
+                Stats priorityStats = stats.get(priority);
+                long dispatched = priorityStats.dispatched.get();
+                summary.append("\n").append(priority.name().toLowerCase(Locale.ROOT))
+                        .append(": waiting ").append(queues.get(priority).size())
+                        .append(", sent ").append(dispatched)
+                        .append(", avg wait ").append(dispatched == 0 ? 0 :
+                                TimeUnit.NANOSECONDS.toMillis(priorityStats.waitNanos.get() / dispatched)).append(" ms")
+                        .append(", max wait ").append(TimeUnit.NANOSECONDS.toMillis(priorityStats.maxWaitNanos.get())).append(" ms");
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.managers.ChannelManager;
+import net.dv8tion.jda.api.requests.restaction.ChannelAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Claims and refills the pooled channels of a guild that
+ * answers the requests when the test tells it to.
+ */
+class ChannelPoolTest {
+    private static final String POOL = "ticket-pool";
+    private static final long REFILL_DELAY = 1000;
+
+    @TempDir
+    File directory;
+    // The channels of the guild
+    private final Map<Long, TextChannel> channels = new ConcurrentHashMap<>();
+    // The requests that were sent and not answered yet
+    private final List<Request> creations = new ArrayList<>();
+    private final List<Request> claims = new ArrayList<>();
+    private long nextId = 1;
+    private ChannelPool pool;
+
+    /**
+     * A request to Discord, answered by the test.
+     */
+    private static class Request {
+        private final long delay;
+        private final Consumer<Object> success;
+        private final Consumer<Throwable> failure;
+        // What the channel was changed to when it was claimed
+        private final List<String> changes;
+
+        @SuppressWarnings("unchecked")
+        Request(long delay, Object success, Object failure, List<String> changes) {
+            this.delay = delay;
+            this.success = (Consumer<Object>) success;
+            this.failure = (Consumer<Throwable>) failure;
+            this.changes = changes;
+        }
+    }
+
+    // Returned by a handler for the methods the fake doesn't have
+    private static final Object UNSUPPORTED = new Object();
+
+    private interface Handler {
+        Object handle(Object proxy, String name, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(ChannelPoolTest.class.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+            }
+            Object result = handler.handle(proxy, method.getName(), args);
+            if (result == UNSUPPORTED) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            return result;
+        });
+    }
+
+    @BeforeEach
+    void setUp() {
+        JsonObject pool = TestConfig.load(directory).getConfig().getAsJsonObject("channels").getAsJsonObject("pool");
+        pool.addProperty("size", 2);
+        pool.addProperty("refillDelay", REFILL_DELAY);
+        TicketBot.gson = new Gson();
+
+        Role role = proxy(Role.class, (proxy, name, args) -> name.equals("getIdLong") ? 1L : UNSUPPORTED);
+        Guild guild = proxy(Guild.class, (proxy, name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return TestGuilds.MAIN;
+                case "getId":
+                    return String.valueOf(TestGuilds.MAIN);
+                case "getTextChannelById":
+                    // Deleted channels are gone
+                    return channels.get((Long) args[0]);
+                case "getPublicRole":
+                case "getRoleById":
+                    return role;
+            }
+            return UNSUPPORTED;
+        });
+        Category category = proxy(Category.class, (proxy, name, args) -> {
+            switch (name) {
+                case "getGuild":
+                    return guild;
+                case "getTextChannels":
+                    return new ArrayList<>(channels.values());
+                case "createTextChannel":
+                    return creation();
+            }
+            return UNSUPPORTED;
+        });
+        TicketBot.jda = proxy(JDA.class, (proxy, name, args) -> {
+            switch (name) {
+                case "getGuildById":
+                    return guild;
+                case "getCategoryById":
+                    return category;
+            }
+            return UNSUPPORTED;
+        });
+        this.pool = new ChannelPool(TicketBot.config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TicketBot.jda = null;
+    }
+
+    private ChannelAction<?> creation() {
+        return proxy(ChannelAction.class, (proxy, name, args) -> {
+            switch (name) {
+                case "addPermissionOverride":
+                case "setTopic":
+                    return proxy;
+                case "queueAfter":
+                    creations.add(new Request(((Number) args[0]).longValue(), args[2], args[3], List.of()));
+                    return null;
+            }
+            return UNSUPPORTED;
+        });
+    }
+
+    private TextChannel channel(String channelName) {
+        long id = nextId++;
+        TextChannel channel = proxy(TextChannel.class, (proxy, name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return id;
+                case "getName":
+                    return channelName;
+                case "getManager":
+                    List<String> changes = new ArrayList<>();
+                    return proxy(ChannelManager.class, (manager, method, a) -> {
+                        switch (method) {
+                            case "setName":
+                            case "setTopic":
+                                changes.add(String.valueOf(a[0]));
+                                return manager;
+                            case "putPermissionOverride":
+                                return manager;
+                            case "queue":
+                                claims.add(new Request(0, a[0], a[1], changes));
+                                return null;
+                        }
+                        return UNSUPPORTED;
+                    });
+            }
+            return UNSUPPORTED;
+        });
+        channels.put(id, channel);
+        return channel;
+    }
+
+    private static Member member() {
+        return proxy(Member.class, (proxy, name, args) -> name.equals("getIdLong") ? 7L : UNSUPPORTED);
+    }
+
+    /**
+     * Answer the oldest request to create a pooled channel.
+     *
+     * @param succeed Whether the channel was created
+     * @return How long the request waited before it was sent
+     */
+    private long create(boolean succeed) {
+        Request request = creations.remove(0);
+        if (succeed) {
+            request.success.accept(channel(POOL));
+        } else {
+            request.failure.accept(new IllegalStateException("Missing permissions"));
+        }
+        return request.delay;
+    }
+
+    @Test
+    void reusesPooledChannelsAndFillsThePool() {
+        channel(POOL);
+        channel("general");
+        pool.start();
+        assertEquals(1, pool.size());
+        assertEquals(REFILL_DELAY, create(true));
+        assertEquals(2, pool.size());
+        // The pool is full
+        assertTrue(creations.isEmpty());
+
+        pool.start();
+        assertEquals(2, pool.size());
+        assertTrue(creations.isEmpty());
+    }
+
+    @Test
+    void claimsAPooledChannel() {
+        TextChannel pooled = channel(POOL);
+        channel(POOL);
+        pool.start();
+        assertTrue(creations.isEmpty());
+
+        CompletableFuture<TextChannel> claimed = pool.claim(member(), "ticket-1", "Topic");
+        assertEquals(1, pool.size());
+        // A new channel is created for the one that was claimed
+        assertEquals(1, creations.size());
+        assertFalse(claimed.isDone());
+
+        Request claim = claims.remove(0);
+        assertEquals(List.of("ticket-1", "Topic"), claim.changes);
+        claim.success.accept(null);
+        assertSame(pooled, claimed.join());
+    }
+
+    @Test
+    void putsTheChannelBackWhenTheClaimFails() {
+        TextChannel pooled = channel(POOL);
+        channel(POOL);
+        pool.start();
+
+        CompletableFuture<TextChannel> claimed = pool.claim(member(), "ticket-1", "Topic");
+        claims.remove(0).failure.accept(new IllegalStateException("Missing permissions"));
+        CompletionException ex = assertThrows(CompletionException.class, claimed::join);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertEquals(2, pool.size());
+
+        // It is the first to be claimed again
+        claimed = pool.claim(member(), "ticket-1", "Topic");
+        claims.remove(0).success.accept(null);
+        assertSame(pooled, claimed.join());
+    }
+
+    @Test
+    void skipsDeletedChannelsAndRunsOut() {
+        TextChannel deleted = channel(POOL);
+        TextChannel pooled = channel(POOL);
+        pool.start();
+        channels.remove(deleted.getIdLong());
+
+        CompletableFuture<TextChannel> claimed = pool.claim(member(), "ticket-1", "Topic");
+        claims.remove(0).success.accept(null);
+        assertSame(pooled, claimed.join());
+        assertEquals(0, pool.size());
+        assertNull(pool.claim(member(), "ticket-2", "Topic"));
+    }
+
+    @Test
+    void triesAgainLaterWhenCreatingFails() {
+        pool.start();
+        assertEquals(REFILL_DELAY, create(false));
+        // At least 5 seconds, doubled with every failure in a row
+        assertEquals(5000, create(false));
+        assertEquals(10000, create(false));
+        assertEquals(20000, create(true));
+        assertEquals(1, pool.size());
+
+        // The failures are forgotten once it works again
+        assertEquals(REFILL_DELAY, create(true));
+        assertEquals(2, pool.size());
+        assertTrue(creations.isEmpty());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import dev.dreta.ticketbot.data.Ticket;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.requests.restaction.ChannelAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Creates ticket channels in a fake guild, which records
+ * what every request would have set up.
+ */
+class ChannelProvisionerTest {
+    private static final Pattern STATS = Pattern.compile("Ticket channels: (\\d+), requests: (\\d+)");
+
+    @TempDir
+    File directory;
+    private GuildContext context;
+    // What was set on the channels that are being created
+    private final List<String> created = new ArrayList<>();
+    private final List<CompletableFuture<TextChannel>> requests = new ArrayList<>();
+    private Role publicRole;
+    private Role allowedRole;
+    private Member member;
+
+    private interface Handler {
+        Object handle(Object proxy, String name, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, String description, Handler handler) {
+        return (T) Proxy.newProxyInstance(ChannelProvisionerTest.class.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return description;
+            }
+            return handler.handle(proxy, method.getName(), args);
+        });
+    }
+
+    private static <T> T unsupported(Class<T> type, String description) {
+        return proxy(type, description, (proxy, name, args) -> {
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    @BeforeEach
+    void setUp() {
+        context = TestGuilds.load(directory, new ArrayList<>());
+        publicRole = unsupported(Role.class, "@everyone");
+        allowedRole = unsupported(Role.class, "allowed");
+        Guild guild = proxy(Guild.class, "guild", (proxy, name, args) -> {
+            switch (name) {
+                case "getPublicRole":
+                    return publicRole;
+                case "getRoleById":
+                    return allowedRole;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        Category category = proxy(Category.class, "tickets", (proxy, name, args) -> {
+            switch (name) {
+                case "getGuild":
+                    return guild;
+                case "createTextChannel":
+                    created.add("name " + args[0]);
+                    return creation();
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        TicketBot.jda = proxy(JDA.class, "jda", (proxy, name, args) -> {
+            switch (name) {
+                case "getGuildById":
+                    return guild;
+                case "getCategoryById":
+                    return category;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        User user = proxy(User.class, "alice", (proxy, name, args) -> {
+            switch (name) {
+                case "getName":
+                    return "alice";
+                case "getDiscriminator":
+                    return "0001";
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        member = proxy(Member.class, "alice", (proxy, name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return 7L;
+                case "getUser":
+                    return user;
+                case "getEffectiveName":
+                    return "Alice";
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        TestGuilds.unload();
+    }
+
+    private ChannelAction<?> creation() {
+        return proxy(ChannelAction.class, "creation", (proxy, name, args) -> {
+            switch (name) {
+                case "setTopic":
+                    created.add("topic " + args[0]);
+                    return proxy;
+                case "addPermissionOverride":
+                    created.add("override " + args[0]);
+                    return proxy;
+                case "submit":
+                    CompletableFuture<TextChannel> request = new CompletableFuture<>();
+                    requests.add(request);
+                    return request;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    /**
+     * Get the number of ticket channels and requests counted so far.
+     *
+     * @return -
+     */
+    private static long[] counted() {
+        Matcher matcher = STATS.matcher(ChannelProvisioner.getStats());
+        assertTrue(matcher.find(), ChannelProvisioner.getStats());
+        return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))};
+    }
+
+    @Test
+    void createsAChannelInOneRequest() {
+        long[] before = counted();
+        CompletableFuture<TextChannel> provisioned = ChannelProvisioner.provision(context, member);
+        assertEquals(List.of(
+                "name ticket-alice0001-1",
+                "override @everyone",
+                "override allowed",
+                "topic This is the ticket for alice#0001",
+                "override alice"), created);
+        assertEquals(1, requests.size());
+        // Nothing is counted until Discord has created the channel
+        assertArrayEquals(before, counted());
+
+        TextChannel channel = unsupported(TextChannel.class, "ticket-alice0001-1");
+        requests.get(0).complete(channel);
+        assertSame(channel, provisioned.join());
+        assertArrayEquals(new long[]{before[0] + 1, before[1] + 1}, counted());
+    }
+
+    @Test
+    void namesTheChannelAfterTheNextTicket() {
+        context.addTicket(new Ticket("First", 7, 11, true, new ArrayList<>(), new ArrayList<>()));
+        ChannelProvisioner.provision(context, member);
+        assertEquals("name ticket-alice0001-2", created.get(0));
+    }
+
+    @Test
+    void doesNotCountAFailedRequest() {
+        long[] before = counted();
+        CompletableFuture<TextChannel> provisioned = ChannelProvisioner.provision(context, member);
+        requests.get(0).completeExceptionally(new IllegalStateException("Missing permissions"));
+        CompletionException ex = assertThrows(CompletionException.class, provisioned::join);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertArrayEquals(before, counted());
+    }
+}
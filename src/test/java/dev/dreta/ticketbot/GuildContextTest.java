@@ -0,0 +1,193 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import dev.dreta.ticketbot.data.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loads the contexts of guilds from their directories, next to
+ * the main guild.
+ */
+class GuildContextTest {
+    private static final long MAIN = TestGuilds.MAIN;
+    private static final long OTHER = 200000000;
+    private static final long THIRD = 300000000;
+
+    @TempDir
+    File directory;
+    // The listeners registered on the fake JDA
+    private final List<Object> listeners = Collections.synchronizedList(new ArrayList<>());
+    private GuildContext main;
+
+    @BeforeEach
+    void setUp() {
+        main = TestGuilds.load(directory, listeners);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        TestGuilds.unload();
+    }
+
+    private File setUpGuild(long guildId, long... channels) throws Exception {
+        return TestGuilds.setUpGuild(directory, guildId, "{\"commandPrefix\": \"?\"}", channels);
+    }
+
+    private long poolListeners() {
+        return listeners.stream().filter(listener -> listener instanceof ChannelPool).count();
+    }
+
+    @Test
+    void onlyServesConfiguredGuilds() {
+        assertSame(main, GuildContext.main());
+        assertSame(main, GuildContext.of(MAIN));
+        assertNull(GuildContext.of(OTHER));
+        assertEquals(List.of(main), new ArrayList<>(GuildContext.loaded()));
+    }
+
+    @Test
+    void loadsAGuildWhenItIsFirstUsed() throws Exception {
+        setUpGuild(OTHER, 10);
+        assertFalse(GuildContext.loaded().stream().anyMatch(context -> context.getGuildId() == OTHER));
+
+        GuildContext other = GuildContext.of(OTHER);
+        assertNotNull(other);
+        assertSame(other, GuildContext.of(OTHER));
+        assertTrue(GuildContext.loaded().contains(other));
+        assertEquals("Ticket 10", other.getTicket(10).getTitle());
+        assertEquals(1, poolListeners());
+        assertTrue(listeners.contains(other.getChannelPool()));
+    }
+
+    @Test
+    void keepsGuildsApart() throws Exception {
+        setUpGuild(OTHER, 10);
+        GuildContext other = GuildContext.of(OTHER);
+
+        // Only what config.json of the guild changes is different
+        assertEquals("?", other.getConfig().getCommandPrefix());
+        assertEquals("!", main.getConfig().getCommandPrefix());
+        assertEquals(OTHER, other.getConfig().getConfig().get("guildId").getAsLong());
+        assertEquals(main.getConfig().channelsPoolName(), other.getConfig().channelsPoolName());
+
+        // The tickets of one guild are never seen in the other
+        other.addTicket(new Ticket("Other", 8, 11, true, new ArrayList<>(), new ArrayList<>()));
+        main.addTicket(new Ticket("Main", 8, 12, true, new ArrayList<>(), new ArrayList<>()));
+        assertNotNull(other.getTicket(11));
+        assertNull(main.getTicket(11));
+        assertNull(Ticket.tickets.get(11L));
+        assertNull(other.getTicket(12));
+        assertSame(Ticket.tickets.get(12L), main.getTicket(12));
+        assertEquals(1, other.countTickets(8));
+        assertEquals(1, main.countTickets(8));
+        assertNotSame(main.getMembers(), other.getMembers());
+        assertNotSame(main.getSearchIndex(), other.getSearchIndex());
+    }
+
+    @Test
+    void loadsAGuildOnlyOnceWhenUsedAtOnce() throws Exception {
+        setUpGuild(OTHER);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<GuildContext>> contexts = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                contexts.add(executor.submit(() -> {
+                    start.await();
+                    return GuildContext.of(OTHER);
+                }));
+            }
+            start.countDown();
+            Set<GuildContext> distinct = ConcurrentHashMap.newKeySet();
+            for (Future<GuildContext> context : contexts) {
+                distinct.add(context.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, distinct.size());
+            assertEquals(1, poolListeners());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void savesAndUnloadsWhenLeavingAGuild() throws Exception {
+        setUpGuild(OTHER);
+        GuildContext other = GuildContext.of(OTHER);
+        other.addTicket(new Ticket("Added", 8, 11, true, new ArrayList<>(), new ArrayList<>()));
+
+        TestGuilds.leave(OTHER);
+        assertTrue(other.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(GuildContext.loaded().contains(other));
+        assertEquals(0, poolListeners());
+
+        // Leaving the main guild doesn't unload it
+        TestGuilds.leave(MAIN);
+        assertSame(main, GuildContext.main());
+
+        GuildContext again = GuildContext.of(OTHER);
+        assertNotSame(other, again);
+        assertEquals("Added", again.getTicket(11).getTitle());
+    }
+
+    @Test
+    void tailsEveryGuildWithoutConnecting() throws Exception {
+        setUpGuild(OTHER, 10);
+        File third = setUpGuild(THIRD);
+        assertTrue(new File(directory, "guilds/notes").mkdirs());
+        assertTrue(new File(directory, "guilds/400000000").mkdirs());
+
+        GuildContext.tail();
+        GuildContext other = GuildContext.of(OTHER);
+        assertNotNull(other.getTicket(10));
+        assertNotNull(GuildContext.of(THIRD));
+        assertEquals(3, GuildContext.loaded().size());
+        assertEquals(0, poolListeners());
+
+        // The leader saved the third guild since
+        TestGuilds.writeTickets(third.getParentFile(), 20);
+        assertTrue(third.setLastModified(third.lastModified() + 2000));
+        GuildContext.tail();
+        assertNotNull(GuildContext.of(THIRD).getTicket(20));
+
+        GuildContext.connectAll();
+        GuildContext.connectAll();
+        assertEquals(2, poolListeners());
+        assertTrue(listeners.contains(other.getChannelPool()));
+        assertFalse(listeners.contains(main.getChannelPool()));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the events received while TicketBot is starting
+ * are kept and handed to the listeners in order afterwards.
+ * <p>
+ * TicketBot only starts dispatching once, so everything is
+ * checked in a single test.
+ */
+class ShardEventManagerTest {
+    // The numbers of the events the listener was handed, in order
+    private final List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+
+    private static GenericEvent event(long number) {
+        return (GenericEvent) Proxy.newProxyInstance(ShardEventManagerTest.class.getClassLoader(), new Class[]{GenericEvent.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getResponseNumber":
+                    return number;
+                case "getJDA":
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Event " + number;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> range = new ArrayList<>();
+        for (long i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    @Test
+    void keepsEventsUntilTheTicketsAreLoaded() throws InterruptedException {
+        ShardEventManager first = new ShardEventManager(0);
+        ShardEventManager second = new ShardEventManager(1);
+        EventListener listener = e -> handled.add(e.getResponseNumber());
+        first.register(listener);
+        second.register(listener);
+
+        // Both shards receive events, and far too many of them
+        for (long i = 0; i < 6000; i++) {
+            first.handle(event(i));
+        }
+        for (long i = 6000; i < 10010; i++) {
+            second.handle(event(i));
+        }
+        assertEquals(List.of(), handled);
+
+        // The shard that delivers events while they are handed out waits for them
+        CountDownLatch replaying = new CountDownLatch(1);
+        first.register((EventListener) e -> {
+            if (e.getResponseNumber() == 0) {
+                replaying.countDown();
+                try {
+                    // Give the late event a chance to overtake the kept ones
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread late = new Thread(() -> {
+            try {
+                replaying.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            second.handle(event(20000));
+        });
+        late.start();
+        ShardEventManager.startDispatching();
+        late.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Only the first 10000 events are kept, in the order they arrived
+        List<Long> expected = range(0, 10000);
+        expected.add(20000L);
+        assertEquals(expected, handled);
+
+        // From now on, events are handed to the listeners right away
+        first.handle(event(20001));
+        assertEquals(20001L, handled.get(handled.size() - 1));
+
+        // Starting again doesn't hand out anything twice
+        ShardEventManager.startDispatching();
+        assertEquals(10002, handled.size());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts two leases on the same store, in the same process and
+ * in two processes, the way a leader and a standby do.
+ */
+class StoreLeaseTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void onlyOneLeaseIsHeld() throws Exception {
+        StoreLease leader = new StoreLease(directory);
+        StoreLease standby = new StoreLease(directory);
+        try {
+            assertTrue(leader.tryAcquire());
+            assertTrue(leader.isHeld());
+            assertFalse(standby.tryAcquire());
+            assertFalse(standby.isHeld());
+
+            leader.release();
+            assertFalse(leader.isHeld());
+            assertTrue(standby.tryAcquire());
+            assertTrue(standby.isHeld());
+        } finally {
+            leader.release();
+            standby.release();
+        }
+    }
+
+    @Test
+    void standbyTakesOverWhenTheLeaderDies() throws Exception {
+        Process leader = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", locationOf(StoreLease.class) + File.pathSeparator + locationOf(Leader.class),
+                Leader.class.getName(), directory.getPath())
+                .redirectErrorStream(true)
+                .start();
+        StoreLease standby = new StoreLease(directory);
+        try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(leader.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("held", out.readLine());
+            assertFalse(standby.tryAcquire());
+
+            AtomicInteger waited = new AtomicInteger();
+            CompletableFuture<Void> takeOver = CompletableFuture.runAsync(() -> {
+                try {
+                    standby.await(10, waited::incrementAndGet);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(takeOver.isDone());
+
+            // Killed, so nothing is released on purpose
+            leader.destroyForcibly().waitFor();
+            takeOver.get(10, TimeUnit.SECONDS);
+            assertTrue(standby.isHeld());
+            assertTrue(waited.get() > 0);
+        } finally {
+            leader.destroyForcibly();
+            standby.release();
+        }
+    }
+
+    private static String locationOf(Class<?> clazz) throws Exception {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+
+    /**
+     * Takes the lease of a directory and holds it until it is killed.
+     */
+    public static class Leader {
+        public static void main(String[] args) throws Exception {
+            StoreLease lease = new StoreLease(new File(args[0]));
+            if (!lease.tryAcquire()) {
+                System.out.println("not held");
+                return;
+            }
+            System.out.println("held");
+            System.out.flush();
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+}
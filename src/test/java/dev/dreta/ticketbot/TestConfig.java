@@ -0,0 +1,42 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import dev.dreta.ticketbot.utils.DataConfiguration;
+
+import java.io.File;
+
+/**
+ * Sets up {@link TicketBot#config} for the tests, with the
+ * config.json that TicketBot ships with.
+ */
+public class TestConfig {
+    /**
+     * Load the default configuration into {@link TicketBot#config}.
+     *
+     * @param directory The directory to copy config.json to
+     * @return The configuration, to change it for a test
+     */
+    public static DataConfiguration load(File directory) {
+        DataConfiguration config = new DataConfiguration();
+        config.load("config.json", TicketBot.class, directory);
+        TicketBot.config = config;
+        return config;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot;
+
+import com.google.gson.Gson;
+import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.utils.Configuration;
+import dev.dreta.ticketbot.utils.MemberCache;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets up the main guild and other guilds for the tests, with
+ * a JDA that isn't connected to Discord.
+ */
+public class TestGuilds {
+    /**
+     * The ID of the main guild in the config.json that TicketBot ships with.
+     */
+    public static final long MAIN = 100000000;
+
+    /**
+     * Set up TicketBot for the main guild.
+     *
+     * @param directory The directory to keep config.json, data.json and the guilds in
+     * @param listeners The list to add the listeners registered on JDA to
+     * @return The context of the main guild
+     */
+    public static GuildContext load(File directory, List<Object> listeners) {
+        TestConfig.load(directory);
+        TicketBot.gson = new Gson();
+        TicketBot.data = new Configuration();
+        TicketBot.data.load("data.json", TicketBot.class, directory);
+        TicketBot.members = new MemberCache(MAIN, 10, 60);
+        TicketBot.channelPool = new ChannelPool(TicketBot.config);
+        TicketBot.jda = (JDA) Proxy.newProxyInstance(TestGuilds.class.getClassLoader(), new Class[]{JDA.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "addEventListener":
+                    Collections.addAll(listeners, (Object[]) args[0]);
+                    return null;
+                case "removeEventListener":
+                    listeners.removeAll(List.of((Object[]) args[0]));
+                    return null;
+                case "getGuildById":
+                    // Not connected, so the channel pools don't start
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        return GuildContext.createMain();
+    }
+
+    /**
+     * Unload every guild but the main guild, and forget
+     * the tickets of the main guild.
+     */
+    public static void unload() throws InterruptedException {
+        for (GuildContext context : new ArrayList<>(GuildContext.loaded())) {
+            if (context != GuildContext.main()) {
+                leave(context.getGuildId());
+                if (!context.getExecutor().awaitTermination(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Guild " + context.getGuildId() + " wasn't saved in time.");
+                }
+            }
+        }
+        Ticket.tickets.clear();
+        Ticket.ticketsByUser.clear();
+        TicketBot.jda = null;
+    }
+
+    /**
+     * Leave a guild, like when the bot is removed from it.
+     *
+     * @param guildId The ID of the guild
+     */
+    public static void leave(long guildId) {
+        Guild guild = (Guild) Proxy.newProxyInstance(TestGuilds.class.getClassLoader(), new Class[]{Guild.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getIdLong")) {
+                return guildId;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        new GuildContext.Listener().onGuildLeave(new GuildLeaveEvent(TicketBot.jda, 0, guild));
+    }
+
+    /**
+     * Set up TicketBot for another guild.
+     *
+     * @param directory The directory given to {@link #load(File, List)}
+     * @param guildId   The ID of the guild
+     * @param config    The config.json of the guild
+     * @param channels  The channels of the tickets in its data file
+     * @return The data file of the guild
+     */
+    public static File setUpGuild(File directory, long guildId, String config, long... channels) throws Exception {
+        File guild = new File(directory, "guilds/" + guildId);
+        if (!guild.mkdirs() && !guild.isDirectory()) {
+            throw new IllegalStateException("Couldn't create " + guild + ".");
+        }
+        Files.write(new File(guild, "config.json").toPath(), config.getBytes(StandardCharsets.UTF_8));
+        return writeTickets(guild, channels);
+    }
+
+    /**
+     * Write the data file of a guild.
+     *
+     * @param guild    The directory of the guild
+     * @param channels The channels of its tickets
+     * @return The data file
+     */
+    public static File writeTickets(File guild, long... channels) throws Exception {
+        List<String> tickets = new ArrayList<>();
+        for (long channel : channels) {
+            tickets.add("{\"title\": \"Ticket " + channel + "\", \"author\": 7, \"channel\": " + channel +
+                    ", \"open\": true, \"assignees\": [], \"steps\": []}");
+        }
+        File data = new File(guild, "data.json");
+        Files.write(data.toPath(), ("{\"tickets\": [" + String.join(", ", tickets) + "], \"ticketTypes\": []}")
+                .getBytes(StandardCharsets.UTF_8));
+        return data;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.commands.manage;
+
+import dev.dreta.ticketbot.GuildContext;
+import dev.dreta.ticketbot.TestGuilds;
+import dev.dreta.ticketbot.TicketBot;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks who may manage the tickets, and that the decisions
+ * are forgotten when the roles change.
+ */
+class ManagerPermissionsTest {
+    private static final long OTHER = 200000000;
+    private static final long MANAGER_ROLE = 5;
+    private static final long OTHER_ROLE = 6;
+
+    @TempDir
+    File directory;
+    private final ManagerPermissions listener = new ManagerPermissions();
+    // The roles of the guilds called "Ticket Bot Manager"
+    private final List<Role> namedRoles = new ArrayList<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestGuilds.load(directory, new ArrayList<>());
+        TestGuilds.setUpGuild(directory, OTHER, "{\"manage\": {\"roles\": [" + MANAGER_ROLE + "]}}");
+        ManagerPermissions.invalidateAll();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        ManagerPermissions.invalidateAll();
+        TestGuilds.unload();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, BiFunction<String, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(ManagerPermissionsTest.class.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+            }
+            return handler.apply(method.getName(), args);
+        });
+    }
+
+    private Guild guild(long id) {
+        return proxy(Guild.class, (name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return id;
+                case "getRolesByName":
+                    lookups.incrementAndGet();
+                    return new ArrayList<>(namedRoles);
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    private static Role role(long id) {
+        return proxy(Role.class, (name, args) -> {
+            if (name.equals("getIdLong")) {
+                return id;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    /**
+     * Create a member whose roles can be changed.
+     *
+     * @param guild The guild of the member
+     * @param id    The ID of the member
+     * @param owner Whether the member owns the guild
+     * @param roles The roles of the member, changed by the test
+     */
+    private static Member member(Guild guild, long id, boolean owner, List<Role> roles) {
+        return proxy(Member.class, (name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return id;
+                case "getGuild":
+                    return guild;
+                case "isOwner":
+                    return owner;
+                case "getRoles":
+                    return new ArrayList<>(roles);
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    @Test
+    void managersNeedAManagerRole() {
+        Guild guild = guild(OTHER);
+        assertTrue(ManagerPermissions.isManager(member(guild, 1, false, List.of(role(MANAGER_ROLE)))));
+        assertFalse(ManagerPermissions.isManager(member(guild, 2, false, List.of(role(OTHER_ROLE)))));
+        assertTrue(ManagerPermissions.isManager(member(guild, 3, true, List.of())));
+        assertFalse(ManagerPermissions.isManager(null));
+        // TicketBot isn't set up for the guild
+        assertFalse(ManagerPermissions.isManager(member(guild(400000000), 1, false, List.of(role(MANAGER_ROLE)))));
+    }
+
+    @Test
+    void remembersDecisionsUntilTheRolesOfTheMemberChange() {
+        Guild guild = guild(OTHER);
+        List<Role> roles = new ArrayList<>();
+        Member member = member(guild, 1, false, roles);
+        assertFalse(ManagerPermissions.isManager(member));
+
+        // Without an event, the decision is remembered
+        roles.add(role(MANAGER_ROLE));
+        assertFalse(ManagerPermissions.isManager(member));
+        listener.onGuildMemberRoleAdd(new GuildMemberRoleAddEvent(null, 0, member, List.of(role(MANAGER_ROLE))));
+        assertTrue(ManagerPermissions.isManager(member));
+
+        roles.clear();
+        assertTrue(ManagerPermissions.isManager(member));
+        listener.onGuildMemberRoleRemove(new GuildMemberRoleRemoveEvent(null, 0, member, List.of(role(MANAGER_ROLE))));
+        assertFalse(ManagerPermissions.isManager(member));
+
+        roles.add(role(MANAGER_ROLE));
+        User user = proxy(User.class, (name, args) -> {
+            if (name.equals("getIdLong")) {
+                return 1L;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+        listener.onGuildMemberRemove(new GuildMemberRemoveEvent(null, 0, guild, user, member));
+        assertTrue(ManagerPermissions.isManager(member));
+    }
+
+    @Test
+    void forgetsOnlyTheDecisionsOfTheGuild() throws Exception {
+        TestGuilds.setUpGuild(directory, 300000000, "{\"manage\": {\"roles\": [" + MANAGER_ROLE + "]}}");
+        List<Role> roles = new ArrayList<>();
+        Member here = member(guild(OTHER), 1, false, roles);
+        Member there = member(guild(300000000), 1, false, roles);
+        assertFalse(ManagerPermissions.isManager(here));
+        assertFalse(ManagerPermissions.isManager(there));
+
+        roles.add(role(MANAGER_ROLE));
+        listener.onGuildMemberRoleAdd(new GuildMemberRoleAddEvent(null, 0, here, List.of(role(MANAGER_ROLE))));
+        assertTrue(ManagerPermissions.isManager(here));
+        assertFalse(ManagerPermissions.isManager(there));
+    }
+
+    @Test
+    void looksUpNamedRolesOnlyWhenTheRolesChange() throws Exception {
+        TestGuilds.setUpGuild(directory, 300000000, "{}");
+        Guild guild = guild(300000000);
+        Member member = member(guild, 1, false, List.of(role(MANAGER_ROLE)));
+        assertFalse(ManagerPermissions.isManager(member));
+        assertFalse(ManagerPermissions.isManager(member(guild, 2, false, List.of())));
+        assertEquals(1, lookups.get());
+
+        // A role called "Ticket Bot Manager" was created
+        Role created = role(MANAGER_ROLE);
+        namedRoles.add(created);
+        Role withGuild = proxy(Role.class, (name, args) -> name.equals("getGuild") ? guild : null);
+        listener.onRoleCreate(new RoleCreateEvent(null, 0, withGuild));
+        assertTrue(ManagerPermissions.isManager(member));
+        assertEquals(2, lookups.get());
+
+        namedRoles.clear();
+        listener.onRoleDelete(new RoleDeleteEvent(null, 0, withGuild));
+        assertFalse(ManagerPermissions.isManager(member));
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    void readsTheRolesAgainWhenTheConfigurationIsReloaded() throws Exception {
+        Guild guild = guild(OTHER);
+        Member member = member(guild, 1, false, List.of(role(OTHER_ROLE)));
+        assertFalse(ManagerPermissions.isManager(member));
+
+        GuildContext context = GuildContext.of(OTHER);
+        Files.write(context.getConfig().getFile().toPath(),
+                ("{\"manage\": {\"roles\": [" + OTHER_ROLE + "]}}").getBytes(StandardCharsets.UTF_8));
+        context.getConfig().reload();
+        assertTrue(ManagerPermissions.isManager(member));
+    }
+
+    @Test
+    void onlyMainGuildManagersAndTheOwnerManageTheBot() {
+        Member other = member(guild(OTHER), 1, false, List.of(role(MANAGER_ROLE)));
+        assertTrue(ManagerPermissions.isManager(other));
+        assertFalse(ManagerPermissions.isBotManager(other));
+
+        Member main = member(guild(TestGuilds.MAIN), 1, true, List.of());
+        assertTrue(ManagerPermissions.isBotManager(main));
+        assertFalse(ManagerPermissions.isBotManager(member(guild(TestGuilds.MAIN), 2, false, List.of())));
+
+        TicketBot.config.getConfig().addProperty("ownerId", 3);
+        assertTrue(ManagerPermissions.isBotManager(member(guild(OTHER), 3, false, List.of())));
+        assertFalse(ManagerPermissions.isBotManager(null));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import dev.dreta.ticketbot.data.types.IntegerStepType;
+import dev.dreta.ticketbot.data.types.ListStepType;
+import dev.dreta.ticketbot.data.types.StringStepType;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnswerCodecsTest {
+    private static final String LONG_STRING;
+
+    static {
+        // Longer than DataOutput.writeUTF can handle
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 70000) {
+            builder.append("\u00e9\u4e2d\ud83c\udfab ");
+        }
+        LONG_STRING = builder.toString();
+    }
+
+    /**
+     * A step type of an extension that didn't register a codec.
+     */
+    public static class LegacyStepType implements TicketStepType<Long> {
+        @Override
+        public void init(TextChannel channel, String question, String description, Consumer<Long> callback, JsonObject options) {
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public void ask() {
+        }
+    }
+
+    /**
+     * A codec of an extension that only knows about JSON.
+     */
+    private static final AnswerCodec<int[]> POINT = new AnswerCodec<int[]>() {
+        @Override
+        public JsonElement encode(int[] answer) {
+            return new JsonPrimitive(answer[0] + "," + answer[1]);
+        }
+
+        @Override
+        public int[] decode(JsonElement json) {
+            String[] parts = json.getAsString().split(",");
+            return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+        }
+    };
+
+    @BeforeAll
+    static void registerCodecs() {
+        AnswerCodecs.register(StringStepType.class, AnswerCodecs.STRING);
+        AnswerCodecs.register(IntegerStepType.class, AnswerCodecs.INTEGER);
+        AnswerCodecs.register(ListStepType.class, AnswerCodecs.STRING_LIST);
+    }
+
+    private static <T> T json(AnswerCodec<T> codec, T answer) {
+        return codec.decode(codec.encode(answer));
+    }
+
+    private static <T> T binary(AnswerCodec<T> codec, T answer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.write(out, answer);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        T read = codec.read(in);
+        assertEquals(-1, in.read(), "Everything that was written should be read");
+        return read;
+    }
+
+    @Test
+    void roundTripsStrings() throws Exception {
+        for (String answer : new String[]{"", "Hello", "\u00e9\u4e2d\ud83c\udfab \"quoted\"\n", LONG_STRING}) {
+            assertEquals(answer, json(AnswerCodecs.STRING, answer));
+            assertEquals(answer, binary(AnswerCodecs.STRING, answer));
+        }
+    }
+
+    @Test
+    void roundTripsNumbersAndBooleans() throws Exception {
+        for (int answer : new int[]{0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            assertEquals(answer, json(AnswerCodecs.INTEGER, answer));
+            assertEquals(answer, binary(AnswerCodecs.INTEGER, answer));
+        }
+        for (double answer : new double[]{0, -0.5, 3.141592653589793, Double.MAX_VALUE, Double.MIN_VALUE}) {
+            assertEquals(answer, json(AnswerCodecs.DOUBLE, answer));
+            assertEquals(answer, binary(AnswerCodecs.DOUBLE, answer));
+        }
+        for (boolean answer : new boolean[]{true, false}) {
+            assertEquals(answer, json(AnswerCodecs.BOOLEAN, answer));
+            assertEquals(answer, binary(AnswerCodecs.BOOLEAN, answer));
+        }
+    }
+
+    @Test
+    void roundTripsStringLists() throws Exception {
+        List<List<String>> answers = Arrays.asList(
+                Collections.emptyList(),
+                Collections.singletonList(""),
+                Arrays.asList("a", "\u00e9\u4e2d", LONG_STRING));
+        for (List<String> answer : answers) {
+            assertEquals(answer, json(AnswerCodecs.STRING_LIST, answer));
+            assertEquals(answer, binary(AnswerCodecs.STRING_LIST, answer));
+        }
+    }
+
+    @Test
+    void writesJsonOnlyCodecsAsJson() throws Exception {
+        assertArrayEquals(new int[]{3, -4}, json(POINT, new int[]{3, -4}));
+        assertArrayEquals(new int[]{3, -4}, binary(POINT, new int[]{3, -4}));
+    }
+
+    @Test
+    void getsRegisteredCodecs() {
+        assertSame(AnswerCodecs.STRING, AnswerCodecs.get(StringStepType.class));
+        assertNull(AnswerCodecs.get(LegacyStepType.class));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<TicketStepData<?>> steps() {
+        List<TicketStepData<?>> steps = new ArrayList<>();
+        steps.add(new TicketStepData<>("Name", (Class) StringStepType.class, "dreta"));
+        steps.add(new TicketStepData<>("Age", (Class) IntegerStepType.class, 17));
+        steps.add(new TicketStepData<>("Steps", (Class) ListStepType.class, Arrays.asList("Open", "Click")));
+        steps.add(new TicketStepData<>("Legacy", (Class) LegacyStepType.class, 42L));
+        return steps;
+    }
+
+    @Test
+    void roundTripsStepDataAsJson() {
+        for (TicketStepData<?> step : steps()) {
+            JsonObject j = step.serialize();
+            assertEquals(step.getTitle().equals("Legacy"), j.has("answerType"));
+            assertEquals(step, TicketStepData.deserialize(j));
+        }
+    }
+
+    @Test
+    void roundTripsStepDataAsBinary() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (TicketStepData<?> step : steps()) {
+                step.write(out);
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (TicketStepData<?> step : steps()) {
+            TicketStepData<?> read = TicketStepData.read(in);
+            assertEquals(step, read);
+            assertSame(step.getDescriptor(), read.getDescriptor());
+        }
+        assertEquals(-1, in.read());
+    }
+}
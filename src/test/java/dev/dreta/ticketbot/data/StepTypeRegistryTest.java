@@ -0,0 +1,145 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.data.types.StepType;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StepTypeRegistryTest {
+    /**
+     * A step type that does nothing.
+     */
+    public abstract static class NoopStepType implements TicketStepType<String> {
+        @Override
+        public void init(TextChannel channel, String question, String description, Consumer<String> callback, JsonObject options) {
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public void ask() {
+        }
+    }
+
+    @StepType(name = "First", description = "The first step type.", emoji = "test-conflict")
+    public static class FirstStepType extends NoopStepType {
+    }
+
+    @StepType(name = "Second", description = "Wants the emoji of the first.", emoji = "test-conflict")
+    public static class SecondStepType extends NoopStepType {
+    }
+
+    @StepType(name = "Extension", description = "Belongs to an extension.", emoji = "test-extension")
+    public static class ExtensionStepType extends NoopStepType {
+    }
+
+    @StepType(name = "Replacement", description = "Wants the emoji of the extension.", emoji = "test-extension")
+    public static class ReplacementStepType extends NoopStepType {
+    }
+
+    public static class UnannotatedStepType extends NoopStepType {
+    }
+
+    /**
+     * Loads one class itself, like the class loader of an extension.
+     */
+    private static class IsolatedLoader extends ClassLoader {
+        private final String name;
+
+        IsolatedLoader(String name) {
+            super(StepTypeRegistryTest.class.getClassLoader());
+            this.name = name;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(this.name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) {
+                    return loaded;
+                }
+                try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    in.transferTo(bytes);
+                    return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+                } catch (IOException ex) {
+                    throw new ClassNotFoundException(name, ex);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsATakenEmoji() {
+        StepTypeEntry<?> first = StepTypeRegistry.register(FirstStepType.class);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> StepTypeRegistry.register(SecondStepType.class));
+        assertTrue(ex.getMessage().contains(SecondStepType.class.getName()), ex.getMessage());
+        assertTrue(ex.getMessage().contains(FirstStepType.class.getName()), ex.getMessage());
+
+        // The first step type keeps its emoji
+        assertSame(first, StepTypeRegistry.byEmoji("test-conflict"));
+    }
+
+    @Test
+    void allowsRegisteringTheSameStepTypeAgain() {
+        StepTypeRegistry.register(FirstStepType.class);
+        StepTypeEntry<?> again = StepTypeRegistry.register(FirstStepType.class);
+        assertSame(again, StepTypeRegistry.byEmoji("test-conflict"));
+        assertSame(again, StepTypeRegistry.entryOf(FirstStepType.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void freesTheEmojiOfADisabledExtension() throws Exception {
+        IsolatedLoader loader = new IsolatedLoader(ExtensionStepType.class.getName());
+        Class<? extends TicketStepType<?>> extensionType =
+                (Class<? extends TicketStepType<?>>) loader.loadClass(ExtensionStepType.class.getName());
+        assertNotSame(ExtensionStepType.class, extensionType);
+
+        StepTypeRegistry.register(extensionType);
+        assertThrows(IllegalArgumentException.class, () -> StepTypeRegistry.register(ReplacementStepType.class));
+
+        StepTypeRegistry.invalidate(loader);
+        assertNull(StepTypeRegistry.byEmoji("test-extension"));
+        StepTypeEntry<?> replacement = StepTypeRegistry.register(ReplacementStepType.class);
+        assertSame(replacement, StepTypeRegistry.byEmoji("test-extension"));
+    }
+
+    @Test
+    void rejectsStepTypesWithoutAnnotation() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> StepTypeRegistry.register(UnannotatedStepType.class));
+        assertTrue(ex.getMessage().contains("@StepType"), ex.getMessage());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import dev.dreta.ticketbot.data.types.IntegerStepType;
+import dev.dreta.ticketbot.data.types.StringStepType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TicketStepDescriptorTest {
+    @Test
+    void sharesEqualDescriptors() {
+        TicketStepDescriptor a = TicketStepDescriptor.of(new String("Title"), StringStepType.class);
+        TicketStepDescriptor b = TicketStepDescriptor.of(new String("Title"), StringStepType.class);
+        assertSame(a, b);
+        assertNotSame(a, TicketStepDescriptor.of("Title", IntegerStepType.class));
+        assertNotSame(a, TicketStepDescriptor.of("Other title", StringStepType.class));
+    }
+
+    @Test
+    void forgetsUnusedDescriptors() throws Exception {
+        WeakReference<TicketStepDescriptor> unused = new WeakReference<>(
+                TicketStepDescriptor.of("A step nobody uses anymore", StringStepType.class));
+        for (int i = 0; i < 50 && unused.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(unused.get());
+    }
+}
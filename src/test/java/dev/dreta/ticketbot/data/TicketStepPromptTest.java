@@ -0,0 +1,101 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data;
+
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.TicketBot;
+import dev.dreta.ticketbot.data.types.BooleanStepType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the prompt of a step is built when the step is
+ * loaded, and only built again once the step or the configuration
+ * has changed.
+ */
+class TicketStepPromptTest {
+    @TempDir
+    File directory;
+
+    @BeforeEach
+    void setUp() {
+        TestConfig.load(directory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TicketStep<Boolean> step() {
+        return new TicketStep<>("Title", "Description",
+                (Class<TicketStepType<Boolean>>) (Class<?>) BooleanStepType.class, new JsonObject());
+    }
+
+    @Test
+    void reusesThePromptBuiltAtLoad() {
+        TicketStep<Boolean> step = step();
+        StepPrompt prompt = step.getPrompt();
+
+        assertNotNull(prompt);
+        assertEquals(List.of(TicketBot.config.booleanYesEmoji(), TicketBot.config.booleanNoEmoji()), prompt.getReactions());
+        assertSame(prompt, step.getPrompt());
+    }
+
+    @Test
+    void rebuildsThePromptWhenTheStepChanges() {
+        TicketStep<Boolean> step = step();
+        StepPrompt prompt = step.getPrompt();
+
+        step.setTitle("Another title");
+        StepPrompt retitled = step.getPrompt();
+        assertNotSame(prompt, retitled);
+        assertSame(retitled, step.getPrompt());
+
+        step.setDescription("Another description");
+        assertNotSame(retitled, step.getPrompt());
+
+        StepPrompt described = step.getPrompt();
+        step.setOptions(new JsonObject());
+        assertNotSame(described, step.getPrompt());
+    }
+
+    @Test
+    void rebuildsThePromptWhenTheConfigurationIsReloaded() throws IOException {
+        TicketStep<Boolean> step = step();
+        StepPrompt prompt = step.getPrompt();
+
+        File file = new File(directory, "config.json");
+        String config = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Files.write(file.toPath(), config.replaceFirst("\"yes\": \"[^\"]*\"", "\"yes\": \"Y\"")
+                .getBytes(StandardCharsets.UTF_8));
+        TicketBot.config.reload();
+
+        StepPrompt reloaded = step.getPrompt();
+        assertNotSame(prompt, reloaded);
+        assertEquals(List.of("Y", TicketBot.config.booleanNoEmoji()), reloaded.getReactions());
+        assertSame(reloaded, step.getPrompt());
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data.types;
+
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.ChannelLock;
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.data.TicketStepType;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.AuditableRestAction;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the built-in step types clean up after themselves,
+ * whether they are answered, cancelled before their prompt was
+ * sent, or cancelled without ever being asked.
+ */
+class PromptStepTypeTest {
+    private static final long CHANNEL = 42;
+    private static final long PROMPT = 1000;
+
+    @TempDir
+    File directory;
+    // What the step types did with the fake channel
+    private final List<Object> listeners = new ArrayList<>();
+    private final List<Consumer<Object>> prompts = new ArrayList<>();
+    private final List<Long> deleted = new ArrayList<>();
+    private final List<String> reactions = new ArrayList<>();
+    private TextChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        TestConfig.load(directory);
+        channel = proxy(TextChannel.class, (name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return CHANNEL;
+                case "getJDA":
+                    return jda();
+                case "sendMessage":
+                    return proxy(MessageAction.class, (n, a) -> {
+                        if (n.equals("queue")) {
+                            prompts.add(success(a));
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(n);
+                    });
+                case "deleteMessageById":
+                    return action(AuditableRestAction.class, () -> deleted.add((Long) args[0]));
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        ChannelLock.lockedChannels.remove(CHANNEL);
+    }
+
+    private interface Handler {
+        Object handle(String name, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+            }
+            return handler.handle(method.getName(), args);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<Object> success(Object[] args) {
+        return (Consumer<Object>) args[0];
+    }
+
+    /**
+     * Create a request that succeeds as soon as it is queued.
+     */
+    private <T extends RestAction<?>> T action(Class<T> type, Runnable run) {
+        return proxy(type, (name, args) -> {
+            if (name.equals("queue")) {
+                run.run();
+                success(args).accept(null);
+                return null;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    private JDA jda() {
+        return proxy(JDA.class, (name, args) -> {
+            switch (name) {
+                case "addEventListener":
+                    listeners.add(((Object[]) args[0])[0]);
+                    return null;
+                case "removeEventListener":
+                    listeners.remove(((Object[]) args[0])[0]);
+                    return null;
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    private Message message(long id) {
+        return proxy(Message.class, (name, args) -> {
+            switch (name) {
+                case "getIdLong":
+                    return id;
+                case "getChannel":
+                    return channel;
+                case "addReaction":
+                    return action(RestAction.class, () -> reactions.add((String) args[0]));
+            }
+            throw new UnsupportedOperationException(name);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> TicketStep<T> step(Class<? extends TicketStepType<T>> type) {
+        return new TicketStep<>("Title", "Description", (Class<TicketStepType<T>>) type, new JsonObject());
+    }
+
+    @Test
+    void answersAndDeletesThePrompt() {
+        StringStepType stepType = new StringStepType();
+        CompletableFuture<String> answer = stepType.ask(channel, step(StringStepType.class)).toCompletableFuture();
+        assertEquals(List.of(stepType), listeners);
+        prompts.get(0).accept(message(PROMPT));
+
+        stepType.answer("answer");
+        assertEquals("answer", answer.join());
+        assertEquals(List.of(), listeners);
+        assertEquals(List.of(PROMPT), deleted);
+
+        // Answering twice does nothing
+        stepType.answer("again");
+        assertEquals(List.of(PROMPT), deleted);
+    }
+
+    @Test
+    void sendsThePreparedPrompt() {
+        StringStepType stepType = new StringStepType();
+        TicketStep<String> step = step(StringStepType.class);
+        stepType.prepare(channel, step);
+        // Nothing is sent or listened to until the step is asked
+        assertEquals(List.of(), listeners);
+        assertEquals(List.of(), prompts);
+
+        stepType.ask(channel, step);
+        assertEquals(1, prompts.size());
+        assertEquals(List.of(stepType), listeners);
+    }
+
+    @Test
+    void cancelsWithoutBeingAsked() {
+        StringStepType stepType = new StringStepType();
+        stepType.prepare(channel, step(StringStepType.class));
+        stepType.cancel();
+        assertEquals(List.of(), prompts);
+        assertEquals(List.of(), deleted);
+
+        // Even if it was never prepared
+        new StringStepType().cancel();
+    }
+
+    @Test
+    void deletesAPromptSentAfterBeingCancelled() {
+        StringStepType stepType = new StringStepType();
+        CompletableFuture<String> answer = stepType.ask(channel, step(StringStepType.class)).toCompletableFuture();
+        stepType.cancel();
+        assertTrue(answer.isCancelled());
+        assertEquals(List.of(), listeners);
+        assertEquals(List.of(), deleted);
+
+        prompts.get(0).accept(message(PROMPT));
+        assertEquals(List.of(PROMPT), deleted);
+    }
+
+    @Test
+    void callsTheCallback() {
+        StringStepType stepType = new StringStepType();
+        List<String> answers = new ArrayList<>();
+        stepType.init(channel, step(StringStepType.class), answers::add);
+        stepType.ask();
+        prompts.get(0).accept(message(PROMPT));
+
+        stepType.answer("answer");
+        assertEquals(List.of("answer"), answers);
+
+        // Cleaning up after answering does nothing
+        stepType.cleanup();
+        assertEquals(List.of(PROMPT), deleted);
+    }
+
+    @Test
+    void refusesToAskBeforeBeingInitialized() {
+        assertThrows(IllegalStateException.class, () -> new StringStepType().ask());
+    }
+
+    @Test
+    void locksTheChannelWhileReactionsAreAwaited() {
+        BooleanStepType stepType = new BooleanStepType();
+        stepType.ask(channel, step(BooleanStepType.class));
+        prompts.get(0).accept(message(PROMPT));
+        assertTrue(ChannelLock.lockedChannels.contains(CHANNEL));
+        assertEquals(stepType.prompt.getReactions(), reactions);
+
+        stepType.answer(true);
+        assertFalse(ChannelLock.lockedChannels.contains(CHANNEL));
+    }
+
+    @Test
+    void doesNotLockTheChannelOnceCancelled() {
+        BooleanStepType stepType = new BooleanStepType();
+        stepType.ask(channel, step(BooleanStepType.class));
+        stepType.cancel();
+        prompts.get(0).accept(message(PROMPT));
+        assertFalse(ChannelLock.lockedChannels.contains(CHANNEL));
+        assertEquals(List.of(), reactions);
+    }
+}
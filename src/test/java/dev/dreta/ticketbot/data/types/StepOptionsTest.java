@@ -0,0 +1,124 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.data.types;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.data.TicketStep;
+import dev.dreta.ticketbot.data.TicketStepType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StepOptionsTest {
+    private static JsonObject json(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private static void assertInvalid(String message, Runnable compile) {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, compile::run);
+        assertTrue(ex.getMessage().contains(message), ex.getMessage());
+    }
+
+    @Test
+    void readsOptionsOrDefaults() {
+        JsonObject options = json("{\"i\": 3, \"d\": 2.5, \"b\": true}");
+        assertEquals(3, StepOptions.getInt(options, "i", 0));
+        assertEquals(7, StepOptions.getInt(options, "missing", 7));
+        assertEquals(2.5, StepOptions.getDouble(options, "d", 0));
+        assertEquals(3, StepOptions.getDouble(options, "i", 0));
+        assertEquals(-1, StepOptions.getDouble(options, "missing", -1));
+        assertTrue(StepOptions.getBoolean(options, "b", false));
+        assertTrue(StepOptions.getBoolean(options, "missing", true));
+    }
+
+    @Test
+    void rejectsOptionsOfTheWrongType() {
+        JsonObject options = json("{\"s\": \"abc\", \"o\": {}, \"n\": 1, \"sb\": \"true\"}");
+        assertInvalid("\"s\" must be an integer", () -> StepOptions.getInt(options, "s", 0));
+        assertInvalid("\"o\" must be an integer", () -> StepOptions.getInt(options, "o", 0));
+        assertInvalid("\"s\" must be a number", () -> StepOptions.getDouble(options, "s", 0));
+        assertInvalid("\"n\" must be true or false", () -> StepOptions.getBoolean(options, "n", false));
+        assertInvalid("\"sb\" must be true or false", () -> StepOptions.getBoolean(options, "sb", false));
+    }
+
+    @Test
+    void readsSelectionsInOrder() {
+        JsonObject options = json("{\"options\": {\"c\": \"Third\", \"a\": \"First\", \"b\": \"Second\"}}");
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>(StepOptions.getSelections(options).keySet()));
+        assertEquals("First", StepOptions.getSelections(options).get("a"));
+        assertThrows(UnsupportedOperationException.class, () -> StepOptions.getSelections(options).put("d", "Fourth"));
+    }
+
+    @Test
+    void rejectsInvalidSelections() {
+        assertInvalid("must be an object", () -> StepOptions.getSelections(json("{}")));
+        assertInvalid("must be an object", () -> StepOptions.getSelections(json("{\"options\": [\"a\"]}")));
+        assertInvalid("at least one selection", () -> StepOptions.getSelections(json("{\"options\": {}}")));
+        assertInvalid("selection for a must be a string", () -> StepOptions.getSelections(json("{\"options\": {\"a\": [1]}}")));
+    }
+
+    @Test
+    void compilesTheOptionsOfTheBuiltInStepTypes() {
+        IntegerStepType.Options integer = new IntegerStepType().compileOptions(json("{\"min\": 1}"));
+        assertEquals(1, integer.getMin());
+        assertEquals(Integer.MAX_VALUE, integer.getMax());
+        assertInvalid("\"min\" must not be greater than \"max\"",
+                () -> new IntegerStepType().compileOptions(json("{\"min\": 2, \"max\": 1}")));
+        assertInvalid("\"min\" must not be greater than \"max\"",
+                () -> new DoubleStepType().compileOptions(json("{\"min\": 0.5, \"max\": 0.25}")));
+        assertInvalid("can't both be true",
+                () -> new BooleanStepType().compileOptions(json("{\"mustBeTrue\": true, \"mustBeFalse\": true}")));
+        assertInvalid("\"allowEmptyList\" must be true or false",
+                () -> new ListStepType().compileOptions(json("{\"allowEmptyList\": \"no\"}")));
+        assertInvalid("\"maximumLength\" must be an integer",
+                () -> new StringStepType().compileOptions(json("{\"maximumLength\": \"long\"}")));
+        assertInvalid("at least one selection",
+                () -> new SingleSelectStepType().compileOptions(json("{\"options\": {}}")));
+        assertInvalid("\"emoji\" must be true or false",
+                () -> new MultiSelectStepType().compileOptions(json("{\"options\": {\"a\": \"A\"}, \"emoji\": 1}")));
+
+        ListStepType.Options list = new ListStepType().compileOptions(new JsonObject());
+        assertEquals(Integer.MAX_VALUE, list.getMaximumLength());
+        assertTrue(list.isAllowEmptyList());
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void validatesStepsWhenTheyAreLoaded(@TempDir File directory) {
+        TestConfig.load(directory);
+        Class<TicketStepType<Integer>> type = (Class) IntegerStepType.class;
+        TicketStep<Integer> step = new TicketStep<>("Age", "How old are you?", type, json("{\"min\": 13}"));
+        assertEquals(13, ((IntegerStepType.Options) step.getCompiledOptions()).getMin());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new TicketStep<>("Age", "How old are you?", type, json("{\"min\": \"thirteen\"}")));
+        assertTrue(ex.getMessage().contains("step \"Age\""), ex.getMessage());
+        assertTrue(ex.getMessage().contains("\"min\" must be an integer"), ex.getMessage());
+
+        // Changing the options validates them again
+        assertThrows(IllegalArgumentException.class, () -> step.setOptions(json("{\"min\": 5, \"max\": 1}")));
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.events;
+
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.commands.manage.ticket.ManageTicketsAssign;
+import dev.dreta.ticketbot.data.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TicketEventBusTest {
+    private static final int QUEUE_SIZE = 4;
+
+    @TempDir
+    File directory;
+    private final List<Subscription<?>> subscriptions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        TestConfig.load(directory).getConfig().getAsJsonObject("events").addProperty("queueSize", QUEUE_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Subscription<?> subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
+    }
+
+    private static TicketEvent event(long userId) {
+        return new TicketCreatedEvent(1, null, userId);
+    }
+
+    @Test
+    void deliversInOrder() throws Exception {
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(QUEUE_SIZE);
+        subscriptions.add(TicketEventBus.subscribe("test", TicketEvent.class, e -> {
+            received.add(e.getUserId());
+            done.countDown();
+        }));
+        for (long i = 0; i < QUEUE_SIZE; i++) {
+            TicketEventBus.publish(event(i));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0L, 1L, 2L, 3L), received);
+    }
+
+    @Test
+    void onlyDeliversTheSubscribedType() throws Exception {
+        List<TicketEvent> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        subscriptions.add(TicketEventBus.subscribe("test", TicketClosedEvent.class, e -> {
+            received.add(e);
+            done.countDown();
+        }));
+        TicketEventBus.publish(event(0));
+        TicketEventBus.publish(new TicketClosedEvent(1, null, 1));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+        assertEquals(1, received.get(0).getUserId());
+    }
+
+    @Test
+    void batchesNeverExceedTheMaximum() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(QUEUE_SIZE + 1);
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        subscriptions.add(TicketEventBus.subscribeBatched("test", TicketEvent.class, 3, batch -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            sizes.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                done.countDown();
+            }
+        }));
+        // The first batch holds up the others until they have all been published
+        TicketEventBus.publish(event(0));
+        Thread.sleep(100);
+        for (long i = 1; i <= QUEUE_SIZE; i++) {
+            TicketEventBus.publish(event(i));
+        }
+        blocked.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 3, 1), sizes);
+    }
+
+    @Test
+    void fullQueueDropsWithoutWaiting() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Subscription<TicketEvent> slow = TicketEventBus.subscribe("slow", TicketEvent.class, e -> {
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        subscriptions.add(slow);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        Subscription<TicketEvent> fast = TicketEventBus.subscribeBatched("fast", TicketEvent.class, 100, batch -> {
+            for (TicketEvent e : batch) {
+                received.add(e.getUserId());
+            }
+        });
+        subscriptions.add(fast);
+        try {
+            TicketEventBus.publish(event(0));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // One event is being handled, the queue holds QUEUE_SIZE more
+            int published = QUEUE_SIZE * 10;
+            long start = System.nanoTime();
+            for (long i = 1; i <= published; i++) {
+                TicketEventBus.publish(event(i));
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "Publishing waited for the slow subscriber");
+            assertEquals(published - QUEUE_SIZE, slow.getDropped());
+
+            // The other subscriber gets its events while the slow one is still stuck
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.size() + fast.getDropped() < published + 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(published + 1, received.size() + fast.getDropped());
+            assertFalse(received.isEmpty());
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test
+    void waitsForRoomWhenAsked() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        Subscription<TicketEvent> subscription = TicketEventBus.subscribe("careful", TicketEvent.class, e -> {
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(e.getUserId());
+        }).waitForRoom(5000);
+        subscriptions.add(subscription);
+        TicketEventBus.publish(event(0));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (long i = 1; i <= QUEUE_SIZE; i++) {
+            TicketEventBus.publish(event(i));
+        }
+
+        // The queue is full, the next event waits until the subscriber makes room
+        new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+            }
+            blocked.countDown();
+        }).start();
+        long start = System.nanoTime();
+        TicketEventBus.publish(event(QUEUE_SIZE + 1));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100), "Publishing didn't wait for room");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < QUEUE_SIZE + 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), received);
+        assertEquals(0, subscription.getDropped());
+    }
+
+    @Test
+    void dropsAfterWaitingForRoom() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Subscription<TicketEvent> subscription = TicketEventBus.subscribe("careful", TicketEvent.class, e -> {
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }).waitForRoom(50);
+        subscriptions.add(subscription);
+        try {
+            TicketEventBus.publish(event(0));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (long i = 1; i <= QUEUE_SIZE + 2; i++) {
+                TicketEventBus.publish(event(i));
+            }
+            assertEquals(2, subscription.getDropped());
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test
+    void refusesToWaitANegativeTime() {
+        Subscription<TicketEvent> subscription = TicketEventBus.subscribe("test", TicketEvent.class, e -> {
+        });
+        subscriptions.add(subscription);
+        assertThrows(IllegalArgumentException.class, () -> subscription.waitForRoom(-1));
+    }
+
+    @Test
+    void eventsHoldACopyOfTheTicket() {
+        Ticket ticket = new Ticket("Title", 1, 2, true, new ArrayList<>(), new ArrayList<>());
+        Ticket assigned = ManageTicketsAssign.assign(ticket, 3).join();
+        assertNotSame(ticket, assigned);
+        assertEquals(List.of(3L), assigned.getAssignees());
+        // Already assigned
+        assertNull(ManageTicketsAssign.assign(ticket, 3).join());
+
+        // Later changes don't show up in the copy an event was published with
+        TicketEvent event = new TicketAssignedEvent(1, assigned, 1, 3);
+        assertNotNull(ManageTicketsAssign.unassign(ticket, 3).join());
+        assertTrue(ticket.getAssignees().isEmpty());
+        assertEquals(List.of(3L), event.getTicket().getAssignees());
+    }
+
+    @Test
+    void unsubscribedReceivesNothing() throws Exception {
+        List<TicketEvent> received = Collections.synchronizedList(new ArrayList<>());
+        Subscription<TicketEvent> subscription = TicketEventBus.subscribe("test", TicketEvent.class, received::add);
+        subscription.unsubscribe();
+        TicketEventBus.publish(event(0));
+        Thread.sleep(100);
+        assertTrue(received.isEmpty());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.extensions;
+
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.TicketBot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Finds the classes of one extension from another through
+ * the class index of the {@link ExtensionLoader}.
+ */
+class ExtensionClassLoaderTest {
+    @TempDir
+    File directory;
+    private ExtensionLoader loader;
+    private final List<ExtensionClassLoader> opened = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        TestConfig.load(directory);
+        loader = new ExtensionLoader(new File(directory, "extensions"));
+        TicketBot.extLoader = loader;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (ExtensionClassLoader classLoader : opened) {
+            if (loader.getLoaders().contains(classLoader)) {
+                loader.disableExtension(classLoader.getExtension());
+            }
+            classLoader.close();
+        }
+        TicketBot.extLoader = null;
+    }
+
+    private static String extension(String name) {
+        return "package example;\npublic class " + name + " extends dev.dreta.ticketbot.extensions.Extension {\n}\n";
+    }
+
+    /**
+     * Open the jar of an extension with a main class and a
+     * few other classes.
+     *
+     * @param id      The ID of the extension
+     * @param sources The fully qualified names and sources of the other classes
+     * @return The class loader of the extension
+     */
+    private ExtensionClassLoader open(String id, String... sources) throws Exception {
+        String main = "Main" + Character.toUpperCase(id.charAt(0)) + id.substring(1);
+        ExtensionJars jar = new ExtensionJars(directory)
+                .extension(id, "example." + main)
+                .source("example." + main, extension(main));
+        for (int i = 0; i < sources.length; i += 2) {
+            jar.source(sources[i], sources[i + 1]);
+        }
+        ExtensionClassLoader classLoader = loader.getOrCreateLoader(jar.write(new File(directory, id + ".jar")));
+        opened.add(classLoader);
+        return classLoader;
+    }
+
+    @Test
+    void findsClassesOfOtherExtensions() throws Exception {
+        ExtensionClassLoader api = open("api", "example.api.Greeter",
+                "package example.api;\npublic class Greeter {\n}\n");
+        // The user loads the class by name, as if it was compiled against the api
+        ExtensionClassLoader user = open("user");
+
+        assertSame(api, loader.getIndexedLoader("example.api.Greeter"));
+        assertSame(user, loader.getIndexedLoader("example.MainUser"));
+        assertNull(loader.getIndexedLoader("example.Missing"));
+
+        Class<?> greeter = Class.forName("example.api.Greeter", true, user);
+        assertSame(api, greeter.getClassLoader());
+        assertSame(greeter, loader.lookupClass("example.api.Greeter"));
+        assertThrows(ClassNotFoundException.class, () -> Class.forName("example.Missing", true, user));
+    }
+
+    @Test
+    void firstExtensionKeepsADuplicateClass() throws Exception {
+        String shared = "package example.shared;\npublic class Util {\n}\n";
+        ExtensionClassLoader first = open("first", "example.shared.Util", shared);
+        ExtensionClassLoader second = open("second", "example.shared.Util", shared);
+        assertSame(first, loader.getIndexedLoader("example.shared.Util"));
+        // An extension still uses its own copy
+        assertSame(second, Class.forName("example.shared.Util", true, second).getClassLoader());
+
+        // Once the first one is gone, the other one has it
+        loader.disableExtension(first.getExtension());
+        assertSame(second, loader.getIndexedLoader("example.shared.Util"));
+        assertNull(loader.getIndexedLoader("example.MainFirst"));
+    }
+
+    @Test
+    void forgetsClassesOfDisabledExtensions() throws Exception {
+        ExtensionClassLoader api = open("api", "example.api.Greeter",
+                "package example.api;\npublic class Greeter {\n}\n");
+        ExtensionClassLoader user = open("user");
+        Class.forName("example.api.Greeter", true, user);
+        assertTrue(user.getClasses().containsKey("example.api.Greeter"));
+
+        loader.disableExtension(api.getExtension());
+        assertNull(loader.getIndexedLoader("example.api.Greeter"));
+        assertNull(loader.lookupClass("example.api.Greeter"));
+        assertFalse(user.getClasses().containsKey("example.api.Greeter"));
+        assertThrows(ClassNotFoundException.class, () -> user.findClass("example.api.Greeter"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.extensions;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds the jars of extensions for the tests, by compiling
+ * their sources against TicketBot.
+ */
+class ExtensionJars {
+    private final File directory;
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private String id;
+    private String mainClass;
+
+    /**
+     * Start building a jar.
+     *
+     * @param directory A directory to compile in
+     */
+    ExtensionJars(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Set the ID of the extension, in its extension.json.
+     *
+     * @param id        The ID
+     * @param mainClass The name of the main class, in the manifest
+     * @return This
+     */
+    ExtensionJars extension(String id, String mainClass) {
+        this.id = id;
+        this.mainClass = mainClass;
+        return this;
+    }
+
+    /**
+     * Add the source of a class.
+     *
+     * @param name The fully qualified name of the class
+     * @param code The source
+     * @return This
+     */
+    ExtensionJars source(String name, String code) {
+        sources.put(name, code);
+        return this;
+    }
+
+    /**
+     * Compile the sources and write the jar. The jar is written
+     * next to the file and then moved over it, like replacing the
+     * jar of a running extension.
+     *
+     * @param jar The file to write the jar to
+     * @return The jar
+     */
+    File write(File jar) throws IOException {
+        File classes = Files.createTempDirectory(directory.toPath(), "classes").toFile();
+        List<JavaFileObject> files = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            files.add(new SimpleJavaFileObject(URI.create("string:///" + source.getKey().replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source.getValue();
+                }
+            });
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        String classPath;
+        try {
+            classPath = new File(Extension.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+        // Without annotation processing, the main class is taken from the manifest
+        List<String> options = Arrays.asList("-d", classes.getPath(), "-proc:none", "-classpath", classPath);
+        if (!compiler.getTask(null, fileManager, diagnostics, options, null, files).call()) {
+            throw new IllegalStateException(diagnostics.getDiagnostics().toString());
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+        File temp = new File(jar.getPath() + ".tmp");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(temp), manifest)) {
+            if (id != null) {
+                out.putNextEntry(new JarEntry("extension.json"));
+                out.write(("{\"id\": \"" + id + "\", \"name\": \"" + id + "\", \"description\": \"-\", \"version\": \"1\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            List<Path> compiled;
+            try (Stream<Path> walk = Files.walk(classes.toPath())) {
+                compiled = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path path : compiled) {
+                out.putNextEntry(new JarEntry(classes.toPath().relativize(path).toString().replace(File.separatorChar, '/')));
+                copy(path, out);
+            }
+        }
+        Files.move(temp.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return jar;
+    }
+
+    private static void copy(Path path, OutputStream out) throws IOException {
+        out.write(Files.readAllBytes(path));
+    }
+}
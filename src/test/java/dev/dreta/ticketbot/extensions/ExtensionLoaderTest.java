@@ -0,0 +1,147 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.extensions;
+
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.TicketBot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reloads an extension from a jar that is replaced while the
+ * extension is running.
+ */
+class ExtensionLoaderTest {
+    private static final String ENABLED = "ticketbot.test.reloadable";
+
+    @TempDir
+    File directory;
+    private ExtensionLoader loader;
+    private File jar;
+
+    @BeforeEach
+    void setUp() {
+        JsonObject extensions = TestConfig.load(directory).getConfig().getAsJsonObject("extensions");
+        extensions.addProperty("drainTimeout", 0);
+        extensions.addProperty("unloadTimeout", 0);
+        File extensionsDir = new File(directory, "extensions");
+        loader = new ExtensionLoader(extensionsDir);
+        TicketBot.extLoader = loader;
+        jar = new File(directory, "reloadable.jar");
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Extension extension : loader.getExtensions()) {
+            loader.disableExtension(extension);
+        }
+        TicketBot.extLoader = null;
+        System.clearProperty(ENABLED);
+    }
+
+    /**
+     * Write a version of the extension, which remembers that it is
+     * enabled in a system property.
+     *
+     * @param version The version
+     * @param onEnable What the extension does when it is enabled
+     */
+    private void write(String version, String onEnable) throws Exception {
+        new ExtensionJars(directory)
+                .extension("reloadable", "example.Reloadable")
+                .source("example.Reloadable", "package example;\n" +
+                        "public class Reloadable extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    public static final String VERSION = \"" + version + "\";\n" +
+                        "    @Override\n" +
+                        "    public void onEnable() {\n" +
+                        "        " + onEnable + "\n" +
+                        "        System.setProperty(\"" + ENABLED + "\", VERSION);\n" +
+                        "    }\n" +
+                        "    @Override\n" +
+                        "    public void onDisable() {\n" +
+                        "        System.clearProperty(\"" + ENABLED + "\");\n" +
+                        "    }\n" +
+                        "}\n")
+                .write(jar);
+    }
+
+    private Extension enable() throws Exception {
+        ExtensionClassLoader classLoader = loader.getOrCreateLoader(jar);
+        loader.enableExtension(classLoader);
+        return classLoader.getExtension();
+    }
+
+    @Test
+    void reloadsTheNewVersion() throws Exception {
+        write("1", "");
+        Extension old = enable();
+        assertEquals("1", System.getProperty(ENABLED));
+
+        write("2", "");
+        ExtensionLoader.ReloadResult result = loader.reloadExtension("reloadable").join();
+        assertEquals("2", System.getProperty(ENABLED));
+        assertNotSame(old, result.getExtension());
+        assertFalse(old.isEnabled());
+        assertSame(result.getExtension(), loader.getExtension("reloadable"));
+        assertSame(result.getExtension().getClassLoader(), loader.getIndexedLoader("example.Reloadable"));
+    }
+
+    @Test
+    void enablesTheOldVersionAgainIfTheNewOneFails() throws Exception {
+        write("1", "");
+        Extension old = enable();
+
+        write("2", "if (VERSION.equals(\"2\")) throw new IllegalStateException(\"broken\");");
+        CompletionException ex = assertThrows(CompletionException.class, () -> loader.reloadExtension("reloadable").join());
+        assertTrue(ex.getCause().getMessage().contains("reloadable"), ex.getCause().getMessage());
+
+        // The old version is back, and the new one is gone
+        assertSame(old, loader.getExtension("reloadable"));
+        assertTrue(old.isEnabled());
+        assertEquals("1", System.getProperty(ENABLED));
+        assertEquals(1, loader.getExtensions().size());
+        assertSame(old.getClassLoader(), loader.getIndexedLoader("example.Reloadable"));
+    }
+
+    @Test
+    void enablesTheOldVersionAgainIfTheNewJarIsBroken() throws Exception {
+        write("1", "");
+        Extension old = enable();
+
+        // A jar without a main class can't be opened
+        new ExtensionJars(directory)
+                .extension("reloadable", null)
+                .source("example.Other", "package example;\npublic class Other {\n}\n")
+                .write(jar);
+        assertThrows(CompletionException.class, () -> loader.reloadExtension("reloadable").join());
+
+        assertSame(old, loader.getExtension("reloadable"));
+        assertTrue(old.isEnabled());
+        assertEquals("1", System.getProperty(ENABLED));
+        assertNull(loader.getIndexedLoader("example.Other"));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.processor;
+
+import dev.dreta.ticketbot.data.types.StepType;
+import dev.dreta.ticketbot.extensions.Extension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiles a few sources with the IndexProcessor and checks
+ * the index it writes.
+ */
+class IndexProcessorTest {
+    @TempDir
+    File output;
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    private static JavaFileObject source(String name, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static String locationOf(Class<?> clazz) throws Exception {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+
+    /**
+     * Compile sources with the IndexProcessor.
+     *
+     * @param sources The sources
+     * @return The index, or null if none was written
+     */
+    private String compile(JavaFileObject... sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        List<String> options = Arrays.asList("-d", output.getPath(), "-Xlint:processing",
+                "-classpath", locationOf(StepType.class) + File.pathSeparator + locationOf(Extension.class));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null, Arrays.asList(sources));
+        task.setProcessors(List.of(new IndexProcessor()));
+        assertTrue(task.call(), () -> diagnostics.getDiagnostics().toString());
+        File index = new File(output, IndexProcessor.PATH);
+        return index.isFile() ? new String(Files.readAllBytes(index.toPath()), StandardCharsets.UTF_8) : null;
+    }
+
+    private List<String> warnings() {
+        List<String> warnings = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.WARNING || diagnostic.getKind() == Diagnostic.Kind.MANDATORY_WARNING) {
+                warnings.add(diagnostic.getMessage(null));
+            }
+        }
+        return warnings;
+    }
+
+    @Test
+    void indexesStepTypes() throws Exception {
+        String index = compile(source("example.Echo",
+                "package example;\n" +
+                        "@dev.dreta.ticketbot.data.types.StepType(name = \"Echo\", description = \"Says \\\"hi\\\"\", emoji = \"E\")\n" +
+                        "public class Echo {\n" +
+                        "    @dev.dreta.ticketbot.data.types.StepType(name = \"Inner\", description = \"-\", emoji = \"I\")\n" +
+                        "    public static class Inner {\n" +
+                        "    }\n" +
+                        "}\n"));
+        assertNotNull(index);
+        assertTrue(index.contains("{\"class\": \"example.Echo\", \"description\": \"Says \\\"hi\\\"\", \"emoji\": \"E\", \"name\": \"Echo\", \"text\": false}"), index);
+        assertTrue(index.contains("\"class\": \"example.Echo$Inner\""), index);
+        assertTrue(index.contains("\"extensions\": []"), index);
+    }
+
+    @Test
+    void indexesNestedExtensions() throws Exception {
+        String index = compile(source("example.Outer",
+                "package example;\n" +
+                        "@dev.dreta.ticketbot.data.types.StepType(name = \"Echo\", description = \"-\", emoji = \"E\")\n" +
+                        "public class Outer extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    public static class Nested extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    }\n" +
+                        "    public class Inner extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    }\n" +
+                        "    static class Hidden extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    }\n" +
+                        "    public abstract static class Base extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    }\n" +
+                        "}\n"));
+        assertNotNull(index);
+        assertTrue(index.contains("\"extensions\": [\n    \"example.Outer\",\n    \"example.Outer$Nested\"\n  ]"), index);
+    }
+
+    @Test
+    void claimsStepTypeWithoutWarnings() throws Exception {
+        compile(source("example.Echo",
+                "package example;\n" +
+                        "@dev.dreta.ticketbot.data.types.StepType(name = \"Echo\", description = \"-\", emoji = \"E\")\n" +
+                        "public class Echo {\n" +
+                        "}\n"));
+        assertEquals(List.of(), warnings());
+    }
+
+    @Test
+    void indexesExtensionsWithoutStepTypes() throws Exception {
+        String index = compile(source("example.Main",
+                "package example;\n" +
+                        "public class Main extends dev.dreta.ticketbot.extensions.Extension {\n" +
+                        "    @Override\n" +
+                        "    public void onEnable() {\n" +
+                        "    }\n" +
+                        "}\n"));
+        assertNotNull(index);
+        assertTrue(index.contains("\"stepTypes\": []"), index);
+        assertTrue(index.contains("\"extensions\": [\n    \"example.Main\"\n  ]"), index);
+    }
+
+    @Test
+    void leavesOtherAnnotationsUnclaimed() throws Exception {
+        compile(source("example.Marker",
+                "package example;\n" +
+                        "public @interface Marker {\n" +
+                        "}\n"), source("example.Echo",
+                "package example;\n" +
+                        "@dev.dreta.ticketbot.data.types.StepType(name = \"Echo\", description = \"-\", emoji = \"E\")\n" +
+                        "@Marker\n" +
+                        "@Deprecated\n" +
+                        "public class Echo {\n" +
+                        "}\n"));
+        // Another processor could still process @Marker
+        assertTrue(warnings().stream().anyMatch(warning -> warning.contains("example.Marker")), warnings()::toString);
+    }
+
+    @Test
+    void writesNothingWithoutStepTypesOrExtensions() throws Exception {
+        assertNull(compile(source("example.Plain",
+                "package example;\n" +
+                        "public class Plain {\n" +
+                        "}\n")));
+    }
+}
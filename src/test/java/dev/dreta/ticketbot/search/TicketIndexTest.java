@@ -0,0 +1,141 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.search;
+
+import dev.dreta.ticketbot.data.Ticket;
+import dev.dreta.ticketbot.data.TicketStepData;
+import dev.dreta.ticketbot.data.TicketStepType;
+import dev.dreta.ticketbot.data.types.StringStepType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TicketIndexTest {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Ticket ticket(long channel, String title, String... answers) {
+        List<TicketStepData<?>> steps = new ArrayList<>();
+        for (String answer : answers) {
+            steps.add(new TicketStepData<>("Question", (Class<TicketStepType<String>>) (Class) StringStepType.class, answer));
+        }
+        return new Ticket(title, 1, channel, true, new ArrayList<>(), steps);
+    }
+
+    @Test
+    void tokenizesIntoLowerCaseWords() {
+        assertEquals(Arrays.asList("can", "log", "in", "to", "server", "42"), TicketIndex.tokenize("Can't log-in to SERVER #42!"));
+        assertEquals(Arrays.asList("ab", "ab"), TicketIndex.tokenize("a ab x AB"));
+        assertTrue(TicketIndex.tokenize(null).isEmpty());
+        assertTrue(TicketIndex.tokenize("  -- ! ").isEmpty());
+    }
+
+    @Test
+    void indexesTitlesAndAnswers() {
+        TicketIndex index = new TicketIndex();
+        index.index(ticket(1, "Billing", "I was charged twice"));
+        index.index(ticket(2, "Login problem", "Password reset mail never arrives"));
+
+        assertEquals(Collections.singletonList(1L), index.search("charged"));
+        assertEquals(Collections.singletonList(2L), index.search("LOGIN"));
+        assertTrue(index.search("refund").isEmpty());
+        assertTrue(index.search("").isEmpty());
+    }
+
+    @Test
+    void ranksRareAndDenseMatchesFirst() {
+        TicketIndex index = new TicketIndex();
+        // "server" is in every ticket, "crash" only in one of them.
+        index.index(ticket(1, "Server question", "How do I join the server"));
+        index.index(ticket(2, "Server crash", "The server crashed, crash log attached"));
+        index.index(ticket(3, "Server", "Server lag"));
+        index.index(ticket(4, "Server rules", "Where are the server rules and the appeal form and the staff list"));
+
+        List<Long> results = index.search("server crash");
+        assertEquals(4, results.size());
+        assertEquals(2L, results.get(0));
+        // A short ticket that only matches the common word ranks
+        // above a long ticket that only matches it as often.
+        assertTrue(results.indexOf(3L) < results.indexOf(4L));
+    }
+
+    @Test
+    void breaksTiesByNewestChannel() {
+        TicketIndex index = new TicketIndex();
+        index.index(ticket(10, "Help"));
+        index.index(ticket(30, "Help"));
+        index.index(ticket(20, "Help"));
+        assertEquals(Arrays.asList(30L, 20L, 10L), index.search("help"));
+    }
+
+    @Test
+    void reindexingAndRemovingUpdatesThePostings() {
+        TicketIndex index = new TicketIndex();
+        index.index(ticket(1, "Old title"));
+        index.index(ticket(1, "New title"));
+        assertTrue(index.search("old").isEmpty());
+        assertEquals(Collections.singletonList(1L), index.search("new"));
+        assertEquals(1, index.size());
+
+        index.remove(1);
+        assertFalse(index.contains(1));
+        assertTrue(index.search("title").isEmpty());
+    }
+
+    @Test
+    void savesAndLoadsTheIndex(@TempDir File directory) throws Exception {
+        TicketIndex index = new TicketIndex();
+        index.index(ticket(1, "Billing", "I was charged twice"));
+        index.index(ticket(2, "Login problem", "Password reset mail never arrives"));
+        index.index(ticket(3, "Billing again", "charged charged charged"));
+        File file = new File(directory, "search.json");
+        index.save(file);
+        assertTrue(file.isFile());
+        assertFalse(new File(directory, "search.json.tmp").exists());
+
+        TicketIndex loaded = new TicketIndex();
+        loaded.index(ticket(99, "Stale ticket"));
+        loaded.load(file);
+        assertEquals(3, loaded.size());
+        assertFalse(loaded.contains(99));
+        for (String query : new String[]{"charged", "billing", "password reset", "billing login"}) {
+            assertEquals(index.search(query), loaded.search(query), query);
+        }
+    }
+
+    @Test
+    void ignoresMissingAndBrokenFiles(@TempDir File directory) throws Exception {
+        TicketIndex index = new TicketIndex();
+        index.index(ticket(1, "Billing"));
+        index.load(new File(directory, "missing.json"));
+        assertTrue(index.contains(1));
+
+        File broken = new File(directory, "search.json");
+        Files.write(broken.toPath(), "{\"documents\": ".getBytes(StandardCharsets.UTF_8));
+        index.load(broken);
+        assertTrue(index.contains(1));
+    }
+}
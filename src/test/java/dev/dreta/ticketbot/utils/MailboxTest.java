@@ -0,0 +1,145 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailboxTest {
+    @Test
+    void runsTasksInOrder() throws Exception {
+        Mailbox mailbox = new Mailbox();
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int task = i;
+            results.add(mailbox.submit(() -> {
+                ran.add(task);
+                return task;
+            }));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, ran.get(i));
+        }
+    }
+
+    @Test
+    void neverRunsTwoTasksAtOnce() throws Exception {
+        Mailbox mailbox = new Mailbox();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        int[] counter = {0};
+        List<Thread> submitters = new ArrayList<>();
+        List<CompletableFuture<Void>> results = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    results.add(mailbox.submit(() -> {
+                        if (running.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        // Not atomic, only safe if the tasks never overlap
+                        counter[0]++;
+                        running.decrementAndGet();
+                        return null;
+                    }));
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(0, overlaps.get());
+        assertEquals(8000, counter[0]);
+        assertEquals(0, mailbox.getDepth());
+    }
+
+    @Test
+    void differentMailboxesRunInParallel() throws Exception {
+        // Only passes if both tasks run at the same time
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        CompletableFuture<Integer> first = new Mailbox().submit(() -> await(barrier));
+        CompletableFuture<Integer> second = new Mailbox().submit(() -> await(barrier));
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    private static int await(CyclicBarrier barrier) {
+        try {
+            return barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheOthers() throws Exception {
+        Mailbox mailbox = new Mailbox();
+        CompletableFuture<Object> failed = mailbox.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+        CountDownLatch ran = new CountDownLatch(1);
+        mailbox.execute(() -> {
+            throw new IllegalStateException("failed too");
+        });
+        mailbox.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(failed.isCompletedExceptionally());
+    }
+
+    @Test
+    void countsWaitingTasks() throws Exception {
+        Mailbox mailbox = new Mailbox();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        mailbox.execute(() -> {
+            started.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 3; i++) {
+            last = mailbox.submit(() -> null);
+        }
+        assertEquals(3, mailbox.getDepth());
+        blocked.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        assertEquals(0, mailbox.getDepth());
+    }
+}
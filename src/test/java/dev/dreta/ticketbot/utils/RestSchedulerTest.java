@@ -0,0 +1,280 @@
+/*
+ * Ticket Bot allows you to easily manage and track tickets.
+ * Copyright (C) 2021 Dreta
+ *
+ * Ticket Bot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Ticket Bot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Ticket Bot.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dreta.ticketbot.utils;
+
+import com.google.gson.JsonObject;
+import dev.dreta.ticketbot.TestConfig;
+import dev.dreta.ticketbot.utils.RestScheduler.Priority;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.requests.RestAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks in which order the RestScheduler hands requests to
+ * JDA. The requests are fakes that only finish when the test
+ * says so.
+ */
+class RestSchedulerTest {
+    @TempDir
+    File directory;
+    private JsonObject rest;
+    // The requests handed to JDA, in order
+    private final List<Sent> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        rest = TestConfig.load(directory).getConfig().getAsJsonObject("rest");
+        budget(1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Nothing may be left in flight for the next test
+        for (int i = 0; i < sent.size(); i++) {
+            sent.get(i).succeed();
+        }
+    }
+
+    private void budget(int maxInFlight, int routeBudget) {
+        rest.addProperty("maxInFlight", maxInFlight);
+        rest.addProperty("routeBudget", routeBudget);
+    }
+
+    private static class Sent {
+        private final String name;
+        private final Consumer<Object> success;
+        private final Consumer<Throwable> failure;
+        private boolean finished;
+
+        private Sent(String name, Consumer<Object> success, Consumer<Throwable> failure) {
+            this.name = name;
+            this.success = success;
+            this.failure = failure;
+        }
+
+        private void succeed() {
+            if (!finished) {
+                finished = true;
+                success.accept(name);
+            }
+        }
+
+        private void fail() {
+            if (!finished) {
+                finished = true;
+                failure.accept(new IllegalStateException(name + " failed"));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RestAction<String> action(String name) {
+        return (RestAction<String>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RestAction.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "queue":
+                    if (args != null && args.length == 2) {
+                        synchronized (sent) {
+                            sent.add(new Sent(name, (Consumer<Object>) args[0], (Consumer<Throwable>) args[1]));
+                        }
+                        return null;
+                    }
+                    break;
+                case "toString":
+                    return name;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private RestAction<String> failingAction(String name) {
+        return (RestAction<String>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RestAction.class}, (proxy, method, args) -> {
+            if (method.getName().equals("queue")) {
+                throw new IllegalStateException(name + " couldn't be queued");
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private RestAction<String> immediateAction(String name) {
+        return (RestAction<String>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RestAction.class}, (proxy, method, args) -> {
+            if (method.getName().equals("queue")) {
+                ((Consumer<Object>) args[0]).accept(name);
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private MessageChannel channel(long id) {
+        return (MessageChannel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MessageChannel.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getIdLong")) {
+                return id;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private List<String> names() {
+        List<String> names = new ArrayList<>();
+        synchronized (sent) {
+            for (Sent request : sent) {
+                names.add(request.name);
+            }
+        }
+        return names;
+    }
+
+    private Sent sent(String name) {
+        synchronized (sent) {
+            for (Sent request : sent) {
+                if (request.name.equals(name)) {
+                    return request;
+                }
+            }
+        }
+        throw new AssertionError(name + " wasn't sent");
+    }
+
+    @Test
+    void sendsTheMostImportantRequestsFirst() {
+        RestScheduler.queue(Priority.CLEANUP, 1, null, action("busy"));
+        RestScheduler.queue(Priority.CLEANUP, 1, null, action("cleanup"));
+        RestScheduler.queue(Priority.REACTION, 1, null, action("reaction"));
+        RestScheduler.queue(Priority.NOTICE, 1, null, action("notice"));
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("prompt"));
+        assertEquals(List.of("busy"), names());
+
+        for (String name : Arrays.asList("busy", "prompt", "notice", "reaction")) {
+            sent(name).succeed();
+        }
+        assertEquals(List.of("busy", "prompt", "notice", "reaction", "cleanup"), names());
+    }
+
+    @Test
+    void keepsToTheBudgetOfEachRoute() {
+        budget(10, 2);
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("1a"));
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("1b"));
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("1c"));
+        RestScheduler.queue(Priority.CLEANUP, 2, null, action("2a"));
+        // The less important request to another route isn't held up by route 1
+        assertEquals(List.of("1a", "1b", "2a"), names());
+
+        sent("1a").succeed();
+        assertEquals(List.of("1a", "1b", "2a", "1c"), names());
+    }
+
+    @Test
+    void keepsToTheBudgetOfAllRoutes() {
+        budget(2, 2);
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("1"));
+        RestScheduler.queue(Priority.PROMPT, 2, null, action("2"));
+        RestScheduler.queue(Priority.PROMPT, 3, null, action("3"));
+        assertEquals(List.of("1", "2"), names());
+
+        sent("2").fail();
+        assertEquals(List.of("1", "2", "3"), names());
+    }
+
+    @Test
+    void replacesWaitingRequestsWithTheSameKey() {
+        RestScheduler.queue(Priority.NOTICE, 1, null, action("busy"));
+        CompletableFuture<String> first = RestScheduler.queue(Priority.NOTICE, 1, "edit:1", action("first edit"));
+        CompletableFuture<String> second = RestScheduler.queue(Priority.NOTICE, 1, "edit:1", action("second edit"));
+        assertTrue(first.isCancelled());
+
+        sent("busy").succeed();
+        assertEquals(List.of("busy", "second edit"), names());
+        sent("second edit").succeed();
+        assertEquals("second edit", second.join());
+    }
+
+    @Test
+    void completesWithTheResult() {
+        CompletableFuture<String> result = RestScheduler.queue(Priority.PROMPT, 1, null, action("prompt"));
+        assertFalse(result.isDone());
+        sent("prompt").succeed();
+        assertEquals("prompt", result.join());
+    }
+
+    @Test
+    void releasesTheBudgetOfRequestsThatCantBeQueued() {
+        CompletableFuture<String> failed = RestScheduler.queue(Priority.PROMPT, 1, null, failingAction("missing permission"));
+        assertTrue(failed.isCompletedExceptionally());
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("next"));
+        assertEquals(List.of("next"), names());
+    }
+
+    @Test
+    void sendsALongQueueWithoutRecursing() {
+        RestScheduler.queue(Priority.PROMPT, 1, null, action("busy"));
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            results.add(RestScheduler.queue(Priority.PROMPT, 1, null, immediateAction("request " + i)));
+        }
+        // Every request finishes while the one before it is being sent
+        sent("busy").succeed();
+        for (CompletableFuture<String> result : results) {
+            assertTrue(result.isDone());
+        }
+    }
+
+    @Test
+    void sendsInOrderOneAfterAnother() {
+        budget(10, 10);
+        CompletableFuture<Void> all = RestScheduler.queueInOrder(Priority.REACTION, channel(1),
+                Arrays.asList(action("a"), action("b"), action("c")));
+        assertEquals(List.of("a"), names());
+        sent("a").succeed();
+        assertEquals(List.of("a", "b"), names());
+        sent("b").succeed();
+        sent("c").succeed();
+        assertEquals(List.of("a", "b", "c"), names());
+        assertTrue(all.isDone() && !all.isCompletedExceptionally());
+    }
+
+    @Test
+    void stopsSendingInOrderAfterAFailure() {
+        budget(10, 10);
+        CompletableFuture<Void> all = RestScheduler.queueInOrder(Priority.REACTION, channel(1),
+                Arrays.asList(action("a"), action("b"), action("c")));
+        sent("a").fail();
+        assertEquals(List.of("a"), names());
+        assertTrue(all.isCompletedExceptionally());
+    }
+}